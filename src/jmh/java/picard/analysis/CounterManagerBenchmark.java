@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.analysis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures counting reads over a sequence as FastWgsMetricsCollector does: for each locus, make room in the counters,
+ * then increment the counters over the length of the reads starting there.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CounterManagerBenchmark {
+    private static final int READ_LENGTH = 150;
+    private static final int SEQUENCE_LENGTH = 100000;
+    private static final int READS_PER_LOCUS = 2;
+    private static final int ARRAY_SIZE_PER_READ_LENGTH = 2000; // as in FastWgsMetricsCollector
+
+    private CounterManager counterManager;
+    private CounterManager.Counter pileupSize;
+    private CounterManager.Counter unfilteredDepth;
+
+    @Setup
+    public void setup() {
+        counterManager = new CounterManager(READ_LENGTH * ARRAY_SIZE_PER_READ_LENGTH, READ_LENGTH);
+        pileupSize = counterManager.newCounter();
+        unfilteredDepth = counterManager.newCounter();
+    }
+
+    @Benchmark
+    public int countReads() {
+        counterManager.clear();
+        int sum = 0;
+        for (int locus = 0; locus < SEQUENCE_LENGTH; ++locus) {
+            counterManager.checkOutOfBounds(locus);
+            for (int read = 0; read < READS_PER_LOCUS; ++read) {
+                for (int i = locus; i < locus + READ_LENGTH; ++i) {
+                    pileupSize.increment(i);
+                    unfilteredDepth.increment(i);
+                }
+            }
+            sum += pileupSize.get(locus);
+        }
+        return sum;
+    }
+}
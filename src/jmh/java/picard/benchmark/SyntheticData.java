@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.benchmark;
+
+import picard.illumina.parser.fakers.FileFaker;
+import picard.sam.markduplicates.util.ReadEnds;
+import picard.sam.markduplicates.util.ReadEndsForMarkDuplicates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates in-memory synthetic data for the benchmarks.  Like the {@link FileFaker}s, the data only needs to be well
+ * formed, not realistic, but unlike them it is random so that branches are not trivially predicted.  All generators
+ * are seeded, so each benchmark measures the same data on every run.
+ */
+public final class SyntheticData {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private final Random random;
+
+    public SyntheticData(final long seed) {
+        this.random = new Random(seed);
+    }
+
+    /** Returns random bases, with roughly one in noCallRate bases an 'N' (none if noCallRate is 0). */
+    public byte[] bases(final int length, final int noCallRate) {
+        final byte[] bases = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bases[i] = noCallRate > 0 && random.nextInt(noCallRate) == 0 ? (byte) 'N' : BASES[random.nextInt(BASES.length)];
+        }
+        return bases;
+    }
+
+    /** Returns random base qualities between 2 and 40. */
+    public byte[] qualities(final int length) {
+        final byte[] qualities = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            qualities[i] = (byte) (2 + random.nextInt(39));
+        }
+        return qualities;
+    }
+
+    /** Returns a copy of the bases with the given number of positions changed to a different base. */
+    public byte[] mutate(final byte[] bases, final int mismatches) {
+        final byte[] mutated = bases.clone();
+        for (int i = 0; i < mismatches; ++i) {
+            final int position = random.nextInt(mutated.length);
+            byte base;
+            do {
+                base = BASES[random.nextInt(BASES.length)];
+            } while (base == bases[position]);
+            mutated[position] = base;
+        }
+        return mutated;
+    }
+
+    /** Returns Illumina read names of the form instrument:run:flowcell:lane:tile:x:y. */
+    public List<String> illuminaReadNames(final int count) {
+        final List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            names.add(String.format("M01234:123:000000000-ZZZZZ:%d:%d:%d:%d",
+                    1 + random.nextInt(8), tile(), random.nextInt(30000), random.nextInt(30000)));
+        }
+        return names;
+    }
+
+    /** Returns MGI-style read names whose last three '_' delimited fields are the tile, x and y. */
+    public List<String> underscoreDelimitedReadNames(final int count) {
+        final List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            names.add(String.format("V300012345L%dC001R%07d_%d_%d_%d",
+                    1 + random.nextInt(4), random.nextInt(10000000), tile(), random.nextInt(30000), random.nextInt(30000)));
+        }
+        return names;
+    }
+
+    /**
+     * Returns the read ends of a duplicate set spread over the given number of tiles, with a fraction of them placed
+     * within the optical duplicate distance of another read end.
+     */
+    public List<ReadEndsForMarkDuplicates> duplicateSet(final int size, final int tiles, final double opticalFraction, final int opticalDistance) {
+        final List<ReadEndsForMarkDuplicates> ends = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            final ReadEndsForMarkDuplicates end = readEnds(i);
+            if (!ends.isEmpty() && random.nextDouble() < opticalFraction) {
+                final ReadEndsForMarkDuplicates near = ends.get(random.nextInt(ends.size()));
+                end.setTile(near.getTile());
+                end.setX(near.getX() + random.nextInt(opticalDistance + 1));
+                end.setY(near.getY() + random.nextInt(opticalDistance + 1));
+            } else {
+                end.setTile((short) (1101 + random.nextInt(tiles)));
+            }
+            ends.add(end);
+        }
+        return ends;
+    }
+
+    /** Returns paired read ends with random coordinates and locations. */
+    public ReadEndsForMarkDuplicates readEnds(final long indexInFile) {
+        final ReadEndsForMarkDuplicates end = new ReadEndsForMarkDuplicates();
+        end.score = (short) random.nextInt(Short.MAX_VALUE);
+        end.libraryId = (short) random.nextInt(4);
+        end.orientation = ReadEnds.FR;
+        end.read1ReferenceIndex = random.nextInt(24);
+        end.read1Coordinate = random.nextInt(100000000);
+        end.read1IndexInFile = indexInFile;
+        end.read2ReferenceIndex = end.read1ReferenceIndex;
+        end.read2Coordinate = end.read1Coordinate + random.nextInt(1000);
+        end.read2IndexInFile = indexInFile + 1 + random.nextInt(1000);
+        end.readGroup = (short) random.nextInt(4);
+        end.setTile(tile());
+        end.setX(random.nextInt(30000));
+        end.setY(random.nextInt(30000));
+        return end;
+    }
+
+    /** Returns a HiSeq-style tile number. */
+    private short tile() {
+        return (short) ((1 + random.nextInt(2)) * 1000 + (1 + random.nextInt(3)) * 100 + 1 + random.nextInt(16));
+    }
+
+    public int nextInt(final int bound) {
+        return random.nextInt(bound);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.illumina;
+
+import htsjdk.samtools.util.StringUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import picard.benchmark.SyntheticData;
+import picard.illumina.ExtractIlluminaBarcodes.BarcodeMetric;
+import picard.illumina.ExtractIlluminaBarcodes.PerTileBarcodeExtractor;
+import picard.illumina.ExtractIlluminaBarcodes.PerTileBarcodeExtractor.BarcodeMatch;
+import picard.util.IlluminaUtil;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures matching dual-indexed barcode reads against sets of expected barcodes of several sizes.  Most reads are an
+ * expected barcode with up to two mismatches, the rest are random.  Reads are matched either by comparing them to every
+ * barcode, or by looking them up in a {@link BarcodeIndex}, which is created even where {@link BarcodeIndex#create}
+ * would choose the scan, so as to show where one becomes faster than the other.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExtractIlluminaBarcodesBenchmark {
+    private static final int BARCODE_LENGTH = 8;
+    private static final int NUM_READS = 4096;
+
+    private static final int MAX_MISMATCHES = 1;
+
+    @Param({"24", "96", "384", "1536"})
+    public int numBarcodes;
+
+    @Param({"true", "false"})
+    public boolean useQualities;
+
+    @Param({"true", "false"})
+    public boolean useIndex;
+
+    private final Map<String, BarcodeMetric> metrics = new LinkedHashMap<>();
+    private BarcodeMetric noMatchMetric;
+    private BarcodeIndex.Search barcodeSearch;
+    private BarcodeMetric[] indexedMetrics;
+    private final byte[][][] reads = new byte[NUM_READS][][];
+    private final byte[][][] qualities = new byte[NUM_READS][][];
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        final SyntheticData data = new SyntheticData(42);
+        final byte[][][] barcodes = new byte[numBarcodes][][];
+        for (int i = 0; i < numBarcodes; ++i) {
+            barcodes[i] = new byte[][]{data.bases(BARCODE_LENGTH, 0), data.bases(BARCODE_LENGTH, 0)};
+            final String[] barcodeSeqs = {StringUtil.bytesToString(barcodes[i][0]), StringUtil.bytesToString(barcodes[i][1])};
+            metrics.put(StringUtil.join("", barcodeSeqs), new BarcodeMetric(null, null, IlluminaUtil.barcodeSeqsToString(barcodeSeqs), barcodeSeqs));
+        }
+
+        final String[] noMatchBarcode = {StringUtil.repeatCharNTimes('N', BARCODE_LENGTH), StringUtil.repeatCharNTimes('N', BARCODE_LENGTH)};
+        noMatchMetric = new BarcodeMetric(null, null, IlluminaUtil.barcodeSeqsToString(noMatchBarcode), noMatchBarcode);
+        if (useIndex) {
+            barcodeSearch = BarcodeIndex.createEvenIfSlower(metrics.values(), MAX_MISMATCHES).newSearch();
+            indexedMetrics = metrics.values().toArray(new BarcodeMetric[metrics.size()]);
+        }
+
+        for (int i = 0; i < NUM_READS; ++i) {
+            if (data.nextInt(10) == 0) {
+                reads[i] = new byte[][]{data.bases(BARCODE_LENGTH, 20), data.bases(BARCODE_LENGTH, 20)};
+            } else {
+                final byte[][] barcode = barcodes[data.nextInt(numBarcodes)];
+                reads[i] = new byte[][]{data.mutate(barcode[0], data.nextInt(2)), data.mutate(barcode[1], data.nextInt(2))};
+            }
+            qualities[i] = new byte[][]{data.qualities(BARCODE_LENGTH), data.qualities(BARCODE_LENGTH)};
+        }
+    }
+
+    @Benchmark
+    public BarcodeMatch findBestBarcodeAndUpdateMetrics() {
+        final BarcodeMatch match = PerTileBarcodeExtractor.findBestBarcodeAndUpdateMetrics(reads[next],
+                useQualities ? qualities[next] : null, true, metrics, noMatchMetric, 2, MAX_MISMATCHES, 1,
+                useQualities ? 10 : 0, barcodeSearch, indexedMetrics);
+        next = (next + 1) % NUM_READS;
+        return match;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.sam.markduplicates.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import picard.benchmark.SyntheticData;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures finding the optical duplicates in duplicate sets of several sizes, with and without the spatial index.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OpticalDuplicateFinderBenchmark {
+    @Param({"10", "1000", "20000"})
+    public int setSize;
+
+    @Param({"true", "false"})
+    public boolean useSpatialIndex;
+
+    private OpticalDuplicateFinder finder;
+    private List<ReadEndsForMarkDuplicates> duplicateSet;
+
+    @Setup
+    public void setup() {
+        finder = new OpticalDuplicateFinder();
+        finder.setBigDuplicateSetSize(Integer.MAX_VALUE); // no progress logging
+        finder.setSpatialIndexSetSize(useSpatialIndex ? 0 : Integer.MAX_VALUE);
+        duplicateSet = new SyntheticData(42).duplicateSet(setSize, 32, 0.1, OpticalDuplicateFinder.DEFAULT_OPTICAL_DUPLICATE_DISTANCE);
+    }
+
+    @Benchmark
+    public boolean[] findOpticalDuplicates() {
+        return finder.findOpticalDuplicates(duplicateSet, duplicateSet.get(0));
+    }
+}
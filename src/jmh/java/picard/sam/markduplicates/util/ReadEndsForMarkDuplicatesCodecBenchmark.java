@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.sam.markduplicates.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import picard.benchmark.SyntheticData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding batches of read ends, as the sorting collections of MarkDuplicates do when spilling
+ * to and merging from disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadEndsForMarkDuplicatesCodecBenchmark {
+    private static final int NUM_READ_ENDS = 10000;
+
+    private final ReadEndsForMarkDuplicatesCodec codec = new ReadEndsForMarkDuplicatesCodec();
+    private final List<ReadEndsForMarkDuplicates> readEnds = new ArrayList<>(NUM_READ_ENDS);
+    private ByteArrayOutputStream encodeBuffer;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() {
+        final SyntheticData data = new SyntheticData(42);
+        for (int i = 0; i < NUM_READ_ENDS; ++i) {
+            readEnds.add(data.readEnds(2L * i));
+        }
+
+        encodeBuffer = new ByteArrayOutputStream(NUM_READ_ENDS * 64);
+        codec.setOutputStream(encodeBuffer);
+        readEnds.forEach(codec::encode);
+        encoded = encodeBuffer.toByteArray();
+    }
+
+    @Benchmark
+    public int encode() {
+        encodeBuffer.reset();
+        codec.setOutputStream(encodeBuffer);
+        for (final ReadEndsForMarkDuplicates end : readEnds) {
+            codec.encode(end);
+        }
+        return encodeBuffer.size();
+    }
+
+    @Benchmark
+    public long decode() {
+        codec.setInputStream(new ByteArrayInputStream(encoded));
+        long sum = 0;
+        for (int i = 0; i < NUM_READ_ENDS; ++i) {
+            sum += codec.decode().read1Coordinate;
+        }
+        return sum;
+    }
+}
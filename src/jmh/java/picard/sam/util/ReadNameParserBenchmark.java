@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.sam.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import picard.benchmark.SyntheticData;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing the location out of read names, with the default regex, with a regex recognized as the last three
+ * fields, and with a regex that must be run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ReadNameParserBenchmark {
+    private static final int NUM_NAMES = 4096;
+
+    @Param({"default", "lastThreeFields", "regex"})
+    public String parser;
+
+    private ReadNameParser readNameParser;
+    private List<String> readNames;
+    private final PhysicalLocation loc = new PhysicalLocationInt();
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        final SyntheticData data = new SyntheticData(42);
+        switch (parser) {
+            case "default":
+                readNameParser = new ReadNameParser();
+                readNames = data.illuminaReadNames(NUM_NAMES);
+                break;
+            case "lastThreeFields":
+                readNameParser = new ReadNameParser("(?:.*_)?([0-9]+)[^_]*_([0-9]+)[^_]*_([0-9]+)[^_]*$");
+                readNames = data.underscoreDelimitedReadNames(NUM_NAMES);
+                break;
+            default:
+                readNameParser = new ReadNameParser("[^_]*_([0-9]+)_([0-9]+)_([0-9]+)");
+                readNames = data.underscoreDelimitedReadNames(NUM_NAMES);
+                break;
+        }
+    }
+
+    @Benchmark
+    public PhysicalLocation addLocationInformation() {
+        readNameParser.addLocationInformation(readNames.get(next), loc);
+        next = (next + 1) % NUM_NAMES;
+        return loc;
+    }
+}
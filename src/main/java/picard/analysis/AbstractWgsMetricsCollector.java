@@ -116,6 +116,28 @@ public abstract class AbstractWgsMetricsCollector<T extends AbstractRecordAndOff
      */
     public abstract void addInfo(final AbstractLocusInfo<T> info, final ReferenceSequence ref, boolean referenceBaseN);
 
+    /**
+     * Adds the data accumulated by another collector with the same coverage cap to this one, e.g. one that processed a
+     * disjoint set of reference sequences on another thread.
+     * @param other collector whose data is added to this one
+     */
+    public void merge(final AbstractWgsMetricsCollector<?> other) {
+        if (other.coverageCap != coverageCap) {
+            throw new IllegalArgumentException("Cannot merge collectors with different coverage caps.");
+        }
+        for (int i = 0; i < highQualityDepthHistogramArray.length; ++i) {
+            highQualityDepthHistogramArray[i] += other.highQualityDepthHistogramArray[i];
+            unfilteredDepthHistogramArray[i] += other.unfilteredDepthHistogramArray[i];
+        }
+        for (int i = 0; i < unfilteredBaseQHistogramArray.length; ++i) {
+            unfilteredBaseQHistogramArray[i] += other.unfilteredBaseQHistogramArray[i];
+        }
+        basesExcludedByBaseq += other.basesExcludedByBaseq;
+        basesExcludedByOverlap += other.basesExcludedByOverlap;
+        basesExcludedByCapping += other.basesExcludedByCapping;
+        counter += other.counter;
+    }
+
     /**
      * Adds collected metrics and depth histogram to file
      * @param file MetricsFile for result of collector's work
@@ -32,10 +32,12 @@ import htsjdk.samtools.util.Histogram;
 import htsjdk.samtools.util.SequenceUtil;
 import htsjdk.samtools.util.StringUtil;
 import htsjdk.samtools.SamPairUtil.PairOrientation;
+import picard.metrics.MergeablePerUnitMetricCollector;
 import picard.metrics.PerUnitMetricCollector;
 import picard.metrics.SAMRecordAndReference;
 import picard.metrics.SAMRecordAndReferenceMultiLevelCollector;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -84,7 +86,7 @@ public class AlignmentSummaryMetricsCollector extends SAMRecordAndReferenceMulti
         }
     }
 
-    private class GroupAlignmentSummaryMetricsPerUnitMetricCollector implements PerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference> {
+    private class GroupAlignmentSummaryMetricsPerUnitMetricCollector implements MergeablePerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference> {
         final IndividualAlignmentSummaryMetricsCollector unpairedCollector;
         final IndividualAlignmentSummaryMetricsCollector firstOfPairCollector;
         final IndividualAlignmentSummaryMetricsCollector secondOfPairCollector;
@@ -120,6 +122,15 @@ public class AlignmentSummaryMetricsCollector extends SAMRecordAndReferenceMulti
             }
         }
 
+        @Override
+        public void merge(final MergeablePerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference> other) {
+            final GroupAlignmentSummaryMetricsPerUnitMetricCollector that = (GroupAlignmentSummaryMetricsPerUnitMetricCollector) other;
+            unpairedCollector.merge(that.unpairedCollector);
+            firstOfPairCollector.merge(that.firstOfPairCollector);
+            secondOfPairCollector.merge(that.secondOfPairCollector);
+            pairCollector.merge(that.pairCollector);
+        }
+
         @Override
         public void finish() {
             // Let the collectors do any summary computations etc.
@@ -187,6 +198,33 @@ public class AlignmentSummaryMetricsCollector extends SAMRecordAndReferenceMulti
                 collectQualityData(record, ref);
             }
 
+            /** Adds the counts of another collector of the same category, before onComplete() is called on either */
+            public void merge(final IndividualAlignmentSummaryMetricsCollector other) {
+                metrics.TOTAL_READS             += other.metrics.TOTAL_READS;
+                metrics.PF_READS                += other.metrics.PF_READS;
+                metrics.PF_NOISE_READS          += other.metrics.PF_NOISE_READS;
+                metrics.PF_READS_ALIGNED        += other.metrics.PF_READS_ALIGNED;
+                metrics.PF_READS_IMPROPER_PAIRS += other.metrics.PF_READS_IMPROPER_PAIRS;
+                metrics.READS_ALIGNED_IN_PAIRS  += other.metrics.READS_ALIGNED_IN_PAIRS;
+                metrics.PF_HQ_ALIGNED_READS     += other.metrics.PF_HQ_ALIGNED_READS;
+                metrics.PF_ALIGNED_BASES        += other.metrics.PF_ALIGNED_BASES;
+                metrics.PF_HQ_ALIGNED_BASES     += other.metrics.PF_HQ_ALIGNED_BASES;
+                metrics.PF_HQ_ALIGNED_Q20_BASES += other.metrics.PF_HQ_ALIGNED_Q20_BASES;
+
+                numPositiveStrand          += other.numPositiveStrand;
+                chimeras                   += other.chimeras;
+                chimerasDenominator        += other.chimerasDenominator;
+                adapterReads               += other.adapterReads;
+                indels                     += other.indels;
+                nonBisulfiteAlignedBases   += other.nonBisulfiteAlignedBases;
+                hqNonBisulfiteAlignedBases += other.hqNonBisulfiteAlignedBases;
+
+                readLengthHistogram.addHistogram(other.readLengthHistogram);
+                mismatchHistogram.addHistogram(other.mismatchHistogram);
+                hqMismatchHistogram.addHistogram(other.hqMismatchHistogram);
+                badCycleHistogram.addHistogram(other.badCycleHistogram);
+            }
+
             public void onComplete() {
                 //summarize read data
                 if (metrics.TOTAL_READS > 0)
@@ -232,8 +270,14 @@ public class AlignmentSummaryMetricsCollector extends SAMRecordAndReferenceMulti
 
                     if (record.getReadUnmappedFlag()) {
                         // If the read is unmapped see if it's adapter sequence
-                        final byte[] readBases = record.getReadBases();
-                        if (!(record instanceof BAMRecord)) StringUtil.toUpperCase(readBases);
+                        // Upper-case a copy, as the record may be shared with the threads of other programs or levels
+                        final byte[] readBases;
+                        if (record instanceof BAMRecord) {
+                            readBases = record.getReadBases();
+                        } else {
+                            readBases = Arrays.copyOf(record.getReadBases(), record.getReadLength());
+                            StringUtil.toUpperCase(readBases);
+                        }
 
                         if (adapterUtility.isAdapterSequence(readBases)) {
                             this.adapterReads++;
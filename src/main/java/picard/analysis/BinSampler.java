@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.analysis;
+
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.BAMIndexMetaData;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.Log;
+import picard.PicardException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Reads a uniform random sample of an indexed, coordinate sorted SAM/BAM/CRAM.  The reference sequences are split into
+ * bins of a fixed size, a random subset of the bins is chosen without replacement, and only the records that start in
+ * the chosen bins are read, using the index to skip the rest of the input.  Unplaced unmapped records, which have no
+ * bin, are sampled individually with the same probability.  Because whole bins are sampled, the records of a bin are
+ * read together, so pairs and duplicates that are close to each other tend to be sampled together.
+ *
+ * The number of records in each sampled bin is counted, so that {@link #getMetrics()} can estimate the total number
+ * of records and the error of the estimate, as for any simple random sample of clusters.
+ */
+public class BinSampler {
+    private static final Log log = Log.getInstance(BinSampler.class);
+
+    /** The z-score of a two-sided 95% confidence interval. */
+    private static final double Z_95 = 1.959964;
+
+    private final int binSize;
+    private final Double fraction;
+    private final Long recordBudget;
+    private final Random random;
+
+    private SamplingMetrics metrics;
+    private long[] sampledBins;
+    private long[] recordsPerBin;
+    private long[] firstBinOfSequence;
+
+    /**
+     * @param binSize      the size of the bins of the reference, in bases
+     * @param fraction     the fraction of the bins to sample, in (0, 1], or null if recordBudget is given
+     * @param recordBudget the approximate number of placed records to sample, or null if fraction is given
+     * @param seed         the seed of the random choice of bins, or null for a different sample on each run
+     */
+    public BinSampler(final int binSize, final Double fraction, final Long recordBudget, final Integer seed) {
+        if (binSize < 1) throw new IllegalArgumentException("binSize must be positive: " + binSize);
+        if ((fraction == null) == (recordBudget == null)) {
+            throw new IllegalArgumentException("Exactly one of fraction and recordBudget must be given");
+        }
+        if (fraction != null && (fraction <= 0 || fraction > 1)) {
+            throw new IllegalArgumentException("fraction must be in (0, 1]: " + fraction);
+        }
+        if (recordBudget != null && recordBudget < 1) {
+            throw new IllegalArgumentException("recordBudget must be positive: " + recordBudget);
+        }
+        this.binSize = binSize;
+        this.fraction = fraction;
+        this.recordBudget = recordBudget;
+        this.random = seed == null ? new Random() : new Random(seed);
+    }
+
+    /**
+     * Chooses the bins to sample and returns an iterator over the records that start in them, followed, if
+     * includeUnplaced is true, by a sample of the unplaced unmapped records.  May only be called once.
+     */
+    public CloseableIterator<SAMRecord> iterator(final SamReader in, final boolean includeUnplaced) {
+        if (metrics != null) throw new IllegalStateException("iterator() may only be called once");
+        if (!in.hasIndex()) {
+            throw new PicardException("Sampling requires an indexed input: " + in.getResourceDescription());
+        }
+
+        final SAMSequenceDictionary dictionary = in.getFileHeader().getSequenceDictionary();
+        firstBinOfSequence = new long[dictionary.size() + 1];
+        for (int i = 0; i < dictionary.size(); i++) {
+            final long bins = (dictionary.getSequence(i).getSequenceLength() + binSize - 1L) / binSize;
+            firstBinOfSequence[i + 1] = firstBinOfSequence[i] + bins;
+        }
+        final long totalBins = firstBinOfSequence[dictionary.size()];
+        if (totalBins > Integer.MAX_VALUE) {
+            throw new PicardException("Too many bins of size " + binSize + " in the reference, please increase the bin size");
+        }
+        final long recordsInIndex = countPlacedRecords(in);
+
+        final double requestedFraction = fraction != null ? fraction :
+                recordsInIndex == 0 ? 1 : Math.min(1, recordBudget / (double) recordsInIndex);
+        final int binsToSample = (int) Math.min(totalBins, Math.max(1, Math.round(requestedFraction * totalBins)));
+        sampledBins = chooseBins((int) totalBins, binsToSample);
+        recordsPerBin = new long[sampledBins.length];
+
+        metrics = new SamplingMetrics();
+        metrics.BIN_SIZE = binSize;
+        metrics.TOTAL_BINS = totalBins;
+        metrics.SAMPLED_BINS = sampledBins.length;
+        metrics.SAMPLED_FRACTION = totalBins == 0 ? 1 : sampledBins.length / (double) totalBins;
+        metrics.RECORDS_IN_INDEX = recordsInIndex;
+        log.info("Sampling " + metrics.SAMPLED_BINS + " of " + metrics.TOTAL_BINS + " bins of " + binSize + " bases.");
+
+        return new SampleIterator(in, includeUnplaced);
+    }
+
+    /**
+     * Returns the metrics of the sample, including the estimated number of placed records and its confidence
+     * interval.  Only complete once the iterator has been exhausted.
+     */
+    public SamplingMetrics getMetrics() {
+        if (metrics == null) throw new IllegalStateException("iterator() has not been called");
+
+        final int n = recordsPerBin.length;
+        final long totalBins = metrics.TOTAL_BINS;
+        long sampled = 0;
+        for (final long count : recordsPerBin) sampled += count;
+        metrics.RECORDS_SAMPLED = sampled;
+
+        if (n == 0) return metrics;
+        final double mean = sampled / (double) n;
+        double sumOfSquares = 0;
+        for (final long count : recordsPerBin) sumOfSquares += (count - mean) * (count - mean);
+        final double variance = n > 1 ? sumOfSquares / (n - 1) : 0;
+
+        // The total over all bins is estimated from the mean of the sampled bins, with the finite population correction
+        // since the bins are sampled without replacement.
+        final double estimate = totalBins * mean;
+        final double standardError = totalBins * Math.sqrt((1 - n / (double) totalBins) * variance / n);
+        metrics.ESTIMATED_RECORDS = estimate;
+        metrics.ESTIMATED_RECORDS_LOWER_CI = Math.max(sampled, estimate - Z_95 * standardError);
+        metrics.ESTIMATED_RECORDS_UPPER_CI = estimate + Z_95 * standardError;
+        metrics.RELATIVE_STANDARD_ERROR = estimate > 0 ? standardError / estimate : 0;
+        return metrics;
+    }
+
+    /** Chooses count distinct bins out of totalBins at random, returning them in increasing order. */
+    private long[] chooseBins(final int totalBins, final int count) {
+        final int[] bins = new int[totalBins];
+        for (int i = 0; i < totalBins; i++) bins[i] = i;
+        // A partial Fisher-Yates shuffle leaves a uniform random sample in the first count elements.
+        for (int i = 0; i < count; i++) {
+            final int j = i + random.nextInt(totalBins - i);
+            final int tmp = bins[i];
+            bins[i] = bins[j];
+            bins[j] = tmp;
+        }
+        final long[] chosen = new long[count];
+        for (int i = 0; i < count; i++) chosen[i] = bins[i];
+        Arrays.sort(chosen);
+        return chosen;
+    }
+
+    /** Counts the records with a position, aligned or not, from the meta data in the index. */
+    private static long countPlacedRecords(final SamReader in) {
+        final BAMIndex index = in.indexing().getIndex();
+        long count = 0;
+        for (int i = 0; i < in.getFileHeader().getSequenceDictionary().size(); i++) {
+            final BAMIndexMetaData metaData = index.getMetaData(i);
+            if (metaData != null) count += metaData.getAlignedRecordCount() + metaData.getUnalignedRecordCount();
+        }
+        return count;
+    }
+
+    /** Returns the queries covering the sampled bins, merging those of adjacent bins. */
+    private QueryInterval[] makeQueries(final SAMSequenceDictionary dictionary) {
+        final List<QueryInterval> queries = new ArrayList<>(sampledBins.length);
+        int sequence = 0;
+        for (final long bin : sampledBins) {
+            while (bin >= firstBinOfSequence[sequence + 1]) sequence++;
+            final long start = (bin - firstBinOfSequence[sequence]) * binSize + 1;
+            final long end = Math.min(start + binSize - 1, dictionary.getSequence(sequence).getSequenceLength());
+            queries.add(new QueryInterval(sequence, (int) start, (int) end));
+        }
+        return QueryInterval.optimizeIntervals(queries.toArray(new QueryInterval[queries.size()]));
+    }
+
+    /**
+     * Iterates over the records starting in the sampled bins, counting them per bin, and then over the sampled unplaced
+     * records.  Records that overlap a sampled bin but start in another bin are skipped so that each record has the
+     * same chance of being sampled.
+     */
+    private final class SampleIterator implements CloseableIterator<SAMRecord> {
+        private final SamReader in;
+        private final boolean includeUnplaced;
+        private SAMRecordIterator iterator;
+        private boolean readingUnplaced = false;
+        private SAMRecord next;
+
+        SampleIterator(final SamReader in, final boolean includeUnplaced) {
+            this.in = in;
+            this.includeUnplaced = includeUnplaced;
+            this.iterator = in.query(makeQueries(in.getFileHeader().getSequenceDictionary()), false);
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null) {
+                if (!iterator.hasNext()) {
+                    if (readingUnplaced || !includeUnplaced) return;
+                    iterator.close();
+                    iterator = in.queryUnmapped();
+                    readingUnplaced = true;
+                    continue;
+                }
+
+                final SAMRecord rec = iterator.next();
+                if (readingUnplaced) {
+                    if (random.nextDouble() < metrics.SAMPLED_FRACTION) {
+                        metrics.UNPLACED_RECORDS_SAMPLED++;
+                        next = rec;
+                    }
+                } else {
+                    final long bin = firstBinOfSequence[rec.getReferenceIndex()] + (rec.getAlignmentStart() - 1) / binSize;
+                    final int i = Arrays.binarySearch(sampledBins, bin);
+                    if (i >= 0) {
+                        recordsPerBin[i]++;
+                        next = rec;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public SAMRecord next() {
+            if (next == null) throw new NoSuchElementException();
+            final SAMRecord rec = next;
+            advance();
+            return rec;
+        }
+
+        @Override
+        public void close() {
+            iterator.close();
+        }
+    }
+}
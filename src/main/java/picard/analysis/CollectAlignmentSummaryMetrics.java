@@ -119,6 +119,10 @@ public class CollectAlignmentSummaryMetrics extends SinglePassSamProgram {
     @Argument(shortName="BS", doc="Whether the SAM or BAM file consists of bisulfite sequenced reads.")
     public boolean IS_BISULFITE_SEQUENCED = false;
 
+    @Argument(doc="If true, and more than one METRIC_ACCUMULATION_LEVEL is given, update each level on its own thread. " +
+            "The output is the same as when the levels are updated one after the other.")
+    public boolean PARALLEL_ACCUMULATION_LEVELS = false;
+
     private AlignmentSummaryMetricsCollector collector;
 
     /** Required main method implementation. */
@@ -140,6 +144,7 @@ public class CollectAlignmentSummaryMetrics extends SinglePassSamProgram {
         final boolean doRefMetrics = REFERENCE_SEQUENCE != null;
         collector = new AlignmentSummaryMetricsCollector(METRIC_ACCUMULATION_LEVEL, header.getReadGroups(), doRefMetrics,
                 ADAPTER_SEQUENCE, MAX_INSERT_SIZE, EXPECTED_PAIR_ORIENTATIONS, IS_BISULFITE_SEQUENCED);
+        collector.setParallelAccumulationLevels(PARALLEL_ACCUMULATION_LEVELS);
     }
 
     @Override protected void acceptRead(final SAMRecord rec, final ReferenceSequence ref) {
@@ -139,6 +139,12 @@ public class CollectGcBiasMetrics extends SinglePassSamProgram {
             "allows to gain two plots per level at the same time: one is the usual one and the other excludes duplicates.")
     public boolean ALSO_IGNORE_DUPLICATES = false;
 
+    @Argument(doc = "A directory in which to save the number of reference windows at each GC, for each reference and " +
+            "SCAN_WINDOW_SIZE, so that later runs against the same reference do not need to scan the whole reference " +
+            "for it.  The reference is identified by the MD5s in its sequence dictionary, if it has them for every " +
+            "sequence, and otherwise also by the path, size and modification time of REFERENCE_SEQUENCE.", optional = true)
+    public File REFERENCE_GC_CACHE_DIRECTORY;
+
     // Calculates GcBiasMetrics for all METRIC_ACCUMULATION_LEVELs provided
     private GcBiasMetricsCollector multiCollector;
 
@@ -163,9 +169,10 @@ public class CollectGcBiasMetrics extends SinglePassSamProgram {
         IOUtil.assertFileIsWritable(CHART_OUTPUT);
         IOUtil.assertFileIsWritable(SUMMARY_OUTPUT);
         IOUtil.assertFileIsReadable(REFERENCE_SEQUENCE);
+        if (REFERENCE_GC_CACHE_DIRECTORY != null) IOUtil.assertDirectoryIsWritable(REFERENCE_GC_CACHE_DIRECTORY);
 
-        //Calculate windowsByGc for the reference sequence
-        final int[] windowsByGc = GcBiasUtils.calculateRefWindowsByGc(BINS, REFERENCE_SEQUENCE, SCAN_WINDOW_SIZE);
+        //Calculate windowsByGc for the reference sequence, or reuse those of an earlier run
+        final int[] windowsByGc = GcBiasUtils.calculateRefWindowsByGc(BINS, REFERENCE_SEQUENCE, SCAN_WINDOW_SIZE, REFERENCE_GC_CACHE_DIRECTORY);
 
         //Delegate actual collection to GcBiasMetricCollector
         multiCollector = new GcBiasMetricsCollector(METRIC_ACCUMULATION_LEVEL, windowsByGc, header.getReadGroups(), SCAN_WINDOW_SIZE, IS_BISULFITE_SEQUENCED, ALSO_IGNORE_DUPLICATES);
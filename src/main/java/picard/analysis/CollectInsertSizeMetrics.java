@@ -107,6 +107,10 @@ public class CollectInsertSizeMetrics extends SinglePassSamProgram {
     @Argument(doc="If true, also include reads marked as duplicates in the insert size histogram.")
     public boolean INCLUDE_DUPLICATES = false;
 
+    @Argument(doc="If true, and more than one METRIC_ACCUMULATION_LEVEL is given, update each level on its own thread. " +
+            "The output is the same as when the levels are updated one after the other.")
+    public boolean PARALLEL_ACCUMULATION_LEVELS = false;
+
     // Calculates InsertSizeMetrics for all METRIC_ACCUMULATION_LEVELs provided
     private InsertSizeMetricsCollector multiCollector;
 
@@ -141,6 +145,7 @@ public class CollectInsertSizeMetrics extends SinglePassSamProgram {
         //Delegate actual collection to InsertSizeMetricCollector
         multiCollector = new InsertSizeMetricsCollector(METRIC_ACCUMULATION_LEVEL, header.getReadGroups(),
                                                         MINIMUM_PCT, HISTOGRAM_WIDTH, DEVIATIONS, INCLUDE_DUPLICATES);
+        multiCollector.setParallelAccumulationLevels(PARALLEL_ACCUMULATION_LEVELS);
     }
 
     @Override protected void acceptRead(final SAMRecord record, final ReferenceSequence ref) {
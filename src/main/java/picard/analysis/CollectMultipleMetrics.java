@@ -24,6 +24,7 @@
 
 package picard.analysis;
 
+import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.util.CollectionUtil;
 import htsjdk.samtools.util.Log;
 import org.broadinstitute.barclay.argparser.Argument;
@@ -362,6 +363,31 @@ public class CollectMultipleMetrics extends CommandLineProgram {
     @Argument(shortName = "UNPAIRED", doc = "Include unpaired reads in CollectSequencingArtifactMetrics. If set to true then all paired reads will be included as well - " +
             "MINIMUM_INSERT_SIZE and MAXIMUM_INSERT_SIZE will be ignored in CollectSequencingArtifactMetrics.")
     public boolean INCLUDE_UNPAIRED = false;
+
+    @Argument(doc = "The number of threads on which to run the PROGRAMs.  If greater than 1, the input is read and decoded " +
+            "once and handed to the programs in batches, with each thread running a subset of the programs.  The output " +
+            "is the same as that of a single-threaded run.")
+    public int THREADS = 1;
+
+    @Argument(doc = "If given, read only a random sample of about this fraction of the input, in (0, 1].  The reference is " +
+            "split into bins of SAMPLING_BIN_SIZE bases and records are read only from a random subset of the bins, using " +
+            "the index.  The metrics describe the sample, which is itself described in OUTPUT.sampling_metrics, with a " +
+            "confidence interval for the number of records only: no error is estimated for the other metrics.  " +
+            "Requires an indexed INPUT.", optional = true, mutex = {"SAMPLING_RECORDS"})
+    public Double SAMPLING_FRACTION;
+
+    @Argument(doc = "As SAMPLING_FRACTION, but sample about this number of placed records, with the fraction taken from the " +
+            "record counts in the index.", optional = true, mutex = {"SAMPLING_FRACTION"})
+    public Long SAMPLING_RECORDS;
+
+    @Argument(doc = "The size of the bins of the reference sampled when SAMPLING_FRACTION or SAMPLING_RECORDS is given.  " +
+            "Smaller bins give a more even sample at the cost of more seeks in the input.")
+    public int SAMPLING_BIN_SIZE = 100000;
+
+    @Argument(doc = "Random seed for the choice of bins when sampling.  Setting to null will cause multiple invocations " +
+            "to sample different bins.", optional = true)
+    public Integer SAMPLING_SEED = 1;
+
     /**
      * Contents of PROGRAM set is transferred to this set during command-line validation, so that an outside
      * developer can invoke this class programmatically and provide alternative Programs to run by calling
@@ -383,6 +409,20 @@ public class CollectMultipleMetrics extends CommandLineProgram {
         }
         programsToRun = new LinkedHashSet<>(PROGRAM);
 
+        final List<String> errors = new ArrayList<>();
+        if (SAMPLING_FRACTION != null && (SAMPLING_FRACTION <= 0 || SAMPLING_FRACTION > 1)) {
+            errors.add("SAMPLING_FRACTION must be greater than 0 and at most 1: " + SAMPLING_FRACTION);
+        }
+        if (SAMPLING_RECORDS != null && SAMPLING_RECORDS < 1) {
+            errors.add("SAMPLING_RECORDS must be positive: " + SAMPLING_RECORDS);
+        }
+        if (SAMPLING_BIN_SIZE < 1) {
+            errors.add("SAMPLING_BIN_SIZE must be positive: " + SAMPLING_BIN_SIZE);
+        }
+        if (!errors.isEmpty()) {
+            return errors.toArray(new String[errors.size()]);
+        }
+
         return super.customCommandLineValidation();
     }
 
@@ -401,6 +441,7 @@ public class CollectMultipleMetrics extends CommandLineProgram {
             OUTPUT = OUTPUT.substring(0, OUTPUT.length() - 1);
         }
 
+        final String outext = (null != FILE_EXTENSION) ? FILE_EXTENSION : ""; // Add a file extension if desired
         final List<SinglePassSamProgram> programs = new ArrayList<>();
         for (final ProgramInterface program : programsToRun) {
             if (program.needsReferenceSequence() && REFERENCE_SEQUENCE == null) {
@@ -411,7 +452,6 @@ public class CollectMultipleMetrics extends CommandLineProgram {
                         " was overridden in the command line. " + program.toString() + " will be run against the entire input.");
             }
 
-            final String outext = (null != FILE_EXTENSION) ? FILE_EXTENSION : ""; // Add a file extension if desired
             final SinglePassSamProgram instance = program.makeInstance(OUTPUT, outext, INPUT, REFERENCE_SEQUENCE, METRIC_ACCUMULATION_LEVEL, DB_SNP, INTERVALS, INCLUDE_UNPAIRED);
 
             // Generally programs should not be accessing these directly but it might make things smoother
@@ -423,7 +463,16 @@ public class CollectMultipleMetrics extends CommandLineProgram {
 
             programs.add(instance);
         }
-        SinglePassSamProgram.makeItSo(INPUT, REFERENCE_SEQUENCE, ASSUME_SORTED, STOP_AFTER, programs);
+
+        final BinSampler sampler = (SAMPLING_FRACTION == null && SAMPLING_RECORDS == null) ? null :
+                new BinSampler(SAMPLING_BIN_SIZE, SAMPLING_FRACTION, SAMPLING_RECORDS, SAMPLING_SEED);
+        SinglePassSamProgram.makeItSo(INPUT, REFERENCE_SEQUENCE, ASSUME_SORTED, STOP_AFTER, programs, THREADS, sampler);
+
+        if (sampler != null) {
+            final MetricsFile<SamplingMetrics, Integer> file = getMetricsFile();
+            file.addMetric(sampler.getMetrics());
+            file.write(new File(OUTPUT + ".sampling_metrics" + outext));
+        }
 
         return 0;
     }
@@ -50,8 +50,15 @@ import picard.util.MathUtil;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static picard.cmdline.StandardOptionDefinitions.MINIMUM_MAPPING_QUALITY_SHORT_NAME;
 
@@ -128,6 +135,12 @@ static final String USAGE_DETAILS = "<p>This tool collects metrics about the fra
     @Argument(doc = "Average read length in the file. Default is 150.", optional = true)
     public int READ_LENGTH = 150;
 
+    @Argument(doc = "The number of threads to use.  If greater than 1 and the input is indexed, the reference sequences " +
+            "covered by the intervals are split into up to this many shards of whole sequences, each of which is read and " +
+            "processed independently, and the results are merged.  The output is identical to that of a single-threaded " +
+            "run.  Ignored if STOP_AFTER is set.")
+    public int THREADS = 1;
+
     protected File INTERVALS = null;
 
     private SAMFileHeader header = null;
@@ -463,15 +476,44 @@ static final String USAGE_DETAILS = "<p>This tool collects metrics about the fra
         }
 
         // Setup all the inputs
-        final ProgressLogger progress = new ProgressLogger(log, 10000000, "Processed", "loci");
-        final ReferenceSequenceFileWalker refWalker = new ReferenceSequenceFileWalker(REFERENCE_SEQUENCE);
         final SamReader in = getSamReader();
-        final AbstractLocusIterator iterator = getLocusIterator(in);
-
-        final List<SamRecordFilter> filters = new ArrayList<>();
         final CountingFilter mapqFilter = new CountingMapQFilter(MINIMUM_MAPPING_QUALITY);
         final CountingFilter dupeFilter = new CountingDuplicateFilter();
         final CountingPairedFilter pairFilter = new CountingPairedFilter();
+        final MetricsFile<WgsMetrics, Integer> out = getMetricsFile();
+
+        if (THREADS > 1 && STOP_AFTER <= 0 && in.hasIndex()) {
+            final IntervalList intervals = getIntervalsToExamine();
+            final AbstractWgsMetricsCollector<?> collector = getCollector(COVERAGE_CAP, intervals);
+            processShards(intervals, collector, mapqFilter, dupeFilter, pairFilter);
+            collector.addToMetricsFile(out, INCLUDE_BQ_HISTOGRAM, dupeFilter, mapqFilter, pairFilter);
+            out.write(OUTPUT);
+            return 0;
+        }
+        if (THREADS > 1) {
+            log.warn("Processing on a single thread because " + (STOP_AFTER > 0 ? "STOP_AFTER is set." : "the input is not indexed."));
+        }
+
+        final ProgressLogger progress = new ProgressLogger(log, 10000000, "Processed", "loci");
+        final ReferenceSequenceFileWalker refWalker = new ReferenceSequenceFileWalker(REFERENCE_SEQUENCE);
+        final AbstractLocusIterator<?, ?> iterator = getLocusIterator(in);
+        setupLocusIterator(iterator, mapqFilter, dupeFilter, pairFilter);
+
+        final AbstractWgsMetricsCollector<?> collector = getCollector(COVERAGE_CAP, getIntervalsToExamine());
+        final WgsMetricsProcessor processor = getWgsMetricsProcessor(progress, refWalker, iterator, collector);
+        processor.processFile();
+
+        processor.addToMetricsFile(out, INCLUDE_BQ_HISTOGRAM, dupeFilter, mapqFilter, pairFilter);
+        out.write(OUTPUT);
+
+        return 0;
+    }
+
+    private void setupLocusIterator(final AbstractLocusIterator<?, ?> iterator,
+                                    final CountingFilter mapqFilter,
+                                    final CountingFilter dupeFilter,
+                                    final CountingPairedFilter pairFilter) {
+        final List<SamRecordFilter> filters = new ArrayList<>();
         // The order in which filters are added matters!
         filters.add(new SecondaryAlignmentFilter()); // Not a counting filter because we never want to count reads twice
         filters.add(mapqFilter);
@@ -482,22 +524,112 @@ static final String USAGE_DETAILS = "<p>This tool collects metrics about the fra
         iterator.setSamFilters(filters);
         iterator.setMappingQualityScoreCutoff(0); // Handled separately because we want to count bases
         iterator.setIncludeNonPfReads(false);
+    }
 
-        final AbstractWgsMetricsCollector collector = getCollector(COVERAGE_CAP, getIntervalsToExamine());
-        final WgsMetricsProcessor processor = getWgsMetricsProcessor(progress, refWalker, iterator, collector);
-        processor.processFile();
+    /**
+     * Splits the intervals into shards of whole reference sequences, processes each shard with its own reader, locus
+     * iterator, filters and collector on a pool of THREADS threads, and merges the results into the given collector and
+     * filters.  Since no read spans two reference sequences, every read is seen by exactly one shard.
+     */
+    private void processShards(final IntervalList intervals,
+                               final AbstractWgsMetricsCollector<?> collector,
+                               final CountingFilter mapqFilter,
+                               final CountingFilter dupeFilter,
+                               final CountingPairedFilter pairFilter) {
+        final List<IntervalList> shards = splitBySequence(intervals, THREADS);
+        log.info("Processing " + shards.size() + " shards on " + THREADS + " threads.");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(THREADS, Math.max(1, shards.size())));
+        try {
+            final List<Future<ShardResult>> results = new ArrayList<>(shards.size());
+            for (final IntervalList shard : shards) {
+                results.add(executor.submit(() -> processShard(shard, intervals)));
+            }
+            for (final Future<ShardResult> future : results) {
+                final ShardResult result = future.get();
+                collector.merge(result.collector);
+                mapqFilter.merge(result.mapqFilter);
+                dupeFilter.merge(result.dupeFilter);
+                pairFilter.merge(result.pairFilter);
+            }
+        } catch (final InterruptedException e) {
+            throw new PicardException("Interrupted waiting for shards to be processed.", e);
+        } catch (final ExecutionException e) {
+            throw new PicardException("Failed to process shard: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-        final MetricsFile<WgsMetrics, Integer> out = getMetricsFile();
-        processor.addToMetricsFile(out, INCLUDE_BQ_HISTOGRAM, dupeFilter, mapqFilter, pairFilter);
-        out.write(OUTPUT);
+    private ShardResult processShard(final IntervalList shard, final IntervalList intervals) {
+        final ShardResult result = new ShardResult();
+        result.mapqFilter = new CountingMapQFilter(MINIMUM_MAPPING_QUALITY);
+        result.dupeFilter = new CountingDuplicateFilter();
+        result.pairFilter = new CountingPairedFilter();
+        result.collector = getShardCollector(COVERAGE_CAP, intervals);
 
-        return 0;
+        final SamReader in = getShardSamReader();
+        final AbstractLocusIterator<?, ?> iterator = getLocusIterator(in, shard);
+        setupLocusIterator(iterator, result.mapqFilter, result.dupeFilter, result.pairFilter);
+        final ProgressLogger progress = new ProgressLogger(log, 10000000, "Processed", "loci");
+        getWgsMetricsProcessor(progress, new ReferenceSequenceFileWalker(REFERENCE_SEQUENCE), iterator, result.collector).processFile();
+        iterator.close();
+        CloserUtil.close(in);
+        return result;
     }
 
+    private static class ShardResult {
+        AbstractWgsMetricsCollector<?> collector;
+        CountingFilter mapqFilter;
+        CountingFilter dupeFilter;
+        CountingPairedFilter pairFilter;
+    }
+
+    /**
+     * Splits the intervals into at most maxShards lists, each holding all the intervals of some of the reference
+     * sequences, balancing the number of bases in each list.
+     */
+    static List<IntervalList> splitBySequence(final IntervalList intervals, final int maxShards) {
+        final Map<String, List<Interval>> intervalsBySequence = new LinkedHashMap<>();
+        for (final Interval interval : intervals.uniqued().getIntervals()) {
+            intervalsBySequence.computeIfAbsent(interval.getContig(), contig -> new ArrayList<>()).add(interval);
+        }
+        final List<List<Interval>> byDecreasingLength = new ArrayList<>(intervalsBySequence.values());
+        byDecreasingLength.sort(Comparator.comparingLong(CollectWgsMetrics::countBases).reversed());
+
+        final int numShards = Math.max(1, Math.min(maxShards, byDecreasingLength.size()));
+        final List<IntervalList> shards = new ArrayList<>(numShards);
+        final long[] shardLengths = new long[numShards];
+        for (int i = 0; i < numShards; ++i) {
+            shards.add(new IntervalList(intervals.getHeader()));
+        }
+        for (final List<Interval> sequenceIntervals : byDecreasingLength) {
+            int shortestShard = 0;
+            for (int i = 1; i < numShards; ++i) {
+                if (shardLengths[i] < shardLengths[shortestShard]) {
+                    shortestShard = i;
+                }
+            }
+            shards.get(shortestShard).addall(sequenceIntervals);
+            shardLengths[shortestShard] += countBases(sequenceIntervals);
+        }
+        return shards;
+    }
+
+    private static long countBases(final List<Interval> intervals) {
+        return intervals.stream().mapToLong(Interval::length).sum();
+    }
+
+    /**
+     * Makes the processor of an iterator and a collector that were both made according to {@link #USE_FAST_ALGORITHM},
+     * and so hold the same type of record and offset.
+     */
+    @SuppressWarnings("unchecked")
     private <T extends AbstractRecordAndOffset> WgsMetricsProcessorImpl<T> getWgsMetricsProcessor(
             ProgressLogger progress, ReferenceSequenceFileWalker refWalker,
-            AbstractLocusIterator<T, AbstractLocusInfo<T>> iterator, AbstractWgsMetricsCollector<T> collector) {
-        return new WgsMetricsProcessorImpl<>(iterator, refWalker, collector, progress);
+            AbstractLocusIterator<?, ?> iterator, AbstractWgsMetricsCollector<?> collector) {
+        return new WgsMetricsProcessorImpl<>((AbstractLocusIterator<T, AbstractLocusInfo<T>>) iterator, refWalker,
+                (AbstractWgsMetricsCollector<T>) collector, progress);
     }
 
     /** Gets the intervals over which we will calculate metrics. */
@@ -603,17 +735,24 @@ static final String USAGE_DETAILS = "<p>This tool collects metrics about the fra
     }
 
     /**
-     * Creates {@link htsjdk.samtools.util.AbstractLocusIterator} implementation according to {@link this#USE_FAST_ALGORITHM} value.
+     * Creates {@link htsjdk.samtools.util.AbstractLocusIterator} implementation according to {@link #USE_FAST_ALGORITHM} value.
      *
      * @param in inner {@link htsjdk.samtools.SamReader}
-     * @return if {@link this#USE_FAST_ALGORITHM} is enabled, returns {@link htsjdk.samtools.util.EdgeReadIterator} implementation,
+     * @return if {@link #USE_FAST_ALGORITHM} is enabled, returns {@link htsjdk.samtools.util.EdgeReadIterator} implementation,
      * otherwise default algorithm is used and {@link htsjdk.samtools.util.SamLocusIterator} is returned.
      */
-    protected AbstractLocusIterator getLocusIterator(final SamReader in) {
+    protected AbstractLocusIterator<?, ?> getLocusIterator(final SamReader in) {
+        return getLocusIterator(in, (INTERVALS != null) ? IntervalList.fromFile(INTERVALS) : null);
+    }
+
+    /**
+     * As {@link #getLocusIterator(SamReader)}, but iterates over the given intervals, or over the whole genome if they are null.
+     */
+    protected AbstractLocusIterator<?, ?> getLocusIterator(final SamReader in, final IntervalList intervals) {
         if (USE_FAST_ALGORITHM) {
-            return (INTERVALS != null) ? new EdgeReadIterator(in, IntervalList.fromFile(INTERVALS)) : new EdgeReadIterator(in);
+            return (intervals != null) ? new EdgeReadIterator(in, intervals) : new EdgeReadIterator(in);
         }
-        SamLocusIterator iterator = (INTERVALS != null) ? new SamLocusIterator(in, IntervalList.fromFile(INTERVALS)) : new SamLocusIterator(in);
+        SamLocusIterator iterator = (intervals != null) ? new SamLocusIterator(in, intervals) : new SamLocusIterator(in);
         iterator.setMaxReadsToAccumulatePerLocus(LOCUS_ACCUMULATION_CAP);
         iterator.setEmitUncoveredLoci(true);
         iterator.setQualityScoreCutoff(0);
@@ -621,14 +760,41 @@ static final String USAGE_DETAILS = "<p>This tool collects metrics about the fra
     }
 
     /**
-     * Creates {@link picard.analysis.AbstractWgsMetricsCollector} implementation according to {@link this#USE_FAST_ALGORITHM} value.
+     * Creates {@link picard.analysis.AbstractWgsMetricsCollector} implementation according to {@link #USE_FAST_ALGORITHM} value.
      *
      * @param coverageCap the maximum depth/coverage to consider.
      * @param intervals the intervals over which metrics are collected.
-     * @return if {@link this#USE_FAST_ALGORITHM} is enabled, returns {@link picard.analysis.FastWgsMetricsCollector} implementation,
+     * @return if {@link #USE_FAST_ALGORITHM} is enabled, returns {@link picard.analysis.FastWgsMetricsCollector} implementation,
      * otherwise default algorithm is used and {@link picard.analysis.CollectWgsMetrics.WgsMetricsCollector} is returned.
      */
-    protected AbstractWgsMetricsCollector getCollector(final int coverageCap, final IntervalList intervals) {
+    protected AbstractWgsMetricsCollector<?> getCollector(final int coverageCap, final IntervalList intervals) {
+        return newCollector(coverageCap, intervals);
+    }
+
+    /**
+     * Creates the collector for one shard when running on several threads.  Unlike {@link #getCollector(int, IntervalList)},
+     * which may hand back a single shared instance, this must return a new collector on every call, as the shards are
+     * processed concurrently and then merged into the collector returned by {@link #getCollector(int, IntervalList)}.
+     * Subclasses that override {@link #getCollector(int, IntervalList)} with their own collector type should override this too.
+     *
+     * @param coverageCap the maximum depth/coverage to consider.
+     * @param intervals the intervals over which metrics are collected.
+     */
+    protected AbstractWgsMetricsCollector<?> getShardCollector(final int coverageCap, final IntervalList intervals) {
+        return newCollector(coverageCap, intervals);
+    }
+
+    /**
+     * Opens the reader for one shard when running on several threads.  Unlike {@link #getSamReader()}, which may cache a
+     * single reader and sets the header, this must open a new reader on every call, as each shard queries its own reader
+     * concurrently; the caller closes it.
+     */
+    protected SamReader getShardSamReader() {
+        return SamReaderFactory.makeDefault().referenceSequence(REFERENCE_SEQUENCE).open(INPUT);
+    }
+
+    /** Creates a new collector according to {@link #USE_FAST_ALGORITHM}. */
+    private AbstractWgsMetricsCollector<?> newCollector(final int coverageCap, final IntervalList intervals) {
         return USE_FAST_ALGORITHM ? new FastWgsMetricsCollector(this, coverageCap, intervals) :
                 new WgsMetricsCollector(this, coverageCap, intervals);
     }
@@ -187,6 +187,11 @@ public class CollectWgsMetricsWithNonZeroCoverage extends CollectWgsMetrics {
         return this.collector;
     }
 
+    @Override
+    protected WgsMetricsCollector getShardCollector(final int coverageCap, final IntervalList intervals) {
+        return new WgsMetricsWithNonZeroCoverageCollector(this, coverageCap, intervals);
+    }
+
     protected class WgsMetricsWithNonZeroCoverageCollector extends WgsMetricsCollector {
         Histogram<Integer> highQualityDepthHistogram;
         Histogram<Integer> highQualityDepthHistogramNonZero;
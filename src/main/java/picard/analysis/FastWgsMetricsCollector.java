@@ -26,16 +26,11 @@ package picard.analysis;
 
 import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.util.AbstractLocusInfo;
-import htsjdk.samtools.util.AbstractRecordAndOffset;
 import htsjdk.samtools.util.EdgingRecordAndOffset;
 import htsjdk.samtools.util.IntervalList;
 import htsjdk.samtools.util.SequenceUtil;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * Class represents fast algorithm for collecting data from <code>AbstractLocusInfo</code>
@@ -43,9 +38,9 @@ import java.util.HashMap;
  * we receive only two {@link htsjdk.samtools.util.EdgingRecordAndOffset} objects for each alignment block of a read:
  * one for the start of block and one for the end. When meeting a {@link htsjdk.samtools.util.EdgingRecordAndOffset}
  * with type {@link htsjdk.samtools.util.EdgingRecordAndOffset.Type#BEGIN}, all information from the alignment block is accumulated in the collector,
- * read name is added to a map holding the names of processed reads for detecting overlapping positions.
+ * and the alignment block is added to a table of active blocks, keyed by read name, for detecting overlapping positions.
  * When meeting a {@link htsjdk.samtools.util.EdgingRecordAndOffset} with type {@link htsjdk.samtools.util.EdgingRecordAndOffset.Type#END},
- * the read name is removed from the map with names of processed reads.
+ * the alignment block is removed from the table of active blocks.
  * @author Mariia_Zueva@epam.com, EPAM Systems, Inc. <www.epam.com>
  */
 
@@ -71,9 +66,10 @@ public class FastWgsMetricsCollector extends AbstractWgsMetricsCollector<EdgingR
     private final CounterManager.Counter unfilteredDepthSize;
 
     /**
-     * Map, holding information on currently processed reads, that possibly have overlapping regions.
+     * Alignment blocks that have begun but not yet ended, that possibly have regions overlapping those of the following
+     * blocks with the same read name.
      */
-    private Map<String, Set<? extends AbstractRecordAndOffset>> readsNames;
+    private final ActiveBlocks activeBlocks = new ActiveBlocks();
 
     /**
      * Determines the size of created {@link picard.analysis.CounterManager.Counter} objects. The bigger {@link picard.analysis.CounterManager.Counter} objects
@@ -99,14 +95,10 @@ public class FastWgsMetricsCollector extends AbstractWgsMetricsCollector<EdgingR
     public void addInfo(final AbstractLocusInfo<EdgingRecordAndOffset> info, final ReferenceSequence ref, boolean referenceBaseN) {
         prepareCollector(info);
         for (final EdgingRecordAndOffset record : info.getRecordAndOffsets()) {
-            final String readName = record.getReadName();
-            Optional<Set<EdgingRecordAndOffset>> recordsAndOffsetsForName = Optional.ofNullable((Set<EdgingRecordAndOffset>)readsNames.get(readName));
             if (record.getType() == EdgingRecordAndOffset.Type.BEGIN) {
-                processRecord(info.getPosition(), ref, record, recordsAndOffsetsForName.orElse(new HashSet<>()));
+                processRecord(info.getPosition(), ref, record);
             } else {
-                recordsAndOffsetsForName.ifPresent(
-                        edgingRecordAndOffsets -> removeRecordFromMap(record,
-                                edgingRecordAndOffsets));
+                activeBlocks.remove(record);
             }
         }
         if (!referenceBaseN) {
@@ -120,9 +112,9 @@ public class FastWgsMetricsCollector extends AbstractWgsMetricsCollector<EdgingR
         }
     }
 
-    private void processRecord(int position, ReferenceSequence ref, EdgingRecordAndOffset record, Set<EdgingRecordAndOffset> recordsAndOffsetsForName) {
+    private void processRecord(int position, ReferenceSequence ref, EdgingRecordAndOffset record) {
         long processedLoci = counter;
-        readsNames.put(record.getReadName(), recordsAndOffsetsForName);
+        final int numSameName = activeBlocks.findSameName(record.getReadName());
         final byte[] qualities = record.getBaseQualities();
         final byte[] bases = record.getRecord().getReadBases();
         for (int i = 0; i < record.getLength(); i++) {
@@ -141,8 +133,8 @@ public class FastWgsMetricsCollector extends AbstractWgsMetricsCollector<EdgingR
                 if (quality < collectWgsMetrics.MINIMUM_BASE_QUALITY || SequenceUtil.isNoCall(bases[i + record.getOffset()])){
                     basesExcludedByBaseq++;
                 } else {
-                    final int bsq = excludeByQuality(recordsAndOffsetsForName, index);
-                    if (recordsAndOffsetsForName.size() - bsq > 0) {
+                    final int bsq = excludeByQuality(numSameName, index);
+                    if (numSameName - bsq > 0) {
                         basesExcludedByOverlap++;
                     } else {
                         pileupSize.increment(index);
@@ -153,15 +145,7 @@ public class FastWgsMetricsCollector extends AbstractWgsMetricsCollector<EdgingR
                 break;
             }
         }
-        recordsAndOffsetsForName.add(record);
-    }
-
-    private void removeRecordFromMap(EdgingRecordAndOffset record, Set<EdgingRecordAndOffset> recordsAndOffsetsForName) {
-        if (recordsAndOffsetsForName.size() == 1) {
-            readsNames.remove(record.getReadName());
-        } else {
-            recordsAndOffsetsForName.remove(record.getStart());
-        }
+        activeBlocks.add(record);
     }
 
     /**
@@ -171,20 +155,18 @@ public class FastWgsMetricsCollector extends AbstractWgsMetricsCollector<EdgingR
      * @param info the next {@link htsjdk.samtools.util.AbstractLocusInfo} to process
      */
     private void prepareCollector(AbstractLocusInfo<EdgingRecordAndOffset> info) {
-        if (readsNames == null) {
-            readsNames = new HashMap<>();
-        }
         if (previousSequenceIndex != info.getSequenceIndex()) {
-            readsNames.clear();
+            activeBlocks.clear();
             counterManager.clear();
             previousSequenceIndex = info.getSequenceIndex();
         }
         counterManager.checkOutOfBounds(info.getPosition());
     }
 
-    private int excludeByQuality(final Set<EdgingRecordAndOffset> setForName, int position) {
+    private int excludeByQuality(final int numSameName, int position) {
         int bsq = 0;
-        for (EdgingRecordAndOffset recordAndOffset : setForName) {
+        for (int i = 0; i < numSameName; i++) {
+            final EdgingRecordAndOffset recordAndOffset = activeBlocks.getSameName(i);
             if (position - recordAndOffset.getRefPos() >= recordAndOffset.getLength()
                     || recordAndOffset.getBaseQuality(position) < collectWgsMetrics.MINIMUM_BASE_QUALITY) {
                 bsq++;
@@ -192,4 +174,131 @@ public class FastWgsMetricsCollector extends AbstractWgsMetricsCollector<EdgingR
         }
         return bsq;
     }
+
+    /**
+     * Open-addressing table with linear probing of the alignment blocks that have begun but not yet ended. Blocks with
+     * the same read name occupy separate slots of the same probe sequence. Slots are found by the hash code that
+     * <code>String</code> caches for the read name, and names are only compared when the hash codes are equal, so
+     * adding and removing a block allocates nothing once the table has grown to the maximum depth.
+     */
+    static final class ActiveBlocks {
+        private static final int INITIAL_CAPACITY = 256;
+
+        private int[] hashes = new int[INITIAL_CAPACITY];
+        private EdgingRecordAndOffset[] blocks = new EdgingRecordAndOffset[INITIAL_CAPACITY];
+        private int size = 0;
+
+        /** Blocks found by the last call to {@link #findSameName(String)}. */
+        private EdgingRecordAndOffset[] sameName = new EdgingRecordAndOffset[4];
+
+        /**
+         * Finds the active blocks with the given read name, which can then be retrieved with {@link #getSameName(int)}.
+         * @return the number of active blocks with the given read name
+         */
+        int findSameName(final String readName) {
+            final int hash = readName.hashCode();
+            final int mask = blocks.length - 1;
+            int found = 0;
+            for (int i = slot(hash, mask); blocks[i] != null; i = (i + 1) & mask) {
+                if (hashes[i] == hash && blocks[i].getReadName().equals(readName)) {
+                    if (found == sameName.length) {
+                        sameName = Arrays.copyOf(sameName, 2 * found);
+                    }
+                    sameName[found++] = blocks[i];
+                }
+            }
+            return found;
+        }
+
+        EdgingRecordAndOffset getSameName(final int i) {
+            return sameName[i];
+        }
+
+        void add(final EdgingRecordAndOffset block) {
+            if (2 * (size + 1) > blocks.length) {
+                resize(2 * blocks.length);
+            }
+            insert(block.getReadName().hashCode(), block);
+            size++;
+        }
+
+        /**
+         * Removes the block begun by the given END record. If it is the only active block with its read name, that
+         * block is removed whatever it is.
+         */
+        void remove(final EdgingRecordAndOffset end) {
+            final String readName = end.getReadName();
+            final int hash = readName.hashCode();
+            final int mask = blocks.length - 1;
+            final EdgingRecordAndOffset start = end.getStart();
+            int found = 0;
+            int lastFound = -1;
+            int beginning = -1;
+            for (int i = slot(hash, mask); blocks[i] != null; i = (i + 1) & mask) {
+                if (hashes[i] == hash && blocks[i].getReadName().equals(readName)) {
+                    found++;
+                    lastFound = i;
+                    if (blocks[i] == start) {
+                        beginning = i;
+                    }
+                }
+            }
+            if (found == 1) {
+                removeAt(lastFound);
+            } else if (beginning >= 0) {
+                removeAt(beginning);
+            }
+        }
+
+        void clear() {
+            Arrays.fill(blocks, null);
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        /** Empties the given slot, shifting back any following blocks of the probe sequence that could occupy it. */
+        private void removeAt(int hole) {
+            final int mask = blocks.length - 1;
+            blocks[hole] = null;
+            size--;
+            for (int i = (hole + 1) & mask; blocks[i] != null; i = (i + 1) & mask) {
+                final int ideal = slot(hashes[i], mask);
+                if (((i - ideal) & mask) >= ((i - hole) & mask)) {
+                    hashes[hole] = hashes[i];
+                    blocks[hole] = blocks[i];
+                    blocks[i] = null;
+                    hole = i;
+                }
+            }
+        }
+
+        private void resize(final int capacity) {
+            final int[] oldHashes = hashes;
+            final EdgingRecordAndOffset[] oldBlocks = blocks;
+            hashes = new int[capacity];
+            blocks = new EdgingRecordAndOffset[capacity];
+            for (int i = 0; i < oldBlocks.length; i++) {
+                if (oldBlocks[i] != null) {
+                    insert(oldHashes[i], oldBlocks[i]);
+                }
+            }
+        }
+
+        private void insert(final int hash, final EdgingRecordAndOffset block) {
+            final int mask = blocks.length - 1;
+            int i = slot(hash, mask);
+            while (blocks[i] != null) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            blocks[i] = block;
+        }
+
+        private static int slot(final int hash, final int mask) {
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
 }
@@ -78,11 +78,36 @@ public class GcBiasMetricsCollector extends MultiLevelCollector<GcBiasMetrics, I
     }
 
     /////////////////////////////////////////////////////////////////////////////
-    // This method is called once Per samRecord
+    // This method is called once Per samRecord. The GC of the window at the
+    // read start and the errors in the read are the same at every accumulation
+    // level, so they are computed here once rather than by each collector.
     /////////////////////////////////////////////////////////////////////////////
     @Override
     protected GcBiasCollectorArgs makeArg(final SAMRecord rec, final ReferenceSequence ref) {
-        return new GcBiasCollectorArgs(rec, ref);
+        int windowGc = -1;
+        long errors = 0;
+        if (!rec.getReadUnmappedFlag()) {
+            if (referenceIndex != rec.getReferenceIndex() || gc == null) {
+                refBases = ref.getBases();
+                StringUtil.toUpperCase(refBases);
+                final int refLength = refBases.length;
+                final int lastWindowStart = refLength - scanWindowSize;
+                gc = GcBiasUtils.calculateAllGcs(refBases, lastWindowStart, scanWindowSize);
+                referenceIndex = rec.getReferenceIndex();
+            }
+
+            final int pos = rec.getReadNegativeStrandFlag() ? rec.getAlignmentEnd() - scanWindowSize : rec.getAlignmentStart();
+            if (pos > 0) {
+                windowGc = gc[pos];
+                // A read with '*' in SEQ has no bases to count errors in, but its start is still counted by the
+                // collectors once they have omitted the first reads like it
+                if (windowGc >= 0 && rec.getReadBases().length != 0) {
+                    errors = SequenceUtil.countMismatches(rec, refBases, bisulfite) +
+                            SequenceUtil.countInsertedBases(rec) + SequenceUtil.countDeletedBases(rec);
+                }
+            }
+        }
+        return new GcBiasCollectorArgs(rec, ref, windowGc, errors);
     }
 
     /////////////////////////////////////////////////////////////////////////////
@@ -142,19 +167,9 @@ public class GcBiasMetricsCollector extends MultiLevelCollector<GcBiasMetrics, I
                 return;
             }
             if (!rec.getReadUnmappedFlag()) {
-                if (referenceIndex != rec.getReferenceIndex() || gc == null) {
-                    final ReferenceSequence ref = args.getRef();
-                    refBases = ref.getBases();
-                    StringUtil.toUpperCase(refBases);
-                    final int refLength = refBases.length;
-                    final int lastWindowStart = refLength - scanWindowSize;
-                    gc = GcBiasUtils.calculateAllGcs(refBases, lastWindowStart, scanWindowSize);
-                    referenceIndex = rec.getReferenceIndex();
-                }
-
-                addReadToGcData(rec, this.gcData);
+                addReadToGcData(args, this.gcData);
                 if (ignoreDuplicates && !rec.getDuplicateReadFlag()) {
-                    addReadToGcData(rec, this.gcDataNonDups);
+                    addReadToGcData(args, this.gcDataNonDups);
                 }
             } else {
                 updateTotalClusters(rec, this.gcData);
@@ -202,7 +217,7 @@ public class GcBiasMetricsCollector extends MultiLevelCollector<GcBiasMetrics, I
             return gcData;
         }
 
-        private void addReadToGcData(final SAMRecord rec, final Map<String, GcObject> gcData) {
+        private void addReadToGcData(final GcBiasCollectorArgs args, final Map<String, GcObject> gcData) {
             final String type;
             String group;
             if (this.readGroup != null) {
@@ -218,7 +233,7 @@ public class GcBiasMetricsCollector extends MultiLevelCollector<GcBiasMetrics, I
                 type = allReads;
                 group = ACCUMULATION_LEVEL_ALL_READS;
             }
-            addRead(gcData.get(type), rec, group, gc, refBases);
+            addRead(gcData.get(type), args, group);
         }
 
         /////////////////////////////////////////////////////////////////////////////
@@ -376,19 +391,15 @@ public class GcBiasMetricsCollector extends MultiLevelCollector<GcBiasMetrics, I
     //Adds each read to the appropriate gcObj which is determined in acceptRecord above
     //Also calculates values for calculating GC Bias at each level
     /////////////////////////////////////////////////////////////////////////////
-     private void addRead(final GcObject gcObj, final SAMRecord rec, final String group, final byte[] gc, final byte[] refBases) {
+     private void addRead(final GcObject gcObj, final GcBiasCollectorArgs args, final String group) {
+        final SAMRecord rec = args.getRec();
         if (!rec.getReadPairedFlag() || rec.getFirstOfPairFlag()) ++gcObj.totalClusters;
-        final int pos = rec.getReadNegativeStrandFlag() ? rec.getAlignmentEnd() - scanWindowSize : rec.getAlignmentStart();
         ++gcObj.totalAlignedReads;
-        if (pos > 0) {
-            final int windowGc = gc[pos];
-            if (windowGc >= 0) {
-                ++gcObj.readsByGc[windowGc];
-                gcObj.basesByGc[windowGc] += rec.getReadLength();
-                gcObj.errorsByGc[windowGc] +=
-                        SequenceUtil.countMismatches(rec, refBases, bisulfite) +
-                                SequenceUtil.countInsertedBases(rec) + SequenceUtil.countDeletedBases(rec);
-            }
+        final int windowGc = args.getWindowGc();
+        if (windowGc >= 0) {
+            ++gcObj.readsByGc[windowGc];
+            gcObj.basesByGc[windowGc] += rec.getReadLength();
+            gcObj.errorsByGc[windowGc] += args.getErrors();
         }
         if (gcObj.group == null) {
             gcObj.group = group;
@@ -403,10 +414,18 @@ public class GcBiasMetricsCollector extends MultiLevelCollector<GcBiasMetrics, I
 class GcBiasCollectorArgs {
     private final SAMRecord rec;
     private final ReferenceSequence ref;
+    private final int windowGc;
+    private final long errors;
     public SAMRecord getRec() {return rec;}
     public ReferenceSequence getRef() {return ref;}
-    public GcBiasCollectorArgs(final SAMRecord rec, final ReferenceSequence ref) {
+    /** The GC of the window at the start of the read, or -1 if it has none or the window has too many Ns */
+    public int getWindowGc() {return windowGc;}
+    /** The mismatches, inserted and deleted bases of the read, if getWindowGc() is not -1 */
+    public long getErrors() {return errors;}
+    public GcBiasCollectorArgs(final SAMRecord rec, final ReferenceSequence ref, final int windowGc, final long errors) {
         this.rec = rec;
         this.ref = ref;
+        this.windowGc = windowGc;
+        this.errors = errors;
     }
 }
@@ -24,17 +24,36 @@
 
 package picard.analysis;
 
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.reference.ReferenceSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.SequenceUtil;
 import htsjdk.samtools.util.StringUtil;
+import picard.PicardException;
+
 import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 /** Utilities to calculate GC Bias
  * Created by kbergin on 9/23/15.
  */
 public class GcBiasUtils {
+    private static final Log log = Log.getInstance(GcBiasUtils.class);
+
+    /** The extension of the files written by {@link #calculateRefWindowsByGc(int, File, int, File)}. */
+    public static final String GC_WINDOWS_CACHE_EXTENSION = ".gc_windows";
 
     /////////////////////////////////////////////////////////////////////////////
     // Calculates GC as a number from 0 to 100 in the specified window.
@@ -91,6 +110,96 @@ public class GcBiasUtils {
         return windowsByGc;
     }
 
+    /////////////////////////////////////////////////////////////////////////////
+    // As above, but if cacheDirectory is not null, reuse the counts saved there
+    // by an earlier call for the same reference and window size, or save them
+    // there for later calls. The reference is identified by the names, lengths
+    // and MD5s in its sequence dictionary; unless every sequence has an MD5, the
+    // path, size and modification time of the file are also used.
+    /////////////////////////////////////////////////////////////////////////////
+    public static int[] calculateRefWindowsByGc(final int windows, final File referenceSequence, final int windowSize, final File cacheDirectory) {
+        if (cacheDirectory == null) return calculateRefWindowsByGc(windows, referenceSequence, windowSize);
+
+        final File cacheFile = new File(cacheDirectory, getReferenceKey(referenceSequence) + ".w" + windowSize + GC_WINDOWS_CACHE_EXTENSION);
+        final int[] cached = readWindowsByGc(cacheFile, windows);
+        if (cached != null) return cached;
+
+        final int[] windowsByGc = calculateRefWindowsByGc(windows, referenceSequence, windowSize);
+        writeWindowsByGc(cacheFile, windowsByGc);
+        return windowsByGc;
+    }
+
+    /** Returns a hex MD5 identifying the contents of the reference, as described above. */
+    static String getReferenceKey(final File referenceSequence) {
+        final ReferenceSequenceFile refFile = ReferenceSequenceFileFactory.getReferenceSequenceFile(referenceSequence);
+        final SAMSequenceDictionary dictionary = refFile.getSequenceDictionary();
+        CloserUtil.close(refFile);
+
+        final StringBuilder description = new StringBuilder();
+        boolean allMd5s = dictionary != null && !dictionary.isEmpty();
+        if (dictionary != null) {
+            for (final SAMSequenceRecord sequence : dictionary.getSequences()) {
+                final String md5 = sequence.getAttribute(SAMSequenceRecord.MD5_TAG);
+                if (md5 == null) allMd5s = false;
+                description.append(sequence.getSequenceName()).append('\t').append(sequence.getSequenceLength())
+                        .append('\t').append(md5).append('\n');
+            }
+        }
+        if (!allMd5s) {
+            description.append(referenceSequence.getAbsolutePath()).append('\t').append(referenceSequence.length())
+                    .append('\t').append(referenceSequence.lastModified()).append('\n');
+        }
+
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(description.toString().getBytes(StandardCharsets.UTF_8));
+            return String.format("%032x", new BigInteger(1, digest));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new PicardException("MD5 is not available", e);
+        }
+    }
+
+    /** Reads counts written by writeWindowsByGc, returning null if there are none or they cannot be used. */
+    private static int[] readWindowsByGc(final File cacheFile, final int windows) {
+        if (!cacheFile.exists()) return null;
+        try {
+            final List<String> lines = Files.readAllLines(cacheFile.toPath(), StandardCharsets.UTF_8);
+            if (lines.size() != windows) {
+                log.warn("Ignoring " + cacheFile.getAbsolutePath() + ", which has " + lines.size() + " GC bins rather than " + windows);
+                return null;
+            }
+            final int[] windowsByGc = new int[windows];
+            for (int i = 0; i < windows; ++i) {
+                windowsByGc[i] = Integer.parseInt(lines.get(i));
+            }
+            return windowsByGc;
+        } catch (final IOException | NumberFormatException e) {
+            log.warn("Ignoring unreadable " + cacheFile.getAbsolutePath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes one count per line, through a temporary file that is then renamed so that concurrent runs never read a
+     * partial file.  Failing to write only loses the cached counts.
+     */
+    private static void writeWindowsByGc(final File cacheFile, final int[] windowsByGc) {
+        final List<String> lines = new ArrayList<>(windowsByGc.length);
+        for (final int count : windowsByGc) {
+            lines.add(Integer.toString(count));
+        }
+        try {
+            final File temp = File.createTempFile(cacheFile.getName(), ".tmp", cacheFile.getParentFile());
+            try {
+                Files.write(temp.toPath(), lines, StandardCharsets.UTF_8);
+                Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+        } catch (final IOException e) {
+            log.warn("Could not save GC windows to " + cacheFile.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
     /////////////////////////////////////////////////////////////////////////////
     // Calculate all the GC values for all windows
     /////////////////////////////////////////////////////////////////////////////
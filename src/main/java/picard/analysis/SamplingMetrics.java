@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.analysis;
+
+import htsjdk.samtools.metrics.MetricBase;
+
+/**
+ * Describes the sample of the input read by CollectMultipleMetrics when SAMPLING_FRACTION or SAMPLING_RECORDS is
+ * given, usually written to a file with the extension ".sampling_metrics".  The reference is split into bins of
+ * BIN_SIZE bases, a random subset of the bins is chosen, and only the records starting in the chosen bins (plus the
+ * same fraction of the unplaced unmapped records) are passed to the programs.  The other metrics files therefore
+ * describe the sample, and their counts can be scaled up by 1 / SAMPLED_FRACTION.
+ * <p>
+ * Only the number of records is given an estimated error, in ESTIMATED_RECORDS_LOWER_CI, ESTIMATED_RECORDS_UPPER_CI
+ * and RELATIVE_STANDARD_ERROR.  No error is estimated for the metrics of the programs, whose counts may vary more or
+ * less between bins than the number of records, and whose ratios and distributions may be biased by a sample of few
+ * bins.
+ */
+public class SamplingMetrics extends MetricBase {
+    /** The size of the bins of the reference from which the sample was drawn. */
+    public int BIN_SIZE;
+
+    /** The number of bins covering all the reference sequences. */
+    public long TOTAL_BINS;
+
+    /** The number of bins chosen at random, from which records were read. */
+    public long SAMPLED_BINS;
+
+    /** SAMPLED_BINS / TOTAL_BINS, the expected fraction of the placed records that were read. */
+    public double SAMPLED_FRACTION;
+
+    /** The number of records with a position in the input, according to its index. */
+    public long RECORDS_IN_INDEX;
+
+    /** The number of records with a position that were read, i.e. that start in one of the sampled bins. */
+    public long RECORDS_SAMPLED;
+
+    /** The number of unplaced unmapped records that were read. */
+    public long UNPLACED_RECORDS_SAMPLED;
+
+    /**
+     * The number of records with a position estimated from the records per sampled bin, which can be compared with
+     * RECORDS_IN_INDEX to see how representative the sample is.
+     */
+    public double ESTIMATED_RECORDS;
+
+    /** The lower bound of the 95% confidence interval of ESTIMATED_RECORDS. */
+    public double ESTIMATED_RECORDS_LOWER_CI;
+
+    /** The upper bound of the 95% confidence interval of ESTIMATED_RECORDS. */
+    public double ESTIMATED_RECORDS_UPPER_CI;
+
+    /**
+     * The standard error of ESTIMATED_RECORDS divided by ESTIMATED_RECORDS, from the variation of the number of
+     * records between the sampled bins and the fraction of bins sampled.  This is not an error of the metrics of the
+     * programs.
+     */
+    public double RELATIVE_STANDARD_ERROR;
+}
@@ -36,14 +36,22 @@ import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.ProgressLogger;
 import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.StringUtil;
 import org.broadinstitute.barclay.argparser.Argument;
 import picard.PicardException;
 import picard.cmdline.CommandLineProgram;
 import picard.cmdline.StandardOptionDefinitions;
+import picard.sam.util.SamRecordSharingUtil;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Super class that is designed to provide some consistent structure between subclasses that
@@ -68,6 +76,12 @@ public abstract class SinglePassSamProgram extends CommandLineProgram {
 
     private static final Log log = Log.getInstance(SinglePassSamProgram.class);
 
+    /** The number of records handed to the program threads at a time when programs are run in parallel. */
+    static final int PARALLEL_BATCH_SIZE = 1000;
+
+    /** The number of batches queued for each program thread before the reading thread waits for it to catch up. */
+    static final int PARALLEL_QUEUED_BATCHES = 16;
+
     /**
      * Set the reference File.
      */
@@ -90,6 +104,35 @@ public abstract class SinglePassSamProgram extends CommandLineProgram {
                                 final boolean assumeSorted,
                                 final long stopAfter,
                                 final Collection<SinglePassSamProgram> programs) {
+        makeItSo(input, referenceSequence, assumeSorted, stopAfter, programs, 1);
+    }
+
+    /**
+     * As {@link #makeItSo(File, File, boolean, long, Collection)}, but if numThreads is greater than 1 the programs are
+     * split among up to numThreads threads.  Records are read and decoded once, on the calling thread, and handed to
+     * the program threads in batches, so that each program sees every record in order but the programs run
+     * concurrently.  setup() and finish() are still called on the calling thread.
+     */
+    public static void makeItSo(final File input,
+                                final File referenceSequence,
+                                final boolean assumeSorted,
+                                final long stopAfter,
+                                final Collection<SinglePassSamProgram> programs,
+                                final int numThreads) {
+        makeItSo(input, referenceSequence, assumeSorted, stopAfter, programs, numThreads, null);
+    }
+
+    /**
+     * As {@link #makeItSo(File, File, boolean, long, Collection, int)}, but if sampler is not null only the sample of
+     * the input chosen by the sampler is passed to the programs.  The input must then be indexed.
+     */
+    public static void makeItSo(final File input,
+                                final File referenceSequence,
+                                final boolean assumeSorted,
+                                final long stopAfter,
+                                final Collection<SinglePassSamProgram> programs,
+                                final int numThreads,
+                                final BinSampler sampler) {
 
         // Setup the standard inputs
         IOUtil.assertFileIsReadable(input);
@@ -132,36 +175,192 @@ public abstract class SinglePassSamProgram extends CommandLineProgram {
 
 
         final ProgressLogger progress = new ProgressLogger(log);
+        final ParallelPrograms parallelPrograms = Math.min(numThreads, programs.size()) > 1 ?
+                new ParallelPrograms(programs, Math.min(numThreads, programs.size())) : null;
+        ReferenceSequence lastRef = null;
 
-        for (final SAMRecord rec : in) {
-            final ReferenceSequence ref;
-            if (walker == null || rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-                ref = null;
-            } else {
-                ref = walker.get(rec.getReferenceIndex());
+        final Iterator<SAMRecord> iterator = sampler == null ? in.iterator() : sampler.iterator(in, anyUseNoRefReads);
+        boolean readAll = false;
+        try {
+            while (iterator.hasNext()) {
+                final SAMRecord rec = iterator.next();
+                final ReferenceSequence ref;
+                if (walker == null || rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+                    ref = null;
+                } else {
+                    ref = walker.get(rec.getReferenceIndex());
+                }
+
+                if (parallelPrograms == null) {
+                    for (final SinglePassSamProgram program : programs) {
+                        program.acceptRead(rec, ref);
+                    }
+                } else {
+                    // Some programs upper-case the reference bases in place, so do it once here rather than
+                    // concurrently in the program threads.
+                    if (ref != null && ref != lastRef) {
+                        StringUtil.toUpperCase(ref.getBases());
+                        lastRef = ref;
+                    }
+                    SamRecordSharingUtil.decodeForSharing(rec);
+                    parallelPrograms.add(rec, ref);
+                }
+
+                progress.record(rec);
+
+                // See if we need to terminate early?
+                if (stopAfter > 0 && progress.getCount() >= stopAfter) {
+                    break;
+                }
+
+                // And see if we're into the unmapped reads at the end
+                if (!anyUseNoRefReads && rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
+                    break;
+                }
+            }
+            readAll = true;
+        } finally {
+            // Don't leave the program threads waiting for records that will never come
+            if (!readAll && parallelPrograms != null) {
+                parallelPrograms.abort();
             }
+        }
+
+        CloserUtil.close(in);
+
+        if (parallelPrograms != null) {
+            parallelPrograms.finish();
+        }
+
+        for (final SinglePassSamProgram program : programs) {
+            program.finish();
+        }
+    }
 
+    /**
+     * Runs the acceptRead() of a set of programs on a fixed set of threads.  Each thread runs a subset of the programs,
+     * in their original order, on batches of records taken from its own bounded queue.  Batches are shared by all the
+     * threads and are never modified once queued.
+     */
+    private static final class ParallelPrograms {
+        private final List<ProgramThread> threads = new ArrayList<>();
+        private SAMRecord[] records = new SAMRecord[PARALLEL_BATCH_SIZE];
+        private ReferenceSequence[] refs = new ReferenceSequence[PARALLEL_BATCH_SIZE];
+        private int batchSize = 0;
+
+        ParallelPrograms(final Collection<SinglePassSamProgram> programs, final int numThreads) {
+            final List<List<SinglePassSamProgram>> programsPerThread = new ArrayList<>(numThreads);
+            for (int i = 0; i < numThreads; ++i) {
+                programsPerThread.add(new ArrayList<>());
+            }
+            int i = 0;
             for (final SinglePassSamProgram program : programs) {
-                program.acceptRead(rec, ref);
+                programsPerThread.get(i++ % numThreads).add(program);
+            }
+            for (final List<SinglePassSamProgram> threadPrograms : programsPerThread) {
+                final ProgramThread thread = new ProgramThread(threadPrograms);
+                thread.setName("SinglePassSamProgram-" + threads.size());
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
             }
+        }
 
-            progress.record(rec);
+        void add(final SAMRecord rec, final ReferenceSequence ref) {
+            records[batchSize] = rec;
+            refs[batchSize] = ref;
+            if (++batchSize == PARALLEL_BATCH_SIZE) {
+                dispatch(new RecordBatch(records, refs, batchSize));
+                records = new SAMRecord[PARALLEL_BATCH_SIZE];
+                refs = new ReferenceSequence[PARALLEL_BATCH_SIZE];
+                batchSize = 0;
+            }
+        }
 
-            // See if we need to terminate early?
-            if (stopAfter > 0 && progress.getCount() >= stopAfter) {
-                break;
+        /** Hands any remaining records to the threads and waits for them to finish. */
+        void finish() {
+            if (batchSize > 0) {
+                dispatch(new RecordBatch(records, refs, batchSize));
+            }
+            dispatch(RecordBatch.END);
+            try {
+                for (final ProgramThread thread : threads) {
+                    thread.join();
+                }
+            } catch (final InterruptedException e) {
+                abort();
+                throw new PicardException("Interrupted waiting for programs to finish.", e);
             }
+            checkForFailure();
+        }
 
-            // And see if we're into the unmapped reads at the end
-            if (!anyUseNoRefReads && rec.getReferenceIndex() == SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX) {
-                break;
+        private void dispatch(final RecordBatch batch) {
+            try {
+                for (final ProgramThread thread : threads) {
+                    while (!thread.queue.offer(batch, 1, TimeUnit.SECONDS)) {
+                        checkForFailure();
+                    }
+                }
+            } catch (final InterruptedException e) {
+                abort();
+                throw new PicardException("Interrupted handing records to programs.", e);
             }
+            checkForFailure();
         }
 
-        CloserUtil.close(in);
+        private void checkForFailure() {
+            for (final ProgramThread thread : threads) {
+                if (thread.failure != null) {
+                    abort();
+                    throw new PicardException("Exception in " + thread.getName() + ": " + thread.failure.getMessage(), thread.failure);
+                }
+            }
+        }
 
-        for (final SinglePassSamProgram program : programs) {
-            program.finish();
+        private void abort() {
+            threads.forEach(Thread::interrupt);
+        }
+    }
+
+    private static final class RecordBatch {
+        static final RecordBatch END = new RecordBatch(new SAMRecord[0], new ReferenceSequence[0], 0);
+
+        final SAMRecord[] records;
+        final ReferenceSequence[] refs;
+        final int size;
+
+        RecordBatch(final SAMRecord[] records, final ReferenceSequence[] refs, final int size) {
+            this.records = records;
+            this.refs = refs;
+            this.size = size;
+        }
+    }
+
+    private static final class ProgramThread extends Thread {
+        private final List<SinglePassSamProgram> programs;
+        private final BlockingQueue<RecordBatch> queue = new ArrayBlockingQueue<>(PARALLEL_QUEUED_BATCHES);
+        private volatile Throwable failure = null;
+
+        ProgramThread(final List<SinglePassSamProgram> programs) {
+            this.programs = programs;
+        }
+
+        @Override
+        public void run() {
+            try {
+                RecordBatch batch;
+                while ((batch = queue.take()) != RecordBatch.END) {
+                    for (int i = 0; i < batch.size; ++i) {
+                        for (final SinglePassSamProgram program : programs) {
+                            program.acceptRead(batch.records[i], batch.refs[i]);
+                        }
+                    }
+                }
+            } catch (final InterruptedException e) {
+                // The reading thread has given up; nothing more to do.
+            } catch (final Throwable t) {
+                failure = t;
+            }
         }
     }
 
@@ -1,7 +1,14 @@
 package picard.analysis.directed;
 
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.BAMIndexMetaData;
+import htsjdk.samtools.QueryInterval;
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.SamReader;
 import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.metrics.MetricsFile;
@@ -10,17 +17,20 @@ import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
 import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.CollectionUtil;
 import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.Interval;
 import htsjdk.samtools.util.IntervalList;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.ProgressLogger;
 import htsjdk.samtools.util.SequenceUtil;
 import org.broadinstitute.barclay.argparser.Argument;
+import picard.PicardException;
 import picard.analysis.MetricAccumulationLevel;
 import picard.cmdline.CommandLineProgram;
 import picard.cmdline.StandardOptionDefinitions;
 import picard.metrics.MultilevelMetrics;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -98,6 +108,17 @@ public abstract class CollectTargetedMetrics<METRIC extends MultilevelMetrics, C
     @Argument(doc="Sample Size used for Theoretical Het Sensitivity sampling. Default is 10000.", optional = true)
     public int SAMPLE_SIZE=10000;
 
+    @Argument(doc = "If true, use the index of INPUT to read only the records overlapping the targets or lying within " +
+            "NEAR_DISTANCE of a probe/bait/amplicon, rather than the whole file. TOTAL_READS is then the number of records " +
+            "counted by the index, which unlike the usual TOTAL_READS includes secondary and supplementary records. The " +
+            "other read and base counts, e.g. PF_READS, PF_BASES and OFF_BAIT_BASES, only include the records that were " +
+            "read, and the fractions that need counts over the whole file are reported as NaN: PCT_PF_READS, " +
+            "PCT_PF_UQ_READS, PCT_PF_UQ_READS_ALIGNED, PCT_SELECTED_BASES (PCT_AMPLIFIED_BASES), PCT_OFF_BAIT " +
+            "(PCT_OFF_AMPLICON), FOLD_ENRICHMENT, PCT_EXC_OFF_TARGET and, for CollectHsMetrics, PCT_USABLE_BASES_ON_BAIT, " +
+            "PCT_USABLE_BASES_ON_TARGET and the HS_PENALTY metrics. Coverage metrics are unchanged. Requires an indexed BAM " +
+            "and METRIC_ACCUMULATION_LEVEL=ALL_READS.", optional = true)
+    public boolean RESTRICT_TO_TARGETS = false;
+
     /**
      * Asserts that files are readable and writable and then fires off an
      * HsMetricsCalculator instance to do the real work.
@@ -110,6 +131,7 @@ public abstract class CollectTargetedMetrics<METRIC extends MultilevelMetrics, C
 
         final SamReader reader = SamReaderFactory.makeDefault().referenceSequence(REFERENCE_SEQUENCE).open(INPUT);
         final IntervalList targetIntervals = IntervalList.fromFiles(TARGET_INTERVALS);
+        final IntervalList probeIntervals = getProbeIntervals();
 
         // Validate that the targets and baits have the same references as the reads file
         SequenceUtil.assertSequenceDictionariesEqual(
@@ -117,7 +139,7 @@ public abstract class CollectTargetedMetrics<METRIC extends MultilevelMetrics, C
                 targetIntervals.getHeader().getSequenceDictionary());
         SequenceUtil.assertSequenceDictionariesEqual(
                 reader.getFileHeader().getSequenceDictionary(),
-                getProbeIntervals().getHeader().getSequenceDictionary()
+                probeIntervals.getHeader().getSequenceDictionary()
         );
 
         ReferenceSequenceFile ref = null;
@@ -137,16 +159,35 @@ public abstract class CollectTargetedMetrics<METRIC extends MultilevelMetrics, C
                 PER_TARGET_COVERAGE,
                 PER_BASE_COVERAGE,
                 targetIntervals,
-                getProbeIntervals(),
+                probeIntervals,
                 getProbeSetName(),
                 NEAR_DISTANCE
         );
+        // Coverage of each target can be summarized and released as soon as sorted input has moved past it
+        collector.setCoordinateSortedInput(reader.getFileHeader().getSortOrder() == SAMFileHeader.SortOrder.coordinate);
+
+        final SAMRecordIterator records;
+        if (RESTRICT_TO_TARGETS) {
+            if (!reader.hasIndex()) {
+                throw new PicardException("RESTRICT_TO_TARGETS requires an index for INPUT " + INPUT.getAbsolutePath());
+            }
+            collector.setTotalReads(countIndexedRecords(reader));
+            final SAMSequenceDictionary dictionary = reader.getFileHeader().getSequenceDictionary();
+            final List<QueryInterval> regions = new ArrayList<>();
+            addQueryIntervals(regions, dictionary, targetIntervals, 0);
+            addQueryIntervals(regions, dictionary, probeIntervals, NEAR_DISTANCE);
+            records = reader.query(QueryInterval.optimizeIntervals(regions.toArray(new QueryInterval[regions.size()])), false);
+        } else {
+            records = reader.iterator();
+        }
 
         final ProgressLogger progress = new ProgressLogger(log);
-        for (final SAMRecord record : reader) {
+        while (records.hasNext()) {
+            final SAMRecord record = records.next();
             collector.acceptRecord(record, null);
             progress.record(record);
         }
+        records.close();
 
         // Write the output file
         final MetricsFile<METRIC, Integer> metrics = getMetricsFile();
@@ -160,6 +201,44 @@ public abstract class CollectTargetedMetrics<METRIC extends MultilevelMetrics, C
         return 0;
     }
 
+    /**
+     * Counts the records of an indexed BAM from the aligned and unaligned counts that the index keeps for each reference
+     * sequence, plus the unmapped records without a position, which the index only locates.  Fails if the index does
+     * not cover every reference sequence of the header, rather than under-count.
+     */
+    private static long countIndexedRecords(final SamReader reader) {
+        final BAMIndex index = reader.indexing().getIndex();
+        long count = 0;
+        for (int i = 0; i < reader.getFileHeader().getSequenceDictionary().size(); i++) {
+            final BAMIndexMetaData metaData = index.getMetaData(i);
+            if (metaData == null) {
+                throw new PicardException("The index of " + reader.getResourceDescription() + " does not cover reference " +
+                        "sequence " + reader.getFileHeader().getSequence(i).getSequenceName() + ", so TOTAL_READS cannot be " +
+                        "counted for RESTRICT_TO_TARGETS. Re-index INPUT.");
+            }
+            count += metaData.getAlignedRecordCount() + metaData.getUnalignedRecordCount();
+        }
+
+        final SAMRecordIterator unplaced = reader.queryUnmapped();
+        while (unplaced.hasNext()) {
+            unplaced.next();
+            count++;
+        }
+        unplaced.close();
+        return count;
+    }
+
+    /** Adds a query for each interval, extended by padding on both sides and clipped to its reference sequence. */
+    private static void addQueryIntervals(final List<QueryInterval> queries, final SAMSequenceDictionary dictionary,
+                                          final IntervalList intervals, final int padding) {
+        for (final Interval interval : intervals) {
+            final SAMSequenceRecord sequence = dictionary.getSequence(interval.getContig());
+            queries.add(new QueryInterval(sequence.getSequenceIndex(),
+                    Math.max(1, interval.getStart() - padding),
+                    Math.min(sequence.getSequenceLength(), interval.getEnd() + padding)));
+        }
+    }
+
     /** Renders a probe name from the provided file, returning {@link java.io.File#getName()} with all extensions stripped. */
     static String renderProbeNameFromFile(final File probeIntervalFile) {
         final String name = probeIntervalFile.getName();
@@ -178,6 +257,12 @@ public abstract class CollectTargetedMetrics<METRIC extends MultilevelMetrics, C
                     "to ALL_READS."};
         }
 
+        if (RESTRICT_TO_TARGETS && (METRIC_ACCUMULATION_LEVEL.size() != 1 ||
+                METRIC_ACCUMULATION_LEVEL.iterator().next() != MetricAccumulationLevel.ALL_READS)) {
+            return new String[]{"RESTRICT_TO_TARGETS can be specified only when METRIC_ACCUMULATION_LEVEL is set " +
+                    "to ALL_READS."};
+        }
+
         if (PER_TARGET_COVERAGE != null && REFERENCE_SEQUENCE == null) {
             return new String[]{"Must supply REFERENCE_SEQUENCE when supplying PER_TARGET_COVERAGE"};
         }
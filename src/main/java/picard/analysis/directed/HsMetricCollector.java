@@ -98,6 +98,18 @@ public class HsMetricCollector extends TargetMetricsCollector<HsMetrics> {
 	    hsMetrics.HS_PENALTY_40X = calculateHsPenalty(hsMetrics.HS_LIBRARY_SIZE, targetMetrics, 40);
 	    hsMetrics.HS_PENALTY_50X = calculateHsPenalty(hsMetrics.HS_LIBRARY_SIZE, targetMetrics, 50);
 	    hsMetrics.HS_PENALTY_100X = calculateHsPenalty(hsMetrics.HS_LIBRARY_SIZE, targetMetrics, 100);
+
+        // PF_BASES and PF_UQ_BASES_ALIGNED only cover the records near the baits, so these are unknown
+        if (isTotalReadsSet()) {
+            hsMetrics.PCT_USABLE_BASES_ON_BAIT   = Double.NaN;
+            hsMetrics.PCT_USABLE_BASES_ON_TARGET = Double.NaN;
+            hsMetrics.HS_PENALTY_10X  = Double.NaN;
+            hsMetrics.HS_PENALTY_20X  = Double.NaN;
+            hsMetrics.HS_PENALTY_30X  = Double.NaN;
+            hsMetrics.HS_PENALTY_40X  = Double.NaN;
+            hsMetrics.HS_PENALTY_50X  = Double.NaN;
+            hsMetrics.HS_PENALTY_100X = Double.NaN;
+        }
         return hsMetrics;
     }
 
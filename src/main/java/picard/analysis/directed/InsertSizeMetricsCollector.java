@@ -8,6 +8,7 @@ import htsjdk.samtools.reference.ReferenceSequence;
 import htsjdk.samtools.util.Histogram;
 import picard.analysis.InsertSizeMetrics;
 import picard.analysis.MetricAccumulationLevel;
+import picard.metrics.MergeablePerUnitMetricCollector;
 import picard.metrics.MultiLevelCollector;
 import picard.metrics.PerUnitMetricCollector;
 
@@ -78,7 +79,7 @@ public class InsertSizeMetricsCollector extends MultiLevelCollector<InsertSizeMe
     }
 
     /** A Collector for individual InsertSizeMetrics for a given SAMPLE or SAMPLE/LIBRARY or SAMPLE/LIBRARY/READ_GROUP (depending on aggregation levels) */
-    public class PerUnitInsertSizeMetricsCollector implements PerUnitMetricCollector<InsertSizeMetrics, Integer, InsertSizeCollectorArgs> {
+    public class PerUnitInsertSizeMetricsCollector implements MergeablePerUnitMetricCollector<InsertSizeMetrics, Integer, InsertSizeCollectorArgs> {
         final EnumMap<SamPairUtil.PairOrientation, Histogram<Integer>> histograms = new EnumMap<SamPairUtil.PairOrientation, Histogram<Integer>>(SamPairUtil.PairOrientation.class);
         final String sample;
         final String library;
@@ -111,6 +112,13 @@ public class InsertSizeMetricsCollector extends MultiLevelCollector<InsertSizeMe
             histograms.get(args.getPairOrientation()).increment(args.getInsertSize());
         }
 
+        @Override
+        public void merge(final MergeablePerUnitMetricCollector<InsertSizeMetrics, Integer, InsertSizeCollectorArgs> other) {
+            for (final Map.Entry<SamPairUtil.PairOrientation, Histogram<Integer>> entry : ((PerUnitInsertSizeMetricsCollector) other).histograms.entrySet()) {
+                histograms.get(entry.getKey()).addHistogram(entry.getValue());
+            }
+        }
+
         public void finish() { }
 
         public double getTotalInserts() {
@@ -0,0 +1,109 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.analysis.directed;
+
+import java.util.Arrays;
+
+/**
+ * Per-base depths at the offsets of the packed per-sequence arrays of a {@link TargetIndex}.  The depths of each
+ * sequence are held in a window that starts at the lowest offset not yet released and grows as higher offsets are
+ * incremented.  When the targets are released in order, as for coordinate-sorted input, only the depths of the
+ * targets still being covered are held in memory; otherwise the window grows to the whole packed array.
+ */
+final class TargetDepths {
+    private static final int INITIAL_WINDOW_SIZE = 1 << 12;
+
+    private final TargetIndex index;
+    private final int[][] windows;
+    /** The offset in the packed array of the first element of the window of each sequence. */
+    private final int[] windowStarts;
+
+    TargetDepths(final TargetIndex index) {
+        this.index = index;
+        this.windows = new int[index.numSequences()][];
+        this.windowStarts = new int[index.numSequences()];
+    }
+
+    /** Adds a point of depth at the given offset of the packed array of the given sequence, and returns the new depth. */
+    int increment(final int sequence, final int offset) {
+        int[] window = windows[sequence];
+        if (window == null || offset - windowStarts[sequence] >= window.length) {
+            window = grow(sequence, offset);
+        }
+        final int i = offset - windowStarts[sequence];
+        if (i < 0) {
+            throw new IllegalStateException("Offset " + offset + " of sequence " + sequence + " has already been released.");
+        }
+        if (window[i] < Integer.MAX_VALUE - 1) {
+            window[i]++;
+        }
+        return window[i];
+    }
+
+    /** Gets the depth at the given offset of the packed array of the given sequence, which must not have been released. */
+    int get(final int sequence, final int offset) {
+        final int[] window = windows[sequence];
+        final int i = offset - windowStarts[sequence];
+        if (i < 0) {
+            throw new IllegalStateException("Offset " + offset + " of sequence " + sequence + " has already been released.");
+        }
+        return (window == null || i >= window.length) ? 0 : window[i];
+    }
+
+    /** Releases the depths below the given offset of the packed array of the given sequence. */
+    void release(final int sequence, final int offset) {
+        final int shift = offset - windowStarts[sequence];
+        if (shift <= 0) return;
+
+        final int[] window = windows[sequence];
+        if (offset >= index.getBasesInSequence(sequence)) {
+            windows[sequence] = null;
+            windowStarts[sequence] = offset;
+        } else if (window == null) {
+            windowStarts[sequence] = offset;
+        } else if (shift >= window.length) {
+            Arrays.fill(window, 0);
+            windowStarts[sequence] = offset;
+        } else if (2 * shift >= window.length) {
+            // only slide the window once at least half of it has been released, so each depth is moved O(1) times
+            System.arraycopy(window, shift, window, 0, window.length - shift);
+            Arrays.fill(window, window.length - shift, window.length, 0);
+            windowStarts[sequence] = offset;
+        }
+    }
+
+    private int[] grow(final int sequence, final int offset) {
+        final int[] window = windows[sequence];
+        final int available = index.getBasesInSequence(sequence) - windowStarts[sequence];
+        final int needed = offset - windowStarts[sequence] + 1;
+        final int length = (window == null) ? INITIAL_WINDOW_SIZE : (int) Math.min(Integer.MAX_VALUE, 2L * window.length);
+        final int[] grown = new int[Math.min(available, Math.max(needed, length))];
+        if (window != null) {
+            System.arraycopy(window, 0, grown, 0, window.length);
+        }
+        windows[sequence] = grown;
+        return grown;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.analysis.directed;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.Interval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A flat index of sorted, non-overlapping intervals (e.g. uniqued targets or baits).  The start and end of each
+ * interval are held in arrays grouped by reference sequence, along with the offset of the interval's first base
+ * within a packed array of the bases of all the intervals on its sequence, so that per-base data for all the
+ * intervals can be accumulated in one array per sequence rather than one per interval.
+ *
+ * Overlaps are found with a {@link Cursor}, which moves forward through the intervals of a sequence when queried in
+ * coordinate order, and falls back to a binary search otherwise.
+ */
+final class TargetIndex {
+    private final List<Interval> intervals;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] sequenceIndices;
+    private final int[] offsets;
+
+    /** For each sequence, the index of its first interval; the last element is the number of intervals. */
+    private final int[] firstIntervalOfSequence;
+    private final int[] basesInSequence;
+    private final Map<String, Integer> sequenceIndexByName = new HashMap<>();
+
+    /** The number of bases by which the start of each interval is extended when looking for overlaps. */
+    private final int leftPadding;
+
+    /**
+     * @param intervals sorted, non-overlapping intervals on sequences of the dictionary, e.g. from {@link htsjdk.samtools.util.IntervalList#uniqued()}
+     * @param dictionary the sequence dictionary of the intervals
+     * @param leftPadding the number of bases by which the start of each interval is extended when looking for overlaps
+     */
+    TargetIndex(final List<Interval> intervals, final SAMSequenceDictionary dictionary, final int leftPadding) {
+        this.intervals = new ArrayList<>(intervals);
+        this.leftPadding = leftPadding;
+        final int n = intervals.size();
+        this.starts = new int[n];
+        this.ends = new int[n];
+        this.sequenceIndices = new int[n];
+        this.offsets = new int[n];
+        this.firstIntervalOfSequence = new int[dictionary.size() + 1];
+        this.basesInSequence = new int[dictionary.size()];
+
+        for (int s = 0; s < dictionary.size(); s++) {
+            sequenceIndexByName.put(dictionary.getSequence(s).getSequenceName(), s);
+        }
+
+        int previousSequence = 0;
+        for (int i = 0; i < n; i++) {
+            final Interval interval = intervals.get(i);
+            final Integer sequence = sequenceIndexByName.get(interval.getContig());
+            if (sequence == null) {
+                throw new IllegalArgumentException("Interval " + interval + " is on a sequence not in the dictionary.");
+            }
+            if (sequence < previousSequence || (i > 0 && sequence == previousSequence && interval.getStart() <= ends[i - 1])) {
+                throw new IllegalArgumentException("Intervals must be sorted and non-overlapping, but found " + interval + " after " + intervals.get(i - 1));
+            }
+            while (previousSequence < sequence) {
+                firstIntervalOfSequence[++previousSequence] = i;
+            }
+            starts[i] = interval.getStart();
+            ends[i] = interval.getEnd();
+            sequenceIndices[i] = sequence;
+            offsets[i] = basesInSequence[sequence];
+            basesInSequence[sequence] += interval.length();
+        }
+        while (previousSequence < dictionary.size()) {
+            firstIntervalOfSequence[++previousSequence] = n;
+        }
+    }
+
+    /** The number of intervals in the index. */
+    int size() { return intervals.size(); }
+
+    /** The number of reference sequences in the dictionary of the index. */
+    int numSequences() { return basesInSequence.length; }
+
+    Interval getInterval(final int i) { return intervals.get(i); }
+
+    List<Interval> getIntervals() { return intervals; }
+
+    int getStart(final int i) { return starts[i]; }
+
+    int getEnd(final int i) { return ends[i]; }
+
+    int getLength(final int i) { return ends[i] - starts[i] + 1; }
+
+    /** The index in the dictionary of the sequence of the i-th interval. */
+    int getSequenceIndex(final int i) { return sequenceIndices[i]; }
+
+    /** The offset of the first base of the i-th interval in the packed array of its sequence. */
+    int getOffset(final int i) { return offsets[i]; }
+
+    /** The number of interval bases on the given sequence, i.e. the length of its packed array. */
+    int getBasesInSequence(final int sequenceIndex) { return basesInSequence[sequenceIndex]; }
+
+    /** Creates a new cursor.  Cursors are not thread-safe, but any number of them may be used on one index. */
+    Cursor newCursor() { return new Cursor(); }
+
+    /** Finds the intervals overlapping successive queries, which are fastest when in coordinate order. */
+    final class Cursor {
+        private String sequenceName = null;
+        private int sequence = -1;
+        private int lastStart = Integer.MIN_VALUE;
+        private int position = 0;
+        private int first = 0;
+        private int count = 0;
+
+        /**
+         * Finds the intervals overlapping the given range (after extending them by the left padding of the index),
+         * which are then numbered from {@link #first()} to {@link #first()} + the returned count, exclusive.
+         * @return the number of intervals overlapping the range
+         */
+        int findOverlaps(final String sequenceName, final int start, final int end) {
+            if (!sequenceName.equals(this.sequenceName)) {
+                final Integer s = sequenceIndexByName.get(sequenceName);
+                this.sequenceName = sequenceName;
+                this.sequence = (s == null) ? -1 : s;
+                this.position = (s == null) ? 0 : firstIntervalOfSequence[s];
+                this.lastStart = Integer.MIN_VALUE;
+            }
+            if (sequence < 0) {
+                first = 0;
+                count = 0;
+                return 0;
+            }
+
+            final int last = firstIntervalOfSequence[sequence + 1];
+            if (start < lastStart) {
+                position = firstEndingAtOrAfter(start, firstIntervalOfSequence[sequence], last);
+            } else {
+                while (position < last && ends[position] < start) {
+                    position++;
+                }
+            }
+            lastStart = start;
+
+            int i = position;
+            while (i < last && starts[i] - leftPadding <= end) {
+                i++;
+            }
+            first = position;
+            count = i - position;
+            return count;
+        }
+
+        /** The index of the first interval found by the last call to {@link #findOverlaps(String, int, int)}. */
+        int first() { return first; }
+
+        /** The number of intervals found by the last call to {@link #findOverlaps(String, int, int)}. */
+        int count() { return count; }
+
+        /**
+         * The index of the first interval on the sequence of the last query that does not end before the start of the
+         * query (all intervals with lower indices do), or -1 if the sequence is not in the index.
+         */
+        int firstNotBefore() { return (sequence < 0) ? -1 : position; }
+
+        private int firstEndingAtOrAfter(final int pos, int low, int high) {
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (ends[mid] < pos) low = mid + 1;
+                else high = mid;
+            }
+            return low;
+        }
+    }
+}
@@ -42,7 +42,6 @@ import htsjdk.samtools.util.Histogram;
 import htsjdk.samtools.util.Interval;
 import htsjdk.samtools.util.IntervalList;
 import htsjdk.samtools.util.Log;
-import htsjdk.samtools.util.OverlapDetector;
 import htsjdk.samtools.util.RuntimeIOException;
 import htsjdk.samtools.util.SequenceUtil;
 import htsjdk.samtools.util.StringUtil;
@@ -92,13 +91,15 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
     //The interval list of the the regions we intend to cover
     private final IntervalList allTargets;
 
-    // Overlap detector for finding overlaps between reads and the experimental targets
-    private final OverlapDetector<Interval> targetDetector;
+    // Index of the unique targets, for finding overlaps between reads and the experimental targets and
+    // for accumulating per-base coverage of all the targets in packed arrays
+    private final TargetIndex targetIndex;
 
-    // Overlap detector for finding overlaps between the reads and the baits (and the near bait space)
-    private final OverlapDetector<Interval> probeDetector;
+    // Index of the unique baits, for finding overlaps between the reads and the baits (and the near bait space)
+    private final TargetIndex probeIndex;
 
-    private Map<Interval,Double> intervalToGc = null;
+    // The GC content of each target in targetIndex, or null if no reference was given
+    private double[] targetGc = null;
 
     //The number of bases within all unique intervals in allProbes
     private final long probeTerritory;
@@ -128,13 +129,14 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
     private final int minimumBaseQuality;
     private final boolean clipOverlappingReads;
     private boolean noSideEffects;
+    private boolean coordinateSortedInput = false;
+    private long totalReadsOverride = -1;
 
-    //A map of coverage by target in which coverage is reset every read, this is done
-    //so that we can calculate overlap for a read once and the resulting coverage is
-    //than added to the cumulative coverage of every collector that collects
-    //information on that read
-    private final Map<Interval, Coverage> coverageByTargetForRead;
-    private final Coverage [] cov;
+    // The "how many target bases at at-least X" calculations.
+    // downstream code relies on this array being sorted in ascending order
+    private static final int[] TARGET_BASES_DEPTH = {0, 1, 2, 10, 20, 30, 40, 50, 100};
+
+    private static final int GC_BINS = 101;
 
     /** Gets the distance that is allowed between a read and the nearest probe for it to be considered "near probe" and "selected. */
     public int getNearProbeDistance() { return nearProbeDistance; }
@@ -162,6 +164,37 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
         this.noSideEffects = value;
     }
 
+    /**
+     * Tells the collector whether the records passed to
+     * {@link #acceptRecord(htsjdk.samtools.SAMRecord, htsjdk.samtools.reference.ReferenceSequence)} are in coordinate
+     * order.  If so, once a record starts after the end of a target, the coverage of the target is summarized, written
+     * to the per-base coverage file (if any) and released, so that memory is bounded by the targets still being
+     * covered rather than by all the targets.  A record overlapping a target that has already been released then
+     * causes a {@link PicardException}.  Must be called before any records are accepted.
+     * @param value the boolean value to set.
+     */
+    public void setCoordinateSortedInput(final boolean value) {
+        this.coordinateSortedInput = value;
+    }
+
+    /**
+     * Sets the TOTAL_READS reported at the ALL_READS level, for callers that pass only some of the records to
+     * {@link #acceptRecord(htsjdk.samtools.SAMRecord, htsjdk.samtools.reference.ReferenceSequence)} (e.g. those
+     * overlapping the targets and probes) and know the total from elsewhere, such as the BAM index.  As the accepted
+     * records are then not the whole input, the fractions that need whole-input counts (PCT_PF_READS, PCT_PF_UQ_READS,
+     * PCT_PF_UQ_READS_ALIGNED, PCT_SELECTED_BASES, PCT_OFF_PROBE, FOLD_ENRICHMENT and PCT_EXC_OFF_TARGET) are
+     * reported as NaN.
+     * @param totalReads the number of reads in the input
+     */
+    public void setTotalReads(final long totalReads) {
+        this.totalReadsOverride = totalReads;
+    }
+
+    /** True if {@link #setTotalReads(long)} was called, i.e. only some of the records are accepted. */
+    protected boolean isTotalReadsSet() {
+        return totalReadsOverride >= 0;
+    }
+
     /** Get the the number of bases in the given alignment block and record that have base quality greater or equal to the minimum */
     public static int getNumBasesPassingMinimumBaseQuality(final SAMRecord record, final AlignmentBlock block, final int minimumBaseQuality) {
         int basesInBlockAtMinimumQuality = 0;
@@ -281,25 +314,13 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
         this.sampleSize = sampleSize;
 
         final List<Interval> uniqueBaits = this.allProbes.uniqued().getIntervals();
-        this.probeDetector = new OverlapDetector<Interval>(-this.nearProbeDistance, 0);
-        this.probeDetector.addAll(uniqueBaits, uniqueBaits);
+        this.probeIndex = new TargetIndex(uniqueBaits, this.allProbes.getHeader().getSequenceDictionary(), this.nearProbeDistance);
         this.probeTerritory = Interval.countBases(uniqueBaits);
 
         final List<Interval> uniqueTargets = this.allTargets.uniqued().getIntervals();
-        targetDetector = new OverlapDetector<Interval>(0,0);
-        this.targetDetector.addAll(uniqueTargets, uniqueTargets);
+        this.targetIndex = new TargetIndex(uniqueTargets, this.allTargets.getHeader().getSequenceDictionary(), 0);
         this.targetTerritory = Interval.countBases(uniqueTargets);
 
-        // Populate the coverage by target map
-        int i = 0;
-        cov = new Coverage[uniqueTargets.size()];
-        this.coverageByTargetForRead = new LinkedHashMap<Interval, Coverage>(uniqueTargets.size() * 2, 0.5f);
-        for (final Interval target : uniqueTargets) {
-            final Coverage coverage = new Coverage(target, 0);
-            this.coverageByTargetForRead.put(target, coverage);
-            cov[i++] = coverage;
-        }
-
         long genomeSizeAccumulator = 0;
         for (final SAMSequenceRecord seq : this.allProbes.getHeader().getSequenceDictionary().getSequences()) {
             genomeSizeAccumulator += seq.getSequenceLength();
@@ -308,10 +329,11 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
 
 
         if (refFile != null) {
-            intervalToGc = new HashMap<Interval,Double>();
-            for (final Interval target : uniqueTargets) {
+            targetGc = new double[uniqueTargets.size()];
+            for (int i = 0; i < uniqueTargets.size(); i++) {
+                final Interval target = uniqueTargets.get(i);
                 final ReferenceSequence rs = refFile.getSubsequenceAt(target.getContig(), target.getStart(), target.getEnd());
-                intervalToGc.put(target,SequenceUtil.calculateGc(rs.getBases()));
+                targetGc[i] = SequenceUtil.calculateGc(rs.getBases());
             }
         }
 
@@ -325,9 +347,9 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
 
     @Override
     protected PerUnitMetricCollector<METRIC_TYPE, Integer, SAMRecord> makeChildCollector(final String sample, final String library, final String readGroup) {
-        final PerUnitTargetMetricCollector collector =  new PerUnitTargetMetricCollector(probeSetName, coverageByTargetForRead.keySet(),
+        final PerUnitTargetMetricCollector collector =  new PerUnitTargetMetricCollector(probeSetName,
                 sample, library, readGroup, probeTerritory, targetTerritory, genomeSize,
-                intervalToGc, minimumMappingQuality, minimumBaseQuality, clipOverlappingReads);
+                targetGc, minimumMappingQuality, minimumBaseQuality, clipOverlappingReads);
         if (this.probeSetName != null) {
             collector.setBaitSetName(probeSetName);
         }
@@ -340,6 +362,7 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
         final PerUnitTargetMetricCollector collector = (PerUnitTargetMetricCollector) makeChildCollector(null, null, null);
         if (perTargetCoverage != null) collector.setPerTargetOutput(perTargetCoverage);
         if (perBaseCoverage   != null) collector.setPerBaseOutput(perBaseCoverage);
+        collector.allReads = true;
 
         return collector;
     }
@@ -348,17 +371,47 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
      * Collect the Target Metrics for one unit of "accumulation" (i.e. for one sample, or for one library ...)
      */
     public class PerUnitTargetMetricCollector implements PerUnitMetricCollector<METRIC_TYPE, Integer, SAMRecord> {
-        private final Map<Interval, Double> intervalToGc;
+        private final double[] targetGc;
         private File perTargetOutput;
         private File perBaseOutput;
 
         final long[] baseQHistogramArray = new long[Byte.MAX_VALUE];
-        // A Map to accumulate per-bait-region (i.e. merge of overlapping targets) coverage
+        // Per-base coverage of the unique targets (i.e. merge of overlapping targets), at the packed offsets laid out
+        // by targetIndex, for the targets that have not been finished yet.
         // excludes bases with qualities lower than minimumBaseQuality (default 20)
-        private final Map<Interval, Coverage> highQualityCoverageByTarget;
+        private final TargetDepths highQualityDepths;
 
         // only excludes bases with quality 2. collected for theoretical set sensitivity
-        private final Map<Interval, Coverage> unfilteredCoverageByTarget;
+        private final TargetDepths unfilteredDepths;
+
+        // The number of reads with a high quality base on each target of targetIndex
+        private final long[] readCounts;
+
+        // Targets below this index have been finished: their coverage has been added to the summaries below and released
+        private int nextUnfinishedTarget = 0;
+        private final long[] highQualityCoverageHistogramArray = new long[coverageCap + 1];
+        private final long[] unfilteredDepthHistogramArray = new long[coverageCap + 1];
+        private final int[] targetBases = new int[TARGET_BASES_DEPTH.length];
+        private long totalCoverage = 0;
+        private long maxDepth = 0;
+        private int zeroCoverageTargets = 0;
+        private final long[] targetBasesByGc  = new long[GC_BINS];
+        private final long[] alignedBasesByGc = new long[GC_BINS];
+
+        // Summaries of each finished target for the per-target coverage file, allocated only if it is requested
+        private long[] targetTotals;
+        private int[] targetMinDepths;
+        private int[] targetMaxDepths;
+        private int[] targetZeroCoverageBases;
+
+        private PrintWriter perBaseWriter;
+
+        // True for the collector of the ALL_READS level, which reports totalReadsOverride if it is set
+        private boolean allReads = false;
+
+        // Each collector has its own cursors so that collectors do not share any mutable state
+        private final TargetIndex.Cursor targetCursor = targetIndex.newCursor();
+        private final TargetIndex.Cursor probeCursor = probeIndex.newCursor();
 
         private final TargetMetrics metrics = new TargetMetrics();
         private final int minimumBaseQuality;
@@ -369,10 +422,10 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
          * Constructor that parses the squashed reference to genome reference file and stores the
          * information in a map for later use.
          */
-        public PerUnitTargetMetricCollector(final String probeSetName, final Set<Interval> coverageTargets,
+        public PerUnitTargetMetricCollector(final String probeSetName,
                                             final String sample, final String library, final String readGroup,
                                             final long probeTerritory, final long targetTerritory, final long genomeSize,
-                                            final Map<Interval, Double> intervalToGc,
+                                            final double[] targetGc,
                                             final int minimumMappingQuality,
                                             final int minimumBaseQuality,
                                             final boolean clipOverlappingReads) {
@@ -385,17 +438,13 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
             metrics.TARGET_TERRITORY = targetTerritory;
             metrics.GENOME_SIZE      = genomeSize;
 
-            highQualityCoverageByTarget = new LinkedHashMap<>(coverageTargets.size() * 2, 0.5f);
-            unfilteredCoverageByTarget =  new LinkedHashMap<>(coverageTargets.size() * 2, 0.5f);
-
-            for (final Interval target : coverageTargets) {
-                highQualityCoverageByTarget.put(target, new Coverage(target, 0));
-                unfilteredCoverageByTarget.put(target, new Coverage(target, 0));
-            }
+            highQualityDepths = new TargetDepths(targetIndex);
+            unfilteredDepths = new TargetDepths(targetIndex);
+            readCounts = new long[targetIndex.size()];
 
             this.mapQFilter = new CountingMapQFilter(minimumMappingQuality);
             this.minimumBaseQuality = minimumBaseQuality;
-            this.intervalToGc = intervalToGc;
+            this.targetGc = targetGc;
             this.clipOverlappingReads = clipOverlappingReads;
         }
 
@@ -415,12 +464,25 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
         }
 
         /**
-         * Returns the accumulated coverage per target.  Note that while the returned Map is
-         * immutable, it is possible that the underlying Map will continue to be mutated if
-         * the map is retrieved prior to additional calls to {@link #acceptRecord(SAMRecord)}.
+         * Returns a copy of the coverage accumulated so far per target, in the order of the targets.  The returned
+         * Map is immutable and is not updated by further calls to {@link #acceptRecord(SAMRecord)}.  Not available
+         * once the coverage of any target has been released, i.e. after {@link #finish()} or, for coordinate-sorted
+         * input, once the input has moved past the first target.
          */
         public Map<Interval, Coverage> getCoverageByTarget() {
-            return Collections.unmodifiableMap(this.highQualityCoverageByTarget);
+            if (nextUnfinishedTarget > 0) {
+                throw new IllegalStateException("The coverage of targets has already been summarized and released.");
+            }
+            final Map<Interval, Coverage> coverageByTarget = new LinkedHashMap<>(targetIndex.size() * 2, 0.5f);
+            for (int t = 0; t < targetIndex.size(); t++) {
+                final Coverage coverage = new Coverage(targetIndex.getInterval(t), 0);
+                for (int i = 0; i < targetIndex.getLength(t); i++) {
+                    coverage.addBase(i, highQualityDepths.get(targetIndex.getSequenceIndex(t), targetIndex.getOffset(t) + i));
+                }
+                coverage.readCount = readCounts[t];
+                coverageByTarget.put(targetIndex.getInterval(t), coverage);
+            }
+            return Collections.unmodifiableMap(coverageByTarget);
         }
 
         /** Adds information about an individual SAMRecord to the statistics. */
@@ -478,10 +540,18 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
             ///////////////////////////////////////////////////////////////////
             if (record.getReadUnmappedFlag()) return;
 
-            // Prefetch the list of target and bait overlaps here as they're needed multiple times.
-            final Interval read = new Interval(record.getReferenceName(), record.getAlignmentStart(), record.getAlignmentEnd());
-            final Collection<Interval> targets = targetDetector.getOverlaps(read);
-            final Collection<Interval> probes  = probeDetector.getOverlaps(read);
+            // Prefetch the range of target and bait overlaps here as they're needed multiple times.
+            final int numTargets = targetCursor.findOverlaps(record.getReferenceName(), record.getAlignmentStart(), record.getAlignmentEnd());
+            final int numProbes  = probeCursor.findOverlaps(record.getReferenceName(), record.getAlignmentStart(), record.getAlignmentEnd());
+
+            // With coordinate-sorted input no later record can cover the targets ending before this one starts
+            if (coordinateSortedInput && targetCursor.firstNotBefore() >= 0) {
+                if (numTargets > 0 && targetCursor.first() < nextUnfinishedTarget) {
+                    throw new PicardException("Record " + record.getReadName() + " at " + record.getReferenceName() + ":" +
+                            record.getAlignmentStart() + " is out of coordinate order; the input must be coordinate sorted.");
+                }
+                finishTargetsBefore(targetCursor.firstNotBefore());
+            }
 
             // Calculate the values we need for HS_LIBRARY_SIZE
             if (!record.getSupplementaryAlignmentFlag() &&
@@ -489,7 +559,7 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
                     record.getFirstOfPairFlag() &&
                     !record.getReadUnmappedFlag() &&
                     !record.getMateUnmappedFlag() &&
-                    !probes.isEmpty()) {
+                    numProbes > 0) {
                 ++this.metrics.PF_SELECTED_PAIRS;
                 if (!record.getDuplicateReadFlag()) ++this.metrics.PF_SELECTED_UNIQUE_PAIRS;
             }
@@ -501,14 +571,13 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
                 final int mappedBases = basesAlignedInRecord;
                 int onBaitBases = 0;
 
-                if (!probes.isEmpty()) {
-                    for (final Interval bait : probes) {
+                if (numProbes > 0) {
+                    for (int bait = probeCursor.first(); bait < probeCursor.first() + numProbes; ++bait) {
                         for (final AlignmentBlock block : record.getAlignmentBlocks()) {
                             final int end = CoordMath.getEnd(block.getReferenceStart(), block.getLength());
-
-                            for (int pos = block.getReferenceStart(); pos <= end; ++pos) {
-                                if (pos >= bait.getStart() && pos <= bait.getEnd()) ++onBaitBases;
-                            }
+                            final int overlapStart = Math.max(block.getReferenceStart(), probeIndex.getStart(bait));
+                            final int overlapEnd = Math.min(end, probeIndex.getEnd(bait));
+                            if (overlapStart <= overlapEnd) onBaitBases += overlapEnd - overlapStart + 1;
                         }
                     }
 
@@ -546,8 +615,12 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
                 rec = record;
             }
 
-            // Find the target overlaps
-            final Set<Interval> coveredTargets = new HashSet<>();
+            // Find the target overlaps.  The targets are sorted and non-overlapping and the blocks are in reference order,
+            // so a single pointer walks through the targets overlapping the read, and a target already counted for this
+            // read can only be the one most recently counted.
+            final int lastTarget = targetCursor.first() + numTargets;
+            int target = targetCursor.first();
+            int lastCoveredTarget = -1;
             for (final AlignmentBlock block : rec.getAlignmentBlocks()) {
                 final int length = block.getLength();
                 final int refStart = block.getReferenceStart();
@@ -564,35 +637,34 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
                     }
 
                     boolean isOnTarget = false;
-                    for (final Interval target : targets) {
-                        if (refPos >= target.getStart() && refPos <= target.getEnd()) {
-                            final int targetOffset = refPos - target.getStart();
-
-                            // if the base quality exceeds the minimum threshold, then we update various metrics
-                            if (qual >= minimumBaseQuality) {
-                                ++metrics.ON_TARGET_BASES;
-                                if (mappedInPair) ++metrics.ON_TARGET_FROM_PAIR_BASES;
-                                final Coverage highQualityCoverage = highQualityCoverageByTarget.get(target);
-                                highQualityCoverage.addBase(targetOffset);
-                                if (!coveredTargets.contains(target)) {
-                                    highQualityCoverage.incrementReadCount();
-                                    coveredTargets.add(target);
-                                    isOnTarget = true;
-                                }
-
-                            } else {
-                                // the base quality is in the range (2, minimumBaseQuality). we exclude them from the high-quality coverage histogram
-                                this.metrics.PCT_EXC_BASEQ++;
+                    while (target < lastTarget && targetIndex.getEnd(target) < refPos) ++target;
+                    if (target < lastTarget && targetIndex.getStart(target) <= refPos) {
+                        final int sequence = targetIndex.getSequenceIndex(target);
+                        final int packedOffset = targetIndex.getOffset(target) + refPos - targetIndex.getStart(target);
+
+                        // if the base quality exceeds the minimum threshold, then we update various metrics
+                        if (qual >= minimumBaseQuality) {
+                            ++metrics.ON_TARGET_BASES;
+                            if (mappedInPair) ++metrics.ON_TARGET_FROM_PAIR_BASES;
+                            highQualityDepths.increment(sequence, packedOffset);
+                            if (target != lastCoveredTarget) {
+                                ++readCounts[target];
+                                lastCoveredTarget = target;
+                                isOnTarget = true;
                             }
 
-                            // even when the base quality is below minimumBaseQuality (but higher than 2), update the base quality and unfiltered coverage histogram for theoretical het sensitivity
-                            // we don't bother with the read count for unfiltered coverage histogram because we don't use it
-                            unfilteredCoverageByTarget.get(target).addBase(targetOffset);
+                        } else {
+                            // the base quality is in the range (2, minimumBaseQuality). we exclude them from the high-quality coverage histogram
+                            this.metrics.PCT_EXC_BASEQ++;
+                        }
 
-                            // we do not want to increment the base quality histogram for bases that will eventually get thrown out by the coverage cap
-                            if (unfilteredCoverageByTarget.get(target).getDepths()[targetOffset] <= coverageCap){
-                                baseQHistogramArray[qual]++;
-                            }
+                        // even when the base quality is below minimumBaseQuality (but higher than 2), update the base quality and unfiltered coverage histogram for theoretical het sensitivity
+                        // we don't bother with the read count for unfiltered coverage histogram because we don't use it
+                        final int unfilteredDepth = unfilteredDepths.increment(sequence, packedOffset);
+
+                        // we do not want to increment the base quality histogram for bases that will eventually get thrown out by the coverage cap
+                        if (unfilteredDepth <= coverageCap){
+                            baseQHistogramArray[qual]++;
                         }
                     }
 
@@ -623,54 +695,116 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
             metrics.PCT_EXC_OVERLAP        /= (double) metrics.PF_BASES_ALIGNED;
             metrics.PCT_EXC_OFF_TARGET     /= (double) metrics.PF_BASES_ALIGNED;
 
+            // Only the records near the targets and probes were accepted, so fractions of the whole input are unknown
+            if (allReads && isTotalReadsSet()) {
+                metrics.TOTAL_READS             = totalReadsOverride;
+                metrics.PCT_PF_READS            = Double.NaN;
+                metrics.PCT_PF_UQ_READS         = Double.NaN;
+                metrics.PCT_PF_UQ_READS_ALIGNED = Double.NaN;
+                metrics.PCT_SELECTED_BASES      = Double.NaN;
+                metrics.PCT_OFF_PROBE           = Double.NaN;
+                metrics.FOLD_ENRICHMENT         = Double.NaN;
+                metrics.PCT_EXC_OFF_TARGET      = Double.NaN;
+            }
+
+            finishTargetsBefore(targetIndex.size());
+            if (this.perBaseOutput != null) getPerBaseWriter().close();
+
             calculateTargetCoverageMetrics();
             calculateTheoreticalHetSensitivity();
             calculateGcMetrics();
-            emitPerBaseCoverageIfRequested();
         }
 
-        /** Calculates how much additional sequencing is needed to raise 80% of bases to the mean for the lane. */
-        private void calculateTargetCoverageMetrics() {
-            final long[] highQualityCoverageHistogramArray = new long[coverageCap+1];
-            int zeroCoverageTargets = 0;
-
-            // the number of bases we counted towards the depth histogram plus those that got thrown out by the coverage cap
-            long totalCoverage = 0;
-
-            // the maximum depth at any target base
-            long maxDepth = 0;
-
-            // The "how many target bases at at-least X" calculations.
-            // downstream code relies on this array being sorted in ascending order
-            final int[] targetBasesDepth = {0, 1, 2, 10, 20, 30, 40, 50, 100};
-
-            // counts for how many target bases are at at least X coverage,
-            // where X corresponds to the value at the same offset in targetBasesDepth
-            final int[] targetBases = new int[targetBasesDepth.length];
-
-            // for each target, count up the depth for each base and increment the depth histogram array
-            for (final Coverage c : this.highQualityCoverageByTarget.values()) {
-                if (!c.hasCoverage()) {
-                    zeroCoverageTargets++;
-                    highQualityCoverageHistogramArray[0] += c.interval.length();
-                    targetBases[0] += c.interval.length();
-                    continue;
+        /** Finishes the targets that have not been finished yet, up to but excluding the given target. */
+        private void finishTargetsBefore(final int target) {
+            while (nextUnfinishedTarget < target) {
+                finishTarget(nextUnfinishedTarget++);
+            }
+        }
+
+        /**
+         * Adds the coverage of a target to the depth histograms and the other summaries, writes it to the per-base
+         * coverage file if requested, and releases it.
+         */
+        private void finishTarget(final int t) {
+            final Interval interval = targetIndex.getInterval(t);
+            final int sequence = targetIndex.getSequenceIndex(t);
+            final int from = targetIndex.getOffset(t);
+            final int length = targetIndex.getLength(t);
+            final PrintWriter perBaseOut = (this.perBaseOutput == null) ? null : getPerBaseWriter();
+
+            long total = 0;
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            int zeroCoverageBases = 0;
+            for (int i = 0; i < length; i++) {
+                final int depth = highQualityDepths.get(sequence, from + i);
+                totalCoverage += depth;
+                highQualityCoverageHistogramArray[Math.min(depth, coverageCap)]++;
+                maxDepth = Math.max(maxDepth, depth);
+
+                // Add to the "how many target bases at at-least X" calculations.
+                for (int j = 0; j < TARGET_BASES_DEPTH.length; j++) {
+                    if (depth >= TARGET_BASES_DEPTH[j]) targetBases[j]++;
+                    else break; // NB: assumes that TARGET_BASES_DEPTH is sorted in ascending order
                 }
 
-                for (final int depth : c.getDepths()) {
-                    totalCoverage += depth;
-                    highQualityCoverageHistogramArray[Math.min(depth, coverageCap)]++;
-                    maxDepth = Math.max(maxDepth, depth);
+                total += (total < Long.MAX_VALUE - depth) ? depth : Long.MAX_VALUE - total;
+                if (depth == 0) zeroCoverageBases++;
+                if (depth < min) min = depth;
+                if (max < depth) max = depth;
+
+                // collect the unfiltered coverages (i.e. only quality 2 bases excluded) into a histogram array
+                unfilteredDepthHistogramArray[Math.min(unfilteredDepths.get(sequence, from + i), coverageCap)]++;
+
+                if (perBaseOut != null) {
+                    perBaseOut.print(interval.getContig());
+                    perBaseOut.print('\t');
+                    perBaseOut.print(interval.getStart() + i);
+                    perBaseOut.print('\t');
+                    perBaseOut.print(interval.getName());
+                    perBaseOut.print('\t');
+                    perBaseOut.print(depth);
+                    perBaseOut.println();
+                }
+            }
+            if (total == 0) zeroCoverageTargets++;
 
-                    // Add to the "how many target bases at at-least X" calculations.
-                    for (int i = 0; i < targetBasesDepth.length; i++) {
-                        if (depth >= targetBasesDepth[i]) targetBases[i]++;
-                        else break; // NB: assumes that targetBasesDepth is sorted in ascending order
-                    }
+            if (this.targetGc != null && length > 0) {
+                final int gc = (int) Math.round(this.targetGc[t] * 100);
+                targetBasesByGc[gc]  += length;
+                alignedBasesByGc[gc] += total;
+            }
+
+            if (this.perTargetOutput != null) {
+                if (targetTotals == null) {
+                    targetTotals = new long[targetIndex.size()];
+                    targetMinDepths = new int[targetIndex.size()];
+                    targetMaxDepths = new int[targetIndex.size()];
+                    targetZeroCoverageBases = new int[targetIndex.size()];
                 }
+                targetTotals[t] = total;
+                targetMinDepths[t] = min;
+                targetMaxDepths[t] = max;
+                targetZeroCoverageBases[t] = zeroCoverageBases;
             }
 
-            if (targetBases[0] !=  highQualityCoverageByTarget.keySet().stream().mapToInt(Interval::length).sum()) {
+            highQualityDepths.release(sequence, from + length);
+            unfilteredDepths.release(sequence, from + length);
+        }
+
+        /** Gets the writer for the per base coverage file, opening it and writing the header the first time. */
+        private PrintWriter getPerBaseWriter() {
+            if (this.perBaseWriter == null) {
+                this.perBaseWriter = new PrintWriter(IOUtil.openFileForBufferedWriting(this.perBaseOutput));
+                this.perBaseWriter.println("chrom\tpos\ttarget\tcoverage");
+            }
+            return this.perBaseWriter;
+        }
+
+        /** Calculates how much additional sequencing is needed to raise 80% of bases to the mean for the lane. */
+        private void calculateTargetCoverageMetrics() {
+            if (targetBases[0] !=  targetIndex.getIntervals().stream().mapToInt(Interval::length).sum()) {
                 throw new PicardException("the number of target bases with at least 0x coverage does not equal the number of target bases");
             }
 
@@ -700,20 +834,6 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
         }
 
         private void calculateTheoreticalHetSensitivity(){
-            final long[] unfilteredDepthHistogramArray = new long[coverageCap + 1];
-
-            // collect the unfiltered coverages (i.e. only quality 2 bases excluded) for all targets into a histogram array
-            for (final Coverage c : this.unfilteredCoverageByTarget.values()) {
-                if (!c.hasCoverage()) {
-                    unfilteredDepthHistogramArray[0] += c.interval.length();
-                    continue;
-                }
-
-                for (final int depth : c.getDepths()) {
-                    unfilteredDepthHistogramArray[Math.min(depth, coverageCap)]++;
-                }
-            }
-
             if (LongStream.of(baseQHistogramArray).sum() != LongStream.rangeClosed(0, coverageCap).map(i -> i * unfilteredDepthHistogramArray[(int)i]).sum()) {
                 throw new PicardException("numbers of bases in the base quality histogram and the coverage histogram are not equal");
             }
@@ -734,81 +854,34 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
 
         }
 
-        /** Emits a file with per base coverage if an output file has been set. */
-        private void emitPerBaseCoverageIfRequested() {
-            if (this.perBaseOutput == null) return;
-
-            final PrintWriter out = new PrintWriter(IOUtil.openFileForBufferedWriting(this.perBaseOutput));
-            out.println("chrom\tpos\ttarget\tcoverage");
-            for (final Map.Entry<Interval,Coverage> entry : this.highQualityCoverageByTarget.entrySet()) {
-                final Interval interval = entry.getKey();
-                final String chrom = interval.getContig();
-                final int firstBase = interval.getStart();
-
-                final int[] cov = entry.getValue().getDepths();
-                for (int i = 0; i < cov.length; ++i) {
-                    out.print(chrom);
-                    out.print('\t');
-                    out.print(firstBase + i);
-                    out.print('\t');
-                    out.print(interval.getName());
-                    out.print('\t');
-                    out.print(cov[i]);
-                    out.println();
-                }
-            }
-
-            out.close();
-        }
-
         private void calculateGcMetrics() {
-            if (this.intervalToGc != null) {
+            if (this.targetGc != null) {
                 log.info("Calculating GC metrics");
 
-                // Setup the output file if we're outputting per-target coverage
-                final FormatUtil fmt = new FormatUtil();
-                final PrintWriter out;
-                try {
-                    if (perTargetOutput != null) {
+                // Write the per-target coverage from the summaries of the targets
+                if (perTargetOutput != null) {
+                    final FormatUtil fmt = new FormatUtil();
+                    final PrintWriter out;
+                    try {
                         out = new PrintWriter(perTargetOutput);
-                        out.println("chrom\tstart\tend\tlength\tname\t%gc\tmean_coverage\tnormalized_coverage\tmin_normalized_coverage\tmax_normalized_coverage\tmin_coverage\tmax_coverage\tpct_0x\tread_count");
-                    }
-                    else {
-                        out = null;
                     }
-                }
-                catch (final IOException ioe) { throw new RuntimeIOException(ioe); }
-
-                final int bins = 101;
-                final long[] targetBasesByGc  = new long[bins];
-                final long[] alignedBasesByGc = new long[bins];
-
-                for (final Map.Entry<Interval,Coverage> entry : this.highQualityCoverageByTarget.entrySet()) {
-                    final Interval interval = entry.getKey();
-                    final Coverage cov = entry.getValue();
+                    catch (final IOException ioe) { throw new RuntimeIOException(ioe); }
+                    out.println("chrom\tstart\tend\tlength\tname\t%gc\tmean_coverage\tnormalized_coverage\tmin_normalized_coverage\tmax_normalized_coverage\tmin_coverage\tmax_coverage\tpct_0x\tread_count");
 
-                    if (interval.length() <= 0) {
-                        log.warn("interval of length zero found: " + interval + " skipped.");
-                        continue;
-                    }
+                    for (int t = 0; t < targetIndex.size(); t++) {
+                        final Interval interval = targetIndex.getInterval(t);
 
-                    final double gcDouble = this.intervalToGc.get(interval);
-                    final int gc = (int) Math.round(gcDouble * 100);
-
-                    targetBasesByGc[gc]  += interval.length();
-                    alignedBasesByGc[gc] += cov.getTotal();
-
-                    if (out != null) {
-                        final double coverage = cov.getTotal() / (double) interval.length();
-                        double min = Integer.MAX_VALUE;
-                        double max = Integer.MIN_VALUE;
-                        double targetBasesAt0x = 0.0;
-                        for (final int d : cov.getDepths()) {
-                            if (0 == d) targetBasesAt0x++;
-                            if (d < min) min = d;
-                            if (max < d) max = d;
+                        if (interval.length() <= 0) {
+                            log.warn("interval of length zero found: " + interval + " skipped.");
+                            continue;
                         }
 
+                        final double gcDouble = this.targetGc[t];
+                        final double coverage = targetTotals[t] / (double) interval.length();
+                        final double min = targetMinDepths[t];
+                        final double max = targetMaxDepths[t];
+                        final double targetBasesAt0x = targetZeroCoverageBases[t];
+
                         out.println(interval.getContig() + "\t" +
                                 interval.getStart() + "\t" +
                                 interval.getEnd() + "\t" +
@@ -822,12 +895,12 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
                                 fmt.format(min) + "\t" +
                                 fmt.format(max) + "\t" +
                                 fmt.format(targetBasesAt0x / interval.length()) + "\t" +
-                                fmt.format(cov.readCount)
+                                fmt.format(readCounts[t])
                         );
                     }
-                }
 
-                if (out != null) out.close();
+                    out.close();
+                }
 
                 // Total things up
                 long totalTarget = 0;
@@ -853,7 +926,6 @@ public abstract class TargetMetricsCollector<METRIC_TYPE extends MultilevelMetri
             }
         }
 
-
         @Override
         public void addMetricsToFile(final MetricsFile<METRIC_TYPE, Integer> hsMetricsComparableMetricsFile) {
             hsMetricsComparableMetricsFile.addMetric(convertMetric(this.metrics));
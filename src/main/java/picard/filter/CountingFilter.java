@@ -43,6 +43,12 @@ public abstract class CountingFilter implements SamRecordFilter {
     /** Gets the number of bases that have been filtered out thus far. */
     public long getFilteredBases() { return this.filteredBases; }
 
+    /** Adds the counts of another filter, e.g. one that was applied to a disjoint set of records, to this one. */
+    public void merge(final CountingFilter other) {
+        this.filteredRecords += other.filteredRecords;
+        this.filteredBases += other.filteredBases;
+    }
+
     @Override
     public final boolean filterOut(final SAMRecord record) {
         final boolean filteredOut = reallyFilterOut(record);
@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.illumina;
+
+import htsjdk.samtools.metrics.MetricsFile;
+import htsjdk.samtools.util.StringUtil;
+import picard.illumina.ExtractIlluminaBarcodes.BarcodeMetric;
+import picard.illumina.ExtractIlluminaBarcodes.PerTileBarcodeExtractor;
+import picard.illumina.parser.ClusterData;
+import picard.illumina.parser.ReadDescriptor;
+import picard.illumina.parser.ReadStructure;
+import picard.illumina.parser.ReadType;
+import picard.util.IlluminaUtil;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Matches the sample barcode reads of clusters to a set of expected barcodes as they are converted, using the same
+ * matching as {@link ExtractIlluminaBarcodes}, so that the basecalls converters can demultiplex without the
+ * _barcode.txt files written by that program.  Each tile is matched by its own {@link TileMatcher}, whose metrics
+ * are added to the metrics for the lane when the tile is done.
+ */
+public class BarcodeExtractor {
+    private final Map<String, BarcodeMetric> barcodeToMetrics;
+    private final BarcodeMetric noMatchMetric;
+    private final BarcodeIndex barcodeIndex;
+    private final int[] outputBarcodeIndices;
+    private final int maxNoCalls, maxMismatches, minMismatchDelta, minimumBaseQuality;
+
+    /**
+     * @param barcodeToMetrics   Map from barcode, without delimiters, to a metric for the barcode.  Accumulated counts
+     *                           are added to these metrics.
+     * @param readStructure      The read structure of the run, used to find the sample barcode reads of each cluster.
+     * @param maxNoCalls         As ExtractIlluminaBarcodes.MAX_NO_CALLS.
+     * @param maxMismatches      As ExtractIlluminaBarcodes.MAX_MISMATCHES.
+     * @param minMismatchDelta   As ExtractIlluminaBarcodes.MIN_MISMATCH_DELTA.
+     * @param minimumBaseQuality As ExtractIlluminaBarcodes.MINIMUM_BASE_QUALITY.
+     */
+    public BarcodeExtractor(final Map<String, BarcodeMetric> barcodeToMetrics,
+                            final ReadStructure readStructure,
+                            final int maxNoCalls,
+                            final int maxMismatches,
+                            final int minMismatchDelta,
+                            final int minimumBaseQuality) {
+        this.barcodeToMetrics = barcodeToMetrics;
+        this.maxNoCalls = maxNoCalls;
+        this.maxMismatches = maxMismatches;
+        this.minMismatchDelta = minMismatchDelta;
+        this.minimumBaseQuality = minimumBaseQuality;
+        this.barcodeIndex = BarcodeIndex.create(barcodeToMetrics.values(), maxMismatches);
+
+        final String[] noMatchBarcode = new String[readStructure.sampleBarcodes.length()];
+        int index = 0;
+        for (final ReadDescriptor d : readStructure.descriptors) {
+            if (d.type == ReadType.Barcode) {
+                noMatchBarcode[index++] = StringUtil.repeatCharNTimes('N', d.length);
+            }
+        }
+        this.noMatchMetric = new BarcodeMetric(null, null, IlluminaUtil.barcodeSeqsToString(noMatchBarcode), noMatchBarcode);
+
+        // Skips are not in the clusters produced by the data providers, so find where each sample barcode read
+        // is among the non-skip reads.
+        final int[] nonSkipIndices = readStructure.nonSkips.getIndices();
+        final int[] sampleBarcodeIndices = readStructure.sampleBarcodes.getIndices();
+        this.outputBarcodeIndices = new int[sampleBarcodeIndices.length];
+        for (int i = 0; i < sampleBarcodeIndices.length; i++) {
+            int outputIndex = 0;
+            while (nonSkipIndices[outputIndex] != sampleBarcodeIndices[i]) ++outputIndex;
+            outputBarcodeIndices[i] = outputIndex;
+        }
+    }
+
+    /**
+     * Returns a matcher for the clusters of one tile.  A matcher must only be used by one thread at a time.
+     */
+    public TileMatcher newTileMatcher() {
+        return new TileMatcher();
+    }
+
+    /**
+     * Adds the counts accumulated by a matcher to the metrics for the lane.
+     */
+    public synchronized void addTileMetrics(final TileMatcher matcher) {
+        for (final Map.Entry<String, BarcodeMetric> entry : barcodeToMetrics.entrySet()) {
+            entry.getValue().merge(matcher.metrics.get(entry.getKey()));
+        }
+        noMatchMetric.merge(matcher.noMatch);
+    }
+
+    /**
+     * Finishes the metrics of all the tiles that have been added and adds them to the given file, followed by the
+     * metric for reads that matched no barcode.
+     */
+    public synchronized void addMetricsTo(final MetricsFile<BarcodeMetric, ?> metricsFile) {
+        ExtractIlluminaBarcodes.finalizeMetrics(barcodeToMetrics, noMatchMetric);
+        for (final BarcodeMetric barcodeMetric : barcodeToMetrics.values()) {
+            metricsFile.addMetric(barcodeMetric);
+        }
+        metricsFile.addMetric(noMatchMetric);
+    }
+
+    /**
+     * Matches clusters and accumulates metrics for a single tile.
+     */
+    public class TileMatcher {
+        private final Map<String, BarcodeMetric> metrics = new LinkedHashMap<>(barcodeToMetrics.size());
+        private final BarcodeMetric noMatch = BarcodeMetric.copy(noMatchMetric);
+        private final BarcodeMetric[] indexedMetrics;
+        private final BarcodeIndex.Search barcodeSearch = barcodeIndex == null ? null : barcodeIndex.newSearch();
+        private final byte[][] barcodeSubsequences = new byte[outputBarcodeIndices.length][];
+        private final byte[][] qualityScores = minimumBaseQuality > 0 ? new byte[outputBarcodeIndices.length][] : null;
+
+        private TileMatcher() {
+            for (final Map.Entry<String, BarcodeMetric> entry : barcodeToMetrics.entrySet()) {
+                metrics.put(entry.getKey(), BarcodeMetric.copy(entry.getValue()));
+            }
+            indexedMetrics = metrics.values().toArray(new BarcodeMetric[metrics.size()]);
+        }
+
+        /**
+         * Finds the barcode matching the sample barcode reads of the cluster, counts it, and sets it as the cluster's
+         * matched barcode.
+         *
+         * @return the matched barcode without delimiters, or null if the cluster matched no barcode
+         */
+        public String matchBarcode(final ClusterData cluster) {
+            for (int i = 0; i < outputBarcodeIndices.length; i++) {
+                barcodeSubsequences[i] = cluster.getRead(outputBarcodeIndices[i]).getBases();
+                if (qualityScores != null) qualityScores[i] = cluster.getRead(outputBarcodeIndices[i]).getQualities();
+            }
+            final PerTileBarcodeExtractor.BarcodeMatch match = PerTileBarcodeExtractor.findBestBarcodeAndUpdateMetrics(
+                    barcodeSubsequences, qualityScores, cluster.isPf(), metrics, noMatch, maxNoCalls, maxMismatches,
+                    minMismatchDelta, minimumBaseQuality, barcodeSearch, indexedMetrics);
+            final String barcode = match.isMatched() ? match.getBarcode() : null;
+            cluster.setMatchedBarcode(barcode);
+            return barcode;
+        }
+    }
+}
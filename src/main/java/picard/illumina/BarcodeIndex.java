@@ -0,0 +1,284 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.illumina;
+
+import picard.illumina.ExtractIlluminaBarcodes.BarcodeMetric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An index of a set of expected barcodes that finds the best and second best barcodes for a read without comparing the
+ * read to every barcode, giving exactly the results of the linear scan in
+ * {@link ExtractIlluminaBarcodes.PerTileBarcodeExtractor#findBestBarcodeAndUpdateMetrics}.
+ *
+ * The barcodes are packed two bits per base into a long, as {@link PackedBarcode}s, and held in a hash, which is
+ * probed with the read and every sequence within searchRadius mismatches of it.  When a single barcode is found, the second best is found among its
+ * nearest other barcodes, which are precomputed: a barcode c is at least d(b, c) - d(read, b) mismatches from the read,
+ * so only the barcodes up to 2 * searchRadius further from b than its nearest one can be second best.
+ *
+ * The hash is an open-addressed table of the packed barcodes, so probing it neither boxes the probed sequence nor
+ * allocates.  Reads are looked up with a {@link Search}, which holds the results and is reused from read to read by
+ * the single thread that owns it.
+ *
+ * A read can only be looked up when it has the same length as the barcodes, has no no-calls and no base below the
+ * minimum quality; otherwise, or when no barcode is within searchRadius, {@link Search#find} returns false and the
+ * caller must fall back to the scan.
+ */
+public class BarcodeIndex {
+    /** The maximum total number of bases in the barcodes of a read that can be packed into a long. */
+    static final int MAX_BARCODE_BASES = 32;
+
+    /** The largest search radius, beyond which probing every neighbour of the read costs more than it saves. */
+    static final int MAX_SEARCH_RADIUS = 2;
+
+    /** The first of the barcodes, whose segment lengths all the barcodes and the reads looked up share. */
+    private final PackedBarcode firstBarcode;
+    private final int totalLength;
+    private final int searchRadius;
+
+    /** The packed barcodes, in the iteration order of the metrics. */
+    private final long[] packedBarcodes;
+    /** The open-addressed hash of the packed barcodes: the barcode in each slot, and one more than its index in packedBarcodes, or 0 if the slot is empty. */
+    private final long[] tableBarcodes;
+    private final int[] tableIndices;
+    private final int tableShift;
+    /** For each barcode, the other barcodes near enough to it to be second best, by increasing distance. */
+    private final int[][] nearestBarcodes;
+    /** The distances from each barcode to those in nearestBarcodes. */
+    private final int[][] nearestDistances;
+    /** For each barcode, one more than the largest distance in nearestDistances; all other barcodes are at least this far. */
+    private final int[] distanceBeyondNearest;
+
+    private BarcodeIndex(final List<PackedBarcode> barcodes, final int searchRadius) {
+        this.firstBarcode = barcodes.get(0);
+        this.totalLength = this.firstBarcode.length();
+        this.searchRadius = searchRadius;
+
+        final int numBarcodes = barcodes.size();
+        this.packedBarcodes = new long[numBarcodes];
+        // At most a quarter full, so that the many probes that miss end quickly
+        final int tableBits = 64 - Long.numberOfLeadingZeros(4L * numBarcodes - 1);
+        this.tableShift = 64 - tableBits;
+        this.tableBarcodes = new long[1 << tableBits];
+        this.tableIndices = new int[1 << tableBits];
+        final int mask = this.tableIndices.length - 1;
+        for (int i = 0; i < numBarcodes; ++i) {
+            this.packedBarcodes[i] = barcodes.get(i).getBases(0);
+            int slot = slot(this.packedBarcodes[i]);
+            while (this.tableIndices[slot] != 0) slot = (slot + 1) & mask;
+            this.tableBarcodes[slot] = this.packedBarcodes[i];
+            this.tableIndices[slot] = i + 1;
+        }
+
+        this.nearestBarcodes = new int[numBarcodes][];
+        this.nearestDistances = new int[numBarcodes][];
+        this.distanceBeyondNearest = new int[numBarcodes];
+        final int[] distances = new int[numBarcodes];
+        for (int i = 0; i < numBarcodes; ++i) {
+            int nearest = Integer.MAX_VALUE;
+            for (int j = 0; j < numBarcodes; ++j) {
+                if (i == j) continue;
+                distances[j] = distance(this.packedBarcodes[i], this.packedBarcodes[j]);
+                nearest = Math.min(nearest, distances[j]);
+            }
+            final int maxDistance = nearest + 2 * searchRadius;
+
+            final List<Integer> near = new ArrayList<>();
+            for (int j = 0; j < numBarcodes; ++j) {
+                if (i != j && distances[j] <= maxDistance) near.add(j);
+            }
+            near.sort((lhs, rhs) -> Integer.compare(distances[lhs], distances[rhs]));
+            this.nearestBarcodes[i] = near.stream().mapToInt(Integer::intValue).toArray();
+            this.nearestDistances[i] = near.stream().mapToInt(j -> distances[j]).toArray();
+            this.distanceBeyondNearest[i] = maxDistance + 1;
+        }
+    }
+
+    /**
+     * Creates an index of the barcodes of the given metrics, in their iteration order, if looking reads up in it is
+     * faster than comparing them to every barcode.
+     *
+     * @param maxMismatches the maximum number of mismatches for a read to match a barcode; reads are looked up with
+     *                      this many mismatches, but no fewer than 1 and no more than {@value #MAX_SEARCH_RADIUS}
+     * @return the index, or null if the barcodes cannot be indexed: there are fewer than two of them, they differ in
+     * length, are longer than {@value #MAX_BARCODE_BASES} bases in total, have bases other than A, C, G and T, or are
+     * the same but for case; or null if there are fewer barcodes than sequences to probe per read, in which case the
+     * scan is faster
+     */
+    public static BarcodeIndex create(final Collection<BarcodeMetric> metrics, final int maxMismatches) {
+        return create(metrics, maxMismatches, true);
+    }
+
+    /** As {@link #create(Collection, int)}, but indexes the barcodes even if the scan would be faster. */
+    static BarcodeIndex createEvenIfSlower(final Collection<BarcodeMetric> metrics, final int maxMismatches) {
+        return create(metrics, maxMismatches, false);
+    }
+
+    private static BarcodeIndex create(final Collection<BarcodeMetric> metrics, final int maxMismatches, final boolean onlyIfFaster) {
+        if (metrics.size() < 2) return null;
+
+        final List<PackedBarcode> barcodes = new ArrayList<>(metrics.size());
+        final Set<Long> packed = new HashSet<>();
+        for (final BarcodeMetric metric : metrics) {
+            final PackedBarcode barcode = metric.packedBarcode;
+            if (barcode == null || barcode.length() > MAX_BARCODE_BASES) return null;
+            if (!barcodes.isEmpty() && !barcodes.get(0).hasSameLengths(barcode)) return null;
+            // the same barcode in different case would be found once, but counted twice by the scan
+            if (!packed.add(barcode.getBases(0))) return null;
+            barcodes.add(barcode);
+        }
+
+        final int searchRadius = Math.max(1, Math.min(maxMismatches, MAX_SEARCH_RADIUS));
+        if (onlyIfFaster && barcodes.size() < countProbes(barcodes.get(0).length(), searchRadius)) return null;
+        return new BarcodeIndex(barcodes, searchRadius);
+    }
+
+    /**
+     * Returns the number of sequences probed to look up a read of the given length: the read, and every sequence within
+     * searchRadius mismatches of it.  Each probe costs about as much as comparing the read to one barcode.
+     */
+    static long countProbes(final int length, final int searchRadius) {
+        long probes = 1 + 3L * length;
+        if (searchRadius > 1) probes += 9L * length * (length - 1) / 2;
+        return probes;
+    }
+
+    /** Returns a new search of this index, for the use of a single thread. */
+    public Search newSearch() {
+        return new Search();
+    }
+
+    /** Returns the index into packedBarcodes of the given sequence, or -1 if it is not a barcode. */
+    private int indexOf(final long sequence) {
+        final int mask = this.tableIndices.length - 1;
+        for (int slot = slot(sequence); this.tableIndices[slot] != 0; slot = (slot + 1) & mask) {
+            if (this.tableBarcodes[slot] == sequence) return this.tableIndices[slot] - 1;
+        }
+        return -1;
+    }
+
+    private int slot(final long sequence) {
+        return (int) ((sequence * 0x9E3779B97F4A7C15L) >>> this.tableShift);
+    }
+
+    /**
+     * Looks reads up in the index, and holds the best and second best barcodes found for the last of them, the earliest
+     * first on ties as in the scan.  A search is reused from read to read, so it must not be shared between threads.
+     */
+    public final class Search {
+        private long read;
+        private int best;
+        private int bestDistance;
+        private int secondBestDistance;
+        private int numFound;
+
+        private Search() {
+        }
+
+        /**
+         * Finds the best and second best barcodes for the read, if the read can be looked up and at least one barcode
+         * is within the search radius.
+         *
+         * @param packedRead the barcode reads of the cluster, packed with their qualities
+         * @return true on success, when {@link #getBest}, {@link #getBestDistance} and {@link #getSecondBestDistance}
+         * hold the results; false if the caller must compare the read to every barcode
+         */
+        public boolean find(final PackedBarcode packedRead) {
+            if (!firstBarcode.hasSameLengths(packedRead) || packedRead.hasMaskedBases()) return false;
+            this.read = packedRead.getBases(0);
+            this.best = -1;
+            this.bestDistance = Integer.MAX_VALUE;
+            this.secondBestDistance = Integer.MAX_VALUE;
+            this.numFound = 0;
+
+            // Probe the hash with the read and every sequence within the search radius of it
+            probe(read);
+            for (int p = 0; p < totalLength; ++p) {
+                for (long x = 1; x <= 3; ++x) {
+                    final long oneMismatch = read ^ (x << (2 * p));
+                    probe(oneMismatch);
+                    if (searchRadius > 1) {
+                        for (int q = p + 1; q < totalLength; ++q) {
+                            for (long y = 1; y <= 3; ++y) {
+                                probe(oneMismatch ^ (y << (2 * q)));
+                            }
+                        }
+                    }
+                }
+            }
+            if (numFound == 0) return false;
+
+            if (numFound == 1) {
+                // Every other barcode is further than the search radius; look for the second best near the best
+                final int[] nearest = nearestBarcodes[best];
+                final int[] nearestDistance = nearestDistances[best];
+                for (int k = 0; k < nearest.length && nearestDistance[k] - bestDistance < secondBestDistance; ++k) {
+                    secondBestDistance = Math.min(secondBestDistance, distance(read, packedBarcodes[nearest[k]]));
+                }
+                // The nearest other barcode is in the list, so this only guards against a bug
+                if (distanceBeyondNearest[best] - bestDistance < secondBestDistance) return false;
+            }
+            return true;
+        }
+
+        /** The index of the best barcode in the iteration order of the metrics. */
+        public int getBest() {
+            return best;
+        }
+
+        /** The number of mismatches to the best barcode. */
+        public int getBestDistance() {
+            return bestDistance;
+        }
+
+        /** The number of mismatches to the second best barcode. */
+        public int getSecondBestDistance() {
+            return secondBestDistance;
+        }
+
+        private void probe(final long sequence) {
+            final int index = indexOf(sequence);
+            if (index < 0) return;
+
+            ++numFound;
+            final int d = distance(read, sequence);
+            if (d < bestDistance || (d == bestDistance && index < best)) {
+                secondBestDistance = bestDistance;
+                bestDistance = d;
+                best = index;
+            } else if (d < secondBestDistance) {
+                secondBestDistance = d;
+            }
+        }
+    }
+
+    private static int distance(final long lhs, final long rhs) {
+        return PackedBarcode.countDifferences(lhs, rhs);
+    }
+}
@@ -28,6 +28,7 @@ abstract class BasecallsConverter<CLUSTER_OUTPUT_RECORD> {
     final ProgressLogger writeProgressLogger = new ProgressLogger(log, 1000000, "Write");
     int numThreads;
     ClusterDataConverter<CLUSTER_OUTPUT_RECORD> converter = null;
+    final BarcodeExtractor barcodeExtractor;
 
     protected final BclQualityEvaluationStrategy bclQualityEvaluationStrategy;
     protected List<Integer> tiles;
@@ -45,6 +46,8 @@ abstract class BasecallsConverter<CLUSTER_OUTPUT_RECORD> {
      * @param codecPrototype           For spilling output records to disk.
      * @param outputRecordClass        Inconveniently needed to create SortingCollections.
      * @param ignoreUnexpectedBarcodes If true, will ignore reads whose called barcode is not found in barcodeRecordWriterMap,
+     * @param barcodeExtractor         If non-null, matches the sample barcodes of each cluster as it is converted,
+     *                                 instead of reading the matched barcodes from _barcode.txt files.
      */
     BasecallsConverter(final Map<String, ? extends ConvertedClusterDataWriter<CLUSTER_OUTPUT_RECORD>> barcodeRecordWriterMap,
                        final int maxReadsInRamPerTile,
@@ -56,7 +59,8 @@ abstract class BasecallsConverter<CLUSTER_OUTPUT_RECORD> {
                        final BclQualityEvaluationStrategy bclQualityEvaluationStrategy,
                        final Class<CLUSTER_OUTPUT_RECORD> outputRecordClass,
                        final int numProcessors,
-                       final IlluminaDataProviderFactory factory) {
+                       final IlluminaDataProviderFactory factory,
+                       final BarcodeExtractor barcodeExtractor) {
 
         this.barcodeRecordWriterMap = barcodeRecordWriterMap;
         this.maxReadsInRamPerTile = maxReadsInRamPerTile;
@@ -68,6 +72,7 @@ abstract class BasecallsConverter<CLUSTER_OUTPUT_RECORD> {
         this.bclQualityEvaluationStrategy = bclQualityEvaluationStrategy;
         this.outputRecordClass = outputRecordClass;
         this.factory = factory;
+        this.barcodeExtractor = barcodeExtractor;
 
 
         if (numProcessors == 0) {
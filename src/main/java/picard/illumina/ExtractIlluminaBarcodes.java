@@ -234,6 +234,8 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
             numProcessors = NUM_PROCESSORS;
         }
 
+        final BarcodeIndex barcodeIndex = BarcodeIndex.create(barcodeToMetrics.values(), MAX_MISMATCHES);
+
         LOG.info("Processing with " + numProcessors + " PerTileBarcodeExtractor(s).");
         final ThreadPoolExecutor pool = new ThreadPoolExecutorWithExceptions(numProcessors);
 
@@ -285,7 +287,8 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
                         MIN_MISMATCH_DELTA,
                         cbcls,
                         locs,
-                        filterFiles
+                        filterFiles,
+                        barcodeIndex
                 );
                 extractors.add(extractor);
             }
@@ -301,7 +304,8 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
                         MINIMUM_BASE_QUALITY,
                         MAX_NO_CALLS,
                         MAX_MISMATCHES,
-                        MIN_MISMATCH_DELTA
+                        MIN_MISMATCH_DELTA,
+                        barcodeIndex
                 );
                 extractors.add(extractor);
             }
@@ -597,6 +601,9 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
 
         protected byte[][] barcodeBytes;
 
+        /** The barcode packed for fast comparison, or null if it cannot be packed. */
+        protected PackedBarcode packedBarcode;
+
         public BarcodeMetric(final String barcodeName, final String libraryName,
                              final String barcodeDisplay, final String[] barcodeSeqs) {
 
@@ -608,6 +615,7 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
             for (int i = 0; i < barcodeSeqs.length; i++) {
                 barcodeBytes[i] = htsjdk.samtools.util.StringUtil.stringToBytes(barcodeSeqs[i]);
             }
+            this.packedBarcode = PackedBarcode.ofBarcode(barcodeBytes);
         }
 
         /**
@@ -627,6 +635,7 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
             result.BARCODE_NAME = metric.BARCODE_NAME;
             result.LIBRARY_NAME = metric.LIBRARY_NAME;
             result.barcodeBytes = metric.barcodeBytes;
+            result.packedBarcode = metric.packedBarcode;
             return result;
         }
 
@@ -654,6 +663,8 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
         private final File barcodeFile;
         private final Map<String, BarcodeMetric> metrics;
         private final BarcodeMetric noMatch;
+        private final BarcodeIndex.Search barcodeSearch;
+        private final BarcodeMetric[] indexedMetrics;
         private Exception exception = null;
         private final boolean usingQualityScores;
         private BaseIlluminaDataProvider provider = null;
@@ -677,6 +688,28 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
                 final List<File> cbcls,
                 final List<AbstractIlluminaPositionFileReader.PositionInfo> locs,
                 final File[] filterFiles) {
+            this(tile, barcodeFile, barcodeToMetrics, noMatchMetric, factory, minimumBaseQuality, maxNoCalls,
+                    maxMismatches, minMismatchDelta, cbcls, locs, filterFiles, null);
+        }
+
+        /**
+         * As the constructor above, with an index of the barcodes of barcodeToMetrics, created with
+         * {@link BarcodeIndex#create}, or null to compare each read to every barcode.
+         */
+        public PerTileBarcodeExtractor(
+                final int tile,
+                final File barcodeFile,
+                final Map<String, BarcodeMetric> barcodeToMetrics,
+                final BarcodeMetric noMatchMetric,
+                final IlluminaDataProviderFactory factory,
+                final int minimumBaseQuality,
+                final int maxNoCalls,
+                final int maxMismatches,
+                final int minMismatchDelta,
+                final List<File> cbcls,
+                final List<AbstractIlluminaPositionFileReader.PositionInfo> locs,
+                final File[] filterFiles,
+                final BarcodeIndex barcodeIndex) {
             this.tile = tile;
             this.barcodeFile = barcodeFile;
             this.usingQualityScores = minimumBaseQuality > 0;
@@ -689,6 +722,8 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
                 this.metrics.put(key, BarcodeMetric.copy(barcodeToMetrics.get(key)));
             }
             this.noMatch = BarcodeMetric.copy(noMatchMetric);
+            this.barcodeSearch = barcodeIndex == null ? null : barcodeIndex.newSearch();
+            this.indexedMetrics = this.metrics.values().toArray(new BarcodeMetric[this.metrics.size()]);
             this.cbcls = cbcls;
             this.locs = locs;
             this.factory = factory;
@@ -732,6 +767,26 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
                 final int maxNoCalls,
                 final int maxMismatches,
                 final int minMismatchDelta
+        ) {
+            this(tile, barcodeFile, barcodeToMetrics, noMatchMetric, factory, minimumBaseQuality, maxNoCalls,
+                    maxMismatches, minMismatchDelta, (BarcodeIndex) null);
+        }
+
+        /**
+         * As the constructor above, with an index of the barcodes of barcodeToMetrics, created with
+         * {@link BarcodeIndex#create}, or null to compare each read to every barcode.
+         */
+        public PerTileBarcodeExtractor(
+                final int tile,
+                final File barcodeFile,
+                final Map<String, BarcodeMetric> barcodeToMetrics,
+                final BarcodeMetric noMatchMetric,
+                final IlluminaDataProviderFactory factory,
+                final int minimumBaseQuality,
+                final int maxNoCalls,
+                final int maxMismatches,
+                final int minMismatchDelta,
+                final BarcodeIndex barcodeIndex
         ) {
             this.tile = tile;
             this.barcodeFile = barcodeFile;
@@ -745,6 +800,8 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
                 this.metrics.put(key, BarcodeMetric.copy(barcodeToMetrics.get(key)));
             }
             this.noMatch = BarcodeMetric.copy(noMatchMetric);
+            this.barcodeSearch = barcodeIndex == null ? null : barcodeIndex.newSearch();
+            this.indexedMetrics = this.metrics.values().toArray(new BarcodeMetric[this.metrics.size()]);
             this.provider = factory.makeDataProvider(Arrays.asList(tile));
             this.outputReadStructure = factory.getOutputReadStructure();
 
@@ -795,7 +852,7 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
                     final boolean passingFilter = cluster.isPf();
                     final BarcodeMatch match = findBestBarcodeAndUpdateMetrics(barcodeSubsequences, qualityScores,
                             passingFilter, metrics, noMatch, maxNoCalls, maxMismatches,
-                            minMismatchDelta, minimumBaseQuality);
+                            minMismatchDelta, minimumBaseQuality, barcodeSearch, indexedMetrics);
 
                     final String yOrN = (match.matched ? "Y" : "N");
 
@@ -832,6 +889,29 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
                                                                    final int maxMismatches,
                                                                    final int minMismatchDelta,
                                                                    final int minimumBaseQuality) {
+            return findBestBarcodeAndUpdateMetrics(readSubsequences, qualityScores, passingFilter, metrics,
+                    noMatchBarcodeMetric, maxNoCalls, maxMismatches, minMismatchDelta, minimumBaseQuality, null, null);
+        }
+
+        /**
+         * As {@link #findBestBarcodeAndUpdateMetrics(byte[][], byte[][], boolean, Map, BarcodeMetric, int, int, int, int)},
+         * but looks the read up in an index of the barcodes when it can, rather than comparing it to every barcode.
+         *
+         * @param barcodeSearch  a search of an index of the barcodes of metrics, owned by the calling thread, or null to
+         *                       always compare the read to every barcode
+         * @param indexedMetrics the values of metrics, in iteration order
+         */
+        public static BarcodeMatch findBestBarcodeAndUpdateMetrics(final byte[][] readSubsequences,
+                                                                   final byte[][] qualityScores,
+                                                                   final boolean passingFilter,
+                                                                   final Map<String, BarcodeMetric> metrics,
+                                                                   final BarcodeMetric noMatchBarcodeMetric,
+                                                                   final int maxNoCalls,
+                                                                   final int maxMismatches,
+                                                                   final int minMismatchDelta,
+                                                                   final int minimumBaseQuality,
+                                                                   final BarcodeIndex.Search barcodeSearch,
+                                                                   final BarcodeMetric[] indexedMetrics) {
             BarcodeMetric bestBarcodeMetric = null;
             int totalBarcodeReadBases = 0;
             int numNoCalls = 0; // NoCalls are calculated for all the barcodes combined
@@ -846,16 +926,25 @@ public class ExtractIlluminaBarcodes extends CommandLineProgram {
             int numMismatchesInBestBarcode = totalBarcodeReadBases + 1;
             int numMismatchesInSecondBestBarcode = totalBarcodeReadBases + 1;
 
-            for (final BarcodeMetric barcodeMetric : metrics.values()) {
-                final int numMismatches = countMismatches(barcodeMetric.barcodeBytes, readSubsequences, qualityScores, minimumBaseQuality);
-                if (numMismatches < numMismatchesInBestBarcode) {
-                    if (bestBarcodeMetric != null) {
-                        numMismatchesInSecondBestBarcode = numMismatchesInBestBarcode;
+            final PackedBarcode packedRead = PackedBarcode.ofRead(readSubsequences, qualityScores, minimumBaseQuality);
+            if (barcodeSearch != null && packedRead != null && barcodeSearch.find(packedRead)) {
+                bestBarcodeMetric = indexedMetrics[barcodeSearch.getBest()];
+                numMismatchesInBestBarcode = barcodeSearch.getBestDistance();
+                numMismatchesInSecondBestBarcode = barcodeSearch.getSecondBestDistance();
+            } else {
+                for (final BarcodeMetric barcodeMetric : metrics.values()) {
+                    final int numMismatches = packedRead != null && barcodeMetric.packedBarcode != null && barcodeMetric.packedBarcode.hasSameLengths(packedRead) ?
+                            barcodeMetric.packedBarcode.countMismatches(packedRead) :
+                            countMismatches(barcodeMetric.barcodeBytes, readSubsequences, qualityScores, minimumBaseQuality);
+                    if (numMismatches < numMismatchesInBestBarcode) {
+                        if (bestBarcodeMetric != null) {
+                            numMismatchesInSecondBestBarcode = numMismatchesInBestBarcode;
+                        }
+                        numMismatchesInBestBarcode = numMismatches;
+                        bestBarcodeMetric = barcodeMetric;
+                    } else if (numMismatches < numMismatchesInSecondBestBarcode) {
+                        numMismatchesInSecondBestBarcode = numMismatches;
                     }
-                    numMismatchesInBestBarcode = numMismatches;
-                    bestBarcodeMetric = barcodeMetric;
-                } else if (numMismatches < numMismatchesInSecondBestBarcode) {
-                    numMismatchesInSecondBestBarcode = numMismatches;
                 }
             }
 
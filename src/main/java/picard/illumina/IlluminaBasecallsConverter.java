@@ -42,19 +42,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
-import java.util.Queue;
-import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
@@ -68,15 +66,6 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends BasecallsConverter<CLUSTER_OUTPUT_RECORD> {
     final boolean includeNonPfReads;
 
-    /**
-     * Describes the state of a barcode's data's processing in the context of a tile.  It is either not available in
-     * that tile, has been read, has been queued to be written to file, or has been written to file.  A barcode only
-     * takes on a state once the tile (which is serving as the context of this state) has been read.
-     */
-    private enum TileBarcodeProcessingState {
-        NA, READ, QUEUED_FOR_WRITE, WRITTEN
-    }
-
     /**
      * Describes the state of a tile being processed.  It is either not yet completely read, or read.
      */
@@ -178,12 +167,42 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
                                       final BclQualityEvaluationStrategy bclQualityEvaluationStrategy,
                                       final boolean applyEamssFiltering, final boolean includeNonPfReads,
                                       final boolean ignoreUnexpectedBarcodes
+    ) {
+        this(basecallsDir, barcodesDir, lane, readStructure,
+                barcodeRecordWriterMap, demultiplex, maxReadsInRamPerTile,
+                tmpDirs, numProcessors, forceGc, firstTile, tileLimit,
+                outputRecordComparator, codecPrototype, outputRecordClass,
+                bclQualityEvaluationStrategy, applyEamssFiltering,
+                includeNonPfReads, ignoreUnexpectedBarcodes, null);
+    }
+
+    /**
+     * As the constructor above, with a barcodeExtractor that, if non-null, matches the sample barcodes of each
+     * cluster as it is read, so that no _barcode.txt files are needed to demultiplex.
+     */
+    public IlluminaBasecallsConverter(final File basecallsDir, final File barcodesDir, final int lane,
+                                      final ReadStructure readStructure,
+                                      final Map<String, ? extends ConvertedClusterDataWriter<CLUSTER_OUTPUT_RECORD>> barcodeRecordWriterMap,
+                                      final boolean demultiplex,
+                                      final int maxReadsInRamPerTile,
+                                      final List<File> tmpDirs, final int numProcessors,
+                                      final boolean forceGc, final Integer firstTile,
+                                      final Integer tileLimit,
+                                      final Comparator<CLUSTER_OUTPUT_RECORD> outputRecordComparator,
+                                      final SortingCollection.Codec<CLUSTER_OUTPUT_RECORD> codecPrototype,
+                                      final Class<CLUSTER_OUTPUT_RECORD> outputRecordClass,
+                                      final BclQualityEvaluationStrategy bclQualityEvaluationStrategy,
+                                      final boolean applyEamssFiltering, final boolean includeNonPfReads,
+                                      final boolean ignoreUnexpectedBarcodes,
+                                      final BarcodeExtractor barcodeExtractor
     ) {
         super(barcodeRecordWriterMap, maxReadsInRamPerTile, tmpDirs, codecPrototype, ignoreUnexpectedBarcodes,
                 demultiplex, outputRecordComparator, bclQualityEvaluationStrategy, outputRecordClass,
                 numProcessors,
                 new IlluminaDataProviderFactory(basecallsDir, barcodesDir, lane, readStructure,
-                        bclQualityEvaluationStrategy, getDataTypesFromReadStructure(readStructure, demultiplex)));
+                        bclQualityEvaluationStrategy,
+                        getDataTypesFromReadStructure(readStructure, demultiplex && barcodeExtractor == null)),
+                barcodeExtractor);
         this.includeNonPfReads = includeNonPfReads;
         this.tiles = factory.getAvailableTiles();
         // Since the first non-fixed part of the read name is the tile number, without preceding zeroes,
@@ -319,34 +338,33 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
     /**
      * Represents the state of a tile's processing and encapsulates the data collected from that tile.
      * <p/>
-     * TileProcessingRecords are accessed from each worker thread to assess the progress of the run, so its methods
-     * are synchronized.
+     * Each tile is read by exactly one worker thread, so records are added without locking.  The collected data is
+     * published to the writing threads by the (volatile) transition to DONE_READING, after which it is only read.
      */
     private class TileProcessingRecord {
         final private Map<String, SortingCollection<CLUSTER_OUTPUT_RECORD>> barcodeToRecordCollection =
                 new HashMap<>();
-        final private Map<String, TileBarcodeProcessingState> barcodeToProcessingState = new HashMap<>();
-        private TileProcessingState state = TileProcessingState.NOT_DONE_READING;
+        private volatile TileProcessingState state = TileProcessingState.NOT_DONE_READING;
         private long recordCount = 0;
 
         /**
          * Returns the state of this tile's processing.
          */
-        public synchronized TileProcessingState getState() {
+        public TileProcessingState getState() {
             return this.state;
         }
 
         /**
          * Sets the state of this tile's processing.
          */
-        public synchronized void setState(final TileProcessingState state) {
+        public void setState(final TileProcessingState state) {
             this.state = state;
         }
 
         /**
-         * Adds the provided record to this tile.
+         * Adds the provided record to this tile.  Only the thread reading this tile may invoke this method.
          */
-        public synchronized void addRecord(final String barcode, final CLUSTER_OUTPUT_RECORD record) {
+        public void addRecord(final String barcode, final CLUSTER_OUTPUT_RECORD record) {
             this.recordCount += 1;
 
             // Grab the existing collection, or initialize it if it doesn't yet exist
@@ -363,12 +381,11 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
                 }
                 recordCollection = this.newSortingCollection();
                 this.barcodeToRecordCollection.put(barcode, recordCollection);
-                this.barcodeToProcessingState.put(barcode, null);
             }
             recordCollection.add(record);
         }
 
-        private synchronized SortingCollection<CLUSTER_OUTPUT_RECORD> newSortingCollection() {
+        private SortingCollection<CLUSTER_OUTPUT_RECORD> newSortingCollection() {
             final int maxRecordsInRam =
                     Math.max(1, maxReadsInRamPerTile /
                             barcodeRecordWriterMap.size());
@@ -383,63 +400,48 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
         /**
          * Returns the number of unique barcodes read.
          */
-        public synchronized long getBarcodeCount() {
+        public long getBarcodeCount() {
             return this.barcodeToRecordCollection.size();
         }
 
         /**
          * Returns the number of records read.
          */
-        public synchronized long getRecordCount() {
+        public long getRecordCount() {
             return recordCount;
         }
 
         /**
-         * Returns the mapping of barcodes to records associated with them.
+         * Returns the mapping of barcodes to records associated with them.  Only invoke this query from another
+         * thread once the tile is in the DONE_READING state.
          */
-        public synchronized Map<String, SortingCollection<CLUSTER_OUTPUT_RECORD>> getBarcodeRecords() {
+        public Map<String, SortingCollection<CLUSTER_OUTPUT_RECORD>> getBarcodeRecords() {
             return barcodeToRecordCollection;
         }
+    }
 
-        /**
-         * Gets the state of the provided barcode's data's processing progress.  Only invoke this query if this tile
-         * is in a DONE_READING state.
-         *
-         * @throws IllegalStateException When a barcode is queried before the tile is in the DONE_READING state
-         */
-        public synchronized TileBarcodeProcessingState getBarcodeState(final String barcode) {
-            if (this.getState() == TileProcessingState.NOT_DONE_READING) {
-                throw new IllegalStateException(
-                        "A tile's barcode data's state cannot be queried until the tile has been completely read.");
-            }
-
-            return this.barcodeToProcessingState.getOrDefault(barcode, TileBarcodeProcessingState.NA);
-        }
-
-        public synchronized Map<String, TileBarcodeProcessingState> getBarcodeProcessingStates() {
-            return this.barcodeToProcessingState;
-        }
+    /**
+     * The tile-ordered write queue of a single barcode.  Each barcode's data is written one tile at a time, in tile
+     * order, independently of every other barcode.  Whichever thread claims the queue advances it past tiles with no
+     * data for the barcode, and hands the claim to the write of the next tile that has some; the claim is released
+     * when the queue reaches a tile that has not yet been read.
+     */
+    private class BarcodeWriteQueue {
+        private final String barcode;
 
         /**
-         * Sets the processing state of the provided barcode in this record.
-         *
-         * @throws java.util.NoSuchElementException When the provided barcode is not one associated with this record.
+         * Set while a thread is advancing this queue or a write for this barcode is in flight.
          */
-        public synchronized void setBarcodeState(final String barcode, final TileBarcodeProcessingState state) {
-            if (this.barcodeToProcessingState.containsKey(barcode)) {
-                this.barcodeToProcessingState.put(barcode, state);
-            } else {
-                throw new NoSuchElementException(String.format("No record of the provided barcode, %s.", barcode));
-            }
-        }
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
 
         /**
-         * Returns the distinct set of barcodes for which data has been collected in this record.
-         *
-         * @return The distinct set of barcodes for this record.
+         * The index of the next tile whose data for this barcode has not been written.  Only accessed by the thread
+         * holding the claim.
          */
-        public synchronized Set<String> getBarcodes() {
-            return this.getBarcodeRecords().keySet();
+        private int nextTileIndex = 0;
+
+        public BarcodeWriteQueue(final String barcode) {
+            this.barcode = barcode;
         }
     }
 
@@ -464,11 +466,16 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
          */
         public void process() {
             final BaseIlluminaDataProvider dataProvider = factory.makeDataProvider(Collections.singletonList(this.tile.getNumber()));
+            final BarcodeExtractor.TileMatcher barcodeMatcher =
+                    (demultiplex && barcodeExtractor != null) ? barcodeExtractor.newTileMatcher() : null;
             log.debug(String.format("Reading data from tile %s ...", tile.getNumber()));
 
             while (dataProvider.hasNext()) {
                 final ClusterData cluster = dataProvider.next();
                 readProgressLogger.record(null, 0);
+                if (barcodeMatcher != null) {
+                    barcodeMatcher.matchBarcode(cluster);
+                }
                 // If this cluster is passing, or we do NOT want to ONLY emit passing reads, then add it to the next
                 if (cluster.isPf() || includeNonPfReads) {
                     final String barcode = (demultiplex ? cluster.getMatchedBarcode() : null);
@@ -476,6 +483,9 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
                 }
             }
 
+            if (barcodeMatcher != null) {
+                barcodeExtractor.addTileMetrics(barcodeMatcher);
+            }
             this.handler.completeTile(this.tile);
             dataProvider.close();
         }
@@ -485,15 +495,35 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
     /**
      * Aggregates data collected from tiles and writes them to file. Accepts records from TileReaders and maps
      * them to the appropriate BAM writers.
+     * <p/>
+     * Writing is driven by one BarcodeWriteQueue per barcode rather than by a scan of every tile and barcode under a
+     * single lock, so threads completing different tiles or writing different barcodes never wait on one another.
      */
     private class TileReadAggregator {
         /**
          * The collection of records associated with a particular tile.
          * <p/>
-         * Implemented as a TreeMap to guarantee tiles are iterated over in natural order.
+         * Implemented as a TreeMap to guarantee tiles are iterated over in natural order.  It is not modified after
+         * construction.
          */
         private final Map<Tile, TileProcessingRecord> tileRecords = new TreeMap<>();
 
+        /**
+         * The tiles and their records in natural order, indexed by BarcodeWriteQueue.nextTileIndex.
+         */
+        private final List<Tile> orderedTiles = new ArrayList<>();
+        private final List<TileProcessingRecord> orderedTileRecords = new ArrayList<>();
+
+        /**
+         * One write queue per expected barcode.
+         */
+        private final List<BarcodeWriteQueue> barcodeQueues = new ArrayList<>();
+
+        /**
+         * The number of barcodes that have not yet had every tile written.
+         */
+        private final AtomicInteger barcodesRemaining;
+
         /**
          * Compare the two Runnables, and assume they are PriorityRunnable; if not something strange is
          * going on, so allow a ClassCastException be thrown.
@@ -510,15 +540,14 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
         );
 
         /**
-         * The object acting as a latch to notify when the aggregator completes its work.
+         * The latch released when the aggregator completes its work.
          */
-        private final Object completionLatch = new Object();
+        private final CountDownLatch completionLatch = new CountDownLatch(1);
 
         /**
          * Stores the thread that is executing this work so that it can be interrupted upon failure.
          */
         private Thread parentThread;
-        private final Object workEnqueueMonitor = new Object();
         private final AtomicBoolean submitted = new AtomicBoolean(false);
 
 
@@ -531,6 +560,14 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
             for (final Tile t : tiles) {
                 tileRecords.put(t, new TileProcessingRecord());
             }
+            for (final Map.Entry<Tile, TileProcessingRecord> entry : tileRecords.entrySet()) {
+                orderedTiles.add(entry.getKey());
+                orderedTileRecords.add(entry.getValue());
+            }
+            for (final String barcode : barcodeRecordWriterMap.keySet()) {
+                barcodeQueues.add(new BarcodeWriteQueue(barcode));
+            }
+            barcodesRemaining = new AtomicInteger(barcodeQueues.size());
         }
 
         /**
@@ -573,6 +610,14 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
                     }
                 });
             }
+
+            // Nothing may be read at all (e.g. no tiles), in which case the queues complete without a tile to trigger them.
+            if (this.barcodeQueues.isEmpty()) {
+                this.signalWorkComplete();
+            }
+            for (final BarcodeWriteQueue queue : this.barcodeQueues) {
+                this.advance(queue);
+            }
         }
 
         /**
@@ -588,18 +633,19 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
                 throw new IllegalStateException("This tile is already in the completed state.");
             }
 
-            // Update all of the barcodes and the tile to be marked as read
-            for (final String barcode : tileRecord.getBarcodes()) {
-                tileRecord.setBarcodeState(barcode, TileBarcodeProcessingState.READ);
-                tileRecord.barcodeToRecordCollection.get(barcode).doneAdding();
+            // Finish all of the barcodes' collections, then publish the tile as read
+            for (final SortingCollection<CLUSTER_OUTPUT_RECORD> records : tileRecord.getBarcodeRecords().values()) {
+                records.doneAdding();
             }
             tileRecord.setState(TileProcessingState.DONE_READING);
 
             log.debug(String.format("Completed reading tile %s; collected %s reads spanning %s barcodes.",
                     tile.getNumber(), tileRecord.getRecordCount(), tileRecord.getBarcodeCount()));
 
-            //noinspection SynchronizationOnLocalVariableOrMethodParameter
-            this.findAndEnqueueWorkOrSignalCompletion();
+            // Any barcode may have been waiting on this tile to be read
+            for (final BarcodeWriteQueue queue : this.barcodeQueues) {
+                this.advance(queue);
+            }
         }
 
         /**
@@ -608,9 +654,7 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
          * @throws InterruptedException is thrown when this executor has been interrupted.
          */
         public void awaitWorkComplete() throws InterruptedException {
-            synchronized (this.completionLatch) {
-                this.completionLatch.wait();
-            }
+            this.completionLatch.await();
         }
 
         /**
@@ -618,83 +662,75 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
          * when this aggregator has reached its completed state.
          */
         private void signalWorkComplete() {
-            synchronized (this.completionLatch) {
-                this.completionLatch.notifyAll();
-            }
+            log.info("All work is complete.");
+            this.completionLatch.countDown();
         }
 
         /**
-         * Poll the aggregator to find more tasks for it to enqueue.  Specifically, searches for un-written data
-         * read from tiles for each barcode and enqueues it for writing.
+         * Claims the provided barcode's queue if no other thread holds it, and advances it through the tiles that have
+         * been read: tiles with no data for the barcode are skipped, and the first tile with data is enqueued for
+         * writing, the claim passing to that write.  If the queue reaches a tile that has not yet been read, the claim
+         * is released; if it reaches the end of the tiles, the barcode is complete.
          */
-        private void findAndEnqueueWorkOrSignalCompletion() {
-            synchronized (this.workEnqueueMonitor) {
-                /*
-                 * If there is work remaining to be done in this aggregator, walk through all of the barcodes and find
-                 * tiles which have not yet written their barcode data but are in a state where they are able to.
-                 */
-                if (this.isWorkCompleted()) {
-                    this.signalWorkComplete();
-                } else {
-                    final Queue<Runnable> tasks = new LinkedList<>();
-                    for (final String barcode : barcodeRecordWriterMap.keySet()) {
-                        NEXT_BARCODE:
-                        for (final Map.Entry<Tile, TileProcessingRecord> entry : this.tileRecords.entrySet()) {
-                            final Tile tile = entry.getKey();
-                            final TileProcessingRecord tileRecord = entry.getValue();
-
-                            /*
-                             * If this tile has not been read, we cannot write this or later tiles' barcode data;
-                             * move to the next barcode.
-                             */
-                            if (tileRecord.getState() != TileProcessingState.DONE_READING) {
-                                break;
-                            }
-                            switch (tileRecord.getBarcodeState(barcode)) {
-                                case NA:
-                                case WRITTEN:
-                                    /*
-                                     * There is no data for this barcode for this tile, or it is already written; in
-                                     * either scenario, this barcode will not be processed further for this tile, so
-                                     * move onto the next tile as a possible candidate.
-                                     */
-                                    continue;
-                                case QUEUED_FOR_WRITE:
-                                    /*
-                                     * The write for this barcode is in progress for this tile, so skip to the next
-                                     * barcode.
-                                     */
-                                    break NEXT_BARCODE;
-                                case READ:
-                                    /*
-                                     * This barcode has been read, and all of the earlier tiles have been written
-                                     * for this barcode, so queue its writing.
-                                     */
-                                    tileRecord.setBarcodeState(barcode, TileBarcodeProcessingState.QUEUED_FOR_WRITE);
-                                    log.debug(String.format("Enqueuing work for tile %s and barcode %s.", tile.getNumber(), barcode));
-                                    tasks.add(this.newBarcodeWorkInstance(tile, tileRecord, barcode));
-                                    break NEXT_BARCODE;
-                            }
-                        }
+        private void advance(final BarcodeWriteQueue queue) {
+            while (queue.claimed.compareAndSet(false, true)) {
+                while (queue.nextTileIndex < this.orderedTileRecords.size()) {
+                    final TileProcessingRecord tileRecord = this.orderedTileRecords.get(queue.nextTileIndex);
+
+                    /*
+                     * If this tile has not been read, we cannot write this or later tiles' barcode data; release the
+                     * queue below.
+                     */
+                    if (tileRecord.getState() != TileProcessingState.DONE_READING) {
+                        break;
+                    }
+                    if (tileRecord.getBarcodeRecords().containsKey(queue.barcode)) {
+                        /*
+                         * This barcode has been read, and all of the earlier tiles have been written for this barcode,
+                         * so queue its writing.
+                         */
+                        final Tile tile = this.orderedTiles.get(queue.nextTileIndex);
+                        log.debug(String.format("Enqueuing work for tile %s and barcode %s.", tile.getNumber(), queue.barcode));
+                        this.prioritizingThreadPool.execute(this.newBarcodeWorkInstance(tile, tileRecord, queue));
+                        return;
                     }
+                    // There is no data for this barcode for this tile, so move onto the next tile.
+                    queue.nextTileIndex++;
+                }
 
-                    for (final Runnable task : tasks) {
-                        this.prioritizingThreadPool.execute(task);
+                if (queue.nextTileIndex == this.orderedTileRecords.size()) {
+                    // Every tile has been written for this barcode; the queue stays claimed for good.
+                    if (this.barcodesRemaining.decrementAndGet() == 0) {
+                        this.signalWorkComplete();
                     }
+                    return;
+                }
+
+                final TileProcessingRecord unreadTile = this.orderedTileRecords.get(queue.nextTileIndex);
+                queue.claimed.set(false);
+
+                /*
+                 * If the tile finished reading after we looked at it but before we released the queue, its
+                 * completeTile() could not claim the queue, so look again; otherwise completeTile() will advance it.
+                 */
+                if (unreadTile.getState() != TileProcessingState.DONE_READING) {
+                    return;
                 }
             }
         }
 
         /**
          * Returns a PriorityRunnable that encapsulates the work involved with writing the provided tileRecord's data
-         * for the given barcode to disk.
+         * for the given barcode to disk.  The runnable holds the claim on the barcode's queue, and passes it on
+         * when done.
          *
          * @param tile       The tile from which the record was read
          * @param tileRecord The processing record associated with the tile
-         * @param barcode    The barcode whose data within the tileRecord is to be written
+         * @param queue      The write queue of the barcode whose data within the tileRecord is to be written
          * @return The runnable that upon invocation writes the barcode's data from the tileRecord to disk
          */
-        private PriorityRunnable newBarcodeWorkInstance(final Tile tile, final TileProcessingRecord tileRecord, final String barcode) {
+        private PriorityRunnable newBarcodeWorkInstance(final Tile tile, final TileProcessingRecord tileRecord, final BarcodeWriteQueue queue) {
+            final String barcode = queue.barcode;
             return new PriorityRunnable() {
                 @Override
                 public void run() {
@@ -735,8 +771,10 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
                             writeProgressLogger.record(null, 0);
                         }
 
-                        tileRecord.setBarcodeState(barcode, TileBarcodeProcessingState.WRITTEN);
-                        findAndEnqueueWorkOrSignalCompletion();
+                        // Move past the written tile and release the queue so that it can advance to the next one
+                        queue.nextTileIndex++;
+                        queue.claimed.set(false);
+                        advance(queue);
 
                     } catch (final RuntimeException | Error e) {
                         /*
@@ -752,33 +790,6 @@ public class IlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Basecalls
             };
         }
 
-        /**
-         * Returns true if this aggregator has not completed its work.  Specifically, returns false iff
-         * any tile's barcode data yas not yet been written.
-         *
-         * @return True if more work remains to be done, false otherwise
-         */
-        public boolean isWorkCompleted() {
-            for (final Map.Entry<Tile, TileProcessingRecord> entry : this.tileRecords.entrySet()) {
-                final TileProcessingRecord tileProcessingRecord = entry.getValue();
-
-                if (tileProcessingRecord.getState() != TileProcessingState.DONE_READING) {
-                    log.debug(String.format("Work is not completed because a tile isn't done being read: %s.", entry.getKey().getNumber()));
-                    return false;
-                } else {
-                    for (final Map.Entry<String, TileBarcodeProcessingState> barcodeStateEntry : tileProcessingRecord.getBarcodeProcessingStates().entrySet()) {
-                        final TileBarcodeProcessingState barcodeProcessingState = barcodeStateEntry.getValue();
-                        if (barcodeProcessingState != TileBarcodeProcessingState.WRITTEN) {
-                            log.debug(String.format("Work is not completed because a tile isn't done being read: Tile %s, Barcode %s, Processing State %s.", entry.getKey().getNumber(), barcodeStateEntry.getKey(), barcodeProcessingState));
-                            return false;
-                        }
-                    }
-                }
-            }
-            log.info("All work is complete.");
-            return true;
-        }
-
         /**
          * Terminates the threads currently exiting in the thread pool abruptly via ThreadPoolExecutor.shutdownNow().
          */
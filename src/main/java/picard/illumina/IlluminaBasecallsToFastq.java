@@ -30,6 +30,7 @@ import htsjdk.samtools.fastq.FastqReader;
 import htsjdk.samtools.fastq.FastqRecord;
 import htsjdk.samtools.fastq.FastqWriter;
 import htsjdk.samtools.fastq.FastqWriterFactory;
+import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.util.CollectionUtil;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Log;
@@ -46,6 +47,7 @@ import picard.cmdline.programgroups.Illumina;
 import picard.fastq.Casava18ReadNameEncoder;
 import picard.fastq.IlluminaReadNameEncoder;
 import picard.fastq.ReadNameEncoder;
+import picard.illumina.ExtractIlluminaBarcodes.BarcodeMetric;
 import picard.illumina.parser.ClusterData;
 import picard.illumina.parser.IlluminaFileUtil;
 import picard.illumina.parser.ReadData;
@@ -64,6 +66,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -170,6 +173,11 @@ public class IlluminaBasecallsToFastq extends CommandLineProgram {
     @Argument(doc = "If set, process no more than this many tiles (used for debugging).", optional = true)
     public Integer TILE_LIMIT;
 
+    @Argument(doc = "For CBCL input, the number of bytes of decompressed basecalls of the following tiles that may be read ahead of the " +
+            "tiles being converted, so that reading overlaps conversion.  Tiles are not read ahead if 0.  Each tile takes about " +
+            "one byte per cluster per cycle.")
+    public long TILE_PREFETCH_BYTES = 0;
+
     @Argument(doc = "Apply EAMSS filtering to identify inappropriately quality scored bases towards the ends of reads" +
             " and convert their quality scores to Q2.")
     public boolean APPLY_EAMSS_FILTER = true;
@@ -200,6 +208,27 @@ public class IlluminaBasecallsToFastq extends CommandLineProgram {
     @Argument(shortName = "GZIP", doc = "Compress output FASTQ files using gzip and append a .gz extension to the file names.")
     public boolean COMPRESS_OUTPUTS = false;
 
+    @Argument(doc = "If set, the sample barcodes of each read are matched to the barcodes in MULTIPLEX_PARAMS as the " +
+            "basecalls are converted, in the same way as ExtractIlluminaBarcodes, and the barcode metrics are written " +
+            "to this file.  The _barcode.txt files in BARCODES_DIR are then not used, so ExtractIlluminaBarcodes " +
+            "need not be run first.  READ_STRUCTURE must have at least one sample barcode.", optional = true)
+    public File BARCODE_METRICS_FILE;
+
+    @Argument(doc = "Maximum mismatches for a barcode to be considered a match.  Only used with BARCODE_METRICS_FILE.")
+    public int MAX_MISMATCHES = 1;
+
+    @Argument(doc = "Minimum difference between number of mismatches in the best and second best barcodes for a " +
+            "barcode to be considered a match.  Only used with BARCODE_METRICS_FILE.")
+    public int MIN_MISMATCH_DELTA = 1;
+
+    @Argument(doc = "Maximum allowable number of no-calls in a barcode read before it is considered unmatchable.  " +
+            "Only used with BARCODE_METRICS_FILE.")
+    public int MAX_NO_CALLS = 2;
+
+    @Argument(doc = "Minimum base quality. Any barcode bases falling below this quality will be considered a mismatch " +
+            "even if the bases match.  Only used with BARCODE_METRICS_FILE.")
+    public int MINIMUM_BASE_QUALITY = 0;
+
     /**
      * Simple switch to control the read name format to emit.
      */
@@ -208,6 +237,8 @@ public class IlluminaBasecallsToFastq extends CommandLineProgram {
     }
 
     private final Map<String, FastqRecordsWriter> sampleBarcodeFastqWriterMap = new HashMap<>();
+    private final Map<String, BarcodeMetric> barcodeToMetrics = new LinkedHashMap<>();
+    private BarcodeExtractor barcodeExtractor;
     private ReadStructure readStructure;
     private BasecallsConverter<FastqRecordsForCluster> basecallsConverter;
     private static final Log log = Log.getInstance(IlluminaBasecallsToFastq.class);
@@ -220,6 +251,11 @@ public class IlluminaBasecallsToFastq extends CommandLineProgram {
     protected int doWork() {
         initialize();
         basecallsConverter.doTileProcessing();
+        if (barcodeExtractor != null) {
+            final MetricsFile<BarcodeMetric, Integer> metrics = getMetricsFile();
+            barcodeExtractor.addMetricsTo(metrics);
+            metrics.write(BARCODE_METRICS_FILE);
+        }
         return 0;
     }
 
@@ -234,6 +270,14 @@ public class IlluminaBasecallsToFastq extends CommandLineProgram {
             errors.add("FLOWCELL_BARCODE is required when using Casava1.8-style read name headers.");
         }
 
+        if (BARCODE_METRICS_FILE != null && MULTIPLEX_PARAMS == null) {
+            errors.add("BARCODE_METRICS_FILE requires MULTIPLEX_PARAMS.");
+        }
+
+        if (BARCODE_METRICS_FILE != null && new ReadStructure(READ_STRUCTURE).sampleBarcodes.isEmpty()) {
+            errors.add("BARCODE_METRICS_FILE requires a READ_STRUCTURE with at least one sample barcode (B).");
+        }
+
         if (ADAPTERS_TO_CHECK != null) {
             log.warn("ADAPTERS_TO_CHECK is not used");
         }
@@ -272,23 +316,31 @@ public class IlluminaBasecallsToFastq extends CommandLineProgram {
             populateWritersFromMultiplexParams();
             demultiplex = true;
         }
+        if (BARCODE_METRICS_FILE != null) {
+            IOUtil.assertFileIsWritable(BARCODE_METRICS_FILE);
+            barcodeExtractor = new BarcodeExtractor(barcodeToMetrics, readStructure, MAX_NO_CALLS, MAX_MISMATCHES,
+                    MIN_MISMATCH_DELTA, MINIMUM_BASE_QUALITY);
+        }
         final int readsPerCluster = readStructure.templates.length() + readStructure.sampleBarcodes.length();
         if (IlluminaFileUtil.hasCbcls(BASECALLS_DIR, LANE)) {
             if (BARCODES_DIR == null) BARCODES_DIR = BASECALLS_DIR;
-            basecallsConverter = new NewIlluminaBasecallsConverter<>(BASECALLS_DIR, BARCODES_DIR, LANE, readStructure,
+            final NewIlluminaBasecallsConverter<FastqRecordsForCluster> newConverter = new NewIlluminaBasecallsConverter<>(BASECALLS_DIR, BARCODES_DIR, LANE, readStructure,
                     sampleBarcodeFastqWriterMap, demultiplex, Math.max(1, MAX_READS_IN_RAM_PER_TILE / readsPerCluster),
                     TMP_DIR, NUM_PROCESSORS,
                     FIRST_TILE, TILE_LIMIT, queryNameComparator,
                     new FastqRecordsForClusterCodec(readStructure.templates.length(),
                             readStructure.sampleBarcodes.length(), readStructure.molecularBarcode.length()),
-                    FastqRecordsForCluster.class, bclQualityEvaluationStrategy, IGNORE_UNEXPECTED_BARCODES);
+                    FastqRecordsForCluster.class, bclQualityEvaluationStrategy, IGNORE_UNEXPECTED_BARCODES,
+                    barcodeExtractor);
+            newConverter.setTilePrefetchBytes(TILE_PREFETCH_BYTES);
+            basecallsConverter = newConverter;
         } else {
             basecallsConverter = new IlluminaBasecallsConverter<>(BASECALLS_DIR, BARCODES_DIR, LANE, readStructure,
                     sampleBarcodeFastqWriterMap, demultiplex, Math.max(1, MAX_READS_IN_RAM_PER_TILE / readsPerCluster), TMP_DIR, NUM_PROCESSORS,
                     FORCE_GC, FIRST_TILE, TILE_LIMIT, queryNameComparator,
                     new FastqRecordsForClusterCodec(readStructure.templates.length(),
                             readStructure.sampleBarcodes.length(), readStructure.molecularBarcode.length()), FastqRecordsForCluster.class, bclQualityEvaluationStrategy,
-                    this.APPLY_EAMSS_FILTER, INCLUDE_NON_PF_READS, IGNORE_UNEXPECTED_BARCODES);
+                    this.APPLY_EAMSS_FILTER, INCLUDE_NON_PF_READS, IGNORE_UNEXPECTED_BARCODES, barcodeExtractor);
         }
 
         basecallsConverter.setConverter(
@@ -351,6 +403,10 @@ public class IlluminaBasecallsToFastq extends CommandLineProgram {
 
             final FastqRecordsWriter writer = buildWriter(new File(row.getField("OUTPUT_PREFIX")));
             sampleBarcodeFastqWriterMap.put(key, writer);
+            if (key != null) {
+                barcodeToMetrics.put(key, new BarcodeMetric(null, null, IlluminaUtil.barcodeSeqsToString(sampleBarcodeValues),
+                        sampleBarcodeValues.toArray(new String[sampleBarcodeValues.size()])));
+            }
         }
         if (sampleBarcodeFastqWriterMap.isEmpty()) {
             throw new PicardException("MULTIPLEX_PARAMS file " + MULTIPLEX_PARAMS + " does have any data rows.");
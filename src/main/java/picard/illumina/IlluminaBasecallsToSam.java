@@ -31,6 +31,7 @@ import htsjdk.samtools.SAMFileWriterFactory;
 import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordQueryNameComparator;
+import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.util.CollectionUtil;
 import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.Iso8601Date;
@@ -45,6 +46,7 @@ import picard.cmdline.CommandLineProgram;
 import picard.cmdline.programgroups.Illumina;
 import picard.cmdline.StandardOptionDefinitions;
 import picard.cmdline.programgroups.Illumina;
+import picard.illumina.ExtractIlluminaBarcodes.BarcodeMetric;
 import picard.illumina.parser.IlluminaFileUtil;
 import picard.illumina.parser.ReadStructure;
 import picard.illumina.parser.readers.BclQualityEvaluationStrategy;
@@ -224,6 +226,11 @@ public class IlluminaBasecallsToSam extends CommandLineProgram {
     @Argument(doc = "If set, process no more than this many tiles (used for debugging).", optional = true)
     public Integer TILE_LIMIT;
 
+    @Argument(doc = "For CBCL input, the number of bytes of decompressed basecalls of the following tiles that may be read ahead of the " +
+            "tiles being converted, so that reading overlaps conversion.  Tiles are not read ahead if 0.  Each tile takes about " +
+            "one byte per cluster per cycle.")
+    public long TILE_PREFETCH_BYTES = 0;
+
     @Argument(doc = "If true, call System.gc() periodically.  This is useful in cases in which the -Xmx value passed " +
             "is larger than the available memory.")
     public Boolean FORCE_GC = true;
@@ -257,7 +264,30 @@ public class IlluminaBasecallsToSam extends CommandLineProgram {
     @Argument(doc = "The list of tags to store each molecular index.  The number of tags should match the number of molecular indexes.", optional = true)
     public List<String> TAG_PER_MOLECULAR_INDEX;
 
+    @Argument(doc = "If set, the sample barcodes of each read are matched to the barcodes in LIBRARY_PARAMS as the " +
+            "basecalls are converted, in the same way as ExtractIlluminaBarcodes, and the barcode metrics are written " +
+            "to this file.  The _barcode.txt files in BARCODES_DIR are then not used, so ExtractIlluminaBarcodes " +
+            "need not be run first.  READ_STRUCTURE must have at least one sample barcode.", optional = true)
+    public File BARCODE_METRICS_FILE;
+
+    @Argument(doc = "Maximum mismatches for a barcode to be considered a match.  Only used with BARCODE_METRICS_FILE.")
+    public int MAX_MISMATCHES = 1;
+
+    @Argument(doc = "Minimum difference between number of mismatches in the best and second best barcodes for a " +
+            "barcode to be considered a match.  Only used with BARCODE_METRICS_FILE.")
+    public int MIN_MISMATCH_DELTA = 1;
+
+    @Argument(doc = "Maximum allowable number of no-calls in a barcode read before it is considered unmatchable.  " +
+            "Only used with BARCODE_METRICS_FILE.")
+    public int MAX_NO_CALLS = 2;
+
+    @Argument(doc = "Minimum base quality. Any barcode bases falling below this quality will be considered a mismatch " +
+            "even if the bases match.  Only used with BARCODE_METRICS_FILE.")
+    public int MINIMUM_BASE_QUALITY = 0;
+
     private final Map<String, SAMFileWriterWrapper> barcodeSamWriterMap = new HashMap<>();
+    private final Map<String, BarcodeMetric> barcodeToMetrics = new LinkedHashMap<>();
+    private BarcodeExtractor barcodeExtractor;
     private ReadStructure readStructure;
     private BasecallsConverter<SAMRecordsForCluster> basecallsConverter;
     private static final Log log = Log.getInstance(IlluminaBasecallsToSam.class);
@@ -266,6 +296,11 @@ public class IlluminaBasecallsToSam extends CommandLineProgram {
     protected int doWork() {
         initialize();
         basecallsConverter.doTileProcessing();
+        if (barcodeExtractor != null) {
+            final MetricsFile<BarcodeMetric, Integer> metrics = getMetricsFile();
+            barcodeExtractor.addMetricsTo(metrics);
+            metrics.write(BARCODE_METRICS_FILE);
+        }
         return 0;
     }
 
@@ -283,12 +318,21 @@ public class IlluminaBasecallsToSam extends CommandLineProgram {
             IOUtil.assertFileIsReadable(LIBRARY_PARAMS);
         }
 
+        if (BARCODE_METRICS_FILE != null) {
+            IOUtil.assertFileIsWritable(BARCODE_METRICS_FILE);
+        }
+
         if (OUTPUT != null) {
             barcodeSamWriterMap.put(null, buildSamFileWriter(OUTPUT, SAMPLE_ALIAS, LIBRARY_NAME, buildSamHeaderParameters(null), true));
         } else {
             populateWritersFromLibraryParams();
         }
 
+        if (BARCODE_METRICS_FILE != null) {
+            barcodeExtractor = new BarcodeExtractor(barcodeToMetrics, readStructure, MAX_NO_CALLS, MAX_MISMATCHES,
+                    MIN_MISMATCH_DELTA, MINIMUM_BASE_QUALITY);
+        }
+
         final int numOutputRecords = readStructure.templates.length();
         // Combine any adapters and custom adapter pairs from the command line into an array for use in clipping
         final List<AdapterPair> adapters = new ArrayList<>();
@@ -299,17 +343,21 @@ public class IlluminaBasecallsToSam extends CommandLineProgram {
 
         if (IlluminaFileUtil.hasCbcls(BASECALLS_DIR, LANE)) {
             if (BARCODES_DIR == null) BARCODES_DIR = BASECALLS_DIR;
-            basecallsConverter = new NewIlluminaBasecallsConverter<>(BASECALLS_DIR, BARCODES_DIR, LANE, readStructure,
+            final NewIlluminaBasecallsConverter<SAMRecordsForCluster> newConverter = new NewIlluminaBasecallsConverter<>(BASECALLS_DIR, BARCODES_DIR, LANE, readStructure,
                     barcodeSamWriterMap, true, Math.max(1, MAX_READS_IN_RAM_PER_TILE / numOutputRecords),
                     TMP_DIR, NUM_PROCESSORS,
                     FIRST_TILE, TILE_LIMIT, new QueryNameComparator(),
                     new Codec(numOutputRecords),
-                    SAMRecordsForCluster.class, bclQualityEvaluationStrategy, IGNORE_UNEXPECTED_BARCODES);
+                    SAMRecordsForCluster.class, bclQualityEvaluationStrategy, IGNORE_UNEXPECTED_BARCODES,
+                    barcodeExtractor);
+            newConverter.setTilePrefetchBytes(TILE_PREFETCH_BYTES);
+            basecallsConverter = newConverter;
         } else {
             basecallsConverter = new IlluminaBasecallsConverter<>(BASECALLS_DIR, BARCODES_DIR, LANE, readStructure,
                     barcodeSamWriterMap, true, MAX_READS_IN_RAM_PER_TILE / numOutputRecords, TMP_DIR, NUM_PROCESSORS, FORCE_GC,
                     FIRST_TILE, TILE_LIMIT, new QueryNameComparator(), new Codec(numOutputRecords), SAMRecordsForCluster.class,
-                    bclQualityEvaluationStrategy, APPLY_EAMSS_FILTER, INCLUDE_NON_PF_READS, IGNORE_UNEXPECTED_BARCODES);
+                    bclQualityEvaluationStrategy, APPLY_EAMSS_FILTER, INCLUDE_NON_PF_READS, IGNORE_UNEXPECTED_BARCODES,
+                    barcodeExtractor);
         }
         /*
          * Be sure to pass the outputReadStructure to ClusterDataToSamConverter, which reflects the structure of the output cluster
@@ -422,6 +470,10 @@ public class IlluminaBasecallsToSam extends CommandLineProgram {
             final SAMFileWriterWrapper writer = buildSamFileWriter(new File(row.getField("OUTPUT")),
                     row.getField("SAMPLE_ALIAS"), row.getField("LIBRARY_NAME"), samHeaderParams, true);
             barcodeSamWriterMap.put(key, writer);
+            if (key != null) {
+                barcodeToMetrics.put(key, new BarcodeMetric(null, row.getField("LIBRARY_NAME"),
+                        IlluminaUtil.barcodeSeqsToString(barcodeValues), barcodeValues.toArray(new String[barcodeValues.size()])));
+            }
         }
         if (barcodeSamWriterMap.isEmpty()) {
             throw new PicardException("LIBRARY_PARAMS(BARCODE_PARAMS) file " + LIBRARY_PARAMS + " does have any data rows.");
@@ -515,6 +567,14 @@ public class IlluminaBasecallsToSam extends CommandLineProgram {
             messages.add("The number of tags given in TAG_PER_MOLECULAR_INDEX does not match the number of molecular indexes in READ_STRUCTURE");
         }
 
+        if (BARCODE_METRICS_FILE != null && LIBRARY_PARAMS == null) {
+            messages.add("BARCODE_METRICS_FILE requires LIBRARY_PARAMS (or BARCODE_PARAMS).");
+        }
+
+        if (BARCODE_METRICS_FILE != null && readStructure.sampleBarcodes.isEmpty()) {
+            messages.add("BARCODE_METRICS_FILE requires a READ_STRUCTURE with at least one sample barcode (B).");
+        }
+
         if ((FIVE_PRIME_ADAPTER == null) != (THREE_PRIME_ADAPTER == null)) {
             messages.add("THREE_PRIME_ADAPTER and FIVE_PRIME_ADAPTER must either both be null or both be set.");
         }
@@ -9,10 +9,13 @@ import picard.illumina.parser.BaseIlluminaDataProvider;
 import picard.illumina.parser.ClusterData;
 import picard.illumina.parser.IlluminaDataProviderFactory;
 import picard.illumina.parser.IlluminaFileUtil;
+import picard.illumina.parser.NewIlluminaDataProvider;
+import picard.illumina.parser.OutputMapping;
 import picard.illumina.parser.ParameterizedFileUtil;
 import picard.illumina.parser.ReadStructure;
 import picard.illumina.parser.readers.AbstractIlluminaPositionFileReader;
 import picard.illumina.parser.readers.BclQualityEvaluationStrategy;
+import picard.illumina.parser.readers.CbclReader;
 import picard.illumina.parser.readers.LocsFileReader;
 import picard.util.ThreadPoolExecutorWithExceptions;
 
@@ -24,6 +27,9 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -37,6 +43,9 @@ public class NewIlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Baseca
     private final Map<String, ThreadPoolExecutorWithExceptions> barcodeWriterThreads = new HashMap<>();
     private final Map<Integer, List<RecordWriter>> completedWork = Collections.synchronizedMap(new HashMap<>());
     private final Map<Integer, File> barcodesFiles = new HashMap<>();
+    private ThreadPoolExecutor decompressionExecutor = null;
+    private final OutputMapping outputMapping;
+    private long tilePrefetchBytes = 0;
 
     /**
      * @param basecallsDir             Where to read basecalls from.
@@ -70,12 +79,36 @@ public class NewIlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Baseca
                                          final Class<CLUSTER_OUTPUT_RECORD> outputRecordClass,
                                          final BclQualityEvaluationStrategy bclQualityEvaluationStrategy,
                                          final boolean ignoreUnexpectedBarcodes) {
+        this(basecallsDir, barcodesDir, lane, readStructure, barcodeRecordWriterMap, demultiplex, maxReadsInRamPerTile,
+                tmpDirs, numProcessors, firstTile, tileLimit, outputRecordComparator, codecPrototype, outputRecordClass,
+                bclQualityEvaluationStrategy, ignoreUnexpectedBarcodes, null);
+    }
+
+    /**
+     * As the constructor above, with a barcodeExtractor that, if non-null, matches the sample barcodes of each
+     * cluster as it is read, so that no _barcode.txt files are needed to demultiplex.
+     */
+    public NewIlluminaBasecallsConverter(final File basecallsDir, final File barcodesDir, final int lane,
+                                         final ReadStructure readStructure,
+                                         final Map<String, ? extends ConvertedClusterDataWriter<CLUSTER_OUTPUT_RECORD>> barcodeRecordWriterMap,
+                                         final boolean demultiplex,
+                                         final int maxReadsInRamPerTile,
+                                         final List<File> tmpDirs, final int numProcessors,
+                                         final Integer firstTile,
+                                         final Integer tileLimit,
+                                         final Comparator<CLUSTER_OUTPUT_RECORD> outputRecordComparator,
+                                         final SortingCollection.Codec<CLUSTER_OUTPUT_RECORD> codecPrototype,
+                                         final Class<CLUSTER_OUTPUT_RECORD> outputRecordClass,
+                                         final BclQualityEvaluationStrategy bclQualityEvaluationStrategy,
+                                         final boolean ignoreUnexpectedBarcodes,
+                                         final BarcodeExtractor barcodeExtractor) {
 
         super(barcodeRecordWriterMap, maxReadsInRamPerTile, tmpDirs, codecPrototype, ignoreUnexpectedBarcodes,
                 demultiplex, outputRecordComparator, bclQualityEvaluationStrategy,
                 outputRecordClass, numProcessors, new IlluminaDataProviderFactory(basecallsDir,
-                        barcodesDir, lane, readStructure, bclQualityEvaluationStrategy));
+                        barcodesDir, lane, readStructure, bclQualityEvaluationStrategy), barcodeExtractor);
         this.tiles = new ArrayList<>();
+        this.outputMapping = new OutputMapping(readStructure);
 
         barcodeRecordWriterMap.keySet().forEach(barcode -> barcodeWriterThreads.put(barcode, new ThreadPoolExecutorWithExceptions(1)));
 
@@ -118,7 +151,7 @@ public class NewIlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Baseca
         IOUtil.assertFilesAreReadable(Arrays.asList(filterFiles));
         tiles.sort(TILE_NUMBER_COMPARATOR);
 
-        if (demultiplex) {
+        if (demultiplex && barcodeExtractor == null) {
             final Pattern barcodeRegex = Pattern.compile(ParameterizedFileUtil.escapePeriods(
                     ParameterizedFileUtil.makeLaneTileRegex("_barcode.txt(\\.gz|\\.bz2)?", lane)));
             final File[] barcodeTileFiles = getTiledFiles(barcodesDir, barcodeRegex);
@@ -138,6 +171,15 @@ public class NewIlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Baseca
         setTileLimits(firstTile, tileLimit);
     }
 
+    /**
+     * If bytes is positive, the cbcls of the following tiles are read and decompressed ahead of the tiles being
+     * converted, for as long as the decompressed tiles that are read but not yet converted take up no more than about
+     * bytes of memory.  Must be called before doTileProcessing().
+     */
+    public void setTilePrefetchBytes(final long bytes) {
+        this.tilePrefetchBytes = bytes;
+    }
+
     public static File[] getTiledFiles(final File baseDirectory, final Pattern pattern) {
         return IOUtil.getFilesMatchingRegexp(baseDirectory, pattern);
     }
@@ -154,13 +196,29 @@ public class NewIlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Baseca
         //thread by surface tile
         final ThreadPoolExecutor tileProcessingExecutor = new ThreadPoolExecutorWithExceptions(numThreads);
 
+        // The cycles of each tile are decompressed on a pool shared by all the tiles, so that the last tiles of the lane,
+        // and lanes with fewer tiles than threads, still keep all the threads busy.
+        if (numThreads > 1) {
+            decompressionExecutor = new ThreadPoolExecutorWithExceptions(numThreads);
+        }
+
+        // FIRST_TILE and TILE_LIMIT may leave no tiles to read, and so none to estimate the size of.
+        final TilePrefetcher prefetcher = tilePrefetchBytes > 0 && !tiles.isEmpty() ? new TilePrefetcher(tilePrefetchBytes) : null;
+
         for (final Integer tile : tiles) {
-            tileProcessingExecutor.submit(new TileProcessor(tile, barcodesFiles.get(tile)));
+            tileProcessingExecutor.submit(new TileProcessor(tile, barcodesFiles.get(tile), prefetcher));
         }
 
         tileProcessingExecutor.shutdown();
 
         awaitThreadPoolTermination("Reading executor", tileProcessingExecutor);
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+        if (decompressionExecutor != null) {
+            decompressionExecutor.shutdown();
+            awaitThreadPoolTermination("Decompression executor", decompressionExecutor);
+        }
         awaitThreadPoolTermination("Tile completion executor", completedWorkExecutor);
 
         barcodeWriterThreads.values().forEach(ThreadPoolExecutor::shutdown);
@@ -224,24 +282,45 @@ public class NewIlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Baseca
         private final int tileNum;
         private final Map<String, SortingCollection<CLUSTER_OUTPUT_RECORD>> barcodeToRecordCollection = new HashMap<>();
         private final File barcodeFile;
+        private final TilePrefetcher prefetcher;
 
-        TileProcessor(final int tileNum, final File barcodeFile) {
+        TileProcessor(final int tileNum, final File barcodeFile, final TilePrefetcher prefetcher) {
             this.tileNum = tileNum;
             this.barcodeFile = barcodeFile;
+            this.prefetcher = prefetcher;
         }
 
         @Override
         public void run() {
-            final BaseIlluminaDataProvider dataProvider = factory.makeDataProvider(cbcls, locs, filterFiles, tileNum, barcodeFile);
+            try {
+                processTile();
+            } finally {
+                if (prefetcher != null) {
+                    prefetcher.release(tileNum);
+                }
+            }
+        }
+
+        private void processTile() {
+            final BaseIlluminaDataProvider dataProvider = prefetcher != null ? prefetcher.take(tileNum) :
+                    factory.makeDataProvider(cbcls, locs, filterFiles, tileNum, barcodeFile, decompressionExecutor);
+            final BarcodeExtractor.TileMatcher barcodeMatcher =
+                    (demultiplex && barcodeExtractor != null) ? barcodeExtractor.newTileMatcher() : null;
 
             while (dataProvider.hasNext()) {
                 final ClusterData cluster = dataProvider.next();
                 readProgressLogger.record(null, 0);
+                if (barcodeMatcher != null) {
+                    barcodeMatcher.matchBarcode(cluster);
+                }
                 final String barcode = (demultiplex ? cluster.getMatchedBarcode() : null);
                 addRecord(barcode, converter.convertClusterToOutputRecord(cluster));
             }
 
             dataProvider.close();
+            if (barcodeMatcher != null) {
+                barcodeExtractor.addTileMetrics(barcodeMatcher);
+            }
 
             final List<RecordWriter> writerList = new ArrayList<>();
             barcodeToRecordCollection.forEach((barcode, value) -> {
@@ -288,6 +367,115 @@ public class NewIlluminaBasecallsConverter<CLUSTER_OUTPUT_RECORD> extends Baseca
     }
 
 
+    /**
+     * Reads and decompresses the cbcls of tiles ahead of the TileProcessors, so that reading the next tiles overlaps
+     * converting the current ones.  Tiles are started in order by a single scheduling thread, which waits while the
+     * estimated size of the tiles started but not yet released is over the budget, and read on a pool of numThreads
+     * threads.  A tile is always started when no other tile is in flight, so a tile larger than the budget does not
+     * stall the lane.
+     */
+    private class TilePrefetcher {
+        private final long budget;
+        private final Map<Integer, Long> tileBytes;
+        private final Map<Integer, CompletableFuture<BaseIlluminaDataProvider>> dataProviders = new ConcurrentHashMap<>();
+        private final ThreadPoolExecutor schedulingExecutor = new ThreadPoolExecutorWithExceptions(1);
+        private final ThreadPoolExecutor readingExecutor = new ThreadPoolExecutorWithExceptions(numThreads);
+        private long bytesInFlight = 0;
+
+        TilePrefetcher(final long budget) {
+            this.budget = budget;
+            this.tileBytes = estimateTileBytes();
+            tiles.forEach(tile -> dataProviders.put(tile, new CompletableFuture<>()));
+            schedulingExecutor.submit(this::schedule);
+            schedulingExecutor.shutdown();
+        }
+
+        /**
+         * Starts reading the tiles in order.  If scheduling fails, the tiles not yet started are failed too, so that
+         * the TileProcessors waiting for them do not block forever.
+         */
+        private void schedule() {
+            int scheduled = 0;
+            try {
+                for (final Integer tile : tiles) {
+                    acquire(tileBytes.getOrDefault(tile, 0L));
+                    final CompletableFuture<BaseIlluminaDataProvider> dataProvider = dataProviders.get(tile);
+                    readingExecutor.submit(() -> {
+                        try {
+                            dataProvider.complete(factory.makeDataProvider(cbcls, locs, filterFiles, tile,
+                                    barcodesFiles.get(tile), decompressionExecutor));
+                        } catch (final Throwable t) {
+                            dataProvider.completeExceptionally(t);
+                        }
+                    });
+                    scheduled++;
+                }
+            } catch (final Throwable t) {
+                for (final Integer tile : tiles.subList(scheduled, tiles.size())) {
+                    dataProviders.get(tile).completeExceptionally(new PicardException("Error scheduling tile " + tile + " to be read", t));
+                }
+                throw t;
+            }
+        }
+
+        /** Returns the data provider of a tile, waiting for it to be read. */
+        BaseIlluminaDataProvider take(final int tile) {
+            try {
+                return dataProviders.get(tile).get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PicardException("Interrupted while waiting for tile " + tile + " to be read", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new PicardException("Error reading tile " + tile, e.getCause());
+            }
+        }
+
+        /** Called once the data of a tile has been converted, to let the following tiles be read. */
+        synchronized void release(final int tile) {
+            bytesInFlight -= tileBytes.getOrDefault(tile, 0L);
+            dataProviders.remove(tile);
+            notifyAll();
+        }
+
+        private synchronized void acquire(final long bytes) {
+            while (bytesInFlight > 0 && bytesInFlight + bytes > budget) {
+                try {
+                    wait();
+                } catch (final InterruptedException e) {
+                    throw new PicardException("Interrupted while waiting to read tiles", e);
+                }
+            }
+            bytesInFlight += bytes;
+        }
+
+        void shutdown() {
+            awaitThreadPoolTermination("Prefetch scheduling executor", schedulingExecutor);
+            readingExecutor.shutdown();
+            awaitThreadPoolTermination("Prefetch reading executor", readingExecutor);
+        }
+
+        /**
+         * Estimates the memory taken by each tile once read as the size of its decompressed data for all the output
+         * cycles, taken from the cbcl headers, with each nibble expanded to a byte.
+         */
+        private Map<Integer, Long> estimateTileBytes() {
+            final Map<Integer, File> filterFileMap = new HashMap<>();
+            for (final File filterFile : filterFiles) {
+                filterFileMap.put(NewIlluminaDataProvider.fileToTile(filterFile.getName()), filterFile);
+            }
+            final CbclReader reader = new CbclReader(cbcls, filterFileMap, outputMapping.getOutputReadLengths(),
+                    tiles.get(0), locs, outputMapping.getOutputCycles(), true);
+
+            final Map<Integer, Long> bytes = new HashMap<>();
+            reader.getAllTiles().values().forEach(cycleTiles -> cycleTiles.forEach(tileData ->
+                    bytes.merge(tileData.getTileNum(), 2L * tileData.getUncompressedBlockSize(), Long::sum)));
+            return bytes;
+        }
+    }
+
     private class CompletedWorkChecker implements Runnable {
 
         private int currentTileIndex = 0;
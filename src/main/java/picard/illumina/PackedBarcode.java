@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.illumina;
+
+import java.util.Arrays;
+
+/**
+ * The bases of a barcode, or of the barcode reads of a cluster, packed two bits per base, 32 bases to a long, so that
+ * the mismatches between a read and a barcode are counted with an XOR and a popcount per 32 bases rather than base by
+ * base.  The segments of a multi-part barcode are packed end to end.
+ *
+ * A read also has a mask of its no-calls, which are never mismatches, and a mask of its bases below the minimum base
+ * quality, which are mismatches even when they agree with the barcode.  Each mask has the low bit of a base's two bit
+ * lane set for the bases it holds.  Only A, C, G and T, in either case, and the no-calls N, n and '.' can be packed.
+ */
+public final class PackedBarcode {
+    private static final int BASES_PER_WORD = 32;
+    private static final long LOW_BITS = 0x5555555555555555L;
+    private static final int NO_CALL = -2;
+
+    private final int[] segmentLengths;
+    private final long[] bases;
+    private final long[] noCalls;
+    private final long[] lowQualities;
+
+    private PackedBarcode(final int[] segmentLengths) {
+        this.segmentLengths = segmentLengths;
+        final int numWords = (Arrays.stream(segmentLengths).sum() + BASES_PER_WORD - 1) / BASES_PER_WORD;
+        this.bases = new long[numWords];
+        this.noCalls = new long[numWords];
+        this.lowQualities = new long[numWords];
+    }
+
+    /**
+     * Packs the segments of an expected barcode.
+     *
+     * @return the packed barcode, or null if it has a base other than A, C, G or T
+     */
+    public static PackedBarcode ofBarcode(final byte[][] segments) {
+        final PackedBarcode packed = ofRead(segments, null, 0);
+        return packed == null || packed.hasMaskedBases() ? null : packed;
+    }
+
+    /**
+     * Packs the barcode reads of a cluster.
+     *
+     * @param qualities          the qualities of the bases, or null to not mask any as low quality
+     * @param minimumBaseQuality the quality below which a base is a mismatch
+     * @return the packed read, or null if it has a base that cannot be packed
+     */
+    public static PackedBarcode ofRead(final byte[][] segments, final byte[][] qualities, final int minimumBaseQuality) {
+        final int[] segmentLengths = new int[segments.length];
+        for (int j = 0; j < segments.length; ++j) segmentLengths[j] = segments[j].length;
+        final PackedBarcode packed = new PackedBarcode(segmentLengths);
+
+        int position = 0;
+        for (int j = 0; j < segments.length; ++j) {
+            final byte[] segment = segments[j];
+            for (int i = 0; i < segment.length; ++i, ++position) {
+                final int word = position / BASES_PER_WORD;
+                final int shift = 2 * (position % BASES_PER_WORD);
+                final int code = baseCode(segment[i]);
+                if (code == NO_CALL) {
+                    packed.noCalls[word] |= 1L << shift;
+                } else if (code < 0) {
+                    return null;
+                } else {
+                    packed.bases[word] |= ((long) code) << shift;
+                }
+                if (qualities != null && qualities[j][i] < minimumBaseQuality) {
+                    packed.lowQualities[word] |= 1L << shift;
+                }
+            }
+        }
+        return packed;
+    }
+
+    /** Returns true if the read has no-calls or low quality bases. */
+    public boolean hasMaskedBases() {
+        for (int w = 0; w < this.bases.length; ++w) {
+            if ((this.noCalls[w] | this.lowQualities[w]) != 0) return true;
+        }
+        return false;
+    }
+
+    /** Returns true if the read has segments of the same lengths as this barcode. */
+    public boolean hasSameLengths(final PackedBarcode read) {
+        return Arrays.equals(this.segmentLengths, read.segmentLengths);
+    }
+
+    /** Returns the total number of bases. */
+    public int length() {
+        return Arrays.stream(this.segmentLengths).sum();
+    }
+
+    /** Returns the word of packed bases holding bases 32 * index to 32 * index + 31. */
+    long getBases(final int index) {
+        return this.bases[index];
+    }
+
+    /**
+     * Counts the mismatches between this barcode and a read whose segments have the same lengths: the bases of the
+     * read that are not no-calls and either differ from the barcode or are of low quality.
+     */
+    public int countMismatches(final PackedBarcode read) {
+        int mismatches = 0;
+        for (int w = 0; w < this.bases.length; ++w) {
+            final long diff = this.bases[w] ^ read.bases[w];
+            final long mismatched = (((diff | (diff >>> 1)) & LOW_BITS) | read.lowQualities[w]) & ~read.noCalls[w];
+            mismatches += Long.bitCount(mismatched);
+        }
+        return mismatches;
+    }
+
+    /** Returns the number of bases that differ between two words of packed bases. */
+    static int countDifferences(final long lhs, final long rhs) {
+        final long diff = lhs ^ rhs;
+        return Long.bitCount((diff | (diff >>> 1)) & LOW_BITS);
+    }
+
+    /** Returns the two bit code of an A, C, G or T in either case, NO_CALL for a no-call, or -1 for any other base. */
+    private static int baseCode(final byte base) {
+        switch (base) {
+            case 'A': case 'a': return 0;
+            case 'C': case 'c': return 1;
+            case 'G': case 'g': return 2;
+            case 'T': case 't': return 3;
+            case 'N': case 'n': case '.': return NO_CALL;
+            default: return -1;
+        }
+    }
+}
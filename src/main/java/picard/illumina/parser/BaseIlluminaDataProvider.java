@@ -64,13 +64,8 @@ public abstract class BaseIlluminaDataProvider implements Iterator<ClusterData>,
     }
 
     protected void addReadData(final ClusterData clusterData, final int numReads, final CbclData cbclData) {
-        final byte[][] bases = cbclData.getBases();
         for (int i = 0; i < numReads; i++) {
-            clusterData.getRead(i).setBases(bases[i]);
-        }
-        final byte[][] qualities = cbclData.getQualities();
-        for (int i = 0; i < numReads; i++) {
-            clusterData.getRead(i).setQualities(qualities[i]);
+            cbclData.copyRead(i, clusterData.getRead(i));
         }
         clusterData.setPf(cbclData.isPf());
         clusterData.setX(cbclData.getPositionInfo().xQseqCoord);
@@ -4,15 +4,19 @@ import picard.illumina.parser.readers.AbstractIlluminaPositionFileReader;
 
 /**
  * This class provides that data structure for cbcls. This includes BCL data as well as PF (pass-filter) data and
- * positional information.
+ * positional information.  The bases and qualities are a view of one cluster of the {@link TileBasecalls} of its tile,
+ * and are only decoded when they are copied out.
  */
-public class CbclData extends BclData implements PfData, PositionalData {
-    private final int tile;
-    private AbstractIlluminaPositionFileReader.PositionInfo positionInfo;
+public class CbclData implements PfData, PositionalData {
+    private final TileBasecalls tileBasecalls;
+    private final int cluster;
+    private final AbstractIlluminaPositionFileReader.PositionInfo positionInfo;
 
-    public CbclData(int[] outputLengths, int tile) {
-        super(outputLengths);
-        this.tile = tile;
+    public CbclData(final TileBasecalls tileBasecalls, final int cluster,
+                    final AbstractIlluminaPositionFileReader.PositionInfo positionInfo) {
+        this.tileBasecalls = tileBasecalls;
+        this.cluster = cluster;
+        this.positionInfo = positionInfo;
     }
 
     //CBCLs currently only contain PF reads.
@@ -22,17 +26,13 @@ public class CbclData extends BclData implements PfData, PositionalData {
     }
 
     public int getTile() {
-        return tile;
+        return tileBasecalls.getTile();
     }
 
     public AbstractIlluminaPositionFileReader.PositionInfo getPositionInfo() {
         return positionInfo;
     }
 
-    public void setPositionInfo(AbstractIlluminaPositionFileReader.PositionInfo positionInfo) {
-        this.positionInfo = positionInfo;
-    }
-
     @Override
     public int getXCoordinate() {
         return this.positionInfo.xQseqCoord;
@@ -42,4 +42,40 @@ public class CbclData extends BclData implements PfData, PositionalData {
     public int getYCoordinate() {
         return this.positionInfo.yQseqCoord;
     }
+
+    public int getNumReads() {
+        return tileBasecalls.getNumReads();
+    }
+
+    /** Decodes one read of the cluster into new arrays of bases and qualities, which are set on readData. */
+    public void copyRead(final int read, final ReadData readData) {
+        final int length = tileBasecalls.getReadLength(read);
+        final byte[] bases = new byte[length];
+        final byte[] qualities = new byte[length];
+        tileBasecalls.decodeRead(cluster, read, bases, qualities);
+        readData.setBases(bases);
+        readData.setQualities(qualities);
+    }
+
+    /** Decodes the bases of all the reads of the cluster.  Prefer copyRead(), which decodes bases and qualities at once. */
+    public byte[][] getBases() {
+        final byte[][] bases = new byte[getNumReads()][];
+        for (int read = 0; read < bases.length; read++) {
+            final ReadData readData = new ReadData();
+            copyRead(read, readData);
+            bases[read] = readData.getBases();
+        }
+        return bases;
+    }
+
+    /** Decodes the qualities of all the reads of the cluster.  Prefer copyRead(), which decodes bases and qualities at once. */
+    public byte[][] getQualities() {
+        final byte[][] qualities = new byte[getNumReads()][];
+        for (int read = 0; read < qualities.length; read++) {
+            final ReadData readData = new ReadData();
+            copyRead(read, readData);
+            qualities[read] = readData.getQualities();
+        }
+        return qualities;
+    }
 }
@@ -45,6 +45,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -263,7 +264,19 @@ public class IlluminaDataProviderFactory {
     public NewIlluminaDataProvider makeDataProvider(List<File> cbcls,
                                                     List<AbstractIlluminaPositionFileReader.PositionInfo> locs,
                                                     File[] filterFiles, int tileNum, File barcodeFile) {
-        return new NewIlluminaDataProvider(cbcls, locs, filterFiles, lane, tileNum, outputMapping, barcodeFile);
+        return makeDataProvider(cbcls, locs, filterFiles, tileNum, barcodeFile, null);
+    }
+
+    /**
+     * As {@link #makeDataProvider(List, List, File[], int, File)}, but if decompressionExecutor is not null the cbcl
+     * cycles of the tile are decompressed concurrently on it.
+     */
+    public NewIlluminaDataProvider makeDataProvider(List<File> cbcls,
+                                                    List<AbstractIlluminaPositionFileReader.PositionInfo> locs,
+                                                    File[] filterFiles, int tileNum, File barcodeFile,
+                                                    ExecutorService decompressionExecutor) {
+        return new NewIlluminaDataProvider(cbcls, locs, filterFiles, lane, tileNum, outputMapping, barcodeFile,
+                decompressionExecutor);
     }
 
     public BaseIlluminaDataProvider makeDataProvider() {
@@ -8,6 +8,7 @@ import java.io.File;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,13 +29,24 @@ public class NewIlluminaDataProvider extends BaseIlluminaDataProvider {
     NewIlluminaDataProvider(final List<File> cbcls, final List<AbstractIlluminaPositionFileReader.PositionInfo> locs,
                             final File[] filterFiles, final int lane, final int tileNum,
                             final OutputMapping outputMapping, final File barcodeFile) {
+        this(cbcls, locs, filterFiles, lane, tileNum, outputMapping, barcodeFile, null);
+    }
+
+    /**
+     * As the constructor above, decompressing the cycles of the tile on decompressionExecutor if it is not null.
+     */
+    NewIlluminaDataProvider(final List<File> cbcls, final List<AbstractIlluminaPositionFileReader.PositionInfo> locs,
+                            final File[] filterFiles, final int lane, final int tileNum,
+                            final OutputMapping outputMapping, final File barcodeFile,
+                            final ExecutorService decompressionExecutor) {
         super(lane, outputMapping);
 
         Map<Integer, File> filterFileMap = new HashMap<>();
         for (File filterFile : filterFiles) {
             filterFileMap.put(fileToTile(filterFile.getName()), filterFile);
         }
-        this.reader = new CbclReader(cbcls, filterFileMap, outputMapping.getOutputReadLengths(), tileNum, locs, outputMapping.getOutputCycles(), false);
+        this.reader = new CbclReader(cbcls, filterFileMap, outputMapping.getOutputReadLengths(), tileNum, locs, outputMapping.getOutputCycles(), false,
+                decompressionExecutor);
         if (barcodeFile != null) {
             this.barcodeReader = new BarcodeFileReader(barcodeFile);
         }
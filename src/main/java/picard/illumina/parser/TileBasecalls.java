@@ -0,0 +1,125 @@
+package picard.illumina.parser;
+
+import picard.PicardException;
+
+/**
+ * The basecalls of all the clusters of a tile, as read from cbcls, stored by read in one array per read with the cycles
+ * of each cluster next to each other.  Each basecall is kept packed in one byte, as in the cbcl (2 bits of base and the
+ * quality bin above them, 0 for a no-call), and only decoded to bases and qualities when a cluster's reads are copied
+ * out, so that reading a tile allocates nothing per cluster but the output arrays.
+ *
+ * A reader fills the tile a cycle at a time, through {@link #getCycleArray(int)}, {@link #getCycleOffset(int)} and
+ * {@link #getCycleStride()}.  Different cycles may be filled concurrently.
+ */
+public class TileBasecalls {
+    private static final byte NO_CALL_BASE = (byte) '.';
+    private static final byte NO_CALL_QUALITY = 2;
+    private static final byte[] BASE_LOOKUP = new byte[]{'A', 'C', 'G', 'T'};
+    private static final int BASECALL_VALUES = 16;
+
+    private final int tile;
+    private final int numClusters;
+    private final int[] outputLengths;
+    /** The basecall of cycle c of read r of cluster i is at packedReads[r][i * outputLengths[r] + c]. */
+    private final byte[][] packedReads;
+    private final int[] firstCycleOfRead;
+    private final int[] readOfCycle;
+    private final int[] cycleInRead;
+    /** The decoded base and quality of each packed basecall value, per cycle since each cycle has its own bins. */
+    private final byte[] baseLookup = new byte[BASECALL_VALUES];
+    private final byte[][] qualityLookup;
+
+    public TileBasecalls(final int tile, final int numClusters, final int[] outputLengths) {
+        this.tile = tile;
+        this.numClusters = numClusters;
+        this.outputLengths = outputLengths;
+
+        int cycles = 0;
+        for (final int outputLength : outputLengths) cycles += outputLength;
+        readOfCycle = new int[cycles];
+        cycleInRead = new int[cycles];
+        qualityLookup = new byte[cycles][];
+        packedReads = new byte[outputLengths.length][];
+        firstCycleOfRead = new int[outputLengths.length];
+
+        int cycle = 0;
+        for (int read = 0; read < outputLengths.length; read++) {
+            final long size = (long) numClusters * outputLengths[read];
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new PicardException("Tile " + tile + " has too many clusters (" + numClusters + ") to hold read " + read + " in memory.");
+            }
+            packedReads[read] = new byte[(int) size];
+            firstCycleOfRead[read] = cycle;
+            for (int i = 0; i < outputLengths[read]; i++, cycle++) {
+                readOfCycle[cycle] = read;
+                cycleInRead[cycle] = i;
+            }
+        }
+
+        baseLookup[0] = NO_CALL_BASE;
+        for (int i = 1; i < BASECALL_VALUES; i++) {
+            baseLookup[i] = BASE_LOOKUP[i & 0x3];
+        }
+    }
+
+    /**
+     * Sets the quality bins of a cycle, where bin b holds the quality of the basecalls with b in their upper bits.
+     */
+    public void setQualityBins(final int cycle, final byte[] qualityBins) {
+        final byte[] lookup = new byte[BASECALL_VALUES];
+        lookup[0] = NO_CALL_QUALITY;
+        for (int i = 1; i < BASECALL_VALUES; i++) {
+            // Mark values with no bin, which should not occur, so that decoding them fails as before.
+            lookup[i] = (i >>> 2) < qualityBins.length ? qualityBins[i >>> 2] : -1;
+        }
+        qualityLookup[cycle] = lookup;
+    }
+
+    /** The array holding the given (zero-based, over all reads) cycle. */
+    public byte[] getCycleArray(final int cycle) {
+        return packedReads[readOfCycle[cycle]];
+    }
+
+    /** The index in getCycleArray(cycle) of the basecall of the first cluster for the cycle. */
+    public int getCycleOffset(final int cycle) {
+        return cycleInRead[cycle];
+    }
+
+    /** The distance in getCycleArray(cycle) between the basecalls of consecutive clusters for the cycle. */
+    public int getCycleStride(final int cycle) {
+        return outputLengths[readOfCycle[cycle]];
+    }
+
+    public int getTile() {
+        return tile;
+    }
+
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+    public int getNumReads() {
+        return outputLengths.length;
+    }
+
+    public int getReadLength(final int read) {
+        return outputLengths[read];
+    }
+
+    /** Decodes the bases and qualities of one read of one cluster into the given arrays, of at least the read's length. */
+    public void decodeRead(final int cluster, final int read, final byte[] bases, final byte[] qualities) {
+        final int length = outputLengths[read];
+        final byte[] packed = packedReads[read];
+        final int offset = cluster * length;
+        final int firstCycle = firstCycleOfRead[read];
+        for (int i = 0; i < length; i++) {
+            final int basecall = packed[offset + i];
+            final byte quality = qualityLookup[firstCycle + i][basecall];
+            if (quality < 0) {
+                throw new PicardException("Basecall " + basecall + " of tile " + tile + " has no quality bin in cycle " + (firstCycle + i + 1));
+            }
+            bases[i] = baseLookup[basecall];
+            qualities[i] = quality;
+        }
+    }
+}
@@ -97,17 +97,6 @@ public class BaseBclReader {
         }
     }
 
-    void decodeQualityBinnedBasecall(final BclData bclData, final int read, final int cycle, final int byteToDecode,
-                                     final CycleData cycleData) {
-        if (byteToDecode == 0) {
-            bclData.bases[read][cycle] = (byte) '.';
-            bclData.qualities[read][cycle] = 2;
-        } else {
-            bclData.bases[read][cycle] = BASE_LOOKUP[byteToDecode & BASE_MASK];
-            bclData.qualities[read][cycle] = cycleData.qualityBins[byteToDecode >>> 2];
-        }
-    }
-
     public class CycleData {
         final short version;
         final int headerSize;
@@ -164,6 +153,10 @@ public class BaseBclReader {
             return compressedBlockSize;
         }
 
+        public int getUncompressedBlockSize() {
+            return uncompressedBlockSize;
+        }
+
         int getNumClustersInTile() {
             return numClustersInTile;
         }
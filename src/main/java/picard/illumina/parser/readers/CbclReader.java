@@ -1,29 +1,37 @@
 package picard.illumina.parser.readers;
 
+import htsjdk.samtools.util.BlockGunzipper;
 import htsjdk.samtools.util.CloseableIterator;
-import htsjdk.samtools.util.CloserUtil;
 import htsjdk.samtools.util.Log;
 import htsjdk.samtools.util.RuntimeIOException;
 import picard.PicardException;
 import picard.illumina.parser.CbclData;
+import picard.illumina.parser.TileBasecalls;
 
-import java.io.ByteArrayInputStream;
-import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * ------------------------------------- CBCL Header -----------------------------------
@@ -65,36 +73,66 @@ import java.util.zip.GZIPInputStream;
 
 public class CbclReader extends BaseBclReader implements CloseableIterator<CbclData> {
 
-    private byte[][] cachedTile;
-    private final int[] cachedTilePosition;
+    private TileBasecalls tileBasecalls;
+    private int nextCluster = 0;
 
     private CbclData queue = null;
     private Iterator<AbstractIlluminaPositionFileReader.PositionInfo> positionInfoIterator;
     private final CycleData[] cycleData;
     private final Map<Integer, File> filterFileMap;
-    private final Map<Integer, List<Boolean>> cachedFilter = new HashMap<>();
+    private final Map<Integer, boolean[]> cachedFilter = new HashMap<>();
+    private final Map<Integer, Integer> cachedPfClusterCount = new HashMap<>();
     private final Map<Integer, Map<Integer, File>> surfaceToTileToCbclMap;
     private int headerSize;
     private final Map<Integer, List<TileData>> allTiles = new HashMap<>();
     private final int[] outputCycles;
+    private final ExecutorService decompressionExecutor;
+    /** Inflaters that have finished a cycle of the tile, for reuse by the next cycle decompressed on any thread. */
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
 
     private static final int INITIAL_HEADER_SIZE = 6;
+    /** The number of cycles of a tile that may be queued on the decompression executor at the same time. */
+    private static final int MAX_CYCLES_IN_FLIGHT = 32;
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int GZIP_FLAG_HCRC = 2;
+    private static final int GZIP_FLAG_EXTRA = 4;
+    private static final int GZIP_FLAG_NAME = 8;
+    private static final int GZIP_FLAG_COMMENT = 16;
     private static final Log log = Log.getInstance(CbclReader.class);
+
+    /** The number of bytes of a mapped tile block passed to an inflater at a time. */
+    private static final int INFLATER_INPUT_SIZE = 64 * 1024;
+
+    // Buffers reused for every tile decompressed on the same thread, so that decompressing a lane does not allocate an
+    // inflater input and an uncompressed buffer per cycle per tile.
+    private static final ThreadLocal<byte[]> inflaterInput = ThreadLocal.withInitial(() -> new byte[INFLATER_INPUT_SIZE]);
+    private static final ThreadLocal<byte[]> uncompressedBuffer = ThreadLocal.withInitial(() -> new byte[0]);
     private static final Pattern PATTERN = Pattern.compile("^.+C(\\d{1,4}).+L(\\d{1,3})_(\\d).cbcl$");
 
     public CbclReader(final List<File> cbcls, final Map<Integer, File> filterFileMap, final int[] outputLengths,
                       final int tileNum, final List<AbstractIlluminaPositionFileReader.PositionInfo> locs, final int[] outputCycles, final boolean headerOnly) {
+        this(cbcls, filterFileMap, outputLengths, tileNum, locs, outputCycles, headerOnly, null);
+    }
+
+    /**
+     * As the constructor above, but if decompressionExecutor is not null the cycle blocks of the tile are decompressed
+     * concurrently on the executor, with at most MAX_CYCLES_IN_FLIGHT of them queued at a time.  The executor may be
+     * shared by many readers.
+     */
+    public CbclReader(final List<File> cbcls, final Map<Integer, File> filterFileMap, final int[] outputLengths,
+                      final int tileNum, final List<AbstractIlluminaPositionFileReader.PositionInfo> locs, final int[] outputCycles, final boolean headerOnly,
+                      final ExecutorService decompressionExecutor) {
         super(outputLengths);
         if (!filterFileMap.containsKey(tileNum)) {
             throw new PicardException("Filter file for tile " + tileNum + " does not exist.");
         }
         this.outputCycles = outputCycles;
+        this.decompressionExecutor = decompressionExecutor;
 
         surfaceToTileToCbclMap = sortCbcls(cbcls);
         this.filterFileMap = filterFileMap;
         cycleData = new CycleData[cycles];
-        cachedTile = new byte[cycles][];
-        cachedTilePosition = new int[cycles];
         for (int i = 1; i <= cycles; i++) {
             allTiles.put(i, new ArrayList<>());
         }
@@ -108,117 +146,150 @@ public class CbclReader extends BaseBclReader implements CloseableIterator<CbclD
     private void readSurfaceTile(final int tileNum, final List<AbstractIlluminaPositionFileReader.PositionInfo> locs,
                                  final boolean headerOnly) {
         log.info("Processing tile " + tileNum);
-        try {
-            for (final Map.Entry<Integer, Map<Integer, File>> entry : surfaceToTileToCbclMap.entrySet()) {
-                final Map<Integer, File> cycleMap = entry.getValue();
-                for (int i = 0; i < cycles; i++) {
-                    //cycleMap is 1 indexed
-                    final ByteBuffer byteBuffer = ByteBuffer.allocate(INITIAL_HEADER_SIZE);
-                    byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-
-                    final File bclFile = cycleMap.get(outputCycles[i]);
-                    if (bclFile == null) {
-                        throw new PicardException("Expected cbcl file for surface " + entry.getKey() + " cycle " + (i + 1) + " but it was not found.");
-                    }
+        for (final Map.Entry<Integer, Map<Integer, File>> entry : surfaceToTileToCbclMap.entrySet()) {
+            final Map<Integer, File> cycleMap = entry.getValue();
+            for (int i = 0; i < cycles; i++) {
+                //cycleMap is 1 indexed
+                final File bclFile = cycleMap.get(outputCycles[i]);
+                if (bclFile == null) {
+                    throw new PicardException("Expected cbcl file for surface " + entry.getKey() + " cycle " + (i + 1) + " but it was not found.");
+                }
 
-                    final InputStream stream = open(bclFile, false, false, false);
-                    int read = stream.read(byteBuffer.array());
+                // Only the header is read here; the block of the tile is mapped when its cycle is decompressed.
+                final ByteBuffer headerBuffer = readHeader(bclFile);
+                final short version = headerBuffer.getShort();
+                headerSize = headerBuffer.getInt();
 
-                    //we need to read the first 6 bytes to determine the header size
-                    if (read != INITIAL_HEADER_SIZE) {
-                        throw new RuntimeIOException(String.format("BCL %s has invalid header structure.", bclFile.getAbsoluteFile()));
-                    }
+                final byte bitsPerBasecall = headerBuffer.get();
+                final byte bitsPerQualityScore = headerBuffer.get();
 
-                    final short version = byteBuffer.getShort();
-                    headerSize = byteBuffer.getInt();
+                if (bitsPerBasecall != 2 && bitsPerBasecall != bitsPerQualityScore) {
+                    throw new PicardException("CBCL data not encoded in nibbles. (not currently supported) bitsPerBasecall : "
+                            + bitsPerBasecall + " bitsPerQualityScore : " + bitsPerQualityScore);
+                }
 
-                    final ByteBuffer headerBuffer = ByteBuffer.allocate(headerSize - INITIAL_HEADER_SIZE);
-                    headerBuffer.order(ByteOrder.LITTLE_ENDIAN);
+                final int numberOfBins = headerBuffer.getInt();
 
-                    read = stream.read(headerBuffer.array());
-                    if (read != headerSize - INITIAL_HEADER_SIZE) {
-                        throw new PicardException(String.format("BCL %s has invalid header structure.", bclFile.getAbsoluteFile()));
+                final byte[] qualityBins = new byte[numberOfBins];
+                //each bin has a pair of 4 byte mappings
+                for (int j = 0; j < numberOfBins; j++) {
+                    headerBuffer.getInt(); // first int is "from" value, which we don't need
+                    final int to = headerBuffer.getInt();
+                    qualityBins[j] = (byte) to;
+                }
+                long filePos = 0;
+
+                final int numTiles = headerBuffer.getInt();
+                TileData tileInfo = null;
+                for (int j = 0; j < numTiles; j++) {
+                    final int tile = headerBuffer.getInt();
+                    final int numClustersInTile = headerBuffer.getInt();
+                    final int uncompressedBlockSize = headerBuffer.getInt();
+                    final int compressedBlockSize = headerBuffer.getInt();
+                    final TileData tileData = new TileData(tile, numClustersInTile, uncompressedBlockSize, compressedBlockSize, filePos);
+                    allTiles.get(i + 1).add(tileData);
+                    if (tile == tileNum) {
+                        tileInfo = tileData;
                     }
+                    filePos += compressedBlockSize;
+                }
 
-                    final byte bitsPerBasecall = headerBuffer.get();
-                    final byte bitsPerQualityScore = headerBuffer.get();
+                final boolean pfExcluded = headerBuffer.get() == 1;
+                //try the next surface if we didn't find the tile
+                if (tileInfo == null) {
+                    continue;
+                }
 
-                    if (bitsPerBasecall != 2 && bitsPerBasecall != bitsPerQualityScore) {
-                        throw new PicardException("CBCL data not encoded in nibbles. (not currently supported) bitsPerBasecall : "
-                                + bitsPerBasecall + " bitsPerQualityScore : " + bitsPerQualityScore);
-                    }
+                cycleData[i] = new CycleData(version, headerSize, bitsPerBasecall, bitsPerQualityScore, numberOfBins, qualityBins, numTiles, tileInfo, pfExcluded);
+                this.streamFiles[i] = bclFile;
+            }
+        }
 
-                    final int numberOfBins = headerBuffer.getInt();
+        if (headerOnly) {
+            return;
+        }
 
-                    final byte[] qualityBins = new byte[numberOfBins];
-                    //each bin has a pair of 4 byte mappings
-                    for (int j = 0; j < numberOfBins; j++) {
-                        headerBuffer.getInt(); // first int is "from" value, which we don't need
-                        final int to = headerBuffer.getInt();
-                        qualityBins[j] = (byte) to;
-                    }
-                    long filePos = 0;
-
-                    final int numTiles = headerBuffer.getInt();
-                    TileData tileInfo = null;
-                    for (int j = 0; j < numTiles; j++) {
-                        final int tile = headerBuffer.getInt();
-                        final int numClustersInTile = headerBuffer.getInt();
-                        final int uncompressedBlockSize = headerBuffer.getInt();
-                        final int compressedBlockSize = headerBuffer.getInt();
-                        final TileData tileData = new TileData(tile, numClustersInTile, uncompressedBlockSize, compressedBlockSize, filePos);
-                        allTiles.get(i + 1).add(tileData);
-                        if (tile == tileNum) {
-                            tileInfo = tileData;
-                        }
-                        filePos += compressedBlockSize;
-                    }
+        if (cycleData[0].tileInfo == null) {
+            throw new PicardException("Could not find tile " + tileNum);
+        }
 
-                    final boolean pfExcluded = headerBuffer.get() == 1;
-                    //try the next surface if we didn't find the tile
-                    if (tileInfo == null) {
-                        continue;
-                    }
+        if (!cachedFilter.containsKey(cycleData[0].tileInfo.tileNum)) {
+            cacheFilterAndLocs(cycleData[0].tileInfo, locs);
+        }
+        tileBasecalls = new TileBasecalls(cycleData[0].tileInfo.tileNum, countClusters(), outputLengths);
 
-                    cycleData[i] = new CycleData(version, headerSize, bitsPerBasecall, bitsPerQualityScore, numberOfBins, qualityBins, numTiles, tileInfo, pfExcluded);
-                    this.streams[i] = stream;
-                    this.streamFiles[i] = bclFile;
-                    byteBuffer.clear();
-                    headerBuffer.clear();
-                }
-            }
+        if (decompressionExecutor != null) {
+            cacheTilesInParallel();
+            return;
+        }
 
-            if (headerOnly) {
-                return;
-            }
+        for (int totalCycleCount = 0; totalCycleCount < cycles; totalCycleCount++) {
+            cacheTile(totalCycleCount, cycleData[totalCycleCount].tileInfo, cycleData[totalCycleCount]);
+        }
+    }
 
-            int totalCycleCount = 0;
+    /**
+     * Returns the number of clusters that can be read from every cycle of the tile: the PF clusters, or all the
+     * clusters with data if non-PF clusters are excluded from the cbcl, and no more than the header says are in the tile.
+     */
+    private int countClusters() {
+        int numClusters = Integer.MAX_VALUE;
+        for (final CycleData currentCycleData : cycleData) {
+            final TileData tileData = currentCycleData.tileInfo;
+            final long clustersInCycle = currentCycleData.pfExcluded ? 2L * tileData.uncompressedBlockSize :
+                    cachedPfClusterCount.get(tileData.tileNum);
+            numClusters = (int) Math.min(numClusters, Math.min(clustersInCycle, tileData.numClustersInTile));
+        }
+        return numClusters;
+    }
 
-            if (cycleData[totalCycleCount].tileInfo == null) {
-                throw new PicardException("Could not find tile " + tileNum);
+    /**
+     * Reads the header of a cbcl, returning it in little endian order with its version and size still to be read.
+     */
+    private static ByteBuffer readHeader(final File file) {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            //we need to read the first 6 bytes to determine the header size
+            final ByteBuffer start = ByteBuffer.allocate(INITIAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (readFully(channel, start, 0) != INITIAL_HEADER_SIZE) {
+                throw new RuntimeIOException(String.format("BCL %s has invalid header structure.", file.getAbsoluteFile()));
+            }
+            final int headerSize = start.getInt(2);
+            if (headerSize < INITIAL_HEADER_SIZE || headerSize > channel.size()) {
+                throw new PicardException(String.format("BCL %s has invalid header structure.", file.getAbsoluteFile()));
             }
 
-            for (final int outputLength : outputLengths) {
-                for (int cycle = 0; cycle < outputLength; cycle++) {
-                    final CycleData currentCycleData = cycleData[totalCycleCount];
-                    try {
-                        if (cachedTile[totalCycleCount] == null) {
-                            if (!cachedFilter.containsKey(cycleData[totalCycleCount].tileInfo.tileNum)) {
-                                cacheFilterAndLocs(cycleData[totalCycleCount].tileInfo, locs);
-                            }
-                            cacheTile(totalCycleCount, cycleData[totalCycleCount].tileInfo, currentCycleData);
-                        }
-                    } catch (final IOException e) {
-                        // when logging the error, increment cycle by 1, since totalCycleCount is zero-indexed but Illumina directories are 1-indexed.
-                        throw new PicardException(String.format("Error while reading from BCL file for cycle %d. Offending file on disk is %s",
-                                (totalCycleCount + 1), this.streamFiles[totalCycleCount].getAbsolutePath()), e);
-                    }
-                    totalCycleCount++;
-                }
+            final ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+            start.flip();
+            header.put(start);
+            if (readFully(channel, header, INITIAL_HEADER_SIZE) != headerSize - INITIAL_HEADER_SIZE) {
+                throw new PicardException(String.format("BCL %s has invalid header structure.", file.getAbsoluteFile()));
             }
+            header.flip();
+            return header;
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error reading header of BCL file " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /** Reads from the channel at position until buffer is full or the channel ends, returning the bytes read. */
+    private static int readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position + total);
+            if (read < 0) break;
+            total += read;
+        }
+        return total;
+    }
 
-        } catch (final IOException ioe) {
-            throw new RuntimeIOException(ioe);
+    /** Maps a region of a file read only, in little endian order. */
+    private static ByteBuffer map(final File file, final long offset, final long length) {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        } catch (final IOException e) {
+            throw new RuntimeIOException("Error memory mapping BCL file " + file.getAbsolutePath(), e);
         }
     }
 
@@ -260,151 +331,268 @@ public class CbclReader extends BaseBclReader implements CloseableIterator<CbclD
         return data;
     }
 
+    /**
+     * Frees the native memory of the inflaters.  The tile is cached by the time the constructor returns, so this is
+     * called from there and the reader may still be iterated afterwards.
+     */
     @Override
     public void close() {
-        for (final InputStream stream : this.streams) {
-            CloserUtil.close(stream);
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
         }
     }
 
     private void advance() {
-        int totalCycleCount = 0;
-        final CbclData data = new CbclData(outputLengths, cycleData[totalCycleCount].tileInfo.tileNum);
-
-        for (int read = 0; read < outputLengths.length; read++) {
-            for (int cycle = 0; cycle < outputLengths[read]; cycle++) {
-                final CycleData currentCycleData = cycleData[totalCycleCount];
-
-                if (cachedTilePosition[totalCycleCount] >= cachedTile[totalCycleCount].length
-                        || cachedTilePosition[totalCycleCount] >= cycleData[totalCycleCount].getTileInfo().getNumClustersInTile()) {
-                    // end of tile
-                    return;
-                }
-
-                final int singleByte = cachedTile[totalCycleCount][cachedTilePosition[totalCycleCount]++];
-
-                decodeQualityBinnedBasecall(data, read, cycle, singleByte, currentCycleData);
-
-                totalCycleCount++;
-            }
+        if (tileBasecalls == null || nextCluster >= tileBasecalls.getNumClusters()) {
+            // end of tile
+            return;
         }
-        data.setPositionInfo(positionInfoIterator.next());
-        this.queue = data;
+        this.queue = new CbclData(tileBasecalls, nextCluster++, positionInfoIterator.next());
     }
 
     private void cacheFilterAndLocs(final TileData currentTileData, final List<AbstractIlluminaPositionFileReader.PositionInfo> locs) {
-        final List<Boolean> filterValues = new ArrayList<>();
         final FilterFileReader reader = new FilterFileReader(filterFileMap.get(currentTileData.tileNum));
         final Iterator<AbstractIlluminaPositionFileReader.PositionInfo> positionInfoIterator = locs.iterator();
 
-        while (reader.hasNext()) {
-            filterValues.add(reader.next());
-        }
-
+        final boolean[] filterValues = new boolean[(int) reader.numClusters];
         final List<AbstractIlluminaPositionFileReader.PositionInfo> positions = new ArrayList<>();
-        for (final boolean filterValue : filterValues) {
+        for (int i = 0; i < filterValues.length; i++) {
+            filterValues[i] = reader.next();
             final AbstractIlluminaPositionFileReader.PositionInfo info = positionInfoIterator.next();
-            if (filterValue) {
+            if (filterValues[i]) {
                 positions.add(info);
             }
         }
         this.positionInfoIterator = positions.iterator();
         cachedFilter.put(currentTileData.tileNum, filterValues);
+        cachedPfClusterCount.put(currentTileData.tileNum, positions.size());
     }
 
-    private void cacheTile(final int totalCycleCount, final TileData tileData, final CycleData currentCycleData) throws IOException {
-        final byte[] tileByteArray = new byte[tileData.compressedBlockSize];
+    private void cacheTile(final int totalCycleCount, final TileData tileData, final CycleData currentCycleData) {
+        final ByteBuffer block = tileBlock(totalCycleCount, tileData, currentCycleData);
+        final int uncompressedSize = decompressTile(totalCycleCount, tileData, block);
+        tileBasecalls.setQualityBins(totalCycleCount, currentCycleData.qualityBins);
+        promoteNibblesToBytes(totalCycleCount, tileData, currentCycleData, uncompressedBuffer.get(), uncompressedSize);
+    }
 
-        // Read the whole compressed block into a buffer, then sanity check the length
-        final InputStream stream = this.streams[totalCycleCount];
-        long dataLeft = tileData.filePosition - stream.skip(tileData.filePosition);
-        while (dataLeft > 0) {
-            dataLeft -= stream.skip(dataLeft);
+    /**
+     * Decompresses the cycles on the decompressionExecutor, waiting for the oldest cycle whenever MAX_CYCLES_IN_FLIGHT
+     * cycles are queued.  If a cycle fails, the cycles still queued are skipped, and those running are waited for, so
+     * that none is using the inflaters of this reader once the failure reaches the caller, who may close it.
+     */
+    private void cacheTilesInParallel() {
+        final List<Future<?>> inFlight = new ArrayList<>();
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        boolean cached = false;
+        try {
+            for (int i = 0; i < cycles; i++) {
+                final int totalCycleCount = i;
+                final CycleData currentCycleData = cycleData[totalCycleCount];
+                if (inFlight.size() == MAX_CYCLES_IN_FLIGHT) {
+                    inFlight.remove(0).get();
+                }
+                inFlight.add(decompressionExecutor.submit(() -> {
+                    if (!failed.get()) cacheTile(totalCycleCount, currentCycleData.tileInfo, currentCycleData);
+                }));
+            }
+            for (final Future<?> future : inFlight) {
+                future.get();
+            }
+            cached = true;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PicardException("Interrupted while decompressing CBCL tile " + cycleData[0].tileInfo.tileNum, e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new PicardException("Error while decompressing CBCL tile " + cycleData[0].tileInfo.tileNum, e.getCause());
+        } finally {
+            if (!cached) {
+                failed.set(true);
+                awaitAll(inFlight);
+            }
         }
+    }
 
-        final int readBytes = stream.read(tileByteArray);
-        if (readBytes != tileData.compressedBlockSize) {
-            throw new PicardException(String.format("Error while reading from BCL file for cycle %d. Offending file on disk is %s",
-                    (totalCycleCount + 1), this.streamFiles[totalCycleCount].getAbsolutePath()));
+    /**
+     * Waits for every future to finish, ignoring how, and without being interrupted; if the thread is interrupted
+     * meanwhile, or was beforehand, its interrupt status is set on return.
+     */
+    private static void awaitAll(final List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (final Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                } catch (final ExecutionException | CancellationException e) {
+                    break;
+                }
+            }
         }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
 
-        // Decompress the data from the buffer we just wrote - use gzip input stream to write to uncompressed buffer
-        final ByteArrayInputStream byteInputStream = new ByteArrayInputStream(Arrays.copyOfRange(tileByteArray, 0, readBytes));
-        byte[] decompressedByteArray = decompressTile(totalCycleCount, tileData, byteInputStream);
-
-        // Read uncompressed data from the buffer and expand each nibble into a full byte for ease of use
-        byte[] unNibbledByteArray = promoteNibblesToBytes(decompressedByteArray);
-        cachedTile[totalCycleCount] = filterNonPfReads(tileData, currentCycleData, unNibbledByteArray);
-
-        cachedTilePosition[totalCycleCount] = 0;
+    /**
+     * Maps the compressed block of the tile for a cycle.  Only the block is mapped, and only while its cycle is
+     * decompressed, so that a reader holds no mapping of the cbcls once its tile is cached.
+     */
+    private ByteBuffer tileBlock(final int totalCycleCount, final TileData tileData, final CycleData currentCycleData) {
+        final long offset = currentCycleData.headerSize + tileData.filePosition;
+        final File file = this.streamFiles[totalCycleCount];
+        if (offset + tileData.compressedBlockSize > file.length()) {
+            throw new PicardException(String.format("Error while reading from BCL file for cycle %d. Offending file on disk is %s",
+                    (totalCycleCount + 1), file.getAbsolutePath()));
+        }
+        return map(file, offset, tileData.compressedBlockSize);
     }
 
-    private byte[] filterNonPfReads(TileData tileData, CycleData currentCycleData, byte[] unNibbledByteArray) {
-        // Write buffer contents to cached tile array
-        // if nonPF reads are included we need to strip them out
-        if (!currentCycleData.pfExcluded) {
-            final List<Boolean> filterDatas = cachedFilter.get(tileData.tileNum);
-            int sum = 0;
-            for (final boolean b : filterDatas) {
-                sum += b ? 1 : 0;
-            }
-            final byte[] filteredByteArray = new byte[sum];
-            int filterIndex = 0;
-            int basecallIndex = 0;
-            for (final boolean filterData : filterDatas) {
-                final byte readByte = unNibbledByteArray[filterIndex];
-                if (filterData) {
-                    filteredByteArray[basecallIndex] = readByte;
-                    basecallIndex++;
-                }
-                filterIndex++;
+    /**
+     * Expands each nibble of the decompressed tile into a byte of the cycle in tileBasecalls, keeping only the PF
+     * clusters if non-PF clusters were not already excluded from the cbcl.
+     */
+    private void promoteNibblesToBytes(final int totalCycleCount, final TileData tileData, final CycleData currentCycleData,
+                                       final byte[] decompressedByteArray, final int length) {
+        final byte[] cycleArray = tileBasecalls.getCycleArray(totalCycleCount);
+        final int stride = tileBasecalls.getCycleStride(totalCycleCount);
+        final int numClusters = tileBasecalls.getNumClusters();
+        int index = tileBasecalls.getCycleOffset(totalCycleCount);
+
+        if (currentCycleData.pfExcluded) {
+            for (int cluster = 0; cluster < numClusters; cluster++, index += stride) {
+                final byte singleByte = decompressedByteArray[cluster >> 1];
+                cycleArray[index] = (byte) ((cluster & 1) == 0 ? singleByte & 0x0f : (singleByte >> 4) & 0x0f);
             }
-            return filteredByteArray;
-        } else {
-            return unNibbledByteArray;
+            return;
         }
-    }
 
-    private byte[] promoteNibblesToBytes(byte[] decompressedByteArray) {
-        //we are going to explode the nibbles in to bytes to make PF filtering easier
-        final byte[] unNibbledByteArray = new byte[decompressedByteArray.length * 2];
-        int index = 0;
-        for (final byte singleByte : decompressedByteArray) {
-            unNibbledByteArray[index] = (byte) (singleByte & 0x0f);
-            index++;
-            unNibbledByteArray[index] = (byte) ((singleByte >> 4) & 0x0f);
-            index++;
-        }
-        return unNibbledByteArray;
+        // if nonPF reads are included we need to strip them out
+        final boolean[] filterDatas = cachedFilter.get(tileData.tileNum);
+        if (filterDatas.length > length * 2) {
+            throw new PicardException(String.format("BCL file %s has data for %d clusters of tile %d but the filter file has %d.",
+                    this.streamFiles[totalCycleCount].getAbsolutePath(), length * 2, tileData.tileNum, filterDatas.length));
+        }
+        int basecallIndex = 0;
+        for (int filterIndex = 0; filterIndex < filterDatas.length && basecallIndex < numClusters; filterIndex++) {
+            if (filterDatas[filterIndex]) {
+                final byte singleByte = decompressedByteArray[filterIndex >> 1];
+                cycleArray[index] = (byte) ((filterIndex & 1) == 0 ? singleByte & 0x0f : (singleByte >> 4) & 0x0f);
+                index += stride;
+                basecallIndex++;
+            }
+        }
     }
 
-    private byte[] decompressTile(int totalCycleCount, TileData tileData, ByteArrayInputStream byteInputStream) throws IOException {
-        final byte[] decompressedByteArray = new byte[tileData.uncompressedBlockSize];
+    /**
+     * Decompresses the single gzip member of a tile block into this thread's uncompressedBuffer, returning the number
+     * of bytes decompressed.  An Inflater only reads from arrays in Java 8, so the deflated data is passed to it from
+     * the mapped block a chunk of INFLATER_INPUT_SIZE bytes at a time, through this thread's inflaterInput, rather than
+     * copying the whole block out of the mapping.  The inflaters come from the default InflaterFactory of
+     * BlockGunzipper, i.e. the Intel inflater unless USE_JDK_INFLATER is set.
+     */
+    private int decompressTile(final int totalCycleCount, final TileData tileData, final ByteBuffer block) {
         //only decompress the data if we are expecting data.
-        if (decompressedByteArray.length == 0) {
+        if (tileData.uncompressedBlockSize == 0) {
             log.warn("Ignoring tile " + tileData.tileNum + " there are no PF reads.");
-        } else {
-            int read;
-            int totalRead = 0;
-            try (GZIPInputStream gzipInputStream = new GZIPInputStream(byteInputStream, decompressedByteArray.length)) {
-                while ((read = gzipInputStream.read(decompressedByteArray, totalRead, decompressedByteArray.length - totalRead)) != -1) {
-                    if (read == 0) {
+            return 0;
+        }
+
+        final byte[] decompressedByteArray = pooledBuffer(uncompressedBuffer, tileData.uncompressedBlockSize);
+
+        final int dataStart = skipGzipHeader(totalCycleCount, block);
+        final int dataEnd = block.limit() - GZIP_TRAILER_SIZE;
+        if (dataEnd < dataStart) {
+            throw new PicardException("Unexpected end of file " + this.streamFiles[totalCycleCount].getAbsolutePath()
+                    + " this file is likely corrupt or truncated.");
+        }
+        final ByteBuffer deflated = block.duplicate();
+        deflated.position(dataStart).limit(dataEnd);
+        final byte[] input = inflaterInput.get();
+
+        int totalRead = 0;
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = BlockGunzipper.getDefaultInflaterFactory().makeInflater(true);
+        }
+        try {
+            inflater.reset();
+            while (totalRead < tileData.uncompressedBlockSize) {
+                if (inflater.needsInput()) {
+                    if (!deflated.hasRemaining()) {
                         break;
                     }
-                    totalRead += read;
+                    final int length = Math.min(input.length, deflated.remaining());
+                    deflated.get(input, 0, length);
+                    inflater.setInput(input, 0, length);
                 }
-            } catch (final EOFException eofException) {
-                throw new PicardException("Unexpected end of file " + this.streamFiles[totalCycleCount].getAbsolutePath()
-                        + " this file is likely corrupt or truncated. We have read "
-                        + totalRead + " and were expecting to read "
-                        + decompressedByteArray.length);
+                final int read = inflater.inflate(decompressedByteArray, totalRead, tileData.uncompressedBlockSize - totalRead);
+                if (read == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                    break;
+                }
+                totalRead += read;
+            }
+        } catch (final DataFormatException e) {
+            throw new PicardException("Error while decompressing from BCL file " + this.streamFiles[totalCycleCount].getAbsolutePath()
+                    + " this file is likely corrupt.", e);
+        } finally {
+            inflaters.add(inflater);
+        }
+
+        if (totalRead != tileData.uncompressedBlockSize) {
+            throw new PicardException("Unexpected end of file " + this.streamFiles[totalCycleCount].getAbsolutePath()
+                    + " this file is likely corrupt or truncated. We have read "
+                    + totalRead + " and were expecting to read "
+                    + tileData.uncompressedBlockSize);
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(decompressedByteArray, 0, totalRead);
+        if ((int) crc.getValue() != block.getInt(dataEnd)) {
+            throw new PicardException(String.format("Error while decompressing from BCL file for cycle %d. Offending file on disk is %s",
+                    (totalCycleCount + 1), this.streamFiles[totalCycleCount].getAbsolutePath()));
+        }
+        return totalRead;
+    }
+
+    /** Returns this thread's buffer from the pool, first growing it if it is smaller than size. */
+    private static byte[] pooledBuffer(final ThreadLocal<byte[]> pool, final int size) {
+        byte[] buffer = pool.get();
+        if (buffer.length < size) {
+            buffer = new byte[size];
+            pool.set(buffer);
+        }
+        return buffer;
+    }
+
+    /** Checks the gzip header at the start of a tile block and returns the offset of the deflated data after it. */
+    private int skipGzipHeader(final int totalCycleCount, final ByteBuffer block) {
+        if (block.limit() < GZIP_HEADER_SIZE || (block.get(0) & 0xff) != 0x1f || (block.get(1) & 0xff) != 0x8b || block.get(2) != 8) {
+            throw new PicardException("Tile block is not gzip compressed in BCL file " + this.streamFiles[totalCycleCount].getAbsolutePath());
+        }
+        final int flags = block.get(3) & 0xff;
+        int offset = GZIP_HEADER_SIZE;
+        try {
+            if ((flags & GZIP_FLAG_EXTRA) != 0) {
+                offset += 2 + ((block.get(offset) & 0xff) | ((block.get(offset + 1) & 0xff) << 8));
+            }
+            if ((flags & GZIP_FLAG_NAME) != 0) {
+                while (block.get(offset++) != 0) ;
+            }
+            if ((flags & GZIP_FLAG_COMMENT) != 0) {
+                while (block.get(offset++) != 0) ;
             }
-            if (totalRead != tileData.uncompressedBlockSize) {
-                throw new PicardException(String.format("Error while decompressing from BCL file for cycle %d. Offending file on disk is %s",
-                        (totalCycleCount + 1), this.streamFiles[totalCycleCount].getAbsolutePath()));
+            if ((flags & GZIP_FLAG_HCRC) != 0) {
+                offset += 2;
             }
+        } catch (final IndexOutOfBoundsException e) {
+            throw new PicardException("Unexpected end of file " + this.streamFiles[totalCycleCount].getAbsolutePath()
+                    + " this file is likely corrupt or truncated.", e);
         }
-        return decompressedByteArray;
+        return offset;
     }
 
     public CycleData[] getCycleData() {
@@ -430,6 +618,6 @@ public class CbclReader extends BaseBclReader implements CloseableIterator<CbclD
     }
 
     public void clear() {
-        cachedTile = null;
+        tileBasecalls = null;
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.metrics;
+
+import htsjdk.samtools.metrics.MetricBase;
+
+/**
+ * A PerUnitMetricCollector whose accumulated state can be added to that of another collector of the same kind, such
+ * that accepting the records of two units into separate collectors and then merging them gives the same metrics as
+ * accepting all of the records into a single collector (e.g. because the state is only counts and histograms).
+ *
+ * When every PerUnitMetricCollector made by a MultiLevelCollector is mergeable, and more than one accumulation level
+ * is requested, MultiLevelCollector accepts each record into the collector of its read group only, and makes the
+ * collectors of all the requested levels by merging the read group collectors at finish().
+ */
+public interface MergeablePerUnitMetricCollector<BEAN extends MetricBase, HKEY extends Comparable, ARGTYPE>
+        extends PerUnitMetricCollector<BEAN, HKEY, ARGTYPE> {
+    /**
+     * Adds everything accepted by other to this collector.  Called before finish() on either collector.
+     * @param other a collector made by the same MultiLevelCollector, which is not used afterwards
+     */
+    public void merge(final MergeablePerUnitMetricCollector<BEAN, HKEY, ARGTYPE> other);
+}
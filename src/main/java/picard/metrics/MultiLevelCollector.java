@@ -31,12 +31,16 @@ import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.reference.ReferenceSequence;
 import picard.PicardException;
 import picard.analysis.MetricAccumulationLevel;
+import picard.sam.util.SamRecordSharingUtil;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * MultiLevelCollector handles accumulating Metrics at different MetricAccumulationLevels(ALL_READS, SAMPLE, LIBRARY, READ_GROUP).
@@ -60,6 +64,16 @@ import java.util.Set;
  * this class as the ARGTYPE of both the PerUnitMetricCollector and MultiLevelCollector.  You can then do these calculations in the makeArg
  * method and they will only be done once per record.
  *
+ * If the PerUnitMetricCollectors are {@link MergeablePerUnitMetricCollector}s and several accumulation levels are
+ * requested, each record is accepted only by the PerUnitMetricCollector of its read group, and the PerUnitMetricCollectors
+ * of the requested levels are made by merging those of the read groups at finish(), so that the per-record work does
+ * not grow with the number of levels.
+ *
+ * Alternatively, when several accumulation levels are requested, {@link #setParallelAccumulationLevels(boolean)} lets
+ * each level be updated on its own thread.  makeArg is still called once per record, on the calling thread, and each
+ * PerUnitMetricCollector still sees its records in order, but the ARGTYPE is then shared between threads and must not
+ * be modified by the PerUnitMetricCollectors.
+ *
  * @param <METRIC_TYPE> The type of metrics being collected
  * @param <Histogram_KEY> If there is are Histograms related to metrics of type <BEAN> then <HKEY> is the key value to these Histograms
  * @param <ARGTYPE> The type of argument passed to individual PerUnitMetricCollector (see SAMRecordMultilevelCollector and PerUnitMetricCollector)
@@ -67,6 +81,13 @@ import java.util.Set;
 public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, Histogram_KEY extends Comparable, ARGTYPE>  {
 
     public static final String UNKNOWN = "unknown";
+
+    /** The number of records handed to the level threads at a time when levels are updated in parallel. */
+    static final int PARALLEL_BATCH_SIZE = 1000;
+
+    /** The number of batches queued for each level thread before the calling thread waits for it to catch up. */
+    static final int PARALLEL_QUEUED_BATCHES = 16;
+
     //The collector that will accept all records (allReads is NULL if !calculateAll)
     private PerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE> allReadCollector;
 
@@ -74,6 +95,22 @@ public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, Histog
     //these will be listed in the order in which their children would be added to a metric file
     private List<Distributor> outputOrderedDistributors;
 
+    private boolean parallelAccumulationLevels = false;
+
+    //Started on the first record if parallelAccumulationLevels is set and there is more than one level
+    private ParallelLevels parallelLevels;
+
+    //True if all the collectors are mergeable, in which case, unless parallelAccumulationLevels is set, records are
+    //accepted by the collectors of their read groups only, which are merged into the levels at finish()
+    private boolean mergeReadGroups = false;
+
+    //When mergeReadGroups is set, the collector of each read group seen so far, by read group ID
+    private final Map<String, MergeablePerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE>> readGroupCollectors = new LinkedHashMap<>();
+    private final Map<String, SAMReadGroupRecord> readGroups = new LinkedHashMap<>();
+
+    //When mergeReadGroups is set, the collector of the records without a known read group
+    private MergeablePerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE> unknownReadGroupCollector;
+
     //Convert the current SAMRecord and the ReferenceSequence for that record into an ARGTYPE object
     //see accept record for use
     protected abstract ARGTYPE makeArg(final SAMRecord samRec, final ReferenceSequence refSeq);
@@ -145,7 +182,26 @@ public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, Histog
 
         /** Call acceptRecord(args) on the record collector identified by getKey */
         public void acceptRecord(final ARGTYPE args, final SAMReadGroupRecord rg) {
+            getCollector(rg).acceptRecord(args);
+        }
 
+        /** Merge the given collector, which accepted records of the given read group, into the collector identified by getKey */
+        @SuppressWarnings("unchecked")
+        public void merge(final MergeablePerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE> readGroupCollector, final SAMReadGroupRecord rg) {
+            ((MergeablePerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE>) getCollector(rg)).merge(readGroupCollector);
+        }
+
+        /** Returns true if this Distributor has collectors, and they are all mergeable */
+        public boolean isMergeable() {
+            if (collectors.isEmpty()) return false;
+            for (final PerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE> collector : collectors.values()) {
+                if (!(collector instanceof MergeablePerUnitMetricCollector)) return false;
+            }
+            return true;
+        }
+
+        /** Get the collector identified by getKey, making the collector of unknown records if needed */
+        protected PerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE> getCollector(final SAMReadGroupRecord rg) {
             String key = UNKNOWN;
             if(rg != null) {
                 final String computedKey = getKey(rg);
@@ -161,7 +217,7 @@ public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, Histog
                 collector = makeUnknownCollector();
                 collectors.put(key, collector);
             }
-            collector.acceptRecord(args);
+            return collector;
         }
 
         /** Add all records to the MetricsFile passed in, this will happen in the order they were
@@ -192,6 +248,16 @@ public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, Histog
             allReadCollector.acceptRecord(args);
         }
 
+        @Override
+        protected PerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE> getCollector(final SAMReadGroupRecord rg) {
+            return allReadCollector;
+        }
+
+        @Override
+        public boolean isMergeable() {
+            return allReadCollector instanceof MergeablePerUnitMetricCollector;
+        }
+
         @Override
         protected PerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE> makeCollector(final SAMReadGroupRecord rg) {
             allReadCollector = makeAllReadCollector();
@@ -302,6 +368,11 @@ public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, Histog
         if(accumulationLevels.contains(MetricAccumulationLevel.READ_GROUP)) {
             outputOrderedDistributors.add(new ReadGroupCollector(samRgRecords));
         }
+
+        mergeReadGroups = outputOrderedDistributors.size() > 1;
+        for (final Distributor distributor : outputOrderedDistributors) {
+            mergeReadGroups &= distributor.isMergeable();
+        }
     }
 
     /**
@@ -309,6 +380,19 @@ public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, Histog
      * this value to all collectors that should include this record
      */
     public void acceptRecord(final SAMRecord record, final ReferenceSequence refSeq) {
+        if (mergeReadGroups && !parallelAccumulationLevels) {
+            getReadGroupCollector(record.getReadGroup()).acceptRecord(makeArg(record, refSeq));
+            return;
+        }
+
+        if (parallelAccumulationLevels && outputOrderedDistributors.size() > 1) {
+            if (parallelLevels == null) parallelLevels = new ParallelLevels();
+            // Decode the record fully so that the level threads only ever read it
+            SamRecordSharingUtil.decodeForSharing(record);
+            parallelLevels.add(makeArg(record, refSeq), record.getReadGroup());
+            return;
+        }
+
         final ARGTYPE arg = makeArg(record, refSeq);
 
         for(final Distributor collector : outputOrderedDistributors) {
@@ -316,15 +400,62 @@ public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, Histog
         }
     }
 
+    /**
+     * If true, and more than one accumulation level was requested, each accumulation level is updated on its own
+     * thread.  Records are handed to the level threads in batches, so that each PerUnitMetricCollector receives its
+     * records in the same order as otherwise, and the metrics are the same.  The ARGTYPE made by makeArg is shared by
+     * the threads, so the PerUnitMetricCollectors must not modify it.  finish() waits for the threads.  If the
+     * collectors are {@link MergeablePerUnitMetricCollector}s, this replaces merging the read groups at finish().
+     * Must be called before any records are accepted.
+     * @param value the boolean value to set.
+     */
+    public void setParallelAccumulationLevels(final boolean value) {
+        this.parallelAccumulationLevels = value;
+    }
+
     /**
      * Call finish on all PerUnitMetricCollectors
      */
     public void finish() {
+        if (mergeReadGroups) {
+            for (final Distributor distributor : outputOrderedDistributors) {
+                for (final Map.Entry<String, MergeablePerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE>> entry : readGroupCollectors.entrySet()) {
+                    distributor.merge(entry.getValue(), readGroups.get(entry.getKey()));
+                }
+                if (unknownReadGroupCollector != null) distributor.merge(unknownReadGroupCollector, null);
+            }
+            readGroupCollectors.clear();
+            unknownReadGroupCollector = null;
+        }
+
+        if (parallelLevels != null) {
+            parallelLevels.finish();
+            parallelLevels = null;
+        }
         for(final Distributor collector : outputOrderedDistributors) {
             collector.finish();
         }
     }
 
+    /** Get the collector accepting the records of the given read group when mergeReadGroups is set, making it if needed */
+    @SuppressWarnings("unchecked")
+    private MergeablePerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE> getReadGroupCollector(final SAMReadGroupRecord rg) {
+        if (rg == null) {
+            if (unknownReadGroupCollector == null) {
+                unknownReadGroupCollector = (MergeablePerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE>) makeChildCollector(UNKNOWN, UNKNOWN, UNKNOWN);
+            }
+            return unknownReadGroupCollector;
+        }
+
+        MergeablePerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE> collector = readGroupCollectors.get(rg.getId());
+        if (collector == null) {
+            collector = (MergeablePerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE>) makeReadGroupCollector(rg);
+            readGroupCollectors.put(rg.getId(), collector);
+            readGroups.put(rg.getId(), rg);
+        }
+        return collector;
+    }
+
     /** Get the PerUnitMetricCollector that collects reads for all levels */
     public PerUnitMetricCollector<METRIC_TYPE, Histogram_KEY, ARGTYPE> getAllReadsCollector() {
         return allReadCollector;
@@ -338,4 +469,122 @@ public abstract class MultiLevelCollector<METRIC_TYPE extends MetricBase, Histog
             collector.addToFile(file);
         }
     }
+
+    /**
+     * Runs the acceptRecord() of each Distributor on its own thread, on batches of args taken from the thread's own
+     * bounded queue.  Batches are shared by all the threads and are never modified once queued.
+     */
+    private final class ParallelLevels {
+        private final List<LevelThread> threads = new ArrayList<>();
+        private Object[] args = new Object[PARALLEL_BATCH_SIZE];
+        private SAMReadGroupRecord[] readGroups = new SAMReadGroupRecord[PARALLEL_BATCH_SIZE];
+        private int batchSize = 0;
+
+        ParallelLevels() {
+            for (final Distributor distributor : outputOrderedDistributors) {
+                final LevelThread thread = new LevelThread(distributor);
+                thread.setName("MultiLevelCollector-" + threads.size());
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
+            }
+        }
+
+        void add(final ARGTYPE arg, final SAMReadGroupRecord readGroup) {
+            args[batchSize] = arg;
+            readGroups[batchSize] = readGroup;
+            if (++batchSize == PARALLEL_BATCH_SIZE) {
+                dispatch(new ArgBatch(args, readGroups, batchSize));
+                args = new Object[PARALLEL_BATCH_SIZE];
+                readGroups = new SAMReadGroupRecord[PARALLEL_BATCH_SIZE];
+                batchSize = 0;
+            }
+        }
+
+        /** Hands any remaining args to the threads and waits for them to finish. */
+        void finish() {
+            if (batchSize > 0) {
+                dispatch(new ArgBatch(args, readGroups, batchSize));
+            }
+            dispatch(ArgBatch.END);
+            try {
+                for (final LevelThread thread : threads) {
+                    thread.join();
+                }
+            } catch (final InterruptedException e) {
+                abort();
+                throw new PicardException("Interrupted waiting for accumulation levels to finish.", e);
+            }
+            checkForFailure();
+        }
+
+        private void dispatch(final ArgBatch batch) {
+            try {
+                for (final LevelThread thread : threads) {
+                    while (!thread.queue.offer(batch, 1, TimeUnit.SECONDS)) {
+                        checkForFailure();
+                    }
+                }
+            } catch (final InterruptedException e) {
+                abort();
+                throw new PicardException("Interrupted handing records to accumulation levels.", e);
+            }
+            checkForFailure();
+        }
+
+        private void checkForFailure() {
+            for (final LevelThread thread : threads) {
+                if (thread.failure != null) {
+                    abort();
+                    throw new PicardException("Exception in " + thread.getName() + ": " + thread.failure.getMessage(), thread.failure);
+                }
+            }
+        }
+
+        private void abort() {
+            threads.forEach(Thread::interrupt);
+        }
+    }
+
+    /** Passes every batch from its queue to one Distributor, until the end batch. */
+    private final class LevelThread extends Thread {
+        private final BlockingQueue<ArgBatch> queue = new ArrayBlockingQueue<>(PARALLEL_QUEUED_BATCHES);
+        private final Distributor distributor;
+        private volatile Throwable failure = null;
+
+        LevelThread(final Distributor distributor) {
+            this.distributor = distributor;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            try {
+                ArgBatch batch;
+                while ((batch = queue.take()) != ArgBatch.END) {
+                    for (int i = 0; i < batch.size; ++i) {
+                        distributor.acceptRecord((ARGTYPE) batch.args[i], batch.readGroups[i]);
+                    }
+                }
+            } catch (final InterruptedException e) {
+                // The calling thread has given up; nothing more to do.
+            } catch (final Throwable t) {
+                failure = t;
+            }
+        }
+    }
+
+    private static final class ArgBatch {
+        static final ArgBatch END = new ArgBatch(new Object[0], new SAMReadGroupRecord[0], 0);
+
+        final Object[] args;
+        final SAMReadGroupRecord[] readGroups;
+        final int size;
+
+        ArgBatch(final Object[] args, final SAMReadGroupRecord[] readGroups, final int size) {
+            this.args = args;
+            this.readGroups = readGroups;
+            this.size = size;
+        }
+    }
 }
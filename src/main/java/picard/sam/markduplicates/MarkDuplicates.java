@@ -36,14 +36,26 @@ import htsjdk.samtools.util.IOUtil;
 import htsjdk.samtools.util.ProgressLogger;
 import htsjdk.samtools.*;
 import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.Histogram;
+import htsjdk.samtools.util.MergingIterator;
 import htsjdk.samtools.util.SortingCollection;
 import htsjdk.samtools.util.SortingLongCollection;
 import htsjdk.samtools.DuplicateScoringStrategy.ScoringStrategy;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import picard.sam.markduplicates.util.*;
 import picard.sam.util.RepresentativeReadIndexer;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 
 /**
  * A better duplication marking algorithm that handles all cases including clipped
@@ -182,15 +194,28 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
     @Argument(doc= "Clear DT tag from input SAM records. Should be set to false if input SAM doesn't have this tag.  Default true")
     public boolean CLEAR_DT = true;
 
-    private SortingCollection<ReadEndsForMarkDuplicates> pairSort;
-    private SortingCollection<ReadEndsForMarkDuplicates> fragSort;
-    private SortingLongCollection duplicateIndexes;
-    private SortingLongCollection opticalDuplicateIndexes;
-    private SortingCollection<RepresentativeReadIndexer> representativeReadIndicesForDuplicates;
+    @Argument(doc = "The number of threads used to build the sorted read end lists and to detect duplicates.  If greater " +
+            "than 1, decoding the input, constructing read ends and adding them to the sorting collections are pipelined " +
+            "across threads, and the reference sequences are split into up to this many shards whose duplicates are " +
+            "detected concurrently.  The output is identical to that of a single-threaded run.")
+    public int THREADS = 1;
+
+    @Argument(doc = "If true, hold read ends as packed primitive records rather than as objects while sorting them.  This " +
+            "allows several times more read ends to be sorted in memory before spilling to disk, and reduces garbage " +
+            "collection, without changing the output.")
+    public boolean USE_PACKED_READ_ENDS = false;
+
+    /** The read ends and duplicate indexes of each shard of reference sequences. */
+    private List<ReadEndsShard> shards;
+    /** The index into shards of the shard holding each reference sequence. */
+    private int[] shardsByReferenceIndex;
 
     private int numDuplicateIndices = 0;
     static private final long NO_SUCH_INDEX = Long.MAX_VALUE; // needs to be large so that that >= test fails for query-sorted traversal
 
+    /** The number of records handed to a worker thread at a time when building read ends with more than one thread. */
+    static final int READ_ENDS_BATCH_SIZE = 1000;
+
     protected LibraryIdGenerator libraryIdGenerator = null; // this is initialized in buildSortedReadEndLists
 
     private int getBarcodeValue(final SAMRecord record) {
@@ -214,6 +239,14 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
         new MarkDuplicates().instanceMainWithExit(args);
     }
 
+    @Override
+    protected String[] customCommandLineValidation() {
+        if (THREADS < 1) {
+            return new String[]{"THREADS must be at least 1."};
+        }
+        return super.customCommandLineValidation();
+    }
+
     /**
      * Main work method.  Reads the BAM file once and collects sorted information about
      * the 5' ends of both ends of each read (or just one end in the case of pairs).
@@ -265,9 +298,20 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
                 OUTPUT);
 
         // Now copy over the file while marking all the necessary indexes as duplicates
+        final List<SortingLongCollection> duplicateIndexesByShard = new ArrayList<>(this.shards.size());
+        final List<SortingLongCollection> opticalDuplicateIndexesByShard = new ArrayList<>(this.shards.size());
+        for (final ReadEndsShard shard : this.shards) {
+            duplicateIndexesByShard.add(shard.duplicateIndexes);
+            if (shard.opticalDuplicateIndexes != null) {
+                opticalDuplicateIndexesByShard.add(shard.opticalDuplicateIndexes);
+            }
+        }
+        final MergingLongIterator duplicateIndexes = new MergingLongIterator(duplicateIndexesByShard);
+        final MergingLongIterator opticalDuplicateIndexes = opticalDuplicateIndexesByShard.isEmpty() ? null : new MergingLongIterator(opticalDuplicateIndexesByShard);
+
         long recordInFileIndex = 0;
-        long nextOpticalDuplicateIndex = this.opticalDuplicateIndexes != null && this.opticalDuplicateIndexes.hasNext() ? this.opticalDuplicateIndexes.next() : NO_SUCH_INDEX;
-        long nextDuplicateIndex = (this.duplicateIndexes.hasNext() ? this.duplicateIndexes.next() : NO_SUCH_INDEX);
+        long nextOpticalDuplicateIndex = opticalDuplicateIndexes != null && opticalDuplicateIndexes.hasNext() ? opticalDuplicateIndexes.next() : NO_SUCH_INDEX;
+        long nextDuplicateIndex = (duplicateIndexes.hasNext() ? duplicateIndexes.next() : NO_SUCH_INDEX);
 
         // initialize variables for optional representative read tagging
         CloseableIterator<RepresentativeReadIndexer> representativeReadIterator = null;
@@ -276,7 +320,11 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
         int duplicateSetSize = -1;
         int nextRepresentativeIndex = -1;
         if (TAG_DUPLICATE_SET_MEMBERS) {
-            representativeReadIterator = this.representativeReadIndicesForDuplicates.iterator();
+            final List<CloseableIterator<RepresentativeReadIndexer>> representativeReadIterators = new ArrayList<>(this.shards.size());
+            for (final ReadEndsShard shard : this.shards) {
+                representativeReadIterators.add(shard.representativeReadIndicesForDuplicates.iterator());
+            }
+            representativeReadIterator = new MergingIterator<>(new RepresentativeReadComparator(), representativeReadIterators);
             if (representativeReadIterator.hasNext()) {
                 rri = representativeReadIterator.next();
                 nextRepresentativeIndex = rri.readIndexInFile;
@@ -318,7 +366,7 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
                     (sortOrder == SAMFileHeader.SortOrder.coordinate || !rec.getReadName().equals(duplicateQueryName));
 
             if (needNextDuplicateIndex) {
-                    nextDuplicateIndex = (this.duplicateIndexes.hasNext() ? this.duplicateIndexes.next() : NO_SUCH_INDEX);
+                    nextDuplicateIndex = (duplicateIndexes.hasNext() ? duplicateIndexes.next() : NO_SUCH_INDEX);
             }
 
             final boolean isDuplicate = recordInFileIndex == nextDuplicateIndex ||
@@ -349,7 +397,7 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
             // Possibly figure out the next opticalDuplicate index (if going by coordinate, if going by query name, only do this
             // if the query name has changed)
             if (needNextOpticalDuplicateIndex) {
-                nextOpticalDuplicateIndex = (this.opticalDuplicateIndexes.hasNext() ? this.opticalDuplicateIndexes.next() : NO_SUCH_INDEX);
+                nextOpticalDuplicateIndex = (opticalDuplicateIndexes.hasNext() ? opticalDuplicateIndexes.next() : NO_SUCH_INDEX);
             }
 
             final boolean isOpticalDuplicate = sortOrder == SAMFileHeader.SortOrder.queryname &&
@@ -410,9 +458,11 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
         // remember to close the inputs
         iterator.close();
 
-        this.duplicateIndexes.cleanup();
         if (TAG_DUPLICATE_SET_MEMBERS) {
-            this.representativeReadIndicesForDuplicates.cleanup();
+            representativeReadIterator.close();
+        }
+        for (final ReadEndsShard shard : this.shards) {
+            shard.cleanup();
         }
 
         reportMemoryStats("Before output close");
@@ -451,7 +501,8 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
             sizeInBytes = ReadEndsForMarkDuplicates.getSizeOf();
         }
         MAX_RECORDS_IN_RAM = (int) (Runtime.getRuntime().maxMemory() / sizeInBytes) / 2;
-        final int maxInMemory = (int) ((Runtime.getRuntime().maxMemory() * SORTING_COLLECTION_SIZE_RATIO) / sizeInBytes);
+        final int sortedSizeInBytes = USE_PACKED_READ_ENDS ? PackedReadEndsSortingCollection.getSizeOf(useBarcodes) : sizeInBytes;
+        final int maxInMemory = (int) ((Runtime.getRuntime().maxMemory() * SORTING_COLLECTION_SIZE_RATIO) / sortedSizeInBytes);
         log.info("Will retain up to " + maxInMemory + " data points before spilling to disk.");
 
         final ReadEndsForMarkDuplicatesCodec fragCodec, pairCodec, diskCodec;
@@ -465,34 +516,270 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
             diskCodec = new ReadEndsForMarkDuplicatesCodec();
         }
 
-        this.pairSort = SortingCollection.newInstance(ReadEndsForMarkDuplicates.class,
-                pairCodec,
-                new ReadEndsMDComparator(useBarcodes),
-                maxInMemory,
-                TMP_DIR);
-
-        this.fragSort = SortingCollection.newInstance(ReadEndsForMarkDuplicates.class,
-                fragCodec,
-                new ReadEndsMDComparator(useBarcodes),
-                maxInMemory,
-                TMP_DIR);
-
-        final SamHeaderAndIterator headerAndIterator = openInputs(true);
-        final SAMFileHeader.SortOrder assumedSortOrder = headerAndIterator.header.getSortOrder();
+        final SamHeaderAndIterator headerAndIterator = THREADS > 1 ? openInputs(false, true) : openInputs(true);
         final SAMFileHeader header = headerAndIterator.header;
+
+        // Duplicate sets never span reference sequences, so the read ends are split by the reference of their first
+        // end into shards that can be traversed independently.  The pairs and fragments of a shard are sorted together.
+        this.shardsByReferenceIndex = assignReferencesToShards(header.getSequenceDictionary(), THREADS);
+        final int numShards = Arrays.stream(this.shardsByReferenceIndex).max().orElse(0) + 1;
+        final int maxInMemoryPerShard = Math.max(1, maxInMemory / numShards);
+        if (numShards > 1) {
+            log.info("Splitting the reference sequences into " + numShards + " shards.");
+        }
+        this.shards = new ArrayList<>(numShards);
+        for (int i = 0; i < numShards; ++i) {
+            final ReadEndsShard shard = new ReadEndsShard();
+            if (USE_PACKED_READ_ENDS) {
+                shard.pairSort = new PackedReadEndsSortingCollection(useBarcodes, maxInMemoryPerShard, TMP_DIR);
+                shard.fragSort = new PackedReadEndsSortingCollection(useBarcodes, maxInMemoryPerShard, TMP_DIR);
+            } else {
+                shard.pairSort = ReadEndsSortingCollection.of(SortingCollection.newInstance(ReadEndsForMarkDuplicates.class,
+                        pairCodec,
+                        new ReadEndsMDComparator(useBarcodes),
+                        maxInMemoryPerShard,
+                        TMP_DIR));
+
+                shard.fragSort = ReadEndsSortingCollection.of(SortingCollection.newInstance(ReadEndsForMarkDuplicates.class,
+                        fragCodec,
+                        new ReadEndsMDComparator(useBarcodes),
+                        maxInMemoryPerShard,
+                        TMP_DIR));
+            }
+            this.shards.add(shard);
+        }
         final ReadEndsForMarkDuplicatesMap tmp = new DiskBasedReadEndsForMarkDuplicatesMap(MAX_FILE_HANDLES_FOR_READ_ENDS_MAP, diskCodec);
-        long index = 0;
-        final ProgressLogger progress = new ProgressLogger(log, (int) 1e6, "Read");
         final CloseableIterator<SAMRecord> iterator = headerAndIterator.iterator;
 
         if (null == this.libraryIdGenerator) {
             this.libraryIdGenerator = new LibraryIdGenerator(header);
         }
 
-        String duplicateQueryName = null;
-        long duplicateIndex = NO_SUCH_INDEX;
-        while (iterator.hasNext()) {
-            final SAMRecord rec = iterator.next();
+        final ReadEndsCollector collector = new ReadEndsCollector(header, tmp, useBarcodes);
+        if (THREADS > 1) {
+            collectReadEndsInParallel(iterator, collector);
+        } else {
+            final Consumer<ReadEndsForMarkDuplicates> fragmentSink = this::addFragmentEnd;
+            while (iterator.hasNext()) {
+                final PendingReadEnds pending = new PendingReadEnds(iterator.next());
+                prepareReadEnds(pending, header, useBarcodes, this.opticalDuplicateFinder);
+                if (!collector.add(pending, fragmentSink)) {
+                    break;
+                }
+            }
+        }
+
+        log.info("Read " + collector.index + " records. " + tmp.size() + " pairs never matched.");
+        iterator.close();
+
+        // Tell these collections to free up memory if possible.
+        for (final ReadEndsShard shard : this.shards) {
+            shard.pairSort.doneAdding();
+            shard.fragSort.doneAdding();
+        }
+    }
+
+    /**
+     * Splits the reference sequences into at most maxShards shards of similar total length, by placing each sequence,
+     * longest first, in the shard with the least total length so far.
+     *
+     * @return the shard of each reference sequence, by sequence index; shards are numbered from 0
+     */
+    static int[] assignReferencesToShards(final SAMSequenceDictionary dictionary, final int maxShards) {
+        final int[] shardsByReferenceIndex = new int[dictionary.size()];
+        final int numShards = Math.max(1, Math.min(maxShards, dictionary.size()));
+        if (numShards == 1) {
+            return shardsByReferenceIndex;
+        }
+
+        final List<SAMSequenceRecord> byDecreasingLength = new ArrayList<>(dictionary.getSequences());
+        byDecreasingLength.sort(Comparator.comparingInt(SAMSequenceRecord::getSequenceLength).reversed()
+                .thenComparingInt(SAMSequenceRecord::getSequenceIndex));
+        final long[] shardLengths = new long[numShards];
+        for (final SAMSequenceRecord sequence : byDecreasingLength) {
+            int shortestShard = 0;
+            for (int i = 1; i < numShards; ++i) {
+                if (shardLengths[i] < shardLengths[shortestShard]) {
+                    shortestShard = i;
+                }
+            }
+            shardsByReferenceIndex[sequence.getSequenceIndex()] = shortestShard;
+            shardLengths[shortestShard] += sequence.getSequenceLength();
+        }
+        return shardsByReferenceIndex;
+    }
+
+    private ReadEndsShard getShard(final ReadEndsForMarkDuplicates ends) {
+        return this.shards.get(this.shardsByReferenceIndex[ends.read1ReferenceIndex]);
+    }
+
+    private void addFragmentEnd(final ReadEndsForMarkDuplicates fragmentEnd) {
+        getShard(fragmentEnd).fragSort.add(fragmentEnd);
+    }
+
+    private void addPairedEnds(final ReadEndsForMarkDuplicates pairedEnds) {
+        getShard(pairedEnds).pairSort.add(pairedEnds);
+    }
+
+    /**
+     * Builds the read ends with a pipeline of threads: one thread reads records from the input, a pool of THREADS
+     * workers decodes them and builds their fragment ends in batches, the calling thread pairs the ends up in input
+     * order and adds pairs to their shard's pairSort, and a final thread adds the fragment ends to their shard's fragSort so that the two sorting
+     * collections sort and spill concurrently.  Batches are consumed in input order, so the read ends added to each
+     * sorting collection are exactly those of the single-threaded path, in the same order.
+     */
+    private void collectReadEndsInParallel(final CloseableIterator<SAMRecord> iterator, final ReadEndsCollector collector) {
+        final int maxBatchesInFlight = 2 * THREADS;
+        final ThreadLocal<OpticalDuplicateFinder> opticalDuplicateFinders = ThreadLocal.withInitial(() ->
+                new OpticalDuplicateFinder(READ_NAME_REGEX, OPTICAL_DUPLICATE_PIXEL_DISTANCE, MAX_OPTICAL_DUPLICATE_SET_SIZE, LOG));
+        final ExecutorService readerExecutor = Executors.newSingleThreadExecutor(newDaemonThreadFactory("MarkDuplicatesReader-%d"));
+        final ExecutorService workerExecutor = Executors.newFixedThreadPool(THREADS, newDaemonThreadFactory("MarkDuplicatesWorker-%d"));
+        final ExecutorService fragmentExecutor = Executors.newSingleThreadExecutor(newDaemonThreadFactory("MarkDuplicatesFragmentSorter-%d"));
+        final BlockingQueue<Future<List<PendingReadEnds>>> batches = new ArrayBlockingQueue<>(maxBatchesInFlight);
+        final Future<List<PendingReadEnds>> endOfInput = CompletableFuture.completedFuture(Collections.emptyList());
+
+        try {
+            final Future<?> reader = readerExecutor.submit(() -> {
+                try {
+                    List<PendingReadEnds> batch = new ArrayList<>(READ_ENDS_BATCH_SIZE);
+                    while (iterator.hasNext()) {
+                        final SAMRecord rec = iterator.next();
+                        // The record that ends the input still goes to the collector, for its PG ID
+                        batch.add(new PendingReadEnds(rec));
+                        if (collector.isPastMappedRecords(rec)) {
+                            break;
+                        }
+                        if (batch.size() == READ_ENDS_BATCH_SIZE) {
+                            batches.put(submitBatch(workerExecutor, batch, collector, opticalDuplicateFinders));
+                            batch = new ArrayList<>(READ_ENDS_BATCH_SIZE);
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        batches.put(submitBatch(workerExecutor, batch, collector, opticalDuplicateFinders));
+                    }
+                } finally {
+                    batches.put(endOfInput);
+                }
+                return null;
+            });
+
+            final Deque<Future<?>> fragmentBatches = new ArrayDeque<>();
+            for (Future<List<PendingReadEnds>> next = batches.take(); next != endOfInput; next = batches.take()) {
+                final List<ReadEndsForMarkDuplicates> fragmentEnds = new ArrayList<>(READ_ENDS_BATCH_SIZE);
+                for (final PendingReadEnds pending : next.get()) {
+                    if (!collector.add(pending, fragmentEnds::add)) {
+                        break;
+                    }
+                }
+                fragmentBatches.add(fragmentExecutor.submit(() -> fragmentEnds.forEach(this::addFragmentEnd)));
+                while (fragmentBatches.size() > maxBatchesInFlight) {
+                    fragmentBatches.remove().get();
+                }
+            }
+            reader.get();
+            for (final Future<?> fragmentBatch : fragmentBatches) {
+                fragmentBatch.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PicardException("Interrupted while building read ends.", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new PicardException("Error while building read ends: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            readerExecutor.shutdownNow();
+            workerExecutor.shutdownNow();
+            fragmentExecutor.shutdownNow();
+        }
+    }
+
+    /** Submits a batch of records to the worker pool, to have their fragment ends built. */
+    private Future<List<PendingReadEnds>> submitBatch(final ExecutorService workerExecutor,
+                                                      final List<PendingReadEnds> batch,
+                                                      final ReadEndsCollector collector,
+                                                      final ThreadLocal<OpticalDuplicateFinder> opticalDuplicateFinders) {
+        return workerExecutor.submit(() -> {
+            final OpticalDuplicateFinder finder = opticalDuplicateFinders.get();
+            for (final PendingReadEnds pending : batch) {
+                prepareReadEnds(pending, collector.header, collector.useBarcodes, finder);
+            }
+            return batch;
+        });
+    }
+
+    private static ThreadFactory newDaemonThreadFactory(final String nameFormat) {
+        return new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build();
+    }
+
+    /**
+     * A record of the input together with the parts of its read ends that can be computed independently of all
+     * other records.  These are filled in by {@link #prepareReadEnds}, possibly on a worker thread.
+     */
+    private static final class PendingReadEnds {
+        final SAMRecord rec;
+        ReadEndsForMarkDuplicates fragmentEnd = null;
+        String pairKey = null;
+
+        PendingReadEnds(final SAMRecord rec) {
+            this.rec = rec;
+        }
+    }
+
+    /**
+     * Builds the fragment end (less its library ID and index in file, which depend on the records before it)
+     * and the mate-matching key of a record, if the record is to be examined for duplication.
+     */
+    private void prepareReadEnds(final PendingReadEnds pending, final SAMFileHeader header, final boolean useBarcodes,
+                                 final OpticalDuplicateFinder finder) {
+        final SAMRecord rec = pending.rec;
+        if (!rec.getReadUnmappedFlag() && !rec.isSecondaryOrSupplementary()) {
+            pending.fragmentEnd = buildReadEnds(header, rec, useBarcodes, finder);
+            if (rec.getReadPairedFlag() && !rec.getMateUnmappedFlag()) {
+                pending.pairKey = rec.getAttribute(ReservedTagConstants.READ_GROUP_ID) + ":" + rec.getReadName();
+            }
+        }
+    }
+
+    /**
+     * Consumes records, in input order, and adds their read ends to the sorting collections, matching up the
+     * ends of pairs as the second end of each pair is seen.
+     */
+    private final class ReadEndsCollector {
+        private final SAMFileHeader header;
+        private final SAMFileHeader.SortOrder assumedSortOrder;
+        private final ReadEndsForMarkDuplicatesMap tmp;
+        private final boolean useBarcodes;
+        private final ProgressLogger progress = new ProgressLogger(log, (int) 1e6, "Read");
+
+        private long index = 0;
+        private String duplicateQueryName = null;
+        private long duplicateIndex = NO_SUCH_INDEX;
+
+        ReadEndsCollector(final SAMFileHeader header, final ReadEndsForMarkDuplicatesMap tmp, final boolean useBarcodes) {
+            this.header = header;
+            this.assumedSortOrder = header.getSortOrder();
+            this.tmp = tmp;
+            this.useBarcodes = useBarcodes;
+        }
+
+        /**
+         * When we hit the unmapped reads with no coordinate, no reason to continue (only in coordinate sort).
+         */
+        boolean isPastMappedRecords(final SAMRecord rec) {
+            return rec.getReadUnmappedFlag() && rec.getReferenceIndex() == -1 &&
+                    assumedSortOrder == SAMFileHeader.SortOrder.coordinate;
+        }
+
+        /**
+         * Adds the read ends of the next record.  Fragment ends are handed to the given sink, paired ends are
+         * added to the pairSort of their shard once both ends have been seen.
+         *
+         * @return false if the record is past the mapped records, in which case no more records need be added
+         */
+        boolean add(final PendingReadEnds pending, final Consumer<ReadEndsForMarkDuplicates> fragmentSink) {
+            final SAMRecord rec = pending.rec;
 
             // This doesn't have anything to do with building sorted ReadEnd lists, but it can be done in the same pass
             // over the input
@@ -506,25 +793,25 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
             }
 
             // If working in query-sorted, need to keep index of first record with any given query-name.
-            if(assumedSortOrder == SAMFileHeader.SortOrder.queryname && !rec.getReadName().equals(duplicateQueryName)) {
+            if (assumedSortOrder == SAMFileHeader.SortOrder.queryname && !rec.getReadName().equals(duplicateQueryName)) {
                 duplicateQueryName  = rec.getReadName();
                 duplicateIndex      = index;
             }
 
-            if (rec.getReadUnmappedFlag()) {
-                if (rec.getReferenceIndex() == -1 && assumedSortOrder == SAMFileHeader.SortOrder.coordinate) {
-                    // When we hit the unmapped reads with no coordinate, no reason to continue (only in coordinate sort).
-                    break;
-                }
-                // If this read is unmapped but sorted with the mapped reads, just skip it.
+            if (isPastMappedRecords(rec)) {
+                return false;
+            }
 
-            } else if (!rec.isSecondaryOrSupplementary()) {
+            // If this read is unmapped but sorted with the mapped reads, just skip it.
+            if (pending.fragmentEnd != null) {
                 final long indexForRead = assumedSortOrder == SAMFileHeader.SortOrder.queryname ? duplicateIndex : index;
-                final ReadEndsForMarkDuplicates fragmentEnd = buildReadEnds(header, indexForRead, rec, useBarcodes);
-                this.fragSort.add(fragmentEnd);
+                final ReadEndsForMarkDuplicates fragmentEnd = pending.fragmentEnd;
+                fragmentEnd.read1IndexInFile = indexForRead;
+                fragmentEnd.libraryId = libraryIdGenerator.getLibraryId(rec);
+                fragmentSink.accept(fragmentEnd);
 
-                if (rec.getReadPairedFlag() && !rec.getMateUnmappedFlag()) {
-                    final String key = rec.getAttribute(ReservedTagConstants.READ_GROUP_ID) + ":" + rec.getReadName();
+                if (pending.pairKey != null) {
+                    final String key = pending.pairKey;
                     ReadEndsForMarkDuplicates pairedEnds = tmp.remove(rec.getReferenceIndex(), key);
 
                     // See if we've already seen the first end or not
@@ -578,8 +865,8 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
                                     pairedEnds.orientation == ReadEnds.R);
                         }
 
-                        pairedEnds.score += DuplicateScoringStrategy.computeDuplicateScore(rec, this.DUPLICATE_SCORING_STRATEGY);
-                        this.pairSort.add(pairedEnds);
+                        pairedEnds.score += DuplicateScoringStrategy.computeDuplicateScore(rec, DUPLICATE_SCORING_STRATEGY);
+                        addPairedEnds(pairedEnds);
                     }
                 }
             }
@@ -589,18 +876,16 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
             if (progress.record(rec)) {
                 log.info("Tracking " + tmp.size() + " as yet unmatched pairs. " + tmp.sizeInRam() + " records in RAM.");
             }
+            return true;
         }
-
-        log.info("Read " + index + " records. " + tmp.size() + " pairs never matched.");
-        iterator.close();
-
-        // Tell these collections to free up memory if possible.
-        this.pairSort.doneAdding();
-        this.fragSort.doneAdding();
     }
 
-    /** Builds a read ends object that represents a single read. */
-    private ReadEndsForMarkDuplicates buildReadEnds(final SAMFileHeader header, final long index, final SAMRecord rec, final boolean useBarcodes) {
+    /**
+     * Builds a read ends object that represents a single read.  The library ID and index in file are left for
+     * the caller to fill in.
+     */
+    private ReadEndsForMarkDuplicates buildReadEnds(final SAMFileHeader header, final SAMRecord rec, final boolean useBarcodes,
+                                                    final OpticalDuplicateFinder opticalDuplicateFinder) {
         final ReadEndsForMarkDuplicates ends;
 
         if (useBarcodes) {
@@ -611,7 +896,6 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
         ends.read1ReferenceIndex = rec.getReferenceIndex();
         ends.read1Coordinate = rec.getReadNegativeStrandFlag() ? rec.getUnclippedEnd() : rec.getUnclippedStart();
         ends.orientation = rec.getReadNegativeStrandFlag() ? ReadEnds.R : ReadEnds.F;
-        ends.read1IndexInFile = index;
         ends.score = DuplicateScoringStrategy.computeDuplicateScore(rec, this.DUPLICATE_SCORING_STRATEGY);
 
         // Doing this lets the ends object know that it's part of a pair
@@ -619,11 +903,8 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
             ends.read2ReferenceIndex = rec.getMateReferenceIndex();
         }
 
-        // Fill in the library ID
-        ends.libraryId = libraryIdGenerator.getLibraryId(rec);
-
         // Fill in the location information for optical duplicates
-        if (this.opticalDuplicateFinder.addLocationInformation(rec.getReadName(), ends)) {
+        if (opticalDuplicateFinder.addLocationInformation(rec.getReadName(), ends)) {
             // calculate the RG number (nth in list)
             ends.readGroup = 0;
             final String rg = (String) rec.getAttribute(ReservedTagConstants.READ_GROUP_ID);
@@ -652,7 +933,7 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
 
     /**
      * Goes through the accumulated ReadEndsForMarkDuplicates objects and determines which of them are
-     * to be marked as duplicates.
+     * to be marked as duplicates.  The shards are traversed concurrently when there is more than one.
      */
     private void generateDuplicateIndexes(final boolean useBarcodes, final boolean indexOpticalDuplicates) {
         int entryOverhead;
@@ -669,82 +950,55 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
         // If we're also tracking optical duplicates, reduce maxInMemory, since we'll need two sorting collections
         if (indexOpticalDuplicates) {
             maxInMemory /= ((entryOverhead + SortingLongCollection.SIZEOF) / entryOverhead);
-            this.opticalDuplicateIndexes = new SortingLongCollection(maxInMemory, TMP_DIR.toArray(new File[TMP_DIR.size()]));
         }
         log.info("Will retain up to " + maxInMemory + " duplicate indices before spilling to disk.");
-        this.duplicateIndexes = new SortingLongCollection(maxInMemory, TMP_DIR.toArray(new File[TMP_DIR.size()]));
-        if (TAG_DUPLICATE_SET_MEMBERS) {
-            final RepresentativeReadIndexerCodec representativeIndexCodec = new RepresentativeReadIndexerCodec();
-            this.representativeReadIndicesForDuplicates = SortingCollection.newInstance(RepresentativeReadIndexer.class,
-                    representativeIndexCodec,
-                    new RepresentativeReadComparator(),
-                    maxInMemory,
-                    TMP_DIR);
-        }
-
-        ReadEndsForMarkDuplicates firstOfNextChunk = null;
-        final List nextChunk = new ArrayList<ReadEndsForMarkDuplicates>(200);
-
-        // First just do the pairs
-        log.info("Traversing read pair information and detecting duplicates.");
-        for (final ReadEndsForMarkDuplicates next : this.pairSort) {
-            if (firstOfNextChunk != null && areComparableForDuplicates(firstOfNextChunk, next, true, useBarcodes)) {
-                nextChunk.add(next);
-            } else {
-                if (nextChunk.size() > 1) {
-                    markDuplicatePairs(nextChunk);
-                    if (TAG_DUPLICATE_SET_MEMBERS) {
-                        addRepresentativeReadIndex(nextChunk);
-                    }
-                }
-                nextChunk.clear();
-                nextChunk.add(next);
-                firstOfNextChunk = next;
+
+        // The shards share the memory
+        maxInMemory = Math.max(1, maxInMemory / this.shards.size());
+        for (final ReadEndsShard shard : this.shards) {
+            if (indexOpticalDuplicates) {
+                shard.opticalDuplicateIndexes = new SortingLongCollection(maxInMemory, TMP_DIR.toArray(new File[TMP_DIR.size()]));
             }
-        }
-        if (nextChunk.size() > 1) {
-            markDuplicatePairs(nextChunk);
+            shard.duplicateIndexes = new SortingLongCollection(maxInMemory, TMP_DIR.toArray(new File[TMP_DIR.size()]));
             if (TAG_DUPLICATE_SET_MEMBERS) {
-                addRepresentativeReadIndex(nextChunk);
+                final RepresentativeReadIndexerCodec representativeIndexCodec = new RepresentativeReadIndexerCodec();
+                shard.representativeReadIndicesForDuplicates = SortingCollection.newInstance(RepresentativeReadIndexer.class,
+                        representativeIndexCodec,
+                        new RepresentativeReadComparator(),
+                        maxInMemory,
+                        TMP_DIR);
             }
         }
-        this.pairSort.cleanup();
-        this.pairSort = null;
-
-        // Now deal with the fragments
-        log.info("Traversing fragment information and detecting duplicates.");
-        boolean containsPairs = false;
-        boolean containsFrags = false;
-
-        firstOfNextChunk = null;
 
-        for (final ReadEndsForMarkDuplicates next : this.fragSort) {
-            if (firstOfNextChunk != null && areComparableForDuplicates(firstOfNextChunk, next, false, useBarcodes)) {
-                nextChunk.add(next);
-                containsPairs = containsPairs || next.isPaired();
-                containsFrags = containsFrags || !next.isPaired();
-            } else {
-                if (nextChunk.size() > 1 && containsFrags) {
-                    markDuplicateFragments(nextChunk, containsPairs);
+        if (this.shards.size() == 1) {
+            this.shards.get(0).generateDuplicateIndexes(useBarcodes);
+        } else {
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.min(THREADS, this.shards.size()),
+                    newDaemonThreadFactory("MarkDuplicatesShard-%d"));
+            try {
+                final List<Future<?>> futures = new ArrayList<>(this.shards.size());
+                for (final ReadEndsShard shard : this.shards) {
+                    futures.add(executor.submit(() -> shard.generateDuplicateIndexes(useBarcodes)));
+                }
+                for (final Future<?> future : futures) {
+                    future.get();
                 }
-                nextChunk.clear();
-                nextChunk.add(next);
-                firstOfNextChunk = next;
-                containsPairs = next.isPaired();
-                containsFrags = !next.isPaired();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PicardException("Interrupted while detecting duplicates.", e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new PicardException("Error while detecting duplicates: " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                executor.shutdownNow();
             }
         }
-        markDuplicateFragments(nextChunk, containsPairs);
-        this.fragSort.cleanup();
-        this.fragSort = null;
 
-        log.info("Sorting list of duplicate records.");
-        this.duplicateIndexes.doneAddingStartIteration();
-        if (this.opticalDuplicateIndexes != null) {
-            this.opticalDuplicateIndexes.doneAddingStartIteration();
-        }
-        if (TAG_DUPLICATE_SET_MEMBERS) {
-            this.representativeReadIndicesForDuplicates.doneAdding();
+        for (final ReadEndsShard shard : this.shards) {
+            this.numDuplicateIndices += shard.numDuplicateIndices;
+            this.libraryIdGenerator.getOpticalDuplicatesByLibraryIdMap().addHistogram(shard.opticalDuplicatesByLibraryId);
         }
     }
 
@@ -773,104 +1027,149 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
         return areComparable;
     }
 
-    private void addIndexAsDuplicate(final long bamIndex) {
-        this.duplicateIndexes.add(bamIndex);
-        ++this.numDuplicateIndices;
-    }
-
-    private void addRepresentativeReadOfDuplicateSet(final long representativeReadIndexInFile, final int setSize, final long read1IndexInFile) {
-        final RepresentativeReadIndexer rri = new RepresentativeReadIndexer();
-        rri.representativeReadIndexInFile = (int) representativeReadIndexInFile;
-        rri.setSize = setSize;
-        rri.readIndexInFile = (int) read1IndexInFile;
-        this.representativeReadIndicesForDuplicates.add(rri);
-    }
-
     /**
-     * Takes a list of ReadEndsForMarkDuplicates objects and identify the representative read based on
-     * quality score. For all members of the duplicate set, add the read1 index-in-file of the representative
-     * read to the records of the first and second in a pair. This value becomes is used for
-     * the 'DI' tag.
-     *
-     * @param list
+     * The read ends of the reference sequences in one shard, and the duplicate indexes found in them.  No duplicate set
+     * spans two shards, so each shard is traversed independently of the others, and the sorted duplicate indexes of
+     * all the shards are merged when writing the output.
      */
-    private void addRepresentativeReadIndex(final List<ReadEndsForMarkDuplicates> list) {
-        short maxScore = 0;
-        ReadEndsForMarkDuplicates best = null;
-
-        /** All read ends should have orientation FF, FR, RF, or RR **/
-        for (final ReadEndsForMarkDuplicates end : list) {
-            if (end.score > maxScore || best == null) {
-                maxScore = end.score;
-                best = end;
+    private final class ReadEndsShard {
+        ReadEndsSortingCollection pairSort;
+        ReadEndsSortingCollection fragSort;
+        SortingLongCollection duplicateIndexes;
+        SortingLongCollection opticalDuplicateIndexes;
+        SortingCollection<RepresentativeReadIndexer> representativeReadIndicesForDuplicates;
+        final Histogram<Short> opticalDuplicatesByLibraryId = new Histogram<>();
+        int numDuplicateIndices = 0;
+
+        void generateDuplicateIndexes(final boolean useBarcodes) {
+            ReadEndsForMarkDuplicates firstOfNextChunk = null;
+            final List nextChunk = new ArrayList<ReadEndsForMarkDuplicates>(200);
+
+            // First just do the pairs
+            log.info("Traversing read pair information and detecting duplicates.");
+            for (final ReadEndsForMarkDuplicates next : this.pairSort) {
+                if (firstOfNextChunk != null && areComparableForDuplicates(firstOfNextChunk, next, true, useBarcodes)) {
+                    nextChunk.add(next);
+                } else {
+                    if (nextChunk.size() > 1) {
+                        markDuplicatePairs(nextChunk);
+                        if (TAG_DUPLICATE_SET_MEMBERS) {
+                            addRepresentativeReadIndex(nextChunk);
+                        }
+                    }
+                    nextChunk.clear();
+                    nextChunk.add(next);
+                    firstOfNextChunk = next;
+                }
             }
-        }
+            if (nextChunk.size() > 1) {
+                markDuplicatePairs(nextChunk);
+                if (TAG_DUPLICATE_SET_MEMBERS) {
+                    addRepresentativeReadIndex(nextChunk);
+                }
+            }
+            this.pairSort.cleanup();
+            this.pairSort = null;
 
-        // for read name (for representative read name), add the last of the pair that was examined
-        for (final ReadEndsForMarkDuplicates end : list) {
-            addRepresentativeReadOfDuplicateSet(best.read1IndexInFile, list.size(), end.read1IndexInFile);
-            addRepresentativeReadOfDuplicateSet(best.read1IndexInFile, list.size(), end.read2IndexInFile);
-        }
-    }
+            // Now deal with the fragments
+            log.info("Traversing fragment information and detecting duplicates.");
+            boolean containsPairs = false;
+            boolean containsFrags = false;
 
+            firstOfNextChunk = null;
 
-    /**
-     * Takes a list of ReadEndsForMarkDuplicates objects and removes from it all objects that should
-     * not be marked as duplicates.  This assumes that the list contains objects representing pairs.
-     *
-     * @param list
-     */
-    private void markDuplicatePairs(final List<ReadEndsForMarkDuplicates> list) {
-        short maxScore = 0;
-        ReadEndsForMarkDuplicates best = null;
+            for (final ReadEndsForMarkDuplicates next : this.fragSort) {
+                if (firstOfNextChunk != null && areComparableForDuplicates(firstOfNextChunk, next, false, useBarcodes)) {
+                    nextChunk.add(next);
+                    containsPairs = containsPairs || next.isPaired();
+                    containsFrags = containsFrags || !next.isPaired();
+                } else {
+                    if (nextChunk.size() > 1 && containsFrags) {
+                        markDuplicateFragments(nextChunk, containsPairs);
+                    }
+                    nextChunk.clear();
+                    nextChunk.add(next);
+                    firstOfNextChunk = next;
+                    containsPairs = next.isPaired();
+                    containsFrags = !next.isPaired();
+                }
+            }
+            markDuplicateFragments(nextChunk, containsPairs);
+            this.fragSort.cleanup();
+            this.fragSort = null;
+
+            log.info("Sorting list of duplicate records.");
+            this.duplicateIndexes.doneAddingStartIteration();
+            if (this.opticalDuplicateIndexes != null) {
+                this.opticalDuplicateIndexes.doneAddingStartIteration();
+            }
+            if (TAG_DUPLICATE_SET_MEMBERS) {
+                this.representativeReadIndicesForDuplicates.doneAdding();
+            }
+        }
 
-        /** All read ends should have orientation FF, FR, RF, or RR **/
-        for (final ReadEndsForMarkDuplicates end : list) {
-            if (end.score > maxScore || best == null) {
-                maxScore = end.score;
-                best = end;
+        void cleanup() {
+            this.duplicateIndexes.cleanup();
+            if (this.opticalDuplicateIndexes != null) {
+                this.opticalDuplicateIndexes.cleanup();
+            }
+            if (TAG_DUPLICATE_SET_MEMBERS) {
+                this.representativeReadIndicesForDuplicates.cleanup();
             }
         }
 
-        if (this.READ_NAME_REGEX != null) {
-            AbstractMarkDuplicatesCommandLineProgram.trackOpticalDuplicates(list, best, opticalDuplicateFinder, libraryIdGenerator);
+        private void addIndexAsDuplicate(final long bamIndex) {
+            this.duplicateIndexes.add(bamIndex);
+            ++this.numDuplicateIndices;
         }
 
-        for (final ReadEndsForMarkDuplicates end : list) {
-            if (end != best) {
-                addIndexAsDuplicate(end.read1IndexInFile);
+        private void addRepresentativeReadOfDuplicateSet(final long representativeReadIndexInFile, final int setSize, final long read1IndexInFile) {
+            final RepresentativeReadIndexer rri = new RepresentativeReadIndexer();
+            rri.representativeReadIndexInFile = (int) representativeReadIndexInFile;
+            rri.setSize = setSize;
+            rri.readIndexInFile = (int) read1IndexInFile;
+            this.representativeReadIndicesForDuplicates.add(rri);
+        }
 
-                // in query-sorted case, these will be the same.
-                // TODO: also in coordinate sorted, when one read is unmapped
-                if(end.read2IndexInFile != end.read1IndexInFile) {
-                    addIndexAsDuplicate(end.read2IndexInFile);
-                }
+        /**
+         * Takes a list of ReadEndsForMarkDuplicates objects and identify the representative read based on
+         * quality score. For all members of the duplicate set, add the read1 index-in-file of the representative
+         * read to the records of the first and second in a pair. This value becomes is used for
+         * the 'DI' tag.
+         *
+         * @param list
+         */
+        private void addRepresentativeReadIndex(final List<ReadEndsForMarkDuplicates> list) {
+            short maxScore = 0;
+            ReadEndsForMarkDuplicates best = null;
 
-                if (end.isOpticalDuplicate && this.opticalDuplicateIndexes != null) {
-                    this.opticalDuplicateIndexes.add(end.read1IndexInFile);
-                    this.opticalDuplicateIndexes.add(end.read2IndexInFile);
+            /** All read ends should have orientation FF, FR, RF, or RR **/
+            for (final ReadEndsForMarkDuplicates end : list) {
+                if (end.score > maxScore || best == null) {
+                    maxScore = end.score;
+                    best = end;
                 }
             }
-        }
-    }
 
-    /**
-     * Takes a list of ReadEndsForMarkDuplicates objects and removes from it all objects that should
-     * not be marked as duplicates.  This will set the duplicate index for only list items are fragments.
-     *
-     * @param list
-     * @param containsPairs true if the list also contains objects containing pairs, false otherwise.
-     */
-    private void markDuplicateFragments(final List<ReadEndsForMarkDuplicates> list, final boolean containsPairs) {
-        if (containsPairs) {
+            // for read name (for representative read name), add the last of the pair that was examined
             for (final ReadEndsForMarkDuplicates end : list) {
-                if (!end.isPaired()) {
-                    addIndexAsDuplicate(end.read1IndexInFile);
-                }
+                addRepresentativeReadOfDuplicateSet(best.read1IndexInFile, list.size(), end.read1IndexInFile);
+                addRepresentativeReadOfDuplicateSet(best.read1IndexInFile, list.size(), end.read2IndexInFile);
             }
-        } else {
+        }
+
+
+        /**
+         * Takes a list of ReadEndsForMarkDuplicates objects and removes from it all objects that should
+         * not be marked as duplicates.  This assumes that the list contains objects representing pairs.
+         *
+         * @param list
+         */
+        private void markDuplicatePairs(final List<ReadEndsForMarkDuplicates> list) {
             short maxScore = 0;
             ReadEndsForMarkDuplicates best = null;
+
+            /** All read ends should have orientation FF, FR, RF, or RR **/
             for (final ReadEndsForMarkDuplicates end : list) {
                 if (end.score > maxScore || best == null) {
                     maxScore = end.score;
@@ -878,11 +1177,104 @@ public class MarkDuplicates extends AbstractMarkDuplicatesCommandLineProgram {
                 }
             }
 
+            if (READ_NAME_REGEX != null) {
+                AbstractMarkDuplicatesCommandLineProgram.trackOpticalDuplicates(list, best, opticalDuplicateFinder, this.opticalDuplicatesByLibraryId);
+            }
+
             for (final ReadEndsForMarkDuplicates end : list) {
                 if (end != best) {
                     addIndexAsDuplicate(end.read1IndexInFile);
+
+                    // in query-sorted case, these will be the same.
+                    // TODO: also in coordinate sorted, when one read is unmapped
+                    if(end.read2IndexInFile != end.read1IndexInFile) {
+                        addIndexAsDuplicate(end.read2IndexInFile);
+                    }
+
+                    if (end.isOpticalDuplicate && this.opticalDuplicateIndexes != null) {
+                        this.opticalDuplicateIndexes.add(end.read1IndexInFile);
+                        this.opticalDuplicateIndexes.add(end.read2IndexInFile);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Takes a list of ReadEndsForMarkDuplicates objects and removes from it all objects that should
+         * not be marked as duplicates.  This will set the duplicate index for only list items are fragments.
+         *
+         * @param list
+         * @param containsPairs true if the list also contains objects containing pairs, false otherwise.
+         */
+        private void markDuplicateFragments(final List<ReadEndsForMarkDuplicates> list, final boolean containsPairs) {
+            if (containsPairs) {
+                for (final ReadEndsForMarkDuplicates end : list) {
+                    if (!end.isPaired()) {
+                        addIndexAsDuplicate(end.read1IndexInFile);
+                    }
+                }
+            } else {
+                short maxScore = 0;
+                ReadEndsForMarkDuplicates best = null;
+                for (final ReadEndsForMarkDuplicates end : list) {
+                    if (end.score > maxScore || best == null) {
+                        maxScore = end.score;
+                        best = end;
+                    }
+                }
+
+                for (final ReadEndsForMarkDuplicates end : list) {
+                    if (end != best) {
+                        addIndexAsDuplicate(end.read1IndexInFile);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Iterates in order over the union of several SortingLongCollections, each of which must have started iteration. */
+    private static final class MergingLongIterator {
+        private final List<SortingLongCollection> collections;
+        private final long[] heads;
+        private final boolean[] hasHead;
+
+        MergingLongIterator(final List<SortingLongCollection> collections) {
+            this.collections = collections;
+            this.heads = new long[collections.size()];
+            this.hasHead = new boolean[collections.size()];
+            for (int i = 0; i < collections.size(); ++i) {
+                advance(i);
+            }
+        }
+
+        private void advance(final int i) {
+            final SortingLongCollection collection = this.collections.get(i);
+            this.hasHead[i] = collection.hasNext();
+            if (this.hasHead[i]) {
+                this.heads[i] = collection.next();
+            }
+        }
+
+        boolean hasNext() {
+            for (final boolean b : this.hasHead) {
+                if (b) return true;
+            }
+            return false;
+        }
+
+        long next() {
+            int min = -1;
+            for (int i = 0; i < this.heads.length; ++i) {
+                if (this.hasHead[i] && (min == -1 || this.heads[i] < this.heads[min])) {
+                    min = i;
                 }
             }
+            if (min == -1) {
+                throw new NoSuchElementException();
+            }
+            final long ret = this.heads[min];
+            advance(min);
+            return ret;
         }
     }
 
@@ -29,7 +29,10 @@ import htsjdk.samtools.util.ProgressLogger;
 import picard.sam.util.PhysicalLocation;
 import picard.sam.util.ReadNameParser;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Contains methods for finding optical/co-localized/sequencing duplicates.
@@ -43,10 +46,12 @@ public class OpticalDuplicateFinder extends ReadNameParser {
 
     public static final int DEFAULT_OPTICAL_DUPLICATE_DISTANCE = 100;
     public static final int DEFAULT_BIG_DUPLICATE_SET_SIZE = 1000;
-    public static final int DEFAULT_MAX_DUPLICATE_SET_SIZE = 300000; // larger than this number will generate over 100 billion comparisons in the n^2 algorithm below
+    public static final int DEFAULT_MAX_DUPLICATE_SET_SIZE = 300000; // larger than this number may generate over 100 billion comparisons if the reads are densely clustered
+    public static final int DEFAULT_SPATIAL_INDEX_SET_SIZE = 100;
 
     private int bigDuplicateSetSize = DEFAULT_BIG_DUPLICATE_SET_SIZE;
     private long maxDuplicateSetSize = DEFAULT_MAX_DUPLICATE_SET_SIZE;
+    private int spatialIndexSetSize = DEFAULT_SPATIAL_INDEX_SET_SIZE;
 
     /**
      * Sets the size of a set that is big enough to log progress about.
@@ -71,6 +76,17 @@ public class OpticalDuplicateFinder extends ReadNameParser {
         this.maxDuplicateSetSize = maxDuplicateSetSize;
     }
 
+    /**
+     * Sets the size of a set from which the reads are bucketed by tile and location, so that each read is only compared
+     * to the reads near it rather than to all the others.  The results are the same either way.
+     * Defaults to {@value OpticalDuplicateFinder#DEFAULT_SPATIAL_INDEX_SET_SIZE}
+     *
+     * @param spatialIndexSetSize the size of a set from which to use the spatial index
+     */
+    public void setSpatialIndexSetSize(final int spatialIndexSetSize) {
+        this.spatialIndexSetSize = spatialIndexSetSize;
+    }
+
     /**
      * Uses the default duplicate distance {@value OpticalDuplicateFinder#DEFAULT_OPTICAL_DUPLICATE_DISTANCE} and the default read name regex
      * {@link ReadNameParser#DEFAULT_READ_NAME_REGEX}.
@@ -167,6 +183,11 @@ public class OpticalDuplicateFinder extends ReadNameParser {
         if (logProgress) log.debug("Done with comparing to keeper, now the rest.");
 
         // Now go through and do each pairwise comparison not involving the actualKeeper
+        if (length >= spatialIndexSetSize) {
+            flagOpticalDuplicatesOfEachOther(list, actualKeeper, distance, opticalDuplicateFlags, progressLoggerForRest);
+            return opticalDuplicateFlags;
+        }
+
         for (int i = 0; i < length; ++i) {
             final PhysicalLocation lhs = list.get(i);
             if (lhs == actualKeeper) continue; // no comparisons to actualKeeper since those are all handled above
@@ -192,6 +213,113 @@ public class OpticalDuplicateFinder extends ReadNameParser {
         return opticalDuplicateFlags;
     }
 
+    /**
+     * Does the pairwise comparisons not involving the actualKeeper, in the same order as the n^2 loop in
+     * {@link #findOpticalDuplicates(List, PhysicalLocation)}, but only between reads in the same or adjacent cells of a
+     * grid whose cells are the size of the optical duplicate distance within each read group and tile.  Reads in cells
+     * further apart can never be close enough to be optical duplicates, so the flags set are identical.
+     */
+    private void flagOpticalDuplicatesOfEachOther(final List<? extends PhysicalLocation> list,
+                                                  final PhysicalLocation actualKeeper,
+                                                  final int distance,
+                                                  final boolean[] opticalDuplicateFlags,
+                                                  final ProgressLogger progressLogger) {
+        if (distance < 0) return; // nothing can be close enough
+
+        final int length = list.size();
+        final int cellSize = Math.max(1, distance);
+
+        // Bucket the indices of the reads by read group, tile and cell, in increasing order within each cell
+        final Map<GridCell, IndexList> cells = new HashMap<>();
+        final GridCell[] cellOfRead = new GridCell[length];
+        for (int i = 0; i < length; ++i) {
+            final PhysicalLocation loc = list.get(i);
+            if (loc == actualKeeper || !loc.hasLocation()) continue;
+
+            final GridCell cell = new GridCell(loc.getReadGroup(), loc.getTile(),
+                    Math.floorDiv(loc.getX(), cellSize), Math.floorDiv(loc.getY(), cellSize));
+            cellOfRead[i] = cell;
+            cells.computeIfAbsent(cell, c -> new IndexList()).add(i);
+        }
+
+        final IndexList neighbors = new IndexList();
+        for (int i = 0; i < length; ++i) {
+            final GridCell cell = cellOfRead[i];
+            if (cell == null) continue; // the actualKeeper, or no location to compare
+            final PhysicalLocation lhs = list.get(i);
+
+            if (progressLogger != null) progressLogger.record(String.format("%d", lhs.getReadGroup()), lhs.getX());
+
+            // Gather the reads after this one in this and the adjacent cells, and visit them in list order
+            neighbors.size = 0;
+            for (int dx = -1; dx <= 1; ++dx) {
+                for (int dy = -1; dy <= 1; ++dy) {
+                    final IndexList others = cells.get(new GridCell(cell.readGroup, cell.tile, cell.x + dx, cell.y + dy));
+                    if (others == null) continue;
+                    int k = Arrays.binarySearch(others.indices, 0, others.size, i + 1);
+                    if (k < 0) k = -k - 1;
+                    for (; k < others.size; ++k) {
+                        neighbors.add(others.indices[k]);
+                    }
+                }
+            }
+            Arrays.sort(neighbors.indices, 0, neighbors.size);
+
+            for (int n = 0; n < neighbors.size; ++n) {
+                final int j = neighbors.indices[n];
+                if (opticalDuplicateFlags[i] && opticalDuplicateFlags[j]) continue; // both already marked, no need to check
+
+                if (closeEnough(lhs, list.get(j), distance)) {
+                    final int index = opticalDuplicateFlags[j] ? i : j;
+                    opticalDuplicateFlags[index] = true;
+                }
+            }
+        }
+    }
+
+    /** A cell of the grid used to find the reads near one another, within a read group and tile. */
+    private static final class GridCell {
+        final short readGroup;
+        final short tile;
+        final int x;
+        final int y;
+
+        GridCell(final short readGroup, final short tile, final int x, final int y) {
+            this.readGroup = readGroup;
+            this.tile = tile;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof GridCell)) return false;
+            final GridCell that = (GridCell) o;
+            return readGroup == that.readGroup && tile == that.tile && x == that.x && y == that.y;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = readGroup;
+            result = 31 * result + tile;
+            result = 31 * result + x;
+            result = 31 * result + y;
+            return result;
+        }
+    }
+
+    /** A growable list of read indices. */
+    private static final class IndexList {
+        int[] indices = new int[4];
+        int size = 0;
+
+        void add(final int index) {
+            if (size == indices.length) indices = Arrays.copyOf(indices, size * 2);
+            indices[size++] = index;
+        }
+    }
+
     /** Returns the keeper if it is contained within the list and has location information, otherwise null. */
     private PhysicalLocation keeperOrNull(final List<? extends PhysicalLocation> list, final PhysicalLocation keeper) {
         if (keeper != null && keeper.hasLocation()) {
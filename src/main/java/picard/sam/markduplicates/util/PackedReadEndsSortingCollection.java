@@ -0,0 +1,468 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.sam.markduplicates.util;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.TempStreamFactory;
+import picard.PicardException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * A ReadEndsSortingCollection that stores each read end as a fixed-width record of primitive fields packed into
+ * long[] chunks, rather than as an object on the heap.  Records are sorted by running a stable merge sort over an
+ * int[] of record numbers, ordering read ends exactly as MarkDuplicates.ReadEndsMDComparator does, so that iteration
+ * returns the same read ends in the same order as a SortingCollection using that comparator.
+ *
+ * When maxRecordsInRam records are held in memory they are sorted and spilled to a temporary file.  Iteration merges
+ * the spilled runs with the records still in memory, breaking ties by the order in which the runs were created.
+ *
+ * Each record takes {@link #getSizeOf(boolean)} bytes, including the space needed to sort it, which is a fraction
+ * of the heap used by a ReadEndsForMarkDuplicates object.  The duplicateSetSize field, which is not used while
+ * sorting, is not stored and is always -1 on the read ends returned.
+ */
+public class PackedReadEndsSortingCollection implements ReadEndsSortingCollection {
+
+    /** Records are stored in chunks of this many records, so that no single array gets too large. */
+    private static final int RECORDS_PER_CHUNK_SHIFT = 16;
+    private static final int RECORDS_PER_CHUNK = 1 << RECORDS_PER_CHUNK_SHIFT;
+    private static final int RECORD_IN_CHUNK_MASK = RECORDS_PER_CHUNK - 1;
+
+    /** The number of longs in a record, without and with barcodes. */
+    private static final int RECORD_WIDTH = 6;
+    private static final int RECORD_WIDTH_WITH_BARCODES = 8;
+
+    /** Runs shorter than this are sorted by insertion sort. */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private static final int TEMP_BUFFER_SIZE = 65536;
+
+    private final boolean useBarcodes;
+    private final int width;
+    private final int maxRecordsInRam;
+    private final int recordsPerChunk;
+    private final File[] tmpDirs;
+    private final TempStreamFactory tempStreamFactory = new TempStreamFactory();
+
+    private List<long[]> chunks = new ArrayList<>();
+    private int numRecordsInRam = 0;
+    /** Record numbers of the records in RAM, in sorted order once sortRecordsInRam() has been called. */
+    private int[] order = null;
+    private int[] scratch = null;
+
+    private final List<File> files = new ArrayList<>();
+    private final List<RunIterator> openRuns = new ArrayList<>();
+    private boolean doneAdding = false;
+    private boolean cleanedUp = false;
+
+    /**
+     * @param useBarcodes whether the read ends are ReadEndsForMarkDuplicatesWithBarcodes, whose barcodes are stored and compared
+     * @param maxRecordsInRam the number of records to hold in memory before spilling to disk
+     * @param tmpDirs the directories in which to write temporary files
+     */
+    public PackedReadEndsSortingCollection(final boolean useBarcodes, final int maxRecordsInRam, final Collection<File> tmpDirs) {
+        if (maxRecordsInRam <= 0) {
+            throw new IllegalArgumentException("maxRecordsInRam must be > 0");
+        }
+        if (tmpDirs == null || tmpDirs.isEmpty()) {
+            throw new IllegalArgumentException("At least one temp directory must be provided.");
+        }
+        this.useBarcodes = useBarcodes;
+        this.width = useBarcodes ? RECORD_WIDTH_WITH_BARCODES : RECORD_WIDTH;
+        this.maxRecordsInRam = maxRecordsInRam;
+        this.recordsPerChunk = Math.min(maxRecordsInRam, RECORDS_PER_CHUNK);
+        this.tmpDirs = tmpDirs.toArray(new File[tmpDirs.size()]);
+    }
+
+    /**
+     * The number of bytes of memory used per record held in RAM: the packed fields, plus the record number and the
+     * merge sort's scratch space for it.
+     */
+    public static int getSizeOf(final boolean useBarcodes) {
+        return (useBarcodes ? RECORD_WIDTH_WITH_BARCODES : RECORD_WIDTH) * 8 + 2 * 4;
+    }
+
+    @Override
+    public void add(final ReadEndsForMarkDuplicates readEnds) {
+        if (doneAdding) {
+            throw new IllegalStateException("Cannot add after calling doneAdding()");
+        }
+        if (numRecordsInRam == maxRecordsInRam) {
+            spillToDisk();
+        }
+        final int chunk = numRecordsInRam >>> RECORDS_PER_CHUNK_SHIFT;
+        if (chunk == chunks.size()) {
+            chunks.add(new long[recordsPerChunk * width]);
+        }
+        pack(readEnds, chunks.get(chunk), (numRecordsInRam & RECORD_IN_CHUNK_MASK) * width);
+        ++numRecordsInRam;
+    }
+
+    @Override
+    public void doneAdding() {
+        if (cleanedUp) {
+            throw new IllegalStateException("Cannot call doneAdding() after cleanup() was called.");
+        }
+        if (doneAdding) {
+            return;
+        }
+        doneAdding = true;
+        sortRecordsInRam();
+        scratch = null;
+    }
+
+    @Override
+    public CloseableIterator<ReadEndsForMarkDuplicates> iterator() {
+        if (!doneAdding) {
+            throw new IllegalStateException("iterator() called before doneAdding()");
+        }
+        if (cleanedUp) {
+            throw new IllegalStateException("iterator() called after cleanup()");
+        }
+        final List<RunIterator> runs = new ArrayList<>(files.size() + 1);
+        for (final File file : files) {
+            final RunIterator run = new FileRunIterator(file, runs.size());
+            openRuns.add(run);
+            runs.add(run);
+        }
+        runs.add(new InMemoryRunIterator(runs.size()));
+        return new MergingIterator(runs);
+    }
+
+    @Override
+    public void cleanup() {
+        doneAdding = true;
+        cleanedUp = true;
+        openRuns.forEach(RunIterator::close);
+        openRuns.clear();
+        IOUtil.deleteFiles(files);
+        files.clear();
+        chunks = null;
+        order = null;
+        scratch = null;
+    }
+
+    /** Sorts the records in RAM and writes them to a new temporary file. */
+    private void spillToDisk() {
+        sortRecordsInRam();
+        try {
+            final File file = IOUtil.newTempFile("packedReadEnds.", ".tmp", tmpDirs, IOUtil.FIVE_GBS);
+            file.deleteOnExit();
+            files.add(file);
+            try (final DataOutputStream out = new DataOutputStream(tempStreamFactory.wrapTempOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file), TEMP_BUFFER_SIZE), TEMP_BUFFER_SIZE))) {
+                for (int i = 0; i < numRecordsInRam; ++i) {
+                    final int record = order[i];
+                    final long[] chunk = chunks.get(record >>> RECORDS_PER_CHUNK_SHIFT);
+                    final int offset = (record & RECORD_IN_CHUNK_MASK) * width;
+                    for (int j = 0; j < width; ++j) {
+                        out.writeLong(chunk[offset + j]);
+                    }
+                }
+            }
+        } catch (final IOException ioe) {
+            throw new PicardException("Exception spilling read ends to disk.", ioe);
+        }
+        numRecordsInRam = 0;
+    }
+
+    /** Fills in order[0..numRecordsInRam) with the record numbers in RAM, in sorted order. */
+    private void sortRecordsInRam() {
+        if (order == null || order.length < numRecordsInRam) {
+            order = new int[numRecordsInRam];
+            scratch = new int[numRecordsInRam];
+        }
+        for (int i = 0; i < numRecordsInRam; ++i) {
+            order[i] = i;
+        }
+        mergeSort(order, scratch, 0, numRecordsInRam);
+    }
+
+    /** Stable merge sort of record numbers in src[from, to), using scratch as working space. */
+    private void mergeSort(final int[] src, final int[] scratch, final int from, final int to) {
+        if (to - from <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; ++i) {
+                final int record = src[i];
+                int j = i - 1;
+                while (j >= from && compareRecords(src[j], record) > 0) {
+                    src[j + 1] = src[j];
+                    --j;
+                }
+                src[j + 1] = record;
+            }
+            return;
+        }
+        final int mid = (from + to) >>> 1;
+        mergeSort(src, scratch, from, mid);
+        mergeSort(src, scratch, mid, to);
+        if (compareRecords(src[mid - 1], src[mid]) <= 0) {
+            return; // already in order
+        }
+        System.arraycopy(src, from, scratch, from, to - from);
+        int left = from, right = mid, out = from;
+        while (left < mid && right < to) {
+            src[out++] = compareRecords(scratch[left], scratch[right]) <= 0 ? scratch[left++] : scratch[right++];
+        }
+        while (left < mid) src[out++] = scratch[left++];
+        while (right < to) src[out++] = scratch[right++];
+    }
+
+    private int compareRecords(final int lhs, final int rhs) {
+        return compare(chunks.get(lhs >>> RECORDS_PER_CHUNK_SHIFT), (lhs & RECORD_IN_CHUNK_MASK) * width,
+                chunks.get(rhs >>> RECORDS_PER_CHUNK_SHIFT), (rhs & RECORD_IN_CHUNK_MASK) * width);
+    }
+
+    /*
+     * Record layout, one long per line:
+     *   0: read1ReferenceIndex (32) | read1Coordinate (32)
+     *   1: read2ReferenceIndex (32) | read2Coordinate (32)
+     *   2: read1IndexInFile
+     *   3: read2IndexInFile
+     *   4: libraryId (16) | score (16) | readGroup (16) | tile (16)
+     *   5: x (16) | y (16) | unused (16) | orientation (8) | orientationForOpticalDuplicates (8)
+     * and, with barcodes:
+     *   6: barcode (32) | readOneBarcode (32)
+     *   7: readTwoBarcode (32)
+     */
+
+    private void pack(final ReadEndsForMarkDuplicates readEnds, final long[] a, final int i) {
+        a[i] = ((long) readEnds.read1ReferenceIndex << 32) | (readEnds.read1Coordinate & 0xFFFFFFFFL);
+        a[i + 1] = ((long) readEnds.read2ReferenceIndex << 32) | (readEnds.read2Coordinate & 0xFFFFFFFFL);
+        a[i + 2] = readEnds.read1IndexInFile;
+        a[i + 3] = readEnds.read2IndexInFile;
+        a[i + 4] = ((long) readEnds.libraryId << 48) | ((readEnds.score & 0xFFFFL) << 32) |
+                ((readEnds.readGroup & 0xFFFFL) << 16) | (readEnds.tile & 0xFFFFL);
+        a[i + 5] = ((long) readEnds.x << 48) | ((readEnds.y & 0xFFFFL) << 32) |
+                ((readEnds.orientation & 0xFFL) << 8) | (readEnds.orientationForOpticalDuplicates & 0xFFL);
+        if (useBarcodes) {
+            final ReadEndsForMarkDuplicatesWithBarcodes withBarcodes = (ReadEndsForMarkDuplicatesWithBarcodes) readEnds;
+            a[i + 6] = ((long) withBarcodes.barcode << 32) | (withBarcodes.readOneBarcode & 0xFFFFFFFFL);
+            a[i + 7] = withBarcodes.readTwoBarcode;
+        }
+    }
+
+    private ReadEndsForMarkDuplicates unpack(final long[] a, final int i) {
+        final ReadEndsForMarkDuplicates readEnds;
+        if (useBarcodes) {
+            final ReadEndsForMarkDuplicatesWithBarcodes withBarcodes = new ReadEndsForMarkDuplicatesWithBarcodes();
+            withBarcodes.barcode = (int) (a[i + 6] >> 32);
+            withBarcodes.readOneBarcode = (int) a[i + 6];
+            withBarcodes.readTwoBarcode = (int) a[i + 7];
+            readEnds = withBarcodes;
+        } else {
+            readEnds = new ReadEndsForMarkDuplicates();
+        }
+        readEnds.read1ReferenceIndex = (int) (a[i] >> 32);
+        readEnds.read1Coordinate = (int) a[i];
+        readEnds.read2ReferenceIndex = (int) (a[i + 1] >> 32);
+        readEnds.read2Coordinate = (int) a[i + 1];
+        readEnds.read1IndexInFile = a[i + 2];
+        readEnds.read2IndexInFile = a[i + 3];
+        readEnds.libraryId = (short) (a[i + 4] >>> 48);
+        readEnds.score = (short) (a[i + 4] >>> 32);
+        readEnds.readGroup = (short) (a[i + 4] >>> 16);
+        readEnds.tile = (short) a[i + 4];
+        readEnds.x = (short) (a[i + 5] >>> 48);
+        readEnds.y = (short) (a[i + 5] >>> 32);
+        readEnds.orientation = (byte) (a[i + 5] >>> 8);
+        readEnds.orientationForOpticalDuplicates = (byte) a[i + 5];
+        return readEnds;
+    }
+
+    /**
+     * Compares two packed records.  This must give the same results as MarkDuplicates.ReadEndsMDComparator on the
+     * corresponding read ends, including its use of subtraction.
+     */
+    private int compare(final long[] a, final int i, final long[] b, final int j) {
+        int compareDifference = (short) (a[i + 4] >>> 48) - (short) (b[j + 4] >>> 48);
+        if (useBarcodes) {
+            if (compareDifference == 0) {
+                compareDifference = Integer.compare((int) (a[i + 6] >> 32), (int) (b[j + 6] >> 32));
+            }
+            if (compareDifference == 0) {
+                compareDifference = Integer.compare((int) a[i + 6], (int) b[j + 6]);
+            }
+            if (compareDifference == 0) {
+                compareDifference = Integer.compare((int) a[i + 7], (int) b[j + 7]);
+            }
+        }
+        if (compareDifference == 0) {
+            compareDifference = (int) (a[i] >> 32) - (int) (b[j] >> 32);
+        }
+        if (compareDifference == 0) {
+            compareDifference = (int) a[i] - (int) b[j];
+        }
+        if (compareDifference == 0) {
+            compareDifference = (byte) (a[i + 5] >>> 8) - (byte) (b[j + 5] >>> 8);
+        }
+        if (compareDifference == 0) {
+            compareDifference = (int) (a[i + 1] >> 32) - (int) (b[j + 1] >> 32);
+        }
+        if (compareDifference == 0) {
+            compareDifference = (int) a[i + 1] - (int) b[j + 1];
+        }
+        if (compareDifference == 0) {
+            compareDifference = (int) (a[i + 2] - b[j + 2]);
+        }
+        if (compareDifference == 0) {
+            compareDifference = (int) (a[i + 3] - b[j + 3]);
+        }
+        return compareDifference;
+    }
+
+    /** A sorted run of records, positioned on its current record. */
+    private abstract class RunIterator {
+        /** The position of this run in creation order, used to break ties. */
+        final int runIndex;
+        long[] current;
+        int currentOffset;
+
+        RunIterator(final int runIndex) {
+            this.runIndex = runIndex;
+        }
+
+        /** Moves to the next record, returning false if there are none. */
+        abstract boolean advance();
+
+        void close() { }
+    }
+
+    private final class InMemoryRunIterator extends RunIterator {
+        private int next = 0;
+
+        InMemoryRunIterator(final int runIndex) {
+            super(runIndex);
+        }
+
+        @Override
+        boolean advance() {
+            if (next == numRecordsInRam) {
+                return false;
+            }
+            final int record = order[next++];
+            current = chunks.get(record >>> RECORDS_PER_CHUNK_SHIFT);
+            currentOffset = (record & RECORD_IN_CHUNK_MASK) * width;
+            return true;
+        }
+    }
+
+    private final class FileRunIterator extends RunIterator {
+        private final DataInputStream in;
+
+        FileRunIterator(final File file, final int runIndex) {
+            super(runIndex);
+            this.current = new long[width];
+            this.currentOffset = 0;
+            try {
+                this.in = new DataInputStream(tempStreamFactory.wrapTempInputStream(
+                        new BufferedInputStream(new FileInputStream(file), TEMP_BUFFER_SIZE), TEMP_BUFFER_SIZE));
+            } catch (final IOException ioe) {
+                throw new PicardException("Exception opening read ends file " + file, ioe);
+            }
+        }
+
+        @Override
+        boolean advance() {
+            try {
+                try {
+                    current[0] = in.readLong();
+                } catch (final EOFException eof) {
+                    close();
+                    return false;
+                }
+                for (int j = 1; j < width; ++j) {
+                    current[j] = in.readLong();
+                }
+                return true;
+            } catch (final IOException ioe) {
+                throw new PicardException("Exception reading read ends from temporary file.", ioe);
+            }
+        }
+
+        @Override
+        void close() {
+            try {
+                in.close();
+            } catch (final IOException ioe) {
+                throw new PicardException("Exception closing read ends file.", ioe);
+            }
+        }
+    }
+
+    /** Merges the sorted runs into a single sorted iteration. */
+    private final class MergingIterator implements CloseableIterator<ReadEndsForMarkDuplicates> {
+        private final PriorityQueue<RunIterator> queue;
+
+        MergingIterator(final List<RunIterator> runs) {
+            queue = new PriorityQueue<>(Math.max(1, runs.size()), (lhs, rhs) -> {
+                final int compareDifference = compare(lhs.current, lhs.currentOffset, rhs.current, rhs.currentOffset);
+                return compareDifference != 0 ? compareDifference : Integer.compare(lhs.runIndex, rhs.runIndex);
+            });
+            for (final RunIterator run : runs) {
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public ReadEndsForMarkDuplicates next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final RunIterator run = queue.poll();
+            final ReadEndsForMarkDuplicates readEnds = unpack(run.current, run.currentOffset);
+            if (run.advance()) {
+                queue.add(run);
+            }
+            return readEnds;
+        }
+
+        @Override
+        public void close() {
+            queue.forEach(RunIterator::close);
+            queue.clear();
+        }
+    }
+}
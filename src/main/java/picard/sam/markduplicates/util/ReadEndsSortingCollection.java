@@ -0,0 +1,62 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.sam.markduplicates.util;
+
+import htsjdk.samtools.util.SortingCollection;
+
+import java.util.Iterator;
+
+/**
+ * A collection of ReadEndsForMarkDuplicates that are added in any order and, once all have been added, iterated
+ * in sorted order.  The read ends may be spilled to disk while being added.
+ */
+public interface ReadEndsSortingCollection extends Iterable<ReadEndsForMarkDuplicates> {
+
+    /** Adds a read end.  May not be called after {@link #doneAdding()}. */
+    void add(ReadEndsForMarkDuplicates readEnds);
+
+    /** Signals that all read ends have been added, freeing up memory where possible. */
+    void doneAdding();
+
+    /** Deletes any temporary files and releases the memory held by this collection. */
+    void cleanup();
+
+    /** Wraps a SortingCollection of read ends as a ReadEndsSortingCollection. */
+    static ReadEndsSortingCollection of(final SortingCollection<ReadEndsForMarkDuplicates> sortingCollection) {
+        return new ReadEndsSortingCollection() {
+            @Override
+            public void add(final ReadEndsForMarkDuplicates readEnds) { sortingCollection.add(readEnds); }
+
+            @Override
+            public void doneAdding() { sortingCollection.doneAdding(); }
+
+            @Override
+            public void cleanup() { sortingCollection.cleanup(); }
+
+            @Override
+            public Iterator<ReadEndsForMarkDuplicates> iterator() { return sortingCollection.iterator(); }
+        };
+    }
+}
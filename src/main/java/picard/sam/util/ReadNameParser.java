@@ -26,12 +26,34 @@ public class ReadNameParser {
      */
     public static final String DEFAULT_READ_NAME_REGEX = "<optimized capture of last three ':' separated fields as numeric values>".intern();
 
+    /**
+     * Forms of the regex that capture the last three fields, delimited by the character substituted for %1$s, each
+     * starting with a number.  A read name regex of one of these forms is parsed by scanning the read name for the
+     * delimiter, rather than with the regex.
+     */
+    private static final String[] LAST_THREE_FIELDS_REGEX_FORMATS = {
+            "(?:.*%1$s)?([0-9]+)[^%1$s]*%1$s([0-9]+)[^%1$s]*%1$s([0-9]+)[^%1$s]*$",
+            "(?:.*%1$s)?([0-9]+)[^%1$s]*%1$s([0-9]+)[^%1$s]*%1$s([0-9]+)[^%1$s]*",
+            "(?:.*%1$s)?(\\d+)[^%1$s]*%1$s(\\d+)[^%1$s]*%1$s(\\d+)[^%1$s]*$",
+            "(?:.*%1$s)?(\\d+)[^%1$s]*%1$s(\\d+)[^%1$s]*%1$s(\\d+)[^%1$s]*"
+    };
+
+    /** The delimiters recognized in {@link #LAST_THREE_FIELDS_REGEX_FORMATS}. */
+    private static final char[] LAST_THREE_FIELDS_DELIMITERS = {':', '_', '-', '#', '/'};
+
+    /** The value of lastThreeFieldsDelimiter when the read name regex is not of the last three fields form. */
+    private static final char NO_DELIMITER = '\0';
+
     private final int[] tmpLocationFields = new int[3]; // for optimization of addLocationInformation
 
     private String readNameRegex = null;
 
     private Pattern readNamePattern;
 
+    private Matcher readNameMatcher; // reset for each read name rather than allocating a new one
+
+    private final char lastThreeFieldsDelimiter;
+
     private boolean warnedAboutRegexNotMatching = false;
 
     private final Log log;
@@ -62,6 +84,21 @@ public class ReadNameParser {
     public ReadNameParser(final String readNameRegex, final Log log) {
         this.readNameRegex = readNameRegex;
         this.log = log;
+        this.lastThreeFieldsDelimiter = getLastThreeFieldsDelimiter(readNameRegex);
+    }
+
+    /**
+     * Returns the delimiter of the fields if the given regex is one of the {@link #LAST_THREE_FIELDS_REGEX_FORMATS}, and
+     * {@link #NO_DELIMITER} otherwise.
+     */
+    static char getLastThreeFieldsDelimiter(final String readNameRegex) {
+        if (readNameRegex == null) return NO_DELIMITER;
+        for (final char delimiter : LAST_THREE_FIELDS_DELIMITERS) {
+            for (final String format : LAST_THREE_FIELDS_REGEX_FORMATS) {
+                if (readNameRegex.equals(String.format(format, delimiter))) return delimiter;
+            }
+        }
+        return NO_DELIMITER;
     }
 
     /**
@@ -93,25 +130,22 @@ public class ReadNameParser {
                 return true;
             } else if (this.readNameRegex == null) {
                 return false;
-            } else {
-                // Standard version that will use the regex
-                if (this.readNamePattern == null) this.readNamePattern = Pattern.compile(this.readNameRegex);
-
-                final Matcher m = this.readNamePattern.matcher(readName);
-                if (m.matches()) {
-                    loc.setTile((short) Integer.parseInt(m.group(1)));
-                    loc.setX(Integer.parseInt(m.group(2)));
-                    loc.setY(Integer.parseInt(m.group(3)));
-                    return true;
-                } else {
-                    if (null != log && !this.warnedAboutRegexNotMatching) {
-                        this.log.warn(String.format("READ_NAME_REGEX '%s' did not match read name '%s'.  Your regex may not be correct.  " +
-                                        "Note that this message will not be emitted again even if other read names do not match the regex.",
-                                this.readNameRegex, readName));
-                        warnedAboutRegexNotMatching = true;
-                    }
-                    return false;
+            } else if (this.lastThreeFieldsDelimiter != NO_DELIMITER) {
+                // Equivalent to the regex, without running it
+                switch (matchLastThreeFields(readName, this.lastThreeFieldsDelimiter, tmpLocationFields)) {
+                    case MATCHES:
+                        loc.setTile((short) tmpLocationFields[0]);
+                        loc.setX(tmpLocationFields[1]);
+                        loc.setY(tmpLocationFields[2]);
+                        return true;
+                    case DOES_NOT_MATCH:
+                        warnRegexDoesNotMatch(readName);
+                        return false;
+                    default:
+                        return addLocationInformationWithRegex(readName, loc);
                 }
+            } else {
+                return addLocationInformationWithRegex(readName, loc);
             }
         }
         catch (NumberFormatException nfe) {
@@ -124,6 +158,79 @@ public class ReadNameParser {
         }
     }
 
+    /** Parses the location using the read name regex, which must not be null or the default. */
+    private boolean addLocationInformationWithRegex(final String readName, final PhysicalLocation loc) {
+        if (this.readNamePattern == null) {
+            this.readNamePattern = Pattern.compile(this.readNameRegex);
+            this.readNameMatcher = this.readNamePattern.matcher("");
+        }
+
+        final Matcher m = this.readNameMatcher.reset(readName);
+        if (m.matches()) {
+            loc.setTile((short) parseInt(readName, m.start(1), m.end(1)));
+            loc.setX(parseInt(readName, m.start(2), m.end(2)));
+            loc.setY(parseInt(readName, m.start(3), m.end(3)));
+            return true;
+        } else {
+            warnRegexDoesNotMatch(readName);
+            return false;
+        }
+    }
+
+    private void warnRegexDoesNotMatch(final String readName) {
+        if (null != log && !this.warnedAboutRegexNotMatching) {
+            this.log.warn(String.format("READ_NAME_REGEX '%s' did not match read name '%s'.  Your regex may not be correct.  " +
+                            "Note that this message will not be emitted again even if other read names do not match the regex.",
+                    this.readNameRegex, readName));
+            warnedAboutRegexNotMatching = true;
+        }
+    }
+
+    /** The result of {@link #matchLastThreeFields(String, char, int[])}. */
+    enum LastThreeFieldsMatch { MATCHES, DOES_NOT_MATCH, UNKNOWN }
+
+    /**
+     * Matches a read name against the {@link #LAST_THREE_FIELDS_REGEX_FORMATS} regex with the given delimiter without
+     * running the regex: there must be at least three fields, and each of the last three must start with a digit.  The
+     * leading digits of the last three fields are stored in the passed-in array when the read name matches.  Returns
+     * UNKNOWN if the read name has a line terminator before the last three fields, which the regex's '.' does not
+     * match, so that the caller can fall back to the regex.
+     *
+     * @throws NumberFormatException if the digits of a field do not fit in an int, as the regex path would
+     */
+    static LastThreeFieldsMatch matchLastThreeFields(final String readName, final char delim, final int[] tokens) throws NumberFormatException {
+        // find where each of the last three fields starts, and check that it starts with a digit
+        int endIdx = readName.length();
+        for (int tokensIdx = 2; 0 <= tokensIdx; tokensIdx--) {
+            final int delimIdx = readName.lastIndexOf(delim, endIdx - 1);
+            if (delimIdx < 0 && tokensIdx > 0) return LastThreeFieldsMatch.DOES_NOT_MATCH; // too few fields
+
+            final int startIdx = delimIdx + 1;
+            if (startIdx == endIdx || !isAsciiDigit(readName.charAt(startIdx))) return LastThreeFieldsMatch.DOES_NOT_MATCH;
+            tokens[tokensIdx] = startIdx;
+            endIdx = delimIdx;
+        }
+
+        // the optional prefix before the last three fields is matched by '.', which excludes line terminators
+        for (int i = 0; i < endIdx; i++) {
+            final char ch = readName.charAt(i);
+            if (ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029') return LastThreeFieldsMatch.UNKNOWN;
+        }
+
+        // now parse the leading digits of each field
+        for (int tokensIdx = 0; tokensIdx < 3; tokensIdx++) {
+            final int startIdx = tokens[tokensIdx];
+            int digitsEnd = startIdx;
+            while (digitsEnd < readName.length() && isAsciiDigit(readName.charAt(digitsEnd))) digitsEnd++;
+            tokens[tokensIdx] = parseInt(readName, startIdx, digitsEnd);
+        }
+        return LastThreeFieldsMatch.MATCHES;
+    }
+
+    private static boolean isAsciiDigit(final char ch) {
+        return '0' <= ch && ch <= '9';
+    }
+
     /**
      * Given a string, splits the string by the delimiter, and returns the the last three fields parsed as integers.  Parsing a field
      * considers only a sequence of digits up until the first non-digit character.  The three values are stored in the passed-in array.
@@ -139,7 +246,7 @@ public class ReadNameParser {
         for (i = readName.length() - 1; 0 <= i && 0 <= tokensIdx; i--) {
             if (readName.charAt(i) == delim || 0 == i) {
                 numFields++;
-                tokens[tokensIdx] = rapidParseInt(readName.substring((0 == i) ? 0 : (i+1), endIdx));
+                tokens[tokensIdx] = rapidParseInt(readName, (0 == i) ? 0 : (i+1), endIdx);
                 tokensIdx--;
                 endIdx = i;
             }
@@ -165,18 +272,25 @@ public class ReadNameParser {
      * @throws NumberFormatException if the String does not start with an optional - followed by at least on digit
      */
     public static int rapidParseInt(final String input) throws NumberFormatException {
-        final int len = input.length();
+        return rapidParseInt(input, 0, input.length());
+    }
+
+    /**
+     * As {@link #rapidParseInt(String)}, but parses the characters from start (inclusive) to end (exclusive) of the
+     * input without copying them.
+     */
+    public static int rapidParseInt(final CharSequence input, final int start, final int end) throws NumberFormatException {
         int val = 0;
-        int i = 0;
+        int i = start;
         boolean isNegative = false;
 
-        if (0 < len && '-' == input.charAt(0)) {
-            i = 1;
+        if (start < end && '-' == input.charAt(start)) {
+            i = start + 1;
             isNegative = true;
         }
 
         boolean hasDigits = false;
-        for (; i < len; ++i) {
+        for (; i < end; ++i) {
             final char ch = input.charAt(i);
             if (Character.isDigit(ch)) {
                 val = (val * 10) + (ch - 48);
@@ -186,8 +300,42 @@ public class ReadNameParser {
             }
         }
 
-        if (!hasDigits) throw new NumberFormatException("String '" + input + "' did not start with a parsable number.");
+        if (!hasDigits) throw new NumberFormatException("String '" + input.subSequence(start, end) + "' did not start with a parsable number.");
         if (isNegative) val = -val;
         return val;
     }
+
+    /**
+     * Parses the characters from start (inclusive) to end (exclusive) of the input as a decimal integer, accepting and
+     * rejecting exactly what {@link Integer#parseInt(String)} does on the same characters, without copying them.
+     *
+     * @throws NumberFormatException if the characters are not an integer that fits in an int, or start is negative
+     */
+    static int parseInt(final CharSequence input, final int start, final int end) throws NumberFormatException {
+        if (start < 0 || end <= start) throw new NumberFormatException("Empty or missing field in '" + input + "'.");
+
+        int i = start;
+        boolean isNegative = false;
+        int limit = -Integer.MAX_VALUE;
+        final char first = input.charAt(i);
+        if (first == '-' || first == '+') {
+            if (first == '-') {
+                isNegative = true;
+                limit = Integer.MIN_VALUE;
+            }
+            if (++i == end) throw new NumberFormatException("For input string: \"" + input.subSequence(start, end) + "\"");
+        }
+
+        // accumulate negatively, as Integer.parseInt does, so that Integer.MIN_VALUE can be represented
+        final int multiplyLimit = limit / 10;
+        int val = 0;
+        for (; i < end; ++i) {
+            final int digit = Character.digit(input.charAt(i), 10);
+            if (digit < 0 || val < multiplyLimit) throw new NumberFormatException("For input string: \"" + input.subSequence(start, end) + "\"");
+            val *= 10;
+            if (val < limit + digit) throw new NumberFormatException("For input string: \"" + input.subSequence(start, end) + "\"");
+            val -= digit;
+        }
+        return isNegative ? val : -val;
+    }
 }
@@ -0,0 +1,51 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.sam.util;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTag;
+
+/**
+ * Utilities for handing a SAMRecord read on one thread to other threads.
+ */
+public class SamRecordSharingUtil {
+
+    /**
+     * Decodes the lazily decoded parts of a record, and fills its lazily computed fields, so that threads that are
+     * handed the record (e.g. the program threads of SinglePassSamProgram, or the level threads of a
+     * MultiLevelCollector) only ever read it.  SAMRecord.eagerDecode() would do the same but is not public.
+     */
+    public static void decodeForSharing(final SAMRecord rec) {
+        rec.getReadName();
+        rec.getCigar();
+        rec.getCigarString();
+        rec.getReadBases();
+        rec.getBaseQualities();
+        // Getting any attribute decodes them all
+        rec.getAttribute(SAMTag.RG.name());
+        rec.getAlignmentEnd();
+        rec.getAlignmentBlocks();
+    }
+}
@@ -0,0 +1,150 @@
+package picard.analysis;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.SamPairUtil;
+import htsjdk.samtools.metrics.MetricsFile;
+import htsjdk.samtools.reference.ReferenceSequence;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import picard.metrics.MergeablePerUnitMetricCollector;
+import picard.metrics.PerUnitMetricCollector;
+import picard.metrics.SAMRecordAndReference;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests merging the per-unit collectors of AlignmentSummaryMetricsCollector, both directly and through the levels of
+ * a MultiLevelCollector.
+ */
+public class AlignmentSummaryMetricsCollectorTest {
+    private static final int NUM_READ_GROUPS = 3;
+
+    /** Pairs in three read groups of two samples, and some pairs whose read group is missing or not in the header. */
+    private SAMRecordSetBuilder makeRecords() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        builder.getHeader().setReadGroups(new ArrayList<>());
+        for (int i = 0; i < NUM_READ_GROUPS; i++) {
+            final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg" + i);
+            readGroup.setSample("sample" + (i % 2));
+            readGroup.setLibrary("library" + i);
+            readGroup.setPlatformUnit("unit" + i);
+            builder.getHeader().addReadGroup(readGroup);
+        }
+
+        final Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            final int start1 = random.nextInt(9000) + 1;
+            builder.addPair("read" + i, 0, start1, start1 + random.nextInt(300));
+        }
+        for (final SAMRecord record : builder) {
+            final int readGroup = Integer.parseInt(record.getReadName().substring(4)) % (NUM_READ_GROUPS + 2);
+            if (readGroup < NUM_READ_GROUPS) {
+                record.setAttribute(SAMTag.RG.name(), "rg" + readGroup);
+            } else if (readGroup == NUM_READ_GROUPS) {
+                record.setAttribute(SAMTag.RG.name(), null);
+            } else {
+                record.setAttribute(SAMTag.RG.name(), "notInHeader");
+            }
+            if (random.nextInt(10) == 0) record.setReadFailsVendorQualityCheckFlag(true);
+        }
+        return builder;
+    }
+
+    private ReferenceSequence makeReference(final SAMFileHeader header) {
+        final byte[] bases = new byte[10000];
+        final Random random = new Random(11);
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] = (byte) "ACGT".charAt(random.nextInt(4));
+        }
+        return new ReferenceSequence(header.getSequence(0).getSequenceName(), 0, bases);
+    }
+
+    private AlignmentSummaryMetricsCollector makeCollector(final Set<MetricAccumulationLevel> levels, final SAMFileHeader header) {
+        return new AlignmentSummaryMetricsCollector(levels, header.getReadGroups(), true,
+                Collections.singletonList("AGATCGGAAGAGC"), 100000, Collections.singleton(SamPairUtil.PairOrientation.FR), false);
+    }
+
+    @Test
+    public void testMerge() {
+        final SAMRecordSetBuilder builder = makeRecords();
+        final ReferenceSequence ref = makeReference(builder.getHeader());
+        final AlignmentSummaryMetricsCollector collector = makeCollector(EnumSet.of(MetricAccumulationLevel.ALL_READS), builder.getHeader());
+
+        final PerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference> all = collector.makeChildCollector(null, null, null);
+        final PerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference> even = collector.makeChildCollector(null, null, null);
+        final PerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference> odd = collector.makeChildCollector(null, null, null);
+        int i = 0;
+        for (final SAMRecord record : builder) {
+            final SAMRecordAndReference arg = new SAMRecordAndReference(record, ref);
+            all.acceptRecord(arg);
+            (i++ % 2 == 0 ? even : odd).acceptRecord(arg);
+        }
+        Assert.assertTrue(even instanceof MergeablePerUnitMetricCollector);
+        mergeInto(even, odd);
+
+        final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> expected = finish(all);
+        final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> merged = finish(even);
+        Assert.assertEquals(expected.getMetrics().size(), 3);
+        Assert.assertEquals(expected.getMetrics().get(2).TOTAL_READS, 1000);
+        Assert.assertTrue(expected.getMetrics().get(2).PF_MISMATCH_RATE > 0);
+        Assert.assertTrue(merged.areMetricsEqual(expected));
+        Assert.assertTrue(merged.areHistogramsEqual(expected));
+    }
+
+    @Test
+    public void testMergedLevelsMatchPerLevel() {
+        final SAMRecordSetBuilder builder = makeRecords();
+        final ReferenceSequence ref = makeReference(builder.getHeader());
+        final Set<MetricAccumulationLevel> levels = EnumSet.of(MetricAccumulationLevel.ALL_READS,
+                MetricAccumulationLevel.SAMPLE, MetricAccumulationLevel.LIBRARY, MetricAccumulationLevel.READ_GROUP);
+
+        // All the levels at once, i.e. from the read group and unknown collectors merged at finish()
+        final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> merged = new MetricsFile<>();
+        final AlignmentSummaryMetricsCollector collector = makeCollector(levels, builder.getHeader());
+        for (final SAMRecord record : builder) {
+            collector.acceptRecord(record, ref);
+        }
+        collector.finish();
+        collector.addAllLevelsToFile(merged);
+
+        // Each level on its own, i.e. with the records accepted by the collectors of that level
+        final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> perLevel = new MetricsFile<>();
+        for (final MetricAccumulationLevel level : levels) {
+            final AlignmentSummaryMetricsCollector levelCollector = makeCollector(EnumSet.of(level), builder.getHeader());
+            for (final SAMRecord record : builder) {
+                levelCollector.acceptRecord(record, ref);
+            }
+            levelCollector.finish();
+            levelCollector.addAllLevelsToFile(perLevel);
+        }
+
+        // 1 + 2 samples + 3 libraries + 3 read groups, plus the unknown collector of the last three levels, each with
+        // the three categories of paired reads
+        Assert.assertEquals(merged.getMetrics().size(), 3 * (1 + 2 + 3 + 3 + 3));
+        Assert.assertTrue(merged.areMetricsEqual(perLevel));
+        Assert.assertTrue(merged.areHistogramsEqual(perLevel));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void mergeInto(final PerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference> collector,
+                                  final PerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference> other) {
+        ((MergeablePerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference>) collector)
+                .merge((MergeablePerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference>) other);
+    }
+
+    private static MetricsFile<AlignmentSummaryMetrics, Comparable<?>> finish(
+            final PerUnitMetricCollector<AlignmentSummaryMetrics, Comparable<?>, SAMRecordAndReference> collector) {
+        final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> file = new MetricsFile<>();
+        collector.finish();
+        collector.addMetricsToFile(file);
+        return file;
+    }
+}
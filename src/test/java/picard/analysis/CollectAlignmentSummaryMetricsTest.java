@@ -24,6 +24,13 @@
 
 package picard.analysis;
 
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.SAMTag;
 import htsjdk.samtools.metrics.MetricsFile;
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -34,6 +41,11 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 /**
  * Tests CollectAlignmentSummaryStatistics
@@ -604,4 +616,59 @@ public class CollectAlignmentSummaryMetricsTest extends CommandLineProgramTest {
             }
         }
     }
+
+    @Test
+    public void testParallelAccumulationLevels() throws IOException {
+        // Enough records, in several samples, libraries and read groups, to fill a few batches of the level threads
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        final List<SAMReadGroupRecord> readGroups = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg" + i);
+            readGroup.setSample("sample" + (i % 2));
+            readGroup.setLibrary("library" + (i % 3));
+            readGroup.setPlatformUnit("unit" + i);
+            builder.getHeader().addReadGroup(readGroup);
+            readGroups.add(readGroup);
+        }
+        final Random random = new Random(42);
+        final Map<String, String> readGroupIds = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            final int start1 = random.nextInt(100000) + 1;
+            builder.addPair("read" + i, random.nextInt(3), start1, start1 + random.nextInt(300));
+            readGroupIds.put("read" + i, readGroups.get(random.nextInt(readGroups.size())).getId());
+        }
+        for (final SAMRecord record : builder) {
+            record.setAttribute(SAMTag.RG.name(), readGroupIds.get(record.getReadName()));
+        }
+        final File input = File.createTempFile("parallelLevels", ".sam");
+        input.deleteOnExit();
+        final SAMFileWriter writer = new SAMFileWriterFactory().makeSAMWriter(builder.getHeader(), true, input);
+        for (final SAMRecord record : builder) {
+            writer.addAlignment(record);
+        }
+        writer.close();
+
+        final List<MetricsFile<AlignmentSummaryMetrics, Comparable<?>>> outputs = new ArrayList<>();
+        for (final boolean parallel : new boolean[] {false, true}) {
+            final File outfile = File.createTempFile("alignmentMetrics", ".txt");
+            outfile.deleteOnExit();
+            final String[] args = new String[] {
+                    "INPUT="  + input.getAbsolutePath(),
+                    "OUTPUT=" + outfile.getAbsolutePath(),
+                    "METRIC_ACCUMULATION_LEVEL=ALL_READS",
+                    "METRIC_ACCUMULATION_LEVEL=SAMPLE",
+                    "METRIC_ACCUMULATION_LEVEL=LIBRARY",
+                    "METRIC_ACCUMULATION_LEVEL=READ_GROUP",
+                    "PARALLEL_ACCUMULATION_LEVELS=" + parallel
+            };
+            Assert.assertEquals(runPicardCommandLine(args), 0);
+
+            final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> output = new MetricsFile<>();
+            output.read(new FileReader(outfile));
+            outputs.add(output);
+        }
+
+        Assert.assertFalse(outputs.get(1).getMetrics().isEmpty());
+        Assert.assertTrue(outputs.get(0).areMetricsEqual(outputs.get(1)));
+    }
 }
@@ -30,8 +30,14 @@ import htsjdk.samtools.SAMFileWriterFactory;
 import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
 import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.SAMException;
+import htsjdk.samtools.reference.ReferenceSequenceFileWalker;
+import htsjdk.samtools.util.QualityUtil;
+import htsjdk.samtools.util.SequenceUtil;
+import htsjdk.samtools.util.StringUtil;
 import htsjdk.variant.utils.SAMSequenceDictionaryExtractor;
 import org.testng.Assert;
 import org.testng.annotations.BeforeTest;
@@ -43,8 +49,11 @@ import static picard.analysis.GcBiasMetricsCollector.PerUnitGcBiasMetricsCollect
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 /**
@@ -392,6 +401,115 @@ public class CollectGcBiasMetricsTest extends CommandLineProgramTest {
         }
     }
 
+    /**
+     * Reads with '*' in SEQ are omitted with a warning, up to 100 of them per collector, and the later ones are counted
+     * with no errors.
+     */
+    @Test
+    public void runCheckingManyNoSEQTest() throws IOException {
+        final File input = File.createTempFile("CollectGcBias", ".sam", TEST_DIR);
+        final File summaryOutfile = File.createTempFile("test", ".gc_bias.summary_metrics");
+        final File detailsOutfile = File.createTempFile("test", ".gc_bias.detail_metrics");
+        input.deleteOnExit();
+        summaryOutfile.deleteOnExit();
+        detailsOutfile.deleteOnExit();
+
+        final SAMRecordSetBuilder setBuilder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        setBuilder.getHeader().setSequenceDictionary(SAMSequenceDictionaryExtractor.extractDictionary(new File(TEST_DIR, "Mheader.dict")));
+        for (int i = 0; i < 150; i++) {
+            setBuilder.addFrag(READ_NAME + i, 0, 1000 + 10 * i, false);
+        }
+        // secondary alignments without bases, like those in chrM_NO_SEQ.sam
+        for (final SAMRecord record : setBuilder) {
+            record.setNotPrimaryAlignmentFlag(true);
+            record.setCigarString("36H100D");
+            record.setReadBases(SAMRecord.NULL_SEQUENCE);
+            record.setBaseQualities(SAMRecord.NULL_QUALS);
+        }
+        final SAMFileWriter writer = new SAMFileWriterFactory().makeSAMWriter(setBuilder.getHeader(), true, input);
+        setBuilder.forEach(writer::addAlignment);
+        writer.close();
+
+        runGcBias(input, REFERENCE_FILE_2, summaryOutfile, detailsOutfile, false);
+
+        final MetricsFile<GcBiasSummaryMetrics, Comparable<?>> output = new MetricsFile<>();
+        output.read(new FileReader(summaryOutfile));
+        Assert.assertEquals(output.getMetrics().size(), 3);
+        for (final GcBiasSummaryMetrics metrics : output.getMetrics()) {
+            Assert.assertEquals(metrics.ALIGNED_READS, 50);
+        }
+
+        final MetricsFile<GcBiasDetailMetrics, Comparable<?>> details = new MetricsFile<>();
+        details.read(new FileReader(detailsOutfile));
+        long readStarts = 0;
+        for (final GcBiasDetailMetrics detail : details.getMetrics()) {
+            if (detail.ACCUMULATION_LEVEL.equals(ACCUMULATION_LEVEL_ALL_READS)) {
+                readStarts += detail.READ_STARTS;
+                Assert.assertEquals(detail.MEAN_BASE_QUALITY, 0);
+            }
+        }
+        Assert.assertEquals(readStarts, 50);
+    }
+
+    /**
+     * Checks the read starts and base qualities by GC of every level of runGcBiasMultiLevelTest against the counts of
+     * each record's window GC and errors, added up by level.
+     */
+    @Test
+    public void runGcBiasMultiLevelDetailsTest() throws IOException {
+        final File outfile = File.createTempFile("test", ".gc_bias.summary_metrics");
+        final File detailsOutfile = File.createTempFile("test", ".gc_bias.detail_metrics");
+        outfile.deleteOnExit();
+        detailsOutfile.deleteOnExit();
+
+        runGcBias(tempSamFileChrM_O, REFERENCE_FILE_1, outfile, detailsOutfile, false);
+
+        final int windowSize = 100;
+        final Map<String, long[]> readStarts = new HashMap<>();
+        final Map<String, long[]> bases = new HashMap<>();
+        final Map<String, long[]> errors = new HashMap<>();
+        final ReferenceSequenceFileWalker refWalker = new ReferenceSequenceFileWalker(new File(REFERENCE_FILE_1));
+        final Map<Integer, byte[]> gcByReference = new HashMap<>();
+        final SamReader reader = SamReaderFactory.makeDefault().open(tempSamFileChrM_O);
+        for (final SAMRecord rec : reader) {
+            if (rec.getReadUnmappedFlag()) continue;
+            final byte[] refBases = refWalker.get(rec.getReferenceIndex()).getBases();
+            StringUtil.toUpperCase(refBases);
+            final byte[] gc = gcByReference.computeIfAbsent(rec.getReferenceIndex(),
+                    i -> GcBiasUtils.calculateAllGcs(refBases, refBases.length - windowSize, windowSize));
+            final int pos = rec.getReadNegativeStrandFlag() ? rec.getAlignmentEnd() - windowSize : rec.getAlignmentStart();
+            if (pos <= 0 || gc[pos] < 0) continue;
+
+            final SAMReadGroupRecord readGroup = rec.getReadGroup();
+            for (final String key : new String[] {ACCUMULATION_LEVEL_ALL_READS + "/All_Reads",
+                    ACCUMULATION_LEVEL_SAMPLE + "/" + readGroup.getSample(),
+                    ACCUMULATION_LEVEL_READ_GROUP + "/" + readGroup.getPlatformUnit()}) {
+                readStarts.computeIfAbsent(key, k -> new long[101])[gc[pos]]++;
+                bases.computeIfAbsent(key, k -> new long[101])[gc[pos]] += rec.getReadLength();
+                errors.computeIfAbsent(key, k -> new long[101])[gc[pos]] += SequenceUtil.countMismatches(rec, refBases, false) +
+                        SequenceUtil.countInsertedBases(rec) + SequenceUtil.countDeletedBases(rec);
+            }
+        }
+        reader.close();
+
+        final MetricsFile<GcBiasDetailMetrics, Comparable<?>> details = new MetricsFile<>();
+        details.read(new FileReader(detailsOutfile));
+        Assert.assertEquals(details.getMetrics().size(), 101 * (1 + 2 + 3));
+        long totalErrors = 0;
+        for (final GcBiasDetailMetrics detail : details.getMetrics()) {
+            final String name = detail.READ_GROUP != null ? detail.READ_GROUP : detail.SAMPLE != null ? detail.SAMPLE : "All_Reads";
+            final String key = detail.ACCUMULATION_LEVEL + "/" + name;
+            Assert.assertTrue(readStarts.containsKey(key), key);
+            Assert.assertEquals(detail.READ_STARTS, readStarts.get(key)[detail.GC], key + " GC " + detail.GC);
+            final long gcErrors = errors.get(key)[detail.GC];
+            Assert.assertEquals(detail.MEAN_BASE_QUALITY,
+                    gcErrors > 0 ? QualityUtil.getPhredScoreFromObsAndErrors(bases.get(key)[detail.GC], gcErrors) : 0,
+                    key + " GC " + detail.GC);
+            totalErrors += gcErrors;
+        }
+        Assert.assertTrue(totalErrors > 0);
+    }
+
     /////////////////////////////////////////////////////////////////////////////
     //Used to generate the Sam Record Sets with SamRecordSetBuilder.addPair().
     //testNumber 1: runGcBiasMultiLevelTest, generates records aligning to chrM and chrO
@@ -466,4 +584,33 @@ public class CollectGcBiasMetricsTest extends CommandLineProgramTest {
             }
         }
     }
+
+    @Test
+    public void testReferenceGcCache() throws IOException {
+        final File reference = new File(REFERENCE_FILE_2);
+        final File cacheDirectory = Files.createTempDirectory("gcCache").toFile();
+        cacheDirectory.deleteOnExit();
+
+        final int[] expected = GcBiasUtils.calculateRefWindowsByGc(101, reference, 100);
+        Assert.assertEquals(GcBiasUtils.calculateRefWindowsByGc(101, reference, 100, cacheDirectory), expected);
+
+        final File[] cacheFiles = cacheDirectory.listFiles();
+        Assert.assertEquals(cacheFiles.length, 1);
+        cacheFiles[0].deleteOnExit();
+        Assert.assertTrue(cacheFiles[0].getName().endsWith(".w100" + GcBiasUtils.GC_WINDOWS_CACHE_EXTENSION));
+
+        // Later calls read the saved counts rather than the reference
+        final int[] altered = expected.clone();
+        altered[50] += 1000;
+        final List<String> lines = new ArrayList<>();
+        for (final int count : altered) lines.add(Integer.toString(count));
+        Files.write(cacheFiles[0].toPath(), lines);
+        Assert.assertEquals(GcBiasUtils.calculateRefWindowsByGc(101, reference, 100, cacheDirectory), altered);
+
+        // Counts for another window size are saved separately
+        Assert.assertEquals(GcBiasUtils.calculateRefWindowsByGc(101, reference, 50, cacheDirectory),
+                GcBiasUtils.calculateRefWindowsByGc(101, reference, 50));
+        for (final File file : cacheDirectory.listFiles()) file.deleteOnExit();
+        Assert.assertEquals(cacheDirectory.listFiles().length, 2);
+    }
 }
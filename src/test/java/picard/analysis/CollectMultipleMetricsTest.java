@@ -3,6 +3,7 @@ package picard.analysis;
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileWriter;
 import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMFormatException;
 import htsjdk.samtools.SAMReadGroupRecord;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordSetBuilder;
@@ -21,6 +22,9 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Random;
 
 /**
@@ -102,6 +106,145 @@ public class CollectMultipleMetricsTest extends CommandLineProgramTest {
         }
     }
 
+    @Test
+    public void testMultipleThreadsMatchesSingleThread() throws IOException {
+        final File input = new File(TEST_DATA_DIR, "summary_alignment_stats_test.sam");
+        final File reference = new File(TEST_DATA_DIR, "summary_alignment_stats_test.fasta");
+        final File singleThreaded = runProgramsWithThreads(input, reference, 1);
+        final File multiThreaded = runProgramsWithThreads(input, reference, 3);
+
+        for (final String extension : new String[]{".alignment_summary_metrics", ".insert_size_metrics",
+                ".quality_yield_metrics", ".gc_bias.detail_metrics", ".gc_bias.summary_metrics"}) {
+            final MetricsFile<?, ?> expected = new MetricsFile<>();
+            expected.read(new FileReader(singleThreaded + extension));
+            final MetricsFile<?, ?> actual = new MetricsFile<>();
+            actual.read(new FileReader(multiThreaded + extension));
+            Assert.assertTrue(expected.areMetricsEqual(actual), extension);
+            Assert.assertTrue(expected.areHistogramsEqual(actual), extension);
+        }
+    }
+
+    @Test
+    public void testMultipleThreadsStopOnReadFailure() throws IOException {
+        // A SAM file whose last record cannot be parsed, so that reading fails after records have been handed out
+        final File input = File.createTempFile("truncated", ".sam");
+        input.deleteOnExit();
+        Files.copy(new File(TEST_DATA_DIR, "summary_alignment_stats_test.sam").toPath(), input.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.write(input.toPath(), "read_with_too_few_fields\t0\n".getBytes(), StandardOpenOption.APPEND);
+
+        try {
+            runProgramsWithThreads(input, new File(TEST_DATA_DIR, "summary_alignment_stats_test.fasta"), 3);
+            Assert.fail("Expected the unparseable record to fail the run.");
+        } catch (final SAMFormatException e) {
+            // expected
+        }
+
+        // The program threads must not be left waiting for more records
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (programThreadsAlive() && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        Assert.assertFalse(programThreadsAlive());
+    }
+
+    private static boolean programThreadsAlive() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.isAlive() && thread.getName().startsWith("SinglePassSamProgram-"));
+    }
+
+    private File runProgramsWithThreads(final File input, final File reference, final int threads) throws IOException {
+        final File outfile = File.createTempFile("multipleMetrics", "");
+        outfile.deleteOnExit();
+        final String[] args = new String[] {
+                "INPUT="  + input.getAbsolutePath(),
+                "OUTPUT=" + outfile.getAbsolutePath(),
+                "REFERENCE_SEQUENCE=" + reference.getAbsolutePath(),
+                "THREADS=" + threads,
+                "PROGRAM=null",
+                "PROGRAM="+CollectMultipleMetrics.Program.CollectAlignmentSummaryMetrics.name(),
+                "PROGRAM="+CollectMultipleMetrics.Program.CollectInsertSizeMetrics.name(),
+                "PROGRAM="+CollectMultipleMetrics.Program.CollectQualityYieldMetrics.name(),
+                "PROGRAM="+CollectMultipleMetrics.Program.CollectGcBiasMetrics.name()
+        };
+        Assert.assertEquals(runPicardCommandLine(args), 0);
+        return outfile;
+    }
+
+    @Test
+    public void testSampling() throws IOException {
+        final File input = makeIndexedChrMBam(2000);
+        final SamplingMetrics full = runSampling(input, "SAMPLING_FRACTION=1");
+        Assert.assertEquals(full.TOTAL_BINS, 17);
+        Assert.assertEquals(full.SAMPLED_BINS, 17);
+        Assert.assertEquals(full.RECORDS_IN_INDEX, 4000);
+        Assert.assertEquals(full.RECORDS_SAMPLED, 4000);
+        Assert.assertEquals(full.ESTIMATED_RECORDS, 4000.0);
+        Assert.assertEquals(full.RELATIVE_STANDARD_ERROR, 0.0);
+
+        final SamplingMetrics half = runSampling(input, "SAMPLING_RECORDS=2000");
+        Assert.assertEquals(half.SAMPLED_BINS, 9);
+        Assert.assertEquals(half.RECORDS_IN_INDEX, 4000);
+        Assert.assertTrue(half.RECORDS_SAMPLED > 0 && half.RECORDS_SAMPLED < 4000);
+        Assert.assertTrue(half.ESTIMATED_RECORDS_LOWER_CI <= half.ESTIMATED_RECORDS);
+        Assert.assertTrue(half.ESTIMATED_RECORDS <= half.ESTIMATED_RECORDS_UPPER_CI);
+        Assert.assertTrue(half.RELATIVE_STANDARD_ERROR > 0);
+    }
+
+    /** Runs CollectAlignmentSummaryMetrics with the given sampling argument, checking that it saw exactly the sampled records. */
+    private SamplingMetrics runSampling(final File input, final String samplingArgument) throws IOException {
+        final File outfile = File.createTempFile("sampledMetrics", "");
+        outfile.deleteOnExit();
+        final String[] args = new String[] {
+                "INPUT="  + input.getAbsolutePath(),
+                "OUTPUT=" + outfile.getAbsolutePath(),
+                "PROGRAM=null",
+                "PROGRAM="+CollectMultipleMetrics.Program.CollectAlignmentSummaryMetrics.name(),
+                "SAMPLING_BIN_SIZE=1000",
+                samplingArgument
+        };
+        Assert.assertEquals(runPicardCommandLine(args), 0);
+
+        final MetricsFile<SamplingMetrics, Comparable<?>> sampling = new MetricsFile<>();
+        sampling.read(new FileReader(outfile + ".sampling_metrics"));
+        Assert.assertEquals(sampling.getMetrics().size(), 1);
+        final SamplingMetrics metrics = sampling.getMetrics().get(0);
+
+        final MetricsFile<AlignmentSummaryMetrics, Comparable<?>> summary = new MetricsFile<>();
+        summary.read(new FileReader(outfile + ".alignment_summary_metrics"));
+        for (final AlignmentSummaryMetrics summaryMetrics : summary.getMetrics()) {
+            if (summaryMetrics.CATEGORY == AlignmentSummaryMetrics.Category.PAIR) {
+                Assert.assertEquals(summaryMetrics.TOTAL_READS, metrics.RECORDS_SAMPLED);
+            }
+        }
+        return metrics;
+    }
+
+    /** Writes a coordinate sorted and indexed BAM of read pairs spread over chrM. */
+    private File makeIndexedChrMBam(final int numPairs) throws IOException {
+        final File bam = File.createTempFile("CollectMultipleMetricsSampling", ".bam");
+        bam.deleteOnExit();
+        new File(bam.getAbsolutePath().replaceAll("\\.bam$", ".bai")).deleteOnExit();
+
+        final SAMFileHeader header = new SAMTextHeaderCodec().decode(new BufferedLineReader(new FileInputStream(dict)), dict.toString());
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        // keep the read group that the builder puts on its records
+        header.setReadGroups(builder.getHeader().getReadGroups());
+        builder.setHeader(header);
+        final Random random = new Random(42);
+        for (int i = 0; i < numPairs; i++) {
+            final int start = random.nextInt(16000) + 1;
+            builder.addPair("pair" + i, 0, start, start + 200);
+        }
+
+        final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, bam);
+        for (final SAMRecord record : builder) {
+            writer.addAlignment(record);
+        }
+        writer.close();
+        return bam;
+    }
+
     @Test
     public void testInsertSize() throws IOException {
         final File input = new File(TEST_DATA_DIR, "insert_size_metrics_test.sam");
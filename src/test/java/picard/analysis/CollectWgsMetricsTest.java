@@ -410,4 +410,67 @@ public class CollectWgsMetricsTest extends CommandLineProgramTest {
         Assert.assertEquals(metrics.PCT_EXC_BASEQ, 0.0);
         Assert.assertEquals(metrics.PCT_EXC_CAPPED, 0.0);
     }
+
+    @Test(dataProvider = "wgsAlgorithm")
+    public void testMultipleThreadsMatchesSingleThread(final String useFastAlgorithm) throws IOException {
+        final File reference = new File("testdata/picard/sam/merger.fasta");
+        final File tempSamFile = File.createTempFile("CollectWgsMetrics", ".bam", TEST_DIR);
+        tempSamFile.deleteOnExit();
+        new File(tempSamFile.getAbsolutePath().replace(".bam", ".bai")).deleteOnExit();
+
+        final SAMRecordSetBuilder setBuilder = CollectWgsMetricsTestUtils.createTestSAMBuilder(reference, READ_GROUP_ID, SAMPLE, PLATFORM, LIBRARY);
+        setBuilder.setReadLength(20);
+
+        // pairs spread over all the reference sequences, some of them overlapping, duplicated or with a low mapping quality
+        final Random rg = new Random(11);
+        final int numSequences = setBuilder.getHeader().getSequenceDictionary().size();
+        for (int i = 0; i < 400; i++) {
+            final int contig = rg.nextInt(numSequences);
+            final int length = setBuilder.getHeader().getSequence(contig).getSequenceLength();
+            final int start1 = rg.nextInt(length - 20) + 1;
+            final int start2 = rg.nextInt(length - 20) + 1;
+            setBuilder.addPair("pair" + i, contig, start1, start2, false, false, "20M", "20M", false, true, 30);
+        }
+        int i = 0;
+        for (final SAMRecord record : setBuilder.getRecords()) {
+            if (i % 7 == 0) record.setDuplicateReadFlag(true);
+            if (i % 11 == 0) record.setMappingQuality(5);
+            i++;
+        }
+
+        final SAMFileWriter writer = new SAMFileWriterFactory()
+                .setCreateIndex(true).makeBAMWriter(setBuilder.getHeader(), false, tempSamFile);
+        for (final SAMRecord record : setBuilder) {
+            writer.addAlignment(record);
+        }
+        writer.close();
+
+        final MetricsFile<CollectWgsMetrics.WgsMetrics, Integer> singleThreaded = runWithThreads(tempSamFile, reference, useFastAlgorithm, 1);
+        final MetricsFile<CollectWgsMetrics.WgsMetrics, Integer> multiThreaded = runWithThreads(tempSamFile, reference, useFastAlgorithm, 3);
+
+        Assert.assertTrue(singleThreaded.getMetrics().get(0).MEAN_COVERAGE > 0);
+        Assert.assertTrue(singleThreaded.areMetricsEqual(multiThreaded));
+        Assert.assertTrue(singleThreaded.areHistogramsEqual(multiThreaded));
+    }
+
+    private MetricsFile<CollectWgsMetrics.WgsMetrics, Integer> runWithThreads(final File input, final File reference,
+                                                                             final String useFastAlgorithm, final int threads) throws IOException {
+        final File outfile = File.createTempFile("testWgsMetrics", ".txt");
+        outfile.deleteOnExit();
+
+        final String[] args = new String[] {
+                "INPUT="  + input.getAbsolutePath(),
+                "OUTPUT=" + outfile.getAbsolutePath(),
+                "REFERENCE_SEQUENCE=" + reference.getAbsolutePath(),
+                "INCLUDE_BQ_HISTOGRAM=true",
+                "COVERAGE_CAP=10",
+                "USE_FAST_ALGORITHM=" + useFastAlgorithm,
+                "THREADS=" + threads
+        };
+        Assert.assertEquals(runPicardCommandLine(args), 0);
+
+        final MetricsFile<CollectWgsMetrics.WgsMetrics, Integer> output = new MetricsFile<>();
+        output.read(new FileReader(outfile));
+        return output;
+    }
 }
@@ -10,6 +10,7 @@ import picard.cmdline.CommandLineProgramTest;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Random;
 
 public class CollectWgsMetricsWithNonZeroCoverageTest extends CommandLineProgramTest {
     private final static File TEST_DIR = new File("testdata/picard/sam/");
@@ -194,5 +195,57 @@ public class CollectWgsMetricsWithNonZeroCoverageTest extends CommandLineProgram
         Assert.assertEquals(nonZeroMetrics.MEAN_COVERAGE, 3.0);
     }
 
+    @Test
+    public void testMultipleThreadsMatchesSingleThread() throws IOException {
+        final File reference = new File(TEST_DIR, "merger.fasta");
+        final File tempSamFile = File.createTempFile("CollectWgsMetrics", ".bam", TEST_DIR);
+        tempSamFile.deleteOnExit();
+        new File(tempSamFile.getAbsolutePath().replace(".bam", ".bai")).deleteOnExit();
+
+        final SAMRecordSetBuilder setBuilder = CollectWgsMetricsTestUtils.createTestSAMBuilder(reference, READ_GROUP_ID, SAMPLE, PLATFORM, LIBRARY);
+        setBuilder.setReadLength(20);
+
+        // pairs spread over all but the last reference sequence, so that the two categories differ
+        final Random rg = new Random(13);
+        final int numSequences = setBuilder.getHeader().getSequenceDictionary().size();
+        for (int i = 0; i < 300; i++) {
+            final int contig = rg.nextInt(numSequences - 1);
+            final int length = setBuilder.getHeader().getSequence(contig).getSequenceLength();
+            setBuilder.addPair("pair" + i, contig, rg.nextInt(length - 20) + 1, rg.nextInt(length - 20) + 1,
+                    false, false, "20M", "20M", false, true, 30);
+        }
+
+        final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(setBuilder.getHeader(), false, tempSamFile);
+        setBuilder.forEach(writer::addAlignment);
+        writer.close();
+
+        final MetricsFile<WgsMetricsWithNonZeroCoverage, Integer> singleThreaded = runWithThreads(tempSamFile, reference, 1);
+        final MetricsFile<WgsMetricsWithNonZeroCoverage, Integer> multiThreaded = runWithThreads(tempSamFile, reference, 3);
+
+        Assert.assertEquals(singleThreaded.getMetrics().size(), 2);
+        Assert.assertTrue(singleThreaded.getMetrics().get(1).MEAN_COVERAGE > singleThreaded.getMetrics().get(0).MEAN_COVERAGE);
+        Assert.assertTrue(singleThreaded.areMetricsEqual(multiThreaded));
+        Assert.assertTrue(singleThreaded.areHistogramsEqual(multiThreaded));
+    }
+
+    private MetricsFile<WgsMetricsWithNonZeroCoverage, Integer> runWithThreads(final File input, final File reference,
+                                                                              final int threads) throws IOException {
+        final File outfile = File.createTempFile("testWgsMetrics", ".txt");
+        final File chartOutFile = File.createTempFile("testWgsMetrics", ".pdf");
+        outfile.deleteOnExit();
+        chartOutFile.deleteOnExit();
 
+        final String[] args = new String[] {
+                "INPUT="  + input.getAbsolutePath(),
+                "OUTPUT=" + outfile.getAbsolutePath(),
+                "REFERENCE_SEQUENCE=" + reference.getAbsolutePath(),
+                "CHART_OUTPUT=" + chartOutFile.getAbsolutePath(),
+                "THREADS=" + threads
+        };
+        Assert.assertEquals(runPicardCommandLine(args), 0);
+
+        final MetricsFile<WgsMetricsWithNonZeroCoverage, Integer> output = new MetricsFile<>();
+        output.read(new FileReader(outfile));
+        return output;
+    }
 }
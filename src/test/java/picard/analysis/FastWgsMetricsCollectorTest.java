@@ -212,4 +212,29 @@ public class FastWgsMetricsCollectorTest {
         }
         assertEquals(11, collector.basesExcludedByOverlap, "Excluded by overlap:");
     }
+
+    @Test
+    public void testActiveBlocksAcrossResize() {
+        final FastWgsMetricsCollector.ActiveBlocks activeBlocks = new FastWgsMetricsCollector.ActiveBlocks();
+        final EdgingRecordAndOffset[] blocks = new EdgingRecordAndOffset[1000];
+        for (int i = 0; i < blocks.length; i++) {
+            // "Aa" and "BB" have the same hash code, so half of the names collide with another
+            blocks[i] = EdgingRecordAndOffset.createBeginRecord(generateRecord((i % 2 == 0 ? "Aa" : "BB") + (i / 4)), 0, 10, i);
+            activeBlocks.add(blocks[i]);
+        }
+        assertEquals(activeBlocks.size(), 1000);
+        assertEquals(activeBlocks.findSameName(new String("Aa7")), 2);
+        assertEquals(activeBlocks.getSameName(0).getReadName(), "Aa7");
+
+        activeBlocks.remove(EdgingRecordAndOffset.createEndRecord(blocks[28]));
+        assertEquals(activeBlocks.findSameName("Aa7"), 1);
+        assertEquals(activeBlocks.getSameName(0), blocks[30]);
+        for (int i = 0; i < blocks.length; i++) {
+            if (i != 28) {
+                activeBlocks.remove(EdgingRecordAndOffset.createEndRecord(blocks[i]));
+            }
+        }
+        assertEquals(activeBlocks.size(), 0);
+        assertEquals(activeBlocks.findSameName("BB7"), 0);
+    }
 }
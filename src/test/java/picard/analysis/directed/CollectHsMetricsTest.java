@@ -1,7 +1,15 @@
 package picard.analysis.directed;
 
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.SamFiles;
 import htsjdk.samtools.metrics.MetricsFile;
 import htsjdk.samtools.util.Histogram;
+import htsjdk.samtools.util.Interval;
+import htsjdk.samtools.util.IntervalList;
 import org.testng.Assert;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
@@ -10,6 +18,10 @@ import picard.cmdline.CommandLineProgramTest;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 public class CollectHsMetricsTest extends CommandLineProgramTest {
     private final static File TEST_DIR = new File("testdata/picard/analysis/directed/CollectHsMetrics");
@@ -128,4 +140,149 @@ public class CollectHsMetricsTest extends CommandLineProgramTest {
         Assert.assertEquals(coverageHistogram.get(0).getValue(), 10.0);
         Assert.assertEquals(coverageHistogram.get(1).getValue(), 10.0);
     }
+
+    @Test
+    public void testSortedAndUnsortedInputsMatch() throws IOException {
+        final IntervalList chrM = IntervalList.fromFile(new File(TEST_DIR, "chrM.interval_list"));
+        final IntervalList targets = new IntervalList(chrM.getHeader());
+        for (int start = 1; start < 5000; start += 700) {
+            targets.add(new Interval("chrM", start, start + 149, false, "target-" + start));
+        }
+        final File targetFile = File.createTempFile("testSortedAndUnsortedInputsMatch", ".interval_list", TEST_DIR);
+        targetFile.deleteOnExit();
+        targets.write(targetFile);
+
+        final Random random = new Random(42);
+        final SAMRecordSetBuilder sorted = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        final SAMRecordSetBuilder unsorted = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.unsorted);
+        sorted.getHeader().setSequenceDictionary(chrM.getHeader().getSequenceDictionary());
+        unsorted.getHeader().setSequenceDictionary(chrM.getHeader().getSequenceDictionary());
+        for (int i = 0; i < 2000; i++) {
+            final int start1 = random.nextInt(5200) + 1;
+            final int start2 = start1 + random.nextInt(200);
+            // a fixed base quality, as each builder draws its own random qualities
+            sorted.addPair("read" + i, 0, start1, start2, false, false, "36M", "36M", false, true, 30);
+            unsorted.addPair("read" + i, 0, start1, start2, false, false, "36M", "36M", false, true, 30);
+        }
+
+        final List<String> perBaseCoverage = new ArrayList<>();
+        final List<MetricsFile<HsMetrics, Integer>> metrics = new ArrayList<>();
+        for (final SAMRecordSetBuilder builder : new SAMRecordSetBuilder[] {sorted, unsorted}) {
+            final File input = File.createTempFile("testSortedAndUnsortedInputsMatch", ".sam", TEST_DIR);
+            final File outfile = File.createTempFile("testSortedAndUnsortedInputsMatch", ".hs_metrics", TEST_DIR);
+            final File perBaseFile = File.createTempFile("testSortedAndUnsortedInputsMatch", ".per_base", TEST_DIR);
+            input.deleteOnExit();
+            outfile.deleteOnExit();
+            perBaseFile.deleteOnExit();
+
+            final SAMFileWriter writer = new SAMFileWriterFactory().makeSAMWriter(builder.getHeader(), true, input);
+            for (final SAMRecord record : builder) {
+                writer.addAlignment(record);
+            }
+            writer.close();
+
+            final String[] args = new String[] {
+                    "TARGET_INTERVALS=" + targetFile,
+                    "BAIT_INTERVALS=" + targetFile,
+                    "INPUT=" + input,
+                    "OUTPUT=" + outfile,
+                    "PER_BASE_COVERAGE=" + perBaseFile,
+                    "MINIMUM_MAPPING_QUALITY=0",
+                    "MINIMUM_BASE_QUALITY=0"
+            };
+            Assert.assertEquals(runPicardCommandLine(args), 0);
+
+            perBaseCoverage.add(new String(Files.readAllBytes(perBaseFile.toPath())));
+            final MetricsFile<HsMetrics, Integer> output = new MetricsFile<>();
+            output.read(new FileReader(outfile));
+            metrics.add(output);
+        }
+
+        Assert.assertEquals(perBaseCoverage.get(0).split("\n").length, 1 + 8 * 150);
+        Assert.assertEquals(perBaseCoverage.get(0), perBaseCoverage.get(1));
+        Assert.assertTrue(metrics.get(0).areMetricsEqual(metrics.get(1)));
+        Assert.assertTrue(metrics.get(0).areHistogramsEqual(metrics.get(1)));
+    }
+
+    @Test
+    public void testRestrictToTargetsMatchesTargetMetrics() throws IOException {
+        final IntervalList chrM = IntervalList.fromFile(new File(TEST_DIR, "chrM.interval_list"));
+        final IntervalList targets = new IntervalList(chrM.getHeader());
+        for (int start = 1001; start < 6000; start += 1200) {
+            targets.add(new Interval("chrM", start, start + 149, false, "target-" + start));
+        }
+        final File targetFile = File.createTempFile("testRestrictToTargets", ".interval_list", TEST_DIR);
+        targetFile.deleteOnExit();
+        targets.write(targetFile);
+
+        // Reads all along chrM, most of them far from the targets, and some unmapped pairs without a position
+        final Random random = new Random(42);
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        builder.getHeader().setSequenceDictionary(chrM.getHeader().getSequenceDictionary());
+        for (int i = 0; i < 2000; i++) {
+            final int start1 = random.nextInt(16000) + 1;
+            final int start2 = start1 + random.nextInt(200);
+            builder.addPair("read" + i, 0, start1, start2);
+        }
+        for (int i = 0; i < 50; i++) {
+            builder.addUnmappedPair("unmapped" + i);
+        }
+
+        final File input = File.createTempFile("testRestrictToTargets", ".bam", TEST_DIR);
+        input.deleteOnExit();
+        final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(builder.getHeader(), true, input);
+        for (final SAMRecord record : builder) {
+            writer.addAlignment(record);
+        }
+        writer.close();
+        SamFiles.findIndex(input).deleteOnExit();
+
+        final List<HsMetrics> metrics = new ArrayList<>();
+        final List<MetricsFile<HsMetrics, Integer>> metricsFiles = new ArrayList<>();
+        for (final boolean restrict : new boolean[] {false, true}) {
+            final File outfile = File.createTempFile("testRestrictToTargets", ".hs_metrics", TEST_DIR);
+            outfile.deleteOnExit();
+
+            final String[] args = new String[] {
+                    "TARGET_INTERVALS=" + targetFile,
+                    "BAIT_INTERVALS=" + targetFile,
+                    "INPUT=" + input,
+                    "OUTPUT=" + outfile,
+                    "MINIMUM_MAPPING_QUALITY=0",
+                    "MINIMUM_BASE_QUALITY=0",
+                    "RESTRICT_TO_TARGETS=" + restrict
+            };
+            Assert.assertEquals(runPicardCommandLine(args), 0);
+
+            final MetricsFile<HsMetrics, Integer> output = new MetricsFile<>();
+            output.read(new FileReader(outfile));
+            metricsFiles.add(output);
+            metrics.add(output.getMetrics().get(0));
+        }
+
+        final HsMetrics all = metrics.get(0);
+        final HsMetrics restricted = metrics.get(1);
+        Assert.assertEquals(all.TOTAL_READS, 4100);
+        Assert.assertEquals(restricted.TOTAL_READS, all.TOTAL_READS);
+
+        // fractions of the whole file are unknown when only the records near the targets are read
+        Assert.assertEquals(restricted.PCT_PF_READS, Double.NaN);
+        Assert.assertEquals(restricted.PCT_PF_UQ_READS, Double.NaN);
+        Assert.assertEquals(restricted.PCT_PF_UQ_READS_ALIGNED, Double.NaN);
+        Assert.assertEquals(restricted.PCT_SELECTED_BASES, Double.NaN);
+        Assert.assertEquals(restricted.PCT_OFF_BAIT, Double.NaN);
+        Assert.assertEquals(restricted.FOLD_ENRICHMENT, Double.NaN);
+        Assert.assertEquals(restricted.PCT_EXC_OFF_TARGET, Double.NaN);
+        Assert.assertEquals(restricted.PCT_USABLE_BASES_ON_BAIT, Double.NaN);
+        Assert.assertEquals(restricted.PCT_USABLE_BASES_ON_TARGET, Double.NaN);
+        Assert.assertEquals(restricted.HS_PENALTY_20X, Double.NaN);
+
+        Assert.assertEquals(restricted.ON_BAIT_BASES, all.ON_BAIT_BASES);
+        Assert.assertEquals(restricted.NEAR_BAIT_BASES, all.NEAR_BAIT_BASES);
+        Assert.assertEquals(restricted.ON_TARGET_BASES, all.ON_TARGET_BASES);
+        Assert.assertEquals(restricted.MEAN_TARGET_COVERAGE, all.MEAN_TARGET_COVERAGE);
+        Assert.assertEquals(restricted.PCT_TARGET_BASES_10X, all.PCT_TARGET_BASES_10X);
+        Assert.assertEquals(restricted.ZERO_CVG_TARGETS_PCT, all.ZERO_CVG_TARGETS_PCT);
+        Assert.assertTrue(metricsFiles.get(1).areHistogramsEqual(metricsFiles.get(0)));
+    }
 }
@@ -0,0 +1,133 @@
+package picard.analysis.directed;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.metrics.MetricsFile;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import picard.analysis.InsertSizeMetrics;
+import picard.analysis.MetricAccumulationLevel;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests merging the per-unit collectors of InsertSizeMetricsCollector, both directly and through the levels of a
+ * MultiLevelCollector.
+ */
+public class InsertSizeMetricsCollectorTest {
+    private static final int NUM_READ_GROUPS = 3;
+
+    /**
+     * Pairs of all orientations in three read groups of two samples, and some pairs whose read group is missing or not
+     * in the header.
+     */
+    private SAMRecordSetBuilder makeRecords() {
+        final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+        builder.getHeader().setReadGroups(new ArrayList<>());
+        for (int i = 0; i < NUM_READ_GROUPS; i++) {
+            final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg" + i);
+            readGroup.setSample("sample" + (i % 2));
+            readGroup.setLibrary("library" + i);
+            readGroup.setPlatformUnit("unit" + i);
+            builder.getHeader().addReadGroup(readGroup);
+        }
+
+        final Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            final int start1 = random.nextInt(9000) + 1;
+            final int start2 = start1 + random.nextInt(400);
+            // mostly FR pairs, with enough RF and tandem pairs for their categories to be reported
+            final int orientation = random.nextInt(4);
+            builder.addPair("read" + i, 0, start1, start2, false, false, "36M", "36M",
+                    orientation == 2, orientation < 2, 30);
+        }
+        for (final SAMRecord record : builder) {
+            final int readGroup = Integer.parseInt(record.getReadName().substring(4)) % (NUM_READ_GROUPS + 2);
+            if (readGroup < NUM_READ_GROUPS) {
+                record.setAttribute(SAMTag.RG.name(), "rg" + readGroup);
+            } else if (readGroup == NUM_READ_GROUPS) {
+                record.setAttribute(SAMTag.RG.name(), null);
+            } else {
+                record.setAttribute(SAMTag.RG.name(), "notInHeader");
+            }
+        }
+        return builder;
+    }
+
+    private InsertSizeMetricsCollector makeCollector(final Set<MetricAccumulationLevel> levels, final SAMFileHeader header) {
+        return new InsertSizeMetricsCollector(levels, header.getReadGroups(), 0.05, null, 10, false);
+    }
+
+    @Test
+    public void testMerge() {
+        final SAMRecordSetBuilder builder = makeRecords();
+        final InsertSizeMetricsCollector collector = makeCollector(EnumSet.of(MetricAccumulationLevel.ALL_READS), builder.getHeader());
+
+        final InsertSizeMetricsCollector.PerUnitInsertSizeMetricsCollector all = collector.new PerUnitInsertSizeMetricsCollector(null, null, null);
+        final InsertSizeMetricsCollector.PerUnitInsertSizeMetricsCollector even = collector.new PerUnitInsertSizeMetricsCollector(null, null, null);
+        final InsertSizeMetricsCollector.PerUnitInsertSizeMetricsCollector odd = collector.new PerUnitInsertSizeMetricsCollector(null, null, null);
+        int i = 0;
+        for (final SAMRecord record : builder) {
+            if (!record.getSecondOfPairFlag()) continue;
+            final InsertSizeCollectorArgs arg = collector.makeArg(record, null);
+            all.acceptRecord(arg);
+            (i++ % 2 == 0 ? even : odd).acceptRecord(arg);
+        }
+        even.merge(odd);
+
+        final MetricsFile<InsertSizeMetrics, Integer> expected = finish(all);
+        final MetricsFile<InsertSizeMetrics, Integer> merged = finish(even);
+        Assert.assertEquals(expected.getMetrics().size(), 3);
+        Assert.assertEquals(expected.getAllHistograms().size(), 3);
+        Assert.assertEquals(even.getTotalInserts(), 2000.0);
+        Assert.assertEquals(even.getTotalInserts(), all.getTotalInserts());
+        Assert.assertTrue(merged.areMetricsEqual(expected));
+        Assert.assertTrue(merged.areHistogramsEqual(expected));
+    }
+
+    @Test
+    public void testMergedLevelsMatchPerLevel() {
+        final SAMRecordSetBuilder builder = makeRecords();
+        final Set<MetricAccumulationLevel> levels = EnumSet.of(MetricAccumulationLevel.ALL_READS,
+                MetricAccumulationLevel.SAMPLE, MetricAccumulationLevel.LIBRARY, MetricAccumulationLevel.READ_GROUP);
+
+        // All the levels at once, i.e. from the read group and unknown collectors merged at finish()
+        final MetricsFile<InsertSizeMetrics, Integer> merged = new MetricsFile<>();
+        final InsertSizeMetricsCollector collector = makeCollector(levels, builder.getHeader());
+        for (final SAMRecord record : builder) {
+            collector.acceptRecord(record, null);
+        }
+        collector.finish();
+        collector.addAllLevelsToFile(merged);
+
+        // Each level on its own, i.e. with the records accepted by the collectors of that level
+        final MetricsFile<InsertSizeMetrics, Integer> perLevel = new MetricsFile<>();
+        for (final MetricAccumulationLevel level : levels) {
+            final InsertSizeMetricsCollector levelCollector = makeCollector(EnumSet.of(level), builder.getHeader());
+            for (final SAMRecord record : builder) {
+                levelCollector.acceptRecord(record, null);
+            }
+            levelCollector.finish();
+            levelCollector.addAllLevelsToFile(perLevel);
+        }
+
+        // 1 + 2 samples + 3 libraries + 3 read groups, plus the unknown collector of the last three levels, each with
+        // a histogram for each of the three orientations
+        Assert.assertEquals(merged.getAllHistograms().size(), 3 * (1 + 2 + 3 + 3 + 3));
+        Assert.assertTrue(merged.areMetricsEqual(perLevel));
+        Assert.assertTrue(merged.areHistogramsEqual(perLevel));
+    }
+
+    private static MetricsFile<InsertSizeMetrics, Integer> finish(final InsertSizeMetricsCollector.PerUnitInsertSizeMetricsCollector collector) {
+        final MetricsFile<InsertSizeMetrics, Integer> file = new MetricsFile<>();
+        collector.finish();
+        collector.addMetricsToFile(file);
+        return file;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.analysis.directed;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.Interval;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class TargetIndexTest {
+    private final SAMSequenceDictionary dictionary = new SAMSequenceDictionary(Arrays.asList(
+            new SAMSequenceRecord("chr1", 1000), new SAMSequenceRecord("chr2", 1000), new SAMSequenceRecord("chr3", 1000)));
+
+    private final List<Interval> intervals = Arrays.asList(
+            new Interval("chr1", 100, 199),
+            new Interval("chr1", 300, 309),
+            new Interval("chr1", 500, 599),
+            new Interval("chr3", 10, 19));
+
+    @Test
+    public void testLayout() {
+        final TargetIndex index = new TargetIndex(intervals, dictionary, 0);
+        Assert.assertEquals(index.size(), 4);
+        Assert.assertEquals(index.getBasesInSequence(0), 210);
+        Assert.assertEquals(index.getBasesInSequence(1), 0);
+        Assert.assertEquals(index.getBasesInSequence(2), 10);
+        Assert.assertEquals(index.getOffset(2), 110);
+        Assert.assertEquals(index.getOffset(3), 0);
+        Assert.assertEquals(index.getSequenceIndex(3), 2);
+    }
+
+    @DataProvider(name = "overlaps")
+    public Object[][] overlaps() {
+        return new Object[][] {
+                // sequence, start, end, left padding, first, count
+                {"chr1", 1, 99, 0, 0, 0},
+                {"chr1", 150, 350, 0, 0, 2},
+                {"chr1", 200, 299, 0, 1, 0},
+                {"chr1", 200, 299, 50, 1, 1},
+                {"chr1", 599, 700, 0, 2, 1},
+                {"chr2", 1, 1000, 0, 0, 0},
+                {"chr3", 1, 1000, 0, 3, 1},
+                {"chrX", 1, 1000, 0, 0, 0},
+        };
+    }
+
+    @Test(dataProvider = "overlaps")
+    public void testFindOverlaps(final String sequence, final int start, final int end, final int leftPadding,
+                                 final int expectedFirst, final int expectedCount) {
+        final TargetIndex.Cursor cursor = new TargetIndex(intervals, dictionary, leftPadding).newCursor();
+        Assert.assertEquals(cursor.findOverlaps(sequence, start, end), expectedCount);
+        if (expectedCount > 0) Assert.assertEquals(cursor.first(), expectedFirst);
+    }
+
+    @Test
+    public void testCursorMovesBackwards() {
+        final TargetIndex.Cursor cursor = new TargetIndex(intervals, dictionary, 0).newCursor();
+        Assert.assertEquals(cursor.findOverlaps("chr1", 550, 560), 1);
+        Assert.assertEquals(cursor.first(), 2);
+        Assert.assertEquals(cursor.findOverlaps("chr1", 150, 160), 1);
+        Assert.assertEquals(cursor.first(), 0);
+        Assert.assertEquals(cursor.findOverlaps("chr3", 15, 15), 1);
+        Assert.assertEquals(cursor.findOverlaps("chr1", 305, 305), 1);
+        Assert.assertEquals(cursor.first(), 1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOverlappingIntervals() {
+        new TargetIndex(Arrays.asList(new Interval("chr1", 100, 199), new Interval("chr1", 150, 250)), dictionary, 0);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.illumina;
+
+import htsjdk.samtools.util.StringUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import picard.illumina.ExtractIlluminaBarcodes.BarcodeMetric;
+import picard.illumina.ExtractIlluminaBarcodes.PerTileBarcodeExtractor;
+import picard.illumina.ExtractIlluminaBarcodes.PerTileBarcodeExtractor.BarcodeMatch;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests that matching reads to barcodes with a BarcodeIndex gives the same results as comparing them to every barcode.
+ */
+public class BarcodeIndexTest {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    @DataProvider(name = "barcodeSets")
+    public Object[][] barcodeSets() {
+        return new Object[][]{
+                // barcode length, number of barcodes, max mismatches, minimum base quality
+                {4, 2, 1, 0},
+                {4, 200, 1, 0},
+                {6, 50, 0, 0},
+                {6, 50, 2, 10},
+                {8, 1000, 1, 10},
+                {8, 1000, 3, 0}
+        };
+    }
+
+    @Test(dataProvider = "barcodeSets")
+    public void testIndexMatchesScan(final int barcodeLength, final int numBarcodes, final int maxMismatches, final int minimumBaseQuality) {
+        final Random random = new Random(numBarcodes);
+        final Map<String, BarcodeMetric> scanMetrics = new LinkedHashMap<>();
+        final Map<String, BarcodeMetric> indexMetrics = new LinkedHashMap<>();
+        while (scanMetrics.size() < numBarcodes) {
+            final String[] barcodeSeqs = {randomBarcode(random, barcodeLength), randomBarcode(random, barcodeLength)};
+            final String key = StringUtil.join("", barcodeSeqs);
+            scanMetrics.put(key, new BarcodeMetric(null, null, key, barcodeSeqs));
+            indexMetrics.put(key, new BarcodeMetric(null, null, key, barcodeSeqs));
+        }
+        final BarcodeMetric scanNoMatch = new BarcodeMetric(null, null, "N", new String[]{"N"});
+        final BarcodeMetric indexNoMatch = new BarcodeMetric(null, null, "N", new String[]{"N"});
+
+        final BarcodeIndex index = BarcodeIndex.createEvenIfSlower(indexMetrics.values(), maxMismatches);
+        Assert.assertNotNull(index);
+        final BarcodeIndex.Search search = index.newSearch();
+        final BarcodeMetric[] indexedMetrics = indexMetrics.values().toArray(new BarcodeMetric[indexMetrics.size()]);
+        final BarcodeMetric[] barcodes = scanMetrics.values().toArray(new BarcodeMetric[scanMetrics.size()]);
+
+        for (int i = 0; i < 5000; ++i) {
+            final byte[][] read;
+            if (random.nextBoolean()) {
+                final byte[][] barcode = barcodes[random.nextInt(barcodes.length)].barcodeBytes;
+                read = new byte[][]{barcode[0].clone(), barcode[1].clone()};
+                for (int mutations = random.nextInt(4); mutations > 0; --mutations) {
+                    read[random.nextInt(2)][random.nextInt(barcodeLength)] = BASES[random.nextInt(BASES.length)];
+                }
+            } else {
+                read = new byte[][]{StringUtil.stringToBytes(randomBarcode(random, barcodeLength)),
+                        StringUtil.stringToBytes(randomBarcode(random, barcodeLength))};
+            }
+            if (random.nextInt(20) == 0) read[0][0] = 'N';
+
+            final byte[][] qualities = new byte[2][barcodeLength];
+            for (final byte[] q : qualities) {
+                for (int j = 0; j < barcodeLength; ++j) q[j] = (byte) (random.nextInt(50) == 0 ? 2 : 30);
+            }
+
+            final boolean passingFilter = random.nextBoolean();
+            final BarcodeMatch expected = PerTileBarcodeExtractor.findBestBarcodeAndUpdateMetrics(read, qualities,
+                    passingFilter, scanMetrics, scanNoMatch, 1, maxMismatches, 1, minimumBaseQuality);
+            final BarcodeMatch actual = PerTileBarcodeExtractor.findBestBarcodeAndUpdateMetrics(read, qualities,
+                    passingFilter, indexMetrics, indexNoMatch, 1, maxMismatches, 1, minimumBaseQuality, search, indexedMetrics);
+
+            final String readString = Arrays.toString(new String[]{StringUtil.bytesToString(read[0]), StringUtil.bytesToString(read[1])});
+            Assert.assertEquals(actual.matched, expected.matched, readString);
+            Assert.assertEquals(actual.barcode, expected.barcode, readString);
+            Assert.assertEquals(actual.mismatches, expected.mismatches, readString);
+            Assert.assertEquals(actual.mismatchesToSecondBest, expected.mismatchesToSecondBest, readString);
+        }
+
+        for (final String key : scanMetrics.keySet()) {
+            assertMetricsEqual(indexMetrics.get(key), scanMetrics.get(key));
+        }
+        assertMetricsEqual(indexNoMatch, scanNoMatch);
+    }
+
+    @Test
+    public void testUnindexableBarcodes() {
+        // a single barcode
+        Assert.assertNull(BarcodeIndex.createEvenIfSlower(Arrays.asList(metric("ACGT")), 1));
+        // barcodes of different lengths
+        Assert.assertNull(BarcodeIndex.createEvenIfSlower(Arrays.asList(metric("ACGT"), metric("ACGTA")), 1));
+        // a base other than A, C, G or T
+        Assert.assertNull(BarcodeIndex.createEvenIfSlower(Arrays.asList(metric("ACGT"), metric("ACGN")), 1));
+        // the same barcode in different case
+        Assert.assertNull(BarcodeIndex.createEvenIfSlower(Arrays.asList(metric("ACGT"), metric("acgt")), 1));
+        // too long to pack
+        Assert.assertNull(BarcodeIndex.createEvenIfSlower(Arrays.asList(metric(StringUtil.repeatCharNTimes('A', 33)),
+                metric(StringUtil.repeatCharNTimes('C', 33))), 1));
+
+        Assert.assertNotNull(BarcodeIndex.createEvenIfSlower(Arrays.asList(metric("ACGT"), metric("acga")), 1));
+    }
+
+    @DataProvider(name = "indexOrScan")
+    public Object[][] indexOrScan() {
+        return new Object[][]{
+                // barcode length, number of barcodes, max mismatches, whether the index is used
+                {16, 96, 2, false},
+                {16, 1128, 2, false},
+                {16, 1129, 2, true},
+                {16, 96, 1, true},
+                {16, 48, 1, false},
+                {8, 2, 0, false},
+                {8, 25, 0, true}
+        };
+    }
+
+    @Test(dataProvider = "indexOrScan")
+    public void testIndexOnlyWhenFaster(final int barcodeLength, final int numBarcodes, final int maxMismatches, final boolean indexed) {
+        final Random random = new Random(numBarcodes);
+        final Map<String, BarcodeMetric> metrics = new LinkedHashMap<>();
+        while (metrics.size() < numBarcodes) {
+            final String barcode = randomBarcode(random, barcodeLength);
+            metrics.put(barcode, metric(barcode));
+        }
+        Assert.assertEquals(BarcodeIndex.create(metrics.values(), maxMismatches) != null, indexed);
+        Assert.assertNotNull(BarcodeIndex.createEvenIfSlower(metrics.values(), maxMismatches));
+    }
+
+    @Test
+    public void testCountProbes() {
+        Assert.assertEquals(BarcodeIndex.countProbes(16, 1), 49);
+        Assert.assertEquals(BarcodeIndex.countProbes(16, 2), 1129);
+        Assert.assertEquals(BarcodeIndex.countProbes(8, 2), 277);
+    }
+
+    private static BarcodeMetric metric(final String barcode) {
+        return new BarcodeMetric(null, null, barcode, new String[]{barcode});
+    }
+
+    private static String randomBarcode(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for (int i = 0; i < length; ++i) bases[i] = BASES[random.nextInt(BASES.length)];
+        return StringUtil.bytesToString(bases);
+    }
+
+    private static void assertMetricsEqual(final BarcodeMetric actual, final BarcodeMetric expected) {
+        Assert.assertEquals(actual.READS, expected.READS);
+        Assert.assertEquals(actual.PF_READS, expected.PF_READS);
+        Assert.assertEquals(actual.PERFECT_MATCHES, expected.PERFECT_MATCHES);
+        Assert.assertEquals(actual.PF_PERFECT_MATCHES, expected.PF_PERFECT_MATCHES);
+        Assert.assertEquals(actual.ONE_MISMATCH_MATCHES, expected.ONE_MISMATCH_MATCHES);
+        Assert.assertEquals(actual.PF_ONE_MISMATCH_MATCHES, expected.PF_ONE_MISMATCH_MATCHES);
+    }
+}
@@ -123,6 +123,13 @@ public class IlluminaBasecallsToFastqTest extends CommandLineProgramTest {
         runStandardTest(1, "multiplexedBarcode.", "mp_barcode.params", 1, "25T8B25T", BASECALLS_DIR, TEST_DATA_DIR);
     }
 
+    @Test
+    public void testDeMultiplexedWithManyThreads() throws Exception {
+        // Each barcode's tiles must still be written in tile order when many tiles and barcodes are in flight at once.
+        runStandardTest(1, "multiplexedBarcode.", "mp_barcode.params", 1, "25T8B25T", BASECALLS_DIR, TEST_DATA_DIR,
+                "NUM_PROCESSORS=8");
+    }
+
     @Test
     public void testDeMultiplexedWithIndex() throws Exception {
         runStandardTest(1, "multiplexedBarcodeWithIndex.", "mp_barcode.params", 1, "25T8B4M21T", BASECALLS_DIR, TEST_DATA_DIR_WITH_4M);
@@ -169,12 +176,13 @@ public class IlluminaBasecallsToFastqTest extends CommandLineProgramTest {
      * @param readStructureString what read-structure string to use
      * @param baseCallsDir        what directory can I find the BCLs in
      * @param testDataDir         what directory can I find the expected resulting files
+     * @param extraArgs           further arguments to IlluminaBasecallsToFastq
      * @throws Exception
      */
 
     private void runStandardTest(final int lane, final String jobName, final String libraryParamsFile,
                                  final int concatNColumnFields, final String readStructureString, final File baseCallsDir,
-                                 final File testDataDir) throws Exception {
+                                 final File testDataDir, final String... extraArgs) throws Exception {
         final File outputDir = File.createTempFile(jobName, ".dir");
         try {
             outputDir.delete();
@@ -188,7 +196,7 @@ public class IlluminaBasecallsToFastqTest extends CommandLineProgramTest {
             convertParamsFile(libraryParamsFile, concatNColumnFields, testDataDir, outputDir, libraryParams, outputPrefixes);
 
 
-            runPicardCommandLine(new String[]{
+            final List<String> args = new ArrayList<>(Arrays.asList(
                     "BASECALLS_DIR=" + baseCallsDir,
                     "LANE=" + lane,
                     "RUN_BARCODE=HiMom",
@@ -197,7 +205,9 @@ public class IlluminaBasecallsToFastqTest extends CommandLineProgramTest {
                     "MACHINE_NAME=machine1",
                     "FLOWCELL_BARCODE=abcdeACXX",
                     "MAX_READS_IN_RAM_PER_TILE=100" //force spill to disk to test encode/decode
-            });
+            ));
+            args.addAll(Arrays.asList(extraArgs));
+            runPicardCommandLine(args);
 
             final ReadStructure readStructure = new ReadStructure(readStructureString);
             for (final File outputSam : outputPrefixes) {
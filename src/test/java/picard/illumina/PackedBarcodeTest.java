@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.illumina;
+
+import htsjdk.samtools.util.StringUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for counting mismatches between packed barcodes and reads.
+ */
+public class PackedBarcodeTest {
+
+    @DataProvider(name = "mismatchData")
+    public Object[][] mismatchData() {
+        return new Object[][]{
+                // barcode, read, qualities (one digit per base, or null), minimum base quality, mismatches
+                {new String[]{"ACGTACGT"}, new String[]{"ACGTACGT"}, null, 0, 0},
+                {new String[]{"ACGTACGT"}, new String[]{"acgtacgt"}, null, 0, 0},
+                {new String[]{"ACGTACGT"}, new String[]{"TCGTACGA"}, null, 0, 2},
+                {new String[]{"ACGTACGT"}, new String[]{"NCGTAC.A"}, null, 0, 1},
+                {new String[]{"ACGTACGT"}, new String[]{"ACGTACGT"}, new String[]{"99919999"}, 5, 1},
+                {new String[]{"ACGTACGT"}, new String[]{"ACGTACGA"}, new String[]{"99999991"}, 5, 1},
+                {new String[]{"ACGTACGT"}, new String[]{"NCGTACGT"}, new String[]{"19999999"}, 5, 0},
+                {new String[]{"ACGT", "TTGCA"}, new String[]{"ACGA", "TTGCC"}, null, 0, 2},
+                // more than 32 bases, so more than one word
+                {new String[]{"ACGTACGTACGTACGTACGTACGTACGTACGTACGTAC"}, new String[]{"ACGTACGTACGTACGTACGTACGTACGTACGTACGTAA"}, null, 0, 1},
+                {new String[]{"ACGTACGTACGTACGTACGTACGTACGTACGTACGTAC"}, new String[]{"TCGTACGTACGTACGTACGTACGTACGTACGTACGTAA"}, null, 0, 2}
+        };
+    }
+
+    @Test(dataProvider = "mismatchData")
+    public void testCountMismatches(final String[] barcode, final String[] read, final String[] qualities,
+                                    final int minimumBaseQuality, final int mismatches) {
+        final PackedBarcode packedBarcode = PackedBarcode.ofBarcode(toBytes(barcode));
+        final PackedBarcode packedRead = PackedBarcode.ofRead(toBytes(read), qualities == null ? null : toQualities(qualities), minimumBaseQuality);
+        Assert.assertNotNull(packedBarcode);
+        Assert.assertNotNull(packedRead);
+        Assert.assertTrue(packedBarcode.hasSameLengths(packedRead));
+        Assert.assertEquals(packedBarcode.countMismatches(packedRead), mismatches);
+    }
+
+    @Test
+    public void testUnpackable() {
+        Assert.assertNull(PackedBarcode.ofBarcode(toBytes(new String[]{"ACGN"})));
+        Assert.assertNull(PackedBarcode.ofBarcode(toBytes(new String[]{"ACGR"})));
+        Assert.assertNull(PackedBarcode.ofRead(toBytes(new String[]{"ACGR"}), null, 0));
+        Assert.assertNotNull(PackedBarcode.ofRead(toBytes(new String[]{"ACGN"}), null, 0));
+    }
+
+    @Test
+    public void testSameLengths() {
+        final PackedBarcode barcode = PackedBarcode.ofBarcode(toBytes(new String[]{"ACGT", "ACGT"}));
+        Assert.assertTrue(barcode.hasSameLengths(PackedBarcode.ofRead(toBytes(new String[]{"ACGT", "ACGT"}), null, 0)));
+        Assert.assertFalse(barcode.hasSameLengths(PackedBarcode.ofRead(toBytes(new String[]{"ACGTA", "CGT"}), null, 0)));
+        Assert.assertFalse(barcode.hasSameLengths(PackedBarcode.ofRead(toBytes(new String[]{"ACGTACGT"}), null, 0)));
+    }
+
+    private static byte[][] toBytes(final String[] segments) {
+        final byte[][] bytes = new byte[segments.length][];
+        for (int i = 0; i < segments.length; ++i) bytes[i] = StringUtil.stringToBytes(segments[i]);
+        return bytes;
+    }
+
+    private static byte[][] toQualities(final String[] segments) {
+        final byte[][] qualities = toBytes(segments);
+        for (final byte[] segment : qualities) {
+            for (int i = 0; i < segment.length; ++i) segment[i] -= '0';
+        }
+        return qualities;
+    }
+}
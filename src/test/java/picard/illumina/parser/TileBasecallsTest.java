@@ -0,0 +1,52 @@
+package picard.illumina.parser;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import picard.PicardException;
+
+public class TileBasecallsTest {
+
+    /** Fills a tile of 3 clusters and reads of 2 and 1 cycles, with basecall (cluster * 3 + cycle) in each cycle. */
+    private TileBasecalls makeTile(final byte[] qualityBins) {
+        final TileBasecalls tile = new TileBasecalls(1101, 3, new int[]{2, 1});
+        for (int cycle = 0; cycle < 3; cycle++) {
+            tile.setQualityBins(cycle, qualityBins);
+            final byte[] array = tile.getCycleArray(cycle);
+            for (int cluster = 0; cluster < 3; cluster++) {
+                array[tile.getCycleOffset(cycle) + cluster * tile.getCycleStride(cycle)] = (byte) (cluster * 3 + cycle);
+            }
+        }
+        return tile;
+    }
+
+    @Test
+    public void testDecodeRead() {
+        final TileBasecalls tile = makeTile(new byte[]{10, 20, 30, 40});
+        Assert.assertEquals(tile.getNumClusters(), 3);
+        Assert.assertEquals(tile.getNumReads(), 2);
+
+        final byte[] bases = new byte[2];
+        final byte[] qualities = new byte[2];
+        // Cluster 0 has a no-call (0) and then basecall 1: base C in bin 0.
+        tile.decodeRead(0, 0, bases, qualities);
+        Assert.assertEquals(bases, new byte[]{'.', 'C'});
+        Assert.assertEquals(qualities, new byte[]{2, 10});
+
+        // Cluster 2, read 1 is the third cycle: basecall 8, base A in bin 2.
+        tile.decodeRead(2, 1, bases, qualities);
+        Assert.assertEquals(bases[0], (byte) 'A');
+        Assert.assertEquals(qualities[0], 30);
+
+        final CbclData cluster = new CbclData(tile, 1, null);
+        Assert.assertEquals(cluster.getBases()[0], new byte[]{'T', 'A'});
+        Assert.assertEquals(cluster.getBases()[1], new byte[]{'C'});
+        Assert.assertEquals(cluster.getQualities()[0], new byte[]{10, 20});
+        Assert.assertEquals(cluster.getQualities()[1], new byte[]{20});
+    }
+
+    @Test(expectedExceptions = PicardException.class)
+    public void testDecodeBasecallWithNoBin() {
+        final TileBasecalls tile = makeTile(new byte[]{10});
+        tile.decodeRead(2, 0, new byte[2], new byte[2]);
+    }
+}
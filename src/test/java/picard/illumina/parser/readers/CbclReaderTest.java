@@ -1,16 +1,34 @@
 package picard.illumina.parser.readers;
 
+import htsjdk.samtools.util.IOUtil;
 import org.testng.Assert;
+import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 import picard.PicardException;
-import picard.illumina.parser.BclData;
+import picard.illumina.parser.CbclData;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 
 public class CbclReaderTest {
 
@@ -28,24 +46,43 @@ public class CbclReaderTest {
             37, 37, 37, 37, 37, 37, 37, 12
     };
 
+    private static final int TILE = 1101;
+    private static final byte[] QUALITY_BINS = new byte[]{2, 12, 23, 37};
+
     @Test
     public void testReadValidFile() {
+        assertReadsValidFile(null);
+    }
+
+    @Test
+    public void testReadValidFileWithDecompressionExecutor() {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertReadsValidFile(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void assertReadsValidFile(final ExecutorService decompressionExecutor) {
         final Map<Integer, File> filters = new HashMap<>();
         filters.put(1101, TILE_1101_FILTER);
         final LocsFileReader locsFileReader = new LocsFileReader(new File("testdata/picard/illumina/readerTests/s_1_6.locs"));
         final List<AbstractIlluminaPositionFileReader.PositionInfo> locs = locsFileReader.toList();
         final CbclReader reader = new CbclReader(Arrays.asList(PASSING_CBCL_C1_1, PASSING_CBCL_C2_1),
-                filters, new int[]{2}, 1101, locs, new int[]{1, 2}, false);
+                filters, new int[]{2}, 1101, locs, new int[]{1, 2}, false, decompressionExecutor);
 
         int i = 0;
         while (reader.hasNext()) {
-            final BclData bv = reader.next();
-            for (int cluster = 0; cluster < bv.bases.length; cluster++) {
-                for (int cycle = 0; cycle < bv.bases[cluster].length; cycle++) {
-                    final String actual = new String(new byte[]{bv.bases[cluster][cycle]});
+            final CbclData bv = reader.next();
+            final byte[][] bases = bv.getBases();
+            final byte[][] qualities = bv.getQualities();
+            for (int cluster = 0; cluster < bases.length; cluster++) {
+                for (int cycle = 0; cycle < bases[cluster].length; cycle++) {
+                    final String actual = new String(new byte[]{bases[cluster][cycle]});
                     final String expected = new String(new char[]{expectedBases[i]});
                     Assert.assertEquals(actual, expected, "For cluster " + cluster + " cycle " + cycle + ",");
-                    Assert.assertEquals(bv.qualities[cluster][cycle], expectedQuals[i], "For cluster " + cluster + " cycle " + cycle + ",");
+                    Assert.assertEquals(qualities[cluster][cycle], expectedQuals[i], "For cluster " + cluster + " cycle " + cycle + ",");
                     i++;
                 }
             }
@@ -75,4 +112,214 @@ public class CbclReaderTest {
                 filters, new int[]{1}, 1101, locs, new int[]{3}, false);
         Assert.assertFalse(reader.hasNext());
     }
+
+    @DataProvider(name = "decompressionExecutorThreads")
+    public Object[][] decompressionExecutorThreads() {
+        return new Object[][]{{0}, {3}};
+    }
+
+    @Test(dataProvider = "decompressionExecutorThreads")
+    public void testReadNonPfExcludedFile(final int threads) throws IOException {
+        assertReadsGeneratedTile(new int[]{2}, new boolean[]{true, false, true, true, false, true, false}, threads);
+    }
+
+    /** More cycles than a reader queues on its executor at once, in two reads. */
+    @Test(dataProvider = "decompressionExecutorThreads")
+    public void testReadManyCycles(final int threads) throws IOException {
+        final boolean[] filter = new boolean[101];
+        final Random random = new Random(5);
+        for (int i = 0; i < filter.length; i++) {
+            filter[i] = random.nextInt(4) != 0;
+        }
+        assertReadsGeneratedTile(new int[]{30, 45}, filter, threads);
+    }
+
+    /** A tile whose compressed block is passed to the inflater in several chunks. */
+    @Test(dataProvider = "decompressionExecutorThreads")
+    public void testReadLargeTile(final int threads) throws IOException {
+        final boolean[] filter = new boolean[300000];
+        final Random random = new Random(7);
+        for (int i = 0; i < filter.length; i++) {
+            filter[i] = random.nextInt(4) != 0;
+        }
+        assertReadsGeneratedTile(new int[]{1, 1}, filter, threads);
+    }
+
+    @Test(dataProvider = "decompressionExecutorThreads", expectedExceptions = PicardException.class,
+            expectedExceptionsMessageRegExp = ".*has data for 4 clusters of tile 1101 but the filter file has 6.")
+    public void testFilterLongerThanData(final int threads) throws IOException {
+        final File basecallDir = IOUtil.createTempDir("cbclReaderTest", "BaseCalls");
+        try {
+            final boolean[] filter = new boolean[]{true, true, false, true, true, true};
+            final List<File> cbcls = writeCbcls(basecallDir, new byte[2][4]);
+            readGeneratedTile(basecallDir, cbcls, new int[]{2}, filter, threads);
+        } finally {
+            IOUtil.deleteDirectoryTree(basecallDir);
+        }
+    }
+
+    /**
+     * A cycle that fails to decompress fails the read, but only once the other cycles of the tile that are being
+     * decompressed are done, so that closing the reader does not end inflaters still in use.
+     */
+    @Test(expectedExceptions = PicardException.class, expectedExceptionsMessageRegExp = ".*for cycle 2\\. .*")
+    public void testFailingCycleWaitsForOtherCycles() throws IOException {
+        final File basecallDir = IOUtil.createTempDir("cbclReaderTest", "BaseCalls");
+        final AtomicInteger running = new AtomicInteger();
+        final ExecutorService executor = new ThreadPoolExecutor(3, 3, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()) {
+            @Override
+            public Future<?> submit(final Runnable task) {
+                return super.submit(() -> {
+                    running.incrementAndGet();
+                    try {
+                        task.run();
+                        Thread.sleep(10);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                });
+            }
+        };
+        try {
+            final boolean[] filter = new boolean[]{true, false, true, true};
+            final List<File> cbcls = writeCbcls(basecallDir, new byte[50][filter.length]);
+            // break the CRC of the second cycle
+            try (final RandomAccessFile cbcl = new RandomAccessFile(cbcls.get(1), "rw")) {
+                cbcl.seek(cbcl.length() - 8);
+                final int crc = cbcl.readInt();
+                cbcl.seek(cbcl.length() - 8);
+                cbcl.writeInt(~crc);
+            }
+            readGeneratedTile(basecallDir, cbcls, new int[]{50}, filter, executor);
+        } finally {
+            Assert.assertEquals(running.get(), 0);
+            executor.shutdown();
+            IOUtil.deleteDirectoryTree(basecallDir);
+        }
+    }
+
+    /**
+     * Writes a cbcl per cycle holding random basecalls for every cluster of the filter, non-PF included, and checks that
+     * the reader returns those of the PF clusters.
+     */
+    private void assertReadsGeneratedTile(final int[] outputLengths, final boolean[] filter, final int threads) throws IOException {
+        final File basecallDir = IOUtil.createTempDir("cbclReaderTest", "BaseCalls");
+        try {
+            final int cycles = Arrays.stream(outputLengths).sum();
+            final byte[][] basecalls = new byte[cycles][filter.length];
+            final Random random = new Random(17);
+            for (final byte[] cycle : basecalls) {
+                for (int cluster = 0; cluster < cycle.length; cluster++) {
+                    cycle[cluster] = (byte) random.nextInt(16);
+                }
+            }
+            final List<File> cbcls = writeCbcls(basecallDir, basecalls);
+            final List<CbclData> clusters = readGeneratedTile(basecallDir, cbcls, outputLengths, filter, threads);
+
+            int cluster = 0;
+            for (int i = 0; i < filter.length; i++) {
+                if (!filter[i]) continue;
+                final CbclData data = clusters.get(cluster++);
+                Assert.assertEquals(data.getTile(), TILE);
+                int cycle = 0;
+                for (int read = 0; read < outputLengths.length; read++) {
+                    for (int j = 0; j < outputLengths[read]; j++, cycle++) {
+                        final int basecall = basecalls[cycle][i];
+                        final String message = "For cluster " + i + " cycle " + cycle + ",";
+                        Assert.assertEquals(data.getBases()[read][j], basecall == 0 ? (byte) '.' : (byte) "ACGT".charAt(basecall & 0x3), message);
+                        Assert.assertEquals(data.getQualities()[read][j], basecall == 0 ? 2 : QUALITY_BINS[basecall >>> 2], message);
+                    }
+                }
+            }
+            Assert.assertEquals(clusters.size(), cluster);
+        } finally {
+            IOUtil.deleteDirectoryTree(basecallDir);
+        }
+    }
+
+    private List<CbclData> readGeneratedTile(final File basecallDir, final List<File> cbcls, final int[] outputLengths,
+                                             final boolean[] filter, final int threads) throws IOException {
+        final ExecutorService executor = threads == 0 ? null : Executors.newFixedThreadPool(threads);
+        try {
+            return readGeneratedTile(basecallDir, cbcls, outputLengths, filter, executor);
+        } finally {
+            if (executor != null) executor.shutdown();
+        }
+    }
+
+    private List<CbclData> readGeneratedTile(final File basecallDir, final List<File> cbcls, final int[] outputLengths,
+                                             final boolean[] filter, final ExecutorService executor) throws IOException {
+        final File filterFile = new File(basecallDir, "s_1_" + TILE + ".filter");
+        final ByteBuffer filterBuffer = ByteBuffer.allocate(12 + filter.length).order(ByteOrder.LITTLE_ENDIAN);
+        filterBuffer.putInt(0).putInt(FilterFileReader.EXPECTED_VERSION).putInt(filter.length);
+        for (final boolean pf : filter) {
+            filterBuffer.put((byte) (pf ? 1 : 0));
+        }
+        try (final FileOutputStream out = new FileOutputStream(filterFile)) {
+            out.write(filterBuffer.array());
+        }
+        final LocsFileReader locsFileReader = new LocsFileReader(new File("testdata/picard/illumina/readerTests/s_1_6.locs"));
+        // the positions are not checked, so those of the locs file are reused for tiles with more clusters
+        final List<AbstractIlluminaPositionFileReader.PositionInfo> fileLocs = locsFileReader.toList();
+        final List<AbstractIlluminaPositionFileReader.PositionInfo> locs = new ArrayList<>(filter.length);
+        for (int i = 0; i < filter.length; i++) {
+            locs.add(fileLocs.get(i % fileLocs.size()));
+        }
+        final int[] outputCycles = new int[cbcls.size()];
+        for (int i = 0; i < outputCycles.length; i++) {
+            outputCycles[i] = i + 1;
+        }
+
+        final CbclReader reader = new CbclReader(cbcls, Collections.singletonMap(TILE, filterFile), outputLengths, TILE,
+                locs, outputCycles, false, executor);
+        try {
+            final List<CbclData> clusters = new ArrayList<>();
+            while (reader.hasNext()) {
+                clusters.add(reader.next());
+            }
+            return clusters;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Writes one cbcl per cycle of the basecalls, each with a single tile holding a basecall per cluster, non-PF
+     * clusters included.
+     */
+    private List<File> writeCbcls(final File basecallDir, final byte[][] basecalls) throws IOException {
+        final List<File> cbcls = new ArrayList<>();
+        for (int cycle = 0; cycle < basecalls.length; cycle++) {
+            final byte[] nibbles = new byte[(basecalls[cycle].length + 1) / 2];
+            for (int cluster = 0; cluster < basecalls[cycle].length; cluster++) {
+                nibbles[cluster / 2] |= (cluster % 2 == 0 ? basecalls[cycle][cluster] : basecalls[cycle][cluster] << 4);
+            }
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (final GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(nibbles);
+            }
+
+            final int headerSize = 2 + 4 + 1 + 1 + 4 + 8 * QUALITY_BINS.length + 4 + 16 + 1;
+            final ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+            header.putShort((short) 1).putInt(headerSize).put((byte) 2).put((byte) 2).putInt(QUALITY_BINS.length);
+            for (int bin = 0; bin < QUALITY_BINS.length; bin++) {
+                header.putInt(bin).putInt(QUALITY_BINS[bin]);
+            }
+            header.putInt(1).putInt(TILE).putInt(basecalls[cycle].length).putInt(nibbles.length).putInt(compressed.size());
+            // non-PF clusters are not excluded
+            header.put((byte) 0);
+
+            final File cycleDir = new File(basecallDir, "C" + (cycle + 1) + ".1");
+            cycleDir.mkdir();
+            final File cbcl = new File(cycleDir, "L001_1.cbcl");
+            try (final FileOutputStream out = new FileOutputStream(cbcl)) {
+                out.write(header.array());
+                compressed.writeTo(out);
+            }
+            cbcls.add(cbcl);
+        }
+        return cbcls;
+    }
 }
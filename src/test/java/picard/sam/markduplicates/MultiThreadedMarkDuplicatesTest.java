@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.sam.markduplicates;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMProgramRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordSetBuilder;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.util.CloserUtil;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.TestUtil;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the MarkDuplicates test cases with the read ends built by several threads, which must give the same results
+ * as the single-threaded path.
+ */
+public class MultiThreadedMarkDuplicatesTest extends AbstractMarkDuplicatesCommandLineProgramTest {
+
+    protected AbstractMarkDuplicatesCommandLineProgramTester getTester() {
+        return new MultiThreadedMarkDuplicatesTester();
+    }
+
+    @Test
+    public void testManyBatchesOfMappedPairs() {
+        final AbstractMarkDuplicatesCommandLineProgramTester tester = getTester();
+        // enough records that several batches are in flight at once
+        for (int i = 0; i < 2 * MarkDuplicates.READ_ENDS_BATCH_SIZE; ++i) {
+            final int start = 1 + 10 * (i / 2);
+            tester.addMappedPair(1, start, start + 100, i % 2 == 1, i % 2 == 1, DEFAULT_BASE_QUALITY);
+        }
+        tester.addMappedFragment(1, 1, true, DEFAULT_BASE_QUALITY);
+        tester.runTest();
+    }
+
+    @Test
+    public void testDuplicatesOnManyReferences() {
+        final AbstractMarkDuplicatesCommandLineProgramTester tester = getTester();
+        // duplicate sets on references that fall in different shards, including pairs whose ends are on different references
+        for (int ref = 0; ref < 8; ++ref) {
+            tester.addMappedPair(ref, 100, 200, false, false, DEFAULT_BASE_QUALITY);
+            tester.addMappedPair(ref, 100, 200, true, true, DEFAULT_BASE_QUALITY - 1);
+            tester.addMatePair("CROSS_A" + ref, ref, (ref + 3) % 8, 500, 600, false, false, false, false, "50M", "50M",
+                    false, true, false, false, false, DEFAULT_BASE_QUALITY);
+            tester.addMatePair("CROSS_B" + ref, ref, (ref + 3) % 8, 500, 600, false, false, true, true, "50M", "50M",
+                    false, true, false, false, false, DEFAULT_BASE_QUALITY - 1);
+            tester.addMappedFragment(ref, 1000, false, DEFAULT_BASE_QUALITY);
+            tester.addMappedFragment(ref, 1000, true, DEFAULT_BASE_QUALITY - 1);
+        }
+        tester.runTest();
+    }
+
+    @Test
+    public void testAssignReferencesToShards() {
+        final SAMSequenceDictionary dictionary = new SAMSequenceDictionary(Arrays.asList(
+                new SAMSequenceRecord("a", 100),
+                new SAMSequenceRecord("b", 500),
+                new SAMSequenceRecord("c", 300),
+                new SAMSequenceRecord("d", 200),
+                new SAMSequenceRecord("e", 250)));
+
+        // longest first, each to the shard with the least total length so far
+        Assert.assertEquals(MarkDuplicates.assignReferencesToShards(dictionary, 2), new int[]{1, 0, 1, 0, 1});
+        Assert.assertEquals(MarkDuplicates.assignReferencesToShards(dictionary, 10), new int[]{4, 0, 1, 3, 2});
+        Assert.assertEquals(MarkDuplicates.assignReferencesToShards(dictionary, 1), new int[]{0, 0, 0, 0, 0});
+        Assert.assertEquals(MarkDuplicates.assignReferencesToShards(new SAMSequenceDictionary(), 4), new int[0]);
+    }
+
+    /**
+     * The unmapped reads at the end of a coordinate sorted input are not examined, but the PG ID of the first one is
+     * still collected, so its PG tag is chained to a MarkDuplicates PG record whatever the number of threads.
+     */
+    @Test
+    public void testTrailingUnmappedReadWithDistinctProgramGroup() throws Exception {
+        final File outputDir = IOUtil.createTempDir("MultiThreadedMarkDuplicatesTest.", ".tmp");
+        try {
+            final SAMRecordSetBuilder builder = new SAMRecordSetBuilder(true, SAMFileHeader.SortOrder.coordinate);
+            builder.getHeader().addProgramRecord(new SAMProgramRecord("mapper"));
+            builder.getHeader().addProgramRecord(new SAMProgramRecord("unmapper"));
+            for (int i = 0; i < 3 * MarkDuplicates.READ_ENDS_BATCH_SIZE / 2; ++i) {
+                builder.addPair("pair" + i, i % 4, 1 + 10 * (i / 8), 200 + 10 * (i / 8));
+            }
+            builder.addUnmappedFragment("trailing");
+            for (final SAMRecord rec : builder) {
+                rec.setAttribute(SAMTag.PG.name(), rec.getReadName().equals("trailing") ? "unmapper" : "mapper");
+            }
+            final File input = new File(outputDir, "input.sam");
+            try (final SAMFileWriter writer = new SAMFileWriterFactory().makeSAMWriter(builder.getHeader(), true, input)) {
+                builder.forEach(writer::addAlignment);
+            }
+
+            final List<String> singleThreaded = runMarkDuplicates(input, new File(outputDir, "threads1.sam"), 1);
+            final List<String> multiThreaded = runMarkDuplicates(input, new File(outputDir, "threads4.sam"), 4);
+            Assert.assertEquals(multiThreaded, singleThreaded);
+        } finally {
+            TestUtil.recursiveDelete(outputDir);
+        }
+    }
+
+    /**
+     * Runs MarkDuplicates and checks the PG chain of the trailing unmapped read, returning the output records as text
+     * with the PP of their PG record, since the PG records themselves differ in their command lines.
+     */
+    private List<String> runMarkDuplicates(final File input, final File output, final int threads) {
+        Assert.assertEquals(new MarkDuplicates().instanceMain(new String[]{
+                "INPUT=" + input.getAbsolutePath(),
+                "OUTPUT=" + output.getAbsolutePath(),
+                "METRICS_FILE=" + new File(output.getParentFile(), output.getName() + ".metrics").getAbsolutePath(),
+                "ADD_PG_TAG_TO_READS=true",
+                "READ_NAME_REGEX=null",
+                "THREADS=" + threads
+        }), 0);
+
+        final SamReader reader = SamReaderFactory.makeDefault().open(output);
+        final SAMFileHeader header = reader.getFileHeader();
+        final List<String> records = new ArrayList<>();
+        boolean sawTrailing = false;
+        for (final SAMRecord rec : reader) {
+            final SAMProgramRecord programRecord = header.getProgramRecord(rec.getStringAttribute(SAMTag.PG.name()));
+            Assert.assertNotNull(programRecord, rec.getReadName());
+            Assert.assertEquals(programRecord.getProgramName(), "MarkDuplicates");
+            if (rec.getReadName().equals("trailing")) {
+                Assert.assertEquals(programRecord.getPreviousProgramGroupId(), "unmapper");
+                sawTrailing = true;
+            }
+            records.add(rec.getSAMString() + programRecord.getPreviousProgramGroupId());
+        }
+        CloserUtil.close(reader);
+        Assert.assertTrue(sawTrailing);
+        return records;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2017 The Broad Institute
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package picard.sam.markduplicates;
+
+import htsjdk.samtools.util.CollectionUtil;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.samtools.util.TestUtil;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import picard.sam.markduplicates.util.PackedReadEndsSortingCollection;
+import picard.sam.markduplicates.util.ReadEnds;
+import picard.sam.markduplicates.util.ReadEndsForMarkDuplicates;
+import picard.sam.markduplicates.util.ReadEndsForMarkDuplicatesWithBarcodes;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests that PackedReadEndsSortingCollection returns the same read ends, in the same order, as sorting them with
+ * MarkDuplicates.ReadEndsMDComparator.
+ */
+public class PackedReadEndsSortingCollectionTest {
+
+    @DataProvider(name = "sortingData")
+    public Object[][] sortingData() {
+        return new Object[][]{
+                {false, 1000, 100000}, // no spilling
+                {false, 1000, 7},      // many spills
+                {false, 1000, 1},
+                {true, 1000, 100000},
+                {true, 1000, 33},
+                {false, 0, 10},
+        };
+    }
+
+    @Test(dataProvider = "sortingData")
+    public void testSortOrderMatchesComparator(final boolean useBarcodes, final int numReadEnds, final int maxRecordsInRam) {
+        final Random random = new Random(42);
+        final List<ReadEndsForMarkDuplicates> readEnds = new ArrayList<>();
+        for (int i = 0; i < numReadEnds; ++i) {
+            readEnds.add(randomReadEnds(random, useBarcodes, i));
+        }
+
+        final File tmpDir = IOUtil.createTempDir("packedReadEnds.", ".tmp");
+        final PackedReadEndsSortingCollection collection =
+                new PackedReadEndsSortingCollection(useBarcodes, maxRecordsInRam, CollectionUtil.makeList(tmpDir));
+        try {
+            readEnds.forEach(collection::add);
+            collection.doneAdding();
+
+            final List<ReadEndsForMarkDuplicates> expected = new ArrayList<>(readEnds);
+            Collections.sort(expected, new MarkDuplicates.ReadEndsMDComparator(useBarcodes));
+
+            final Iterator<ReadEndsForMarkDuplicates> actual = collection.iterator();
+            for (final ReadEndsForMarkDuplicates expectedReadEnds : expected) {
+                Assert.assertTrue(actual.hasNext());
+                assertReadEndsEqual(actual.next(), expectedReadEnds, useBarcodes);
+            }
+            Assert.assertFalse(actual.hasNext());
+        } finally {
+            collection.cleanup();
+            TestUtil.recursiveDelete(tmpDir);
+        }
+    }
+
+    /** Draws fields from small ranges so that many read ends tie on their leading sort keys. */
+    private static ReadEndsForMarkDuplicates randomReadEnds(final Random random, final boolean useBarcodes, final int index) {
+        final ReadEndsForMarkDuplicates readEnds;
+        if (useBarcodes) {
+            final ReadEndsForMarkDuplicatesWithBarcodes withBarcodes = new ReadEndsForMarkDuplicatesWithBarcodes();
+            withBarcodes.barcode = random.nextInt(3) - 1;
+            withBarcodes.readOneBarcode = random.nextBoolean() ? 0 : random.nextInt();
+            withBarcodes.readTwoBarcode = random.nextBoolean() ? 0 : random.nextInt();
+            readEnds = withBarcodes;
+        } else {
+            readEnds = new ReadEndsForMarkDuplicates();
+        }
+        readEnds.libraryId = (short) (1 + random.nextInt(2));
+        readEnds.read1ReferenceIndex = random.nextInt(3);
+        readEnds.read1Coordinate = random.nextInt(20);
+        readEnds.read1IndexInFile = index / 2; // as for the two ends of a query-sorted pair
+        if (random.nextBoolean()) {
+            readEnds.orientation = (byte) (ReadEnds.FF + random.nextInt(4));
+            readEnds.read2ReferenceIndex = readEnds.read1ReferenceIndex + random.nextInt(2);
+            readEnds.read2Coordinate = random.nextInt(20);
+            readEnds.read2IndexInFile = random.nextInt(1000);
+        } else {
+            readEnds.orientation = random.nextBoolean() ? ReadEnds.F : ReadEnds.R;
+            readEnds.read2ReferenceIndex = random.nextBoolean() ? -1 : random.nextInt(3);
+        }
+        readEnds.orientationForOpticalDuplicates = (byte) (random.nextInt(7) - 1);
+        readEnds.score = (short) random.nextInt(Short.MAX_VALUE);
+        readEnds.readGroup = (short) (random.nextInt(4) - 1);
+        readEnds.tile = (short) (random.nextInt(3000) - 1);
+        readEnds.setX(random.nextInt(100000) - 1);
+        readEnds.setY(random.nextInt(100000) - 1);
+        return readEnds;
+    }
+
+    private static void assertReadEndsEqual(final ReadEndsForMarkDuplicates actual, final ReadEndsForMarkDuplicates expected,
+                                            final boolean useBarcodes) {
+        Assert.assertEquals(actual.libraryId, expected.libraryId);
+        Assert.assertEquals(actual.orientation, expected.orientation);
+        Assert.assertEquals(actual.read1ReferenceIndex, expected.read1ReferenceIndex);
+        Assert.assertEquals(actual.read1Coordinate, expected.read1Coordinate);
+        Assert.assertEquals(actual.read2ReferenceIndex, expected.read2ReferenceIndex);
+        Assert.assertEquals(actual.read2Coordinate, expected.read2Coordinate);
+        Assert.assertEquals(actual.read1IndexInFile, expected.read1IndexInFile);
+        Assert.assertEquals(actual.read2IndexInFile, expected.read2IndexInFile);
+        Assert.assertEquals(actual.score, expected.score);
+        Assert.assertEquals(actual.readGroup, expected.readGroup);
+        Assert.assertEquals(actual.tile, expected.tile);
+        Assert.assertEquals(actual.x, expected.x);
+        Assert.assertEquals(actual.y, expected.y);
+        Assert.assertEquals(actual.orientationForOpticalDuplicates, expected.orientationForOpticalDuplicates);
+        if (useBarcodes) {
+            final ReadEndsForMarkDuplicatesWithBarcodes actualWithBarcodes = (ReadEndsForMarkDuplicatesWithBarcodes) actual;
+            final ReadEndsForMarkDuplicatesWithBarcodes expectedWithBarcodes = (ReadEndsForMarkDuplicatesWithBarcodes) expected;
+            Assert.assertEquals(actualWithBarcodes.barcode, expectedWithBarcodes.barcode);
+            Assert.assertEquals(actualWithBarcodes.readOneBarcode, expectedWithBarcodes.readOneBarcode);
+            Assert.assertEquals(actualWithBarcodes.readTwoBarcode, expectedWithBarcodes.readTwoBarcode);
+        }
+    }
+}
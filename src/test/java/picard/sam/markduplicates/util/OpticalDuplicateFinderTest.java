@@ -142,6 +142,28 @@ public class OpticalDuplicateFinderTest {
         Assert.assertEquals(countTrue(constrainedFinder.findOpticalDuplicates(locs, null)), 0);
     }
 
+    @Test
+    public void testSpatialIndexMatchesPairwiseComparison() {
+        final Log log = Log.getInstance(OpticalDuplicateFinderTest.class);
+        for (final int distance : new int[] {0, 1, 15, 100}) {
+            final OpticalDuplicateFinder pairwiseFinder = new OpticalDuplicateFinder(OpticalDuplicateFinder.DEFAULT_READ_NAME_REGEX, distance, log);
+            pairwiseFinder.setSpatialIndexSetSize(Integer.MAX_VALUE);
+            final OpticalDuplicateFinder indexedFinder = new OpticalDuplicateFinder(OpticalDuplicateFinder.DEFAULT_READ_NAME_REGEX, distance, log);
+            indexedFinder.setSpatialIndexSetSize(0);
+
+            for (int i = 0; i < 20; ++i) {
+                final Random random = new Random(i);
+                final List<PhysicalLocation> locs = new ArrayList<>();
+                for (int j = 0; j < 500; ++j) {
+                    locs.add(loc(1 + random.nextInt(3), random.nextInt(1000) - 100, random.nextInt(1000) - 100));
+                }
+                final PhysicalLocation keeper = random.nextBoolean() ? locs.get(random.nextInt(locs.size())) : null;
+
+                assertEquals(indexedFinder.findOpticalDuplicates(locs, keeper), pairwiseFinder.findOpticalDuplicates(locs, keeper));
+            }
+        }
+    }
+
     /** Helper method to create a physical location. */
     private PhysicalLocation loc(final int tile, final int x, final int y) {
         final PhysicalLocation l = new PhysicalLocationInt() {
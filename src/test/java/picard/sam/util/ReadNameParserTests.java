@@ -72,6 +72,53 @@ public class ReadNameParserTests {
         }
     }
 
+    /** Tests rapidParseInt on a range of the input */
+    @Test
+    public void testRapidParseIntRange() {
+        Assert.assertEquals(ReadNameParser.rapidParseInt("AB:-123XY:7", 3, 9), -123);
+        Assert.assertEquals(ReadNameParser.rapidParseInt("AB:-123XY:7", 10, 11), 7);
+        try {
+            ReadNameParser.rapidParseInt("AB:-123XY:7", 0, 2);
+            Assert.fail("Should have failed to rapid-parse AB as an int.");
+        }
+        catch (NumberFormatException nfe) {
+            /* expected */
+        }
+    }
+
+    /** Tests that parseInt accepts and rejects what Integer.parseInt does */
+    @Test
+    public void testParseIntMatchesIntegerParseInt() {
+        final List<String> values = CollectionUtil.makeList("0", "-0", "+5", "123", "-2147483648", "2147483647",
+                "2147483648", "-2147483649", "99999999999", "+", "-", "", "12a", "a12");
+        for (final String value : values) {
+            final String input = "::" + value + "::";
+            Integer expected;
+            try {
+                expected = Integer.parseInt(value);
+            }
+            catch (NumberFormatException nfe) {
+                expected = null;
+            }
+            Integer actual;
+            try {
+                actual = ReadNameParser.parseInt(input, 2, 2 + value.length());
+            }
+            catch (NumberFormatException nfe) {
+                actual = null;
+            }
+            Assert.assertEquals(actual, expected, value);
+        }
+    }
+
+    @Test
+    public void testGetLastThreeFieldsDelimiter() {
+        Assert.assertEquals(ReadNameParser.getLastThreeFieldsDelimiter("(?:.*:)?([0-9]+)[^:]*:([0-9]+)[^:]*:([0-9]+)[^:]*$"), ':');
+        Assert.assertEquals(ReadNameParser.getLastThreeFieldsDelimiter("(?:.*_)?(\\d+)[^_]*_(\\d+)[^_]*_(\\d+)[^_]*"), '_');
+        Assert.assertEquals(ReadNameParser.getLastThreeFieldsDelimiter("[^:]*:([0-9]+):([0-9]+):([0-9]+)"), '\0');
+        Assert.assertEquals(ReadNameParser.getLastThreeFieldsDelimiter(null), '\0');
+    }
+
     @DataProvider(name = "testParseReadNameDataProvider")
     public Object[][] testParseReadNameDataProvider() {
         return new Object[][]{
@@ -105,6 +152,7 @@ public class ReadNameParserTests {
     @DataProvider(name = "testReadNameParsing")
     public Object[][] testReadNameParsingDataProvider() {
         final String lastThreeFieldsRegex = "(?:.*:)?([0-9]+)[^:]*:([0-9]+)[^:]*:([0-9]+)[^:]*$";
+        final String underscoreRegex = "(?:.*_)?([0-9]+)[^_]*_([0-9]+)[^_]*_([0-9]+)[^_]*$";
         return new Object[][]{
                 {lastThreeFieldsRegex, "RUNID:123:000000000-ZZZZZ:1:1105:17981:23325", 1105, 17981, 23325, true},
                 {lastThreeFieldsRegex, "RUNID:123:000000000-ZZZZZ:1:1109:22981:17995", 1109, 22981, 17995, true},
@@ -112,6 +160,13 @@ public class ReadNameParserTests {
                 {lastThreeFieldsRegex, "RUNID:7:1203:2886:82292", 1203, 2886, 82292, true},
                 {lastThreeFieldsRegex, "RUNID:7:1203:2884:16834", 1203, 2884, 16834, true},
                 {lastThreeFieldsRegex, "1109ABC:22981DEF:17995GHI", 1109, 22981, 17995, true},
+                {lastThreeFieldsRegex, "RUNID:7:ABC:2886:82292", 0, 0, 0, false},
+                {lastThreeFieldsRegex, "2886:82292", 0, 0, 0, false},
+                {lastThreeFieldsRegex, "RUNID:7:1203:2886:99999999999", 0, 0, 0, false},
+                {underscoreRegex, "V300012345L1C001R0010000001_1203_2886_82292", 1203, 2886, 82292, true},
+                {underscoreRegex, "V300012345L1C001R0010000001:1203:2886:82292", 0, 0, 0, false},
+                {underscoreRegex, "RUN\nID_1203_2886_82292", 1203, 2886, 82292, false},
+                {"[^:]*:([0-9]+):([0-9]+):([0-9]+)", "RUNID:1203:2886:82292", 1203, 2886, 82292, true},
                 {ReadNameParser.DEFAULT_READ_NAME_REGEX, "RUNID:123:000000000-ZZZZZ:1:1105:17981:23325", 1105, 17981, 23325, true},
                 {ReadNameParser.DEFAULT_READ_NAME_REGEX, "RUNID:123:000000000-ZZZZZ:1:1109:22981:17995", 1109, 22981, 17995, true},
                 {ReadNameParser.DEFAULT_READ_NAME_REGEX, "1109:22981:17995", 1109, 22981, 17995, false},